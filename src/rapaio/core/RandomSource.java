@@ -30,6 +30,11 @@ import java.util.Random;
  * <p>
  * In order to have a reproducible analysis you can use
  * same seed in code ({@link #setSeed(long)}).
+ * <p>
+ * Algorithms which consume random numbers from multiple threads
+ * can create their own independent streams with {@link #newRandom(long)},
+ * usually seeded from a master stream, in order to remain reproducible
+ * regardless of the number of threads used.
  *
  * @author Aurelian Tutuianu
  */
@@ -49,11 +54,24 @@ public final class RandomSource implements Serializable {
         return rand.nextInt(n);
     }
 
+    public static long nextLong() {
+        return rand.nextLong();
+    }
+
     public static Random getRandom() {
         return rand;
     }
 
-    ;
+    /**
+     * Builds a new random stream, independent of the shared one,
+     * initialized with all the 64 bits of the given seed.
+     *
+     * @param seed seed of the new random stream
+     * @return new random stream
+     */
+    public static Random newRandom(long seed) {
+        return new MersenneTwister(new int[]{(int) seed, (int) (seed >>> 32)});
+    }
 }
 
 /**
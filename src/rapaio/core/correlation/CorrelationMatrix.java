@@ -0,0 +1,395 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.core.correlation;
+
+import rapaio.data.Var;
+import rapaio.data.matrix.MathMatrix;
+import rapaio.data.matrix.Matrix;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Computes correlation matrices for many variables at once.
+ * <p>
+ * The variables are copied once into a contiguous matrix with one row for
+ * each variable. When there are no missing values the rows are centered and
+ * scaled to unit length, and the Pearson matrix is the product Z * Z^T,
+ * computed by the blocked and parallel matrix multiplication.
+ * <p>
+ * When missing values are present, each coefficient is computed on the
+ * pairwise-complete observations, the rows where both variables are
+ * not missing. The sums needed for that are also computed as matrix
+ * products, using the centered values with zeros for missing values
+ * and a mask of the present values.
+ * <p>
+ * Variables with different row counts are handled as if the shorter
+ * ones are filled with missing values.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+final class CorrelationMatrix {
+
+    private CorrelationMatrix() {
+    }
+
+    /**
+     * Copies the values of the variables in a [vars.length][rows] array,
+     * with missing values as NaN.
+     */
+    static double[][] values(Var[] vars) {
+        int rows = rowCount(vars);
+        double[][] columns = new double[vars.length][];
+        IntStream.range(0, vars.length).parallel().forEach(j -> {
+            double[] column = new double[rows];
+            Arrays.fill(column, Double.NaN);
+            Var var = vars[j];
+            for (int i = 0; i < var.rowCount(); i++) {
+                if (!var.missing(i)) {
+                    column[i] = var.value(i);
+                }
+            }
+            columns[j] = column;
+        });
+        return columns;
+    }
+
+    /**
+     * Computes the Spearman correlation matrix of the variables. Ranks start
+     * from 1 and ties receive the average of their ranks.
+     * <p>
+     * Variables without missing values are ranked once and their coefficients
+     * are computed together, as Pearson coefficients of the ranks. For pairs
+     * which involve a variable with missing values, the pairwise-complete rows
+     * are ranked again for each pair, thus each coefficient is the Spearman
+     * coefficient of the pairwise-complete observations.
+     */
+    static double[][] spearman(Var[] vars) {
+        double[][] values = values(vars);
+        int p = values.length;
+        boolean[] complete = new boolean[p];
+        int completeCount = 0;
+        for (int j = 0; j < p; j++) {
+            complete[j] = true;
+            for (double value : values[j]) {
+                if (Double.isNaN(value)) {
+                    complete[j] = false;
+                    break;
+                }
+            }
+            if (complete[j]) {
+                completeCount++;
+            }
+        }
+
+        // ranks of complete variables, all pairs at once
+        int[] index = new int[completeCount];
+        double[][] ranks = new double[completeCount][];
+        for (int j = 0, k = 0; j < p; j++) {
+            if (complete[j]) {
+                index[k] = j;
+                ranks[k] = values[j].clone();
+                k++;
+            }
+        }
+        IntStream.range(0, completeCount).parallel().forEach(k -> rank(ranks[k]));
+        double[][] r = new double[p][p];
+        if (completeCount > 0) {
+            double[][] sub = pearson(ranks);
+            for (int a = 0; a < completeCount; a++) {
+                for (int b = 0; b < completeCount; b++) {
+                    r[index[a]][index[b]] = sub[a][b];
+                }
+            }
+        }
+
+        // pairs with missing values, ranked on their complete rows
+        IntStream.range(0, p).parallel().forEach(i -> {
+            for (int j = i + 1; j < p; j++) {
+                if (complete[i] && complete[j]) {
+                    continue;
+                }
+                double value = spearmanPairwise(values[i], values[j]);
+                r[i][j] = value;
+                r[j][i] = value;
+            }
+        });
+        for (int i = 0; i < p; i++) {
+            r[i][i] = 1;
+        }
+        return r;
+    }
+
+    private static double spearmanPairwise(double[] x, double[] y) {
+        int len = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (!Double.isNaN(x[i]) && !Double.isNaN(y[i])) {
+                len++;
+            }
+        }
+        double[] rx = new double[len];
+        double[] ry = new double[len];
+        int k = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (!Double.isNaN(x[i]) && !Double.isNaN(y[i])) {
+                rx[k] = x[i];
+                ry[k] = y[i];
+                k++;
+            }
+        }
+        if (len < 2) {
+            return Double.NaN;
+        }
+        rank(rx);
+        rank(ry);
+        // ranks have no missing values, the mean of ranks is (len + 1) / 2
+        double mean = (len + 1) / 2.0;
+        double sxy = 0;
+        double sxx = 0;
+        double syy = 0;
+        for (int i = 0; i < len; i++) {
+            double dx = rx[i] - mean;
+            double dy = ry[i] - mean;
+            sxy += dx * dy;
+            sxx += dx * dx;
+            syy += dy * dy;
+        }
+        return Math.max(-1, Math.min(1, sxy / Math.sqrt(sxx * syy)));
+    }
+
+    private static void rank(double[] column) {
+        int len = 0;
+        for (double value : column) {
+            if (!Double.isNaN(value)) {
+                len++;
+            }
+        }
+        // present values are sorted together with their positions
+        double[] sorted = new double[len];
+        int[] pos = new int[len];
+        int k = 0;
+        for (int i = 0; i < column.length; i++) {
+            if (!Double.isNaN(column[i])) {
+                sorted[k] = column[i];
+                pos[k] = i;
+                k++;
+            }
+        }
+        sortByValue(sorted, pos, 0, len - 1);
+        int start = 0;
+        while (start < len) {
+            int end = start;
+            while (end < len - 1 && sorted[end] == sorted[end + 1]) {
+                end++;
+            }
+            double value = 1 + (start + end) / 2.;
+            for (int i = start; i <= end; i++) {
+                column[pos[i]] = value;
+            }
+            start = end + 1;
+        }
+    }
+
+    private static void sortByValue(double[] values, int[] pos, int lo, int hi) {
+        while (hi - lo > 16) {
+            double pivot = median(values[lo], values[(lo + hi) >>> 1], values[hi]);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, pos, i++, j--);
+                }
+            }
+            // recurse on the smaller part, iterate on the larger one
+            if (j - lo < hi - i) {
+                sortByValue(values, pos, lo, j);
+                lo = i;
+            } else {
+                sortByValue(values, pos, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && values[j - 1] > values[j]; j--) {
+                swap(values, pos, j - 1, j);
+            }
+        }
+    }
+
+    private static double median(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private static void swap(double[] values, int[] pos, int i, int j) {
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+        int p = pos[i];
+        pos[i] = pos[j];
+        pos[j] = p;
+    }
+
+    /**
+     * Computes the Pearson correlation matrix of the given columns,
+     * where missing values are NaN. The diagonal is always 1.
+     */
+    static double[][] pearson(double[][] columns) {
+        int p = columns.length;
+        boolean complete = true;
+        for (double[] column : columns) {
+            for (double value : column) {
+                if (Double.isNaN(value)) {
+                    complete = false;
+                    break;
+                }
+            }
+            if (!complete) {
+                break;
+            }
+        }
+        double[][] r = complete ? pearsonComplete(columns) : pearsonPairwise(columns);
+        for (int i = 0; i < p; i++) {
+            r[i][i] = 1;
+        }
+        return r;
+    }
+
+    private static double[][] pearsonComplete(double[][] columns) {
+        int p = columns.length;
+        int rows = p == 0 ? 0 : columns[0].length;
+        double[] z = new double[p * rows];
+        IntStream.range(0, p).parallel().forEach(j -> {
+            double[] column = columns[j];
+            double mean = 0;
+            for (int i = 0; i < rows; i++) {
+                mean += column[i];
+            }
+            mean /= rows;
+            // second pass on the mean improves precision, as in Mean
+            double correction = 0;
+            for (int i = 0; i < rows; i++) {
+                correction += column[i] - mean;
+            }
+            mean += correction / rows;
+            double ss = 0;
+            int offset = j * rows;
+            for (int i = 0; i < rows; i++) {
+                double d = column[i] - mean;
+                z[offset + i] = d;
+                ss += d * d;
+            }
+            // constant columns produce NaN coefficients
+            double scale = 1.0 / Math.sqrt(ss);
+            for (int i = 0; i < rows; i++) {
+                z[offset + i] *= scale;
+            }
+        });
+        Matrix Z = new Matrix(p, rows, z);
+        Matrix R = MathMatrix.times(Z, Z.transposeView());
+        double[][] r = new double[p][p];
+        for (int i = 0; i < p; i++) {
+            for (int j = i; j < p; j++) {
+                // clamp rounding errors and keep the matrix symmetric
+                double value = Math.max(-1, Math.min(1, R.get(i, j)));
+                r[i][j] = value;
+                r[j][i] = value;
+            }
+        }
+        return r;
+    }
+
+    private static double[][] pearsonPairwise(double[][] columns) {
+        int p = columns.length;
+        int rows = p == 0 ? 0 : columns[0].length;
+        double[] x = new double[p * rows];
+        double[] xx = new double[p * rows];
+        double[] mask = new double[p * rows];
+        IntStream.range(0, p).parallel().forEach(j -> {
+            double[] column = columns[j];
+            // centering on the variable mean keeps the sums small, the
+            // pairwise means are recovered below from the masked sums
+            double mean = 0;
+            int count = 0;
+            for (int i = 0; i < rows; i++) {
+                if (!Double.isNaN(column[i])) {
+                    mean += column[i];
+                    count++;
+                }
+            }
+            mean = count == 0 ? 0 : mean / count;
+            int offset = j * rows;
+            for (int i = 0; i < rows; i++) {
+                if (!Double.isNaN(column[i])) {
+                    double d = column[i] - mean;
+                    x[offset + i] = d;
+                    xx[offset + i] = d * d;
+                    mask[offset + i] = 1;
+                }
+            }
+        });
+        Matrix X = new Matrix(p, rows, x);
+        Matrix XX = new Matrix(p, rows, xx);
+        Matrix M = new Matrix(p, rows, mask);
+        Matrix Mt = M.transposeView();
+
+        // N[i][j] = count of rows present in both i and j
+        // S[i][j] = sum of values of i on rows where j is present
+        // SS[i][j] = sum of squared values of i on rows where j is present
+        // P[i][j] = sum of products of values of i and j
+        Matrix N = MathMatrix.times(M, Mt);
+        Matrix S = MathMatrix.times(X, Mt);
+        Matrix SS = MathMatrix.times(XX, Mt);
+        Matrix P = MathMatrix.times(X, X.transposeView());
+
+        double[][] r = new double[p][p];
+        for (int i = 0; i < p; i++) {
+            for (int j = i + 1; j < p; j++) {
+                double n = N.get(i, j);
+                double value = Double.NaN;
+                if (n > 1) {
+                    double sx = S.get(i, j);
+                    double sy = S.get(j, i);
+                    double cov = P.get(i, j) - sx * sy / n;
+                    double vx = SS.get(i, j) - sx * sx / n;
+                    double vy = SS.get(j, i) - sy * sy / n;
+                    value = Math.max(-1, Math.min(1, cov / Math.sqrt(vx * vy)));
+                }
+                r[i][j] = value;
+                r[j][i] = value;
+            }
+        }
+        return r;
+    }
+
+    private static int rowCount(Var[] vars) {
+        int rows = 0;
+        for (Var var : vars) {
+            rows = Math.max(rows, var.rowCount());
+        }
+        return rows;
+    }
+}
@@ -21,8 +21,6 @@
 package rapaio.core.correlation;
 
 import rapaio.core.Printable;
-import rapaio.core.stat.Mean;
-import rapaio.core.stat.Variance;
 import rapaio.data.Frame;
 import rapaio.data.Var;
 import rapaio.printer.Printer;
@@ -32,9 +30,12 @@ import java.util.Arrays;
 import static rapaio.WS.getPrinter;
 
 /**
- * /**
  * Pearson product-moment correlation coefficient.
  * <p>
+ * The coefficients of all pairs of variables are computed at once, as a
+ * matrix product of the standardized variables. Missing values are handled
+ * by computing each coefficient on the pairwise-complete observations.
+ * <p>
  * See
  * http://en.wikipedia.org/wiki/Pearson_product-moment_correlation_coefficient
  * <p>
@@ -52,14 +53,7 @@ public class PearsonRCorrelation implements Printable {
         for (int i = 0; i < df.varCount(); i++) {
             vars[i] = df.var(i);
         }
-        this.pearson = new double[vars.length][vars.length];
-        for (int i = 0; i < vars.length; i++) {
-            pearson[i][i] = 1;
-            for (int j = i + 1; j < vars.length; j++) {
-                pearson[i][j] = compute(vars[i], vars[j]);
-                pearson[j][i] = pearson[i][j];
-            }
-        }
+        this.pearson = CorrelationMatrix.pearson(CorrelationMatrix.values(vars));
     }
 
     public PearsonRCorrelation(Var... vars) {
@@ -68,31 +62,7 @@ public class PearsonRCorrelation implements Printable {
             names[i] = "V" + i;
         }
         this.vars = vars;
-        this.pearson = new double[vars.length][vars.length];
-        for (int i = 0; i < vars.length; i++) {
-            pearson[i][i] = 1;
-            for (int j = i + 1; j < vars.length; j++) {
-                pearson[i][j] = compute(vars[i], vars[j]);
-                pearson[j][i] = pearson[i][j];
-            }
-        }
-    }
-
-    private double compute(Var x, Var y) {
-        double xMean = new Mean(x).value();
-        double yMean = new Mean(y).value();
-        double sum = 0;
-        int len = Math.min(x.rowCount(), y.rowCount());
-        double sdp = Math.sqrt(new Variance(x).value()) * Math.sqrt(new Variance(y).value());
-        double count = 0;
-        for (int i = 0; i < len; i++) {
-            if (x.missing(i) || y.missing(i)) {
-                continue;
-            }
-            sum += ((x.value(i) - xMean) * (y.value(i) - yMean));
-            count++;
-        }
-        return sum / (sdp * (count - 1));
+        this.pearson = CorrelationMatrix.pearson(CorrelationMatrix.values(vars));
     }
 
     public double[][] values() {
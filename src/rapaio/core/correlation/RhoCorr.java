@@ -21,8 +21,8 @@
 package rapaio.core.correlation;
 
 import rapaio.core.Printable;
-import rapaio.data.*;
-import rapaio.data.filter.var.VFRefSort;
+import rapaio.data.Frame;
+import rapaio.data.Var;
 import rapaio.printer.Printer;
 
 import java.util.Arrays;
@@ -33,6 +33,11 @@ import static rapaio.WS.getPrinter;
  * Spearman's rank correlation coefficient.
  * <p>
  * You can compute coefficient for multiple vectors at the same time.
+ * Ties receive their average rank. Variables without missing values are ranked
+ * once and the Pearson coefficients of the ranks are computed together, as for
+ * {@link PearsonRCorrelation}. Coefficients which involve variables with missing
+ * values are computed on the pairwise-complete observations, which are ranked
+ * again for each pair.
  * <p>
  * See: http://en.wikipedia.org/wiki/Spearman%27s_rank_correlation_coefficient
  * <p>
@@ -63,35 +68,7 @@ public class RhoCorr implements Printable {
     }
 
     private double[][] compute() {
-        Var[] sorted = new Var[vars.length];
-        Var[] ranks = new Var[vars.length];
-        for (int i = 0; i < sorted.length; i++) {
-            Index index = Index.newEmpty();
-            for (int j = 0; j < vars[i].rowCount(); j++) {
-                index.addIndex(j);
-            }
-            sorted[i] = new VFRefSort(RowComparators.numeric(vars[i], true)).fitApply(index);
-            ranks[i] = Numeric.newFill(vars[i].rowCount());
-        }
-
-        // compute ranks
-        for (int i = 0; i < sorted.length; i++) {
-            int start = 0;
-            while (start < sorted[i].rowCount()) {
-                int end = start;
-                while (end < sorted[i].rowCount() - 1 && sorted[i].value(end) == sorted[i].value(end + 1)) {
-                    end++;
-                }
-                double value = 1 + (start + end) / 2.;
-                for (int j = start; j <= end; j++) {
-                    ranks[i].setValue(sorted[i].index(j), value);
-                }
-                start = end + 1;
-            }
-        }
-
-        // compute Pearson on ranks
-        return new PearsonRCorrelation(ranks).values();
+        return CorrelationMatrix.spearman(vars);
     }
 
     public double[][] values() {
@@ -26,22 +26,45 @@ import rapaio.data.filter.var.VFSort;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.function.Function;
 import java.util.stream.IntStream;
 
 /**
+ * Kernel density estimator.
+ * <p>
+ * The density can be evaluated exactly, for one point or for many points at once.
+ * For many points, the points are sorted and the window of sample values within
+ * kernel support is moved along the sorted points, in parallel on blocks of points.
+ * <p>
+ * The density can also be approximated on a regular grid, using linear binning
+ * of the sample values on the grid and a discrete convolution with the kernel,
+ * computed with FFT. The cost depends on the sample size only through binning,
+ * which makes it suitable for large samples. Values between grid points are
+ * obtained through linear interpolation.
+ *
  * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
  */
 public class KDE implements Serializable {
 
+    /**
+     * Minimum number of sample values within kernel support for which
+     * a single point evaluation is computed in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 100_000;
+    private static final int SWEEP_BLOCK = 1024;
+    private static final int BINNING_BLOCK = 1 << 16;
+    /**
+     * Maximum cost of direct convolution, above which FFT is used.
+     */
+    private static final long DIRECT_CONVOLUTION_COST = 1 << 20;
+
     private final double[] values;
     private final KFunc kernel;
     private final double bandwidth;
 
     public KDE(Var values) {
-        this.values = values.stream().mapToDouble().toArray();
-        this.kernel = new KFuncGaussian();
-        this.bandwidth = getSilvermanBandwidth(values);
+        this(values, new KFuncGaussian(), getSilvermanBandwidth(values));
     }
 
     public KDE(Var values, double bandwidth) {
@@ -58,15 +81,258 @@ public class KDE implements Serializable {
         this.bandwidth = bandwidth;
     }
 
+    /**
+     * @return index of the first sample value greater or equal than x
+     */
+    private int lowerBound(double x) {
+        int pos = Arrays.binarySearch(values, x);
+        if (pos < 0) {
+            return -pos - 1;
+        }
+        while (pos > 0 && values[pos - 1] == x) {
+            pos--;
+        }
+        return pos;
+    }
+
     public double pdf(double x) {
-        int from = Arrays.binarySearch(values, kernel.getMinValue(x, bandwidth));
-        if (from < 0) from = -from - 1;
-        int to = Arrays.binarySearch(values, kernel.getMaxValue(x, bandwidth));
-        if (to < 0) to = -to - 1;
-        return IntStream.range(from, to)
-                .parallel()
-                .mapToDouble(i -> kernel.pdf(x, values[i], bandwidth))
-                .sum() / (values.length * bandwidth);
+        int from = lowerBound(kernel.getMinValue(x, bandwidth));
+        int to = lowerBound(kernel.getMaxValue(x, bandwidth));
+        if (to - from < PARALLEL_THRESHOLD) {
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += kernel.pdf(x, values[i], bandwidth);
+            }
+            return sum / (values.length * bandwidth);
+        }
+
+        // partial sums of blocks are added in block order, thus the result does not depend on threads
+        double[] partials = new double[(to - from + SWEEP_BLOCK - 1) / SWEEP_BLOCK];
+        IntStream.range(0, partials.length).parallel().forEach(b -> {
+            double sum = 0;
+            for (int i = from + b * SWEEP_BLOCK; i < Math.min(to, from + (b + 1) * SWEEP_BLOCK); i++) {
+                sum += kernel.pdf(x, values[i], bandwidth);
+            }
+            partials[b] = sum;
+        });
+        double sum = 0;
+        for (double partial : partials) {
+            sum += partial;
+        }
+        return sum / (values.length * bandwidth);
+    }
+
+    /**
+     * Computes exact density values for many points at once. Points are sorted and
+     * the window of sample values within kernel support is moved along them.
+     *
+     * @param x points where the density is evaluated
+     * @return density values, in the order of the given points
+     */
+    public double[] pdf(double[] x) {
+        int[] order = IntStream.range(0, x.length).boxed()
+                .sorted(Comparator.comparingDouble(i -> x[i]))
+                .mapToInt(i -> i)
+                .toArray();
+        double[] result = new double[x.length];
+        IntStream.range(0, (x.length + SWEEP_BLOCK - 1) / SWEEP_BLOCK).parallel().forEach(b -> {
+            int start = b * SWEEP_BLOCK;
+            int end = Math.min(x.length, start + SWEEP_BLOCK);
+            int from = lowerBound(kernel.getMinValue(x[order[start]], bandwidth));
+            int to = lowerBound(kernel.getMaxValue(x[order[start]], bandwidth));
+            for (int k = start; k < end; k++) {
+                double xk = x[order[k]];
+                double min = kernel.getMinValue(xk, bandwidth);
+                double max = kernel.getMaxValue(xk, bandwidth);
+                while (from < values.length && values[from] < min) {
+                    from++;
+                }
+                while (to < values.length && values[to] < max) {
+                    to++;
+                }
+                double sum = 0;
+                for (int i = from; i < to; i++) {
+                    sum += kernel.pdf(xk, values[i], bandwidth);
+                }
+                result[order[k]] = sum / (values.length * bandwidth);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Approximates density values on a regular grid. Sample values are linearly
+     * binned on the grid, extended on both sides with kernel support, and the bins
+     * are convolved with kernel values at grid offsets.
+     *
+     * @param min    first grid point
+     * @param max    last grid point
+     * @param points number of grid points, at least 2
+     * @return approximated density values at grid points
+     */
+    public double[] pdfGrid(double min, double max, int points) {
+        if (points < 2) {
+            throw new IllegalArgumentException("grid must have at least 2 points");
+        }
+        if (!(max > min)) {
+            throw new IllegalArgumentException("grid max value must be greater than min value");
+        }
+        double delta = (max - min) / (points - 1);
+        double support = Math.max(kernel.getMaxValue(0, bandwidth), -kernel.getMinValue(0, bandwidth));
+        int ext = (int) Math.ceil(support / delta);
+        int m = points + 2 * ext;
+
+        // linear binning, bin j is at min + (j - ext) * delta, partial bins of blocks
+        // are added in block order, thus the result does not depend on threads
+        double[][] partials = new double[(values.length + BINNING_BLOCK - 1) / BINNING_BLOCK][];
+        IntStream.range(0, partials.length).parallel().forEach(b -> {
+            double[] partial = new double[m];
+            for (int i = b * BINNING_BLOCK; i < Math.min(values.length, (b + 1) * BINNING_BLOCK); i++) {
+                double pos = (values[i] - min) / delta + ext;
+                if (pos < 0 || pos > m - 1) {
+                    continue;
+                }
+                int j = (int) pos;
+                double frac = pos - j;
+                partial[j] += 1 - frac;
+                if (frac > 0) {
+                    partial[j + 1] += frac;
+                }
+            }
+            partials[b] = partial;
+        });
+        double[] bins = new double[m];
+        for (double[] partial : partials) {
+            for (int i = 0; i < m; i++) {
+                bins[i] += partial[i];
+            }
+        }
+
+        // kernel values at offsets -ext .. ext
+        double[] taps = new double[2 * ext + 1];
+        for (int t = -ext; t <= ext; t++) {
+            taps[t + ext] = kernel.pdf(t * delta, 0, bandwidth);
+        }
+
+        double[] density = ((long) points * taps.length <= DIRECT_CONVOLUTION_COST)
+                ? convolveDirect(bins, taps, ext, points)
+                : convolveFFT(bins, taps, ext, points);
+        double norm = values.length * bandwidth;
+        for (int i = 0; i < points; i++) {
+            density[i] /= norm;
+        }
+        return density;
+    }
+
+    private static double[] convolveDirect(double[] bins, double[] taps, int ext, int points) {
+        double[] result = new double[points];
+        for (int i = 0; i < points; i++) {
+            double sum = 0;
+            for (int t = -ext; t <= ext; t++) {
+                sum += bins[i + ext - t] * taps[t + ext];
+            }
+            result[i] = sum;
+        }
+        return result;
+    }
+
+    private static double[] convolveFFT(double[] bins, double[] taps, int ext, int points) {
+        int size = Integer.highestOneBit(bins.length + 2 * ext) << 1;
+        double[] re1 = Arrays.copyOf(bins, size);
+        double[] im1 = new double[size];
+        double[] re2 = new double[size];
+        double[] im2 = new double[size];
+        // taps are placed circularly, offset t at position t mod size
+        for (int t = -ext; t <= ext; t++) {
+            re2[(t + size) % size] = taps[t + ext];
+        }
+        fft(re1, im1, false);
+        fft(re2, im2, false);
+        for (int i = 0; i < size; i++) {
+            double re = re1[i] * re2[i] - im1[i] * im2[i];
+            double im = re1[i] * im2[i] + im1[i] * re2[i];
+            re1[i] = re;
+            im1[i] = im;
+        }
+        fft(re1, im1, true);
+        double[] result = new double[points];
+        for (int i = 0; i < points; i++) {
+            result[i] = Math.max(0, re1[i + ext] / size);
+        }
+        return result;
+    }
+
+    /**
+     * In place iterative radix 2 Cooley-Tukey FFT; the inverse transform is not scaled.
+     */
+    private static void fft(double[] re, double[] im, boolean inverse) {
+        int n = re.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for (int len = 2; len <= n; len <<= 1) {
+            double angle = 2 * Math.PI / len * (inverse ? 1 : -1);
+            double wRe = Math.cos(angle);
+            double wIm = Math.sin(angle);
+            for (int i = 0; i < n; i += len) {
+                double curRe = 1;
+                double curIm = 0;
+                for (int j = 0; j < len / 2; j++) {
+                    int a = i + j;
+                    int b = i + j + len / 2;
+                    double uRe = re[a];
+                    double uIm = im[a];
+                    double vRe = re[b] * curRe - im[b] * curIm;
+                    double vIm = re[b] * curIm + im[b] * curRe;
+                    re[a] = uRe + vRe;
+                    im[a] = uIm + vIm;
+                    re[b] = uRe - vRe;
+                    im[b] = uIm - vIm;
+                    double nextRe = curRe * wRe - curIm * wIm;
+                    curIm = curRe * wIm + curIm * wRe;
+                    curRe = nextRe;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds an approximation of the density function, computed on a regular grid
+     * which covers the sample values and kernel support, with linear interpolation
+     * between grid points. Outside the grid the density is 0.
+     *
+     * @param points number of grid points
+     * @return approximated density function
+     */
+    public Function<Double, Double> getBinnedPdf(int points) {
+        if (values.length == 0) {
+            return x -> Double.NaN;
+        }
+        double min = kernel.getMinValue(values[0], bandwidth);
+        double max = kernel.getMaxValue(values[values.length - 1], bandwidth);
+        double[] grid = pdfGrid(min, max, points);
+        double delta = (max - min) / (points - 1);
+        return x -> {
+            double pos = (x - min) / delta;
+            if (!(pos >= 0) || pos > points - 1) {
+                return 0.0;
+            }
+            int j = Math.min((int) pos, points - 2);
+            double frac = pos - j;
+            return grid[j] * (1 - frac) + grid[j + 1] * frac;
+        };
     }
 
     public Function<Double, Double> getPdf() {
@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -44,9 +45,21 @@ public final class Sampling {
      * Nothing special, just using the uniform discrete sampler offered by the system.
      */
     public static int[] sampleWR(int sampleSize, final int populationSize) {
+        return sampleWR(sampleSize, populationSize, RandomSource.getRandom());
+    }
+
+    /**
+     * Discrete sampling with repetition, drawing from the given random stream.
+     *
+     * @param sampleSize     sample size
+     * @param populationSize population size
+     * @param random         random stream used to draw the sample
+     * @return sampling indexes
+     */
+    public static int[] sampleWR(int sampleSize, final int populationSize, Random random) {
         int[] sample = new int[sampleSize];
         for (int i = 0; i < sampleSize; i++) {
-            sample[i] = RandomSource.nextInt(populationSize);
+            sample[i] = random.nextInt(populationSize);
         }
         return sample;
     }
@@ -61,6 +74,19 @@ public final class Sampling {
      * @return sampling indexes
      */
     public static int[] sampleWOR(final int sampleSize, final int populationSize) {
+        return sampleWOR(sampleSize, populationSize, RandomSource.getRandom());
+    }
+
+    /**
+     * Draws an uniform discrete sample without replacement,
+     * drawing from the given random stream.
+     *
+     * @param sampleSize     sample size
+     * @param populationSize population size
+     * @param random         random stream used to draw the sample
+     * @return sampling indexes
+     */
+    public static int[] sampleWOR(final int sampleSize, final int populationSize, Random random) {
         if (sampleSize > populationSize) {
             throw new IllegalArgumentException("Can't draw a sample without replacement bigger than population size.");
         }
@@ -75,7 +101,7 @@ public final class Sampling {
             sample[i] = i;
         }
         for (int i = sampleSize; i < populationSize; i++) {
-            int j = RandomSource.nextInt(i + 1);
+            int j = random.nextInt(i + 1);
             if (j < sampleSize) {
                 sample[j] = i;
             }
@@ -83,8 +83,13 @@ public class OnlineStat {
         m4 += term1 * delta_n2 * (n * n - 3 * n + 3) + 6 * delta_n2 * m2 - 4 * delta_n * m3;
         m3 += term1 * delta_n * (n - 2) - 3 * delta_n * m2;
         m2 += term1;
-        min = Math.min(min, x);
-        max = Math.max(max, x);
+        if (n1 == 0) {
+            min = x;
+            max = x;
+        } else {
+            min = Math.min(min, x);
+            max = Math.max(max, x);
+        }
     }
 
     /**
@@ -122,7 +127,26 @@ public class OnlineStat {
         return n * m4 / (m2 * m2) - 3.0;
     }
 
+    /**
+     * Merges the statistics of another instance into this one, the result
+     * being the statistics of both sets of values.
+     *
+     * @param a statistics to be merged into this instance
+     */
     public void apply(OnlineStat a) {
+        if (a.n == 0) {
+            return;
+        }
+        if (n == 0) {
+            n = a.n;
+            m1 = a.m1;
+            m2 = a.m2;
+            m3 = a.m3;
+            m4 = a.m4;
+            min = a.min;
+            max = a.max;
+            return;
+        }
         OnlineStat combined = new OnlineStat();
         combined.n += a.n + this.n;
 
@@ -22,7 +22,6 @@ package rapaio.core.stat;
 
 import rapaio.core.Printable;
 import rapaio.data.Var;
-import rapaio.data.filter.var.VFSort;
 
 import java.util.stream.IntStream;
 
@@ -31,6 +30,7 @@ import java.util.stream.IntStream;
  * Estimates quantiles from a numerical {@link rapaio.data.Var} of values.
  * <p>
  * The estimated quantiles implements R-8, SciPy-(1/3,1/3) version of estimating quantiles.
+ * Order statistics are found by selection, see {@link Selection}.
  * <p>
  * For further reference see:
  * http://en.wikipedia.org/wiki/Quantile
@@ -60,35 +60,17 @@ public class Quantiles implements Printable {
             }
             return values;
         }
-        Var sorted = new VFSort().fitApply(var);
-        int start = 0;
-        while (sorted.missing(start)) {
-            start++;
-            if (start == sorted.rowCount()) {
-                break;
+        double[] values = new double[var.rowCount()];
+        int len = 0;
+        for (int i = 0; i < var.rowCount(); i++) {
+            if (!var.missing(i)) {
+                values[len++] = var.value(i);
             }
         }
-        double[] values = new double[percentiles.length];
-        if (start == sorted.rowCount()) {
-            return values;
-        }
-        for (int i = 0; i < percentiles.length; i++) {
-            int N = sorted.rowCount() - start;
-            double h = (N + 1. / 3.) * percentiles[i] + 1. / 3.;
-            int hfloor = (int) Math.floor(h);
-
-            if (percentiles[i] < (2. / 3.) / (N + 1. / 3.)) {
-                values[i] = sorted.value(start);
-                continue;
-            }
-            if (percentiles[i] >= (N - 1. / 3.) / (N + 1. / 3.)) {
-                values[i] = sorted.value(sorted.rowCount() - 1);
-                continue;
-            }
-            values[i] = sorted.value(start + hfloor - 1)
-                    + (h - hfloor) * (sorted.value(start + hfloor) - sorted.value(start + hfloor - 1));
+        if (len == 0) {
+            return new double[percentiles.length];
         }
-        return values;
+        return Selection.quantiles(values, 0, len, percentiles);
     }
 
     public double[] values() {
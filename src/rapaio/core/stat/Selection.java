@@ -0,0 +1,327 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.core.stat;
+
+import java.util.Arrays;
+
+/**
+ * Selection of order statistics and quantiles from arrays of values in linear
+ * expected time, without sorting all the values.
+ * <p>
+ * Selection is done by introselect: quickselect with median of three pivots and
+ * three way partitioning, which falls back to sorting the remaining range when
+ * too many partitions do not shrink it enough.
+ * <p>
+ * All methods work in place: the values from the given range are reordered.
+ * Values must not contain missing values (NaN).
+ * <p>
+ * User: <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public final class Selection {
+
+    private static final int INSERTION_THRESHOLD = 16;
+
+    private Selection() {
+    }
+
+    /**
+     * Selects the k-th smallest value (k zero based, relative to the whole array).
+     * After selection the values before k are not greater and the values after k
+     * are not smaller than the selected value.
+     *
+     * @param values values
+     * @param from   first position of the range, inclusive
+     * @param to     last position of the range, exclusive
+     * @param k      position of the value in sorted order, from &lt;= k &lt; to
+     * @return the k-th smallest value
+     */
+    public static double select(double[] values, int from, int to, int k) {
+        if (k < from || k >= to) {
+            throw new IllegalArgumentException("selected position must be in range");
+        }
+        int lo = from;
+        int hi = to - 1;
+        int depth = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+        while (hi > lo) {
+            if (hi - lo < INSERTION_THRESHOLD) {
+                insertionSort(values, lo, hi);
+                return values[k];
+            }
+            if (depth-- == 0) {
+                Arrays.sort(values, lo, hi + 1);
+                return values[k];
+            }
+
+            // median of three pivot, moved at the middle
+
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < values[lo]) swap(values, mid, lo);
+            if (values[hi] < values[lo]) swap(values, hi, lo);
+            if (values[hi] < values[mid]) swap(values, hi, mid);
+            double pivot = values[mid];
+
+            // three way partition: [lo,lt) less, [lt,gt] equal, (gt,hi] greater
+
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                if (values[i] < pivot) {
+                    swap(values, lt++, i++);
+                } else if (values[i] > pivot) {
+                    swap(values, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            if (k < lt) {
+                hi = lt - 1;
+            } else if (k > gt) {
+                lo = gt + 1;
+            } else {
+                return pivot;
+            }
+        }
+        return values[k];
+    }
+
+    /**
+     * Estimates a quantile from a range of values, with the same estimator as
+     * {@link Quantiles} (R-8, SciPy-(1/3,1/3)).
+     *
+     * @param values     values, reordered in place
+     * @param from       first position of the range, inclusive
+     * @param to         last position of the range, exclusive
+     * @param percentile percentile of the quantile, in [0, 1]
+     * @return estimated quantile, NaN for an empty range
+     */
+    public static double quantile(double[] values, int from, int to, double percentile) {
+        return quantiles(values, from, to, percentile)[0];
+    }
+
+    /**
+     * Estimates quantiles from a range of values, with the same estimator as
+     * {@link Quantiles} (R-8, SciPy-(1/3,1/3)). Each selection works only on the
+     * values not smaller than the previous selected value, percentiles being
+     * processed in increasing order.
+     *
+     * @param values      values, reordered in place
+     * @param from        first position of the range, inclusive
+     * @param to          last position of the range, exclusive
+     * @param percentiles percentiles of the quantiles, in [0, 1]
+     * @return estimated quantiles, in the order of given percentiles
+     */
+    public static double[] quantiles(double[] values, int from, int to, double... percentiles) {
+        double[] result = new double[percentiles.length];
+        int N = to - from;
+        if (N <= 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+
+        Integer[] order = new Integer[percentiles.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> Double.compare(percentiles[i], percentiles[j]));
+
+        int lo = from;
+        for (int pos : order) {
+            double p = percentiles[pos];
+            if (p < (2. / 3.) / (N + 1. / 3.)) {
+                result[pos] = min(values, from, to);
+                continue;
+            }
+            if (p >= (N - 1. / 3.) / (N + 1. / 3.)) {
+                result[pos] = max(values, from, to);
+                continue;
+            }
+            double h = (N + 1. / 3.) * p + 1. / 3.;
+            int hfloor = (int) Math.floor(h);
+            int k = from + hfloor - 1;
+            double low = select(values, lo, to, k);
+            double high = (k + 1 < to) ? min(values, k + 1, to) : low;
+            result[pos] = low + (h - hfloor) * (high - low);
+            lo = k;
+        }
+        return result;
+    }
+
+    /**
+     * Computes the weighted quantile of a range of values, which is the smallest
+     * value for which the total weight of the values not greater than it is
+     * at least the given fraction of the total weight. Values and weights are
+     * reordered together.
+     *
+     * @param values     values, reordered in place
+     * @param weights    weights of values, non negative, reordered in place
+     * @param from       first position of the range, inclusive
+     * @param to         last position of the range, exclusive
+     * @param percentile fraction of the total weight, in [0, 1]
+     * @return weighted quantile, NaN for an empty range
+     */
+    public static double weightedQuantile(double[] values, double[] weights, int from, int to, double percentile) {
+        if (to <= from) {
+            return Double.NaN;
+        }
+        double total = 0;
+        for (int i = from; i < to; i++) {
+            total += weights[i];
+        }
+        double target = percentile * total;
+
+        int lo = from;
+        int hi = to - 1;
+        int depth = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+        while (hi > lo) {
+            if (depth-- == 0 || hi - lo < INSERTION_THRESHOLD) {
+                sort(values, weights, lo, hi);
+                double sum = 0;
+                for (int i = lo; i < hi; i++) {
+                    sum += weights[i];
+                    if (sum >= target) {
+                        return values[i];
+                    }
+                }
+                return values[hi];
+            }
+
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < values[lo]) swap(values, weights, mid, lo);
+            if (values[hi] < values[lo]) swap(values, weights, hi, lo);
+            if (values[hi] < values[mid]) swap(values, weights, hi, mid);
+            double pivot = values[mid];
+
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            double wLess = 0;
+            double wEqual = 0;
+            while (i <= gt) {
+                if (values[i] < pivot) {
+                    wLess += weights[i];
+                    swap(values, weights, lt++, i++);
+                } else if (values[i] > pivot) {
+                    swap(values, weights, i, gt--);
+                } else {
+                    wEqual += weights[i];
+                    i++;
+                }
+            }
+            if (lt > lo && target <= wLess) {
+                hi = lt - 1;
+            } else if (target <= wLess + wEqual || gt == hi) {
+                return pivot;
+            } else {
+                target -= wLess + wEqual;
+                lo = gt + 1;
+            }
+        }
+        return values[lo];
+    }
+
+    /**
+     * Computes the weighted median, as the weighted quantile of 0.5.
+     *
+     * @see #weightedQuantile(double[], double[], int, int, double)
+     */
+    public static double weightedMedian(double[] values, double[] weights, int from, int to) {
+        return weightedQuantile(values, weights, from, to, 0.5);
+    }
+
+    private static double min(double[] values, int from, int to) {
+        double min = values[from];
+        for (int i = from + 1; i < to; i++) {
+            if (values[i] < min) {
+                min = values[i];
+            }
+        }
+        return min;
+    }
+
+    private static double max(double[] values, int from, int to) {
+        double max = values[from];
+        for (int i = from + 1; i < to; i++) {
+            if (values[i] > max) {
+                max = values[i];
+            }
+        }
+        return max;
+    }
+
+    private static void insertionSort(double[] values, int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            double v = values[i];
+            int j = i - 1;
+            while (j >= lo && values[j] > v) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = v;
+        }
+    }
+
+    private static void sort(double[] values, double[] weights, int lo, int hi) {
+        if (hi - lo < INSERTION_THRESHOLD) {
+            insertionSort(values, weights, lo, hi);
+            return;
+        }
+        Integer[] index = new Integer[hi - lo + 1];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = lo + i;
+        }
+        Arrays.sort(index, (i, j) -> Double.compare(values[i], values[j]));
+        double[] v = new double[index.length];
+        double[] w = new double[index.length];
+        for (int i = 0; i < index.length; i++) {
+            v[i] = values[index[i]];
+            w[i] = weights[index[i]];
+        }
+        System.arraycopy(v, 0, values, lo, v.length);
+        System.arraycopy(w, 0, weights, lo, w.length);
+    }
+
+    private static void insertionSort(double[] values, double[] weights, int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            double v = values[i];
+            double w = weights[i];
+            int j = i - 1;
+            while (j >= lo && values[j] > v) {
+                values[j + 1] = values[j];
+                weights[j + 1] = weights[j];
+                j--;
+            }
+            values[j + 1] = v;
+            weights[j + 1] = w;
+        }
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+    }
+
+    private static void swap(double[] values, double[] weights, int i, int j) {
+        swap(values, i, j);
+        swap(weights, i, j);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.core.stat;
+
+import rapaio.core.Printable;
+import rapaio.data.Var;
+import rapaio.printer.Printer;
+
+import java.util.stream.IntStream;
+
+/**
+ * Descriptive statistics of a {@link rapaio.data.Var} computed in a single pass.
+ * <p>
+ * The rows are split in blocks which are processed in parallel, each block
+ * producing an {@link OnlineStat} with count, mean, central moments, minimum and
+ * maximum, together with the number of missing values. Inside a block the mean
+ * is computed with the same compensated algorithm as {@link Mean}. The partial statistics
+ * are merged with {@link OnlineStat#apply(OnlineStat)}.
+ * <p>
+ * Optionally, quantiles are estimated in the same pass: the non missing values are
+ * copied while scanning and order statistics are found by {@link Selection},
+ * as in {@link Quantiles}.
+ * <p>
+ * Missing values are ignored.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class VarStat implements Printable {
+
+    private static final int BLOCK_SIZE = 16_384;
+
+    private final String varName;
+    private final OnlineStat stat;
+    private final int missing;
+    private final double[] percentiles;
+    private final double[] quantiles;
+
+    public VarStat(Var var) {
+        this(var, new double[0]);
+    }
+
+    /**
+     * Computes statistics and the quantiles for the given percentiles.
+     *
+     * @param var         variable with values
+     * @param percentiles percentiles of the quantiles to estimate, in [0, 1]
+     */
+    public VarStat(Var var, double... percentiles) {
+        this.varName = var.name();
+        this.percentiles = percentiles;
+
+        int rows = var.rowCount();
+        int blocks = (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        boolean copy = percentiles.length > 0;
+        double[] values = copy ? new double[rows] : null;
+        OnlineStat[] partials = new OnlineStat[blocks];
+        int[] counts = new int[blocks];
+
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int start = b * BLOCK_SIZE;
+            int end = Math.min(rows, start + BLOCK_SIZE);
+            // present values of the block are gathered at the start of its
+            // segment; the block fits in cache, so the moments are computed
+            // in two passes over the gathered values, as in Mean and Variance
+            double[] buffer = copy ? values : new double[end - start];
+            int offset = copy ? start : 0;
+            int len = 0;
+            for (int i = start; i < end; i++) {
+                if (!var.missing(i)) {
+                    buffer[offset + len++] = var.value(i);
+                }
+            }
+            partials[b] = blockStat(buffer, offset, len);
+            counts[b] = len;
+        });
+
+        // merge partials in block order, which keeps the result deterministic
+        OnlineStat total = new OnlineStat();
+        int len = 0;
+        for (int b = 0; b < blocks; b++) {
+            total.apply(partials[b]);
+            if (copy) {
+                System.arraycopy(values, b * BLOCK_SIZE, values, len, counts[b]);
+            }
+            len += counts[b];
+        }
+        this.stat = total;
+        this.missing = rows - len;
+
+        if (!copy) {
+            this.quantiles = new double[0];
+        } else if (len == 0) {
+            this.quantiles = IntStream.range(0, percentiles.length).mapToDouble(i -> Double.NaN).toArray();
+        } else {
+            this.quantiles = Selection.quantiles(values, 0, len, percentiles);
+        }
+    }
+
+    private static OnlineStat blockStat(double[] values, int offset, int len) {
+        OnlineStat stat = new OnlineStat();
+        if (len == 0) {
+            return stat;
+        }
+        double sum = 0;
+        double min = values[offset];
+        double max = values[offset];
+        for (int i = offset; i < offset + len; i++) {
+            double x = values[i];
+            sum += x;
+            min = Math.min(min, x);
+            max = Math.max(max, x);
+        }
+        double mean = sum / len;
+        double correction = 0;
+        for (int i = offset; i < offset + len; i++) {
+            correction += values[i] - mean;
+        }
+        mean += correction / len;
+
+        double m2 = 0;
+        double m3 = 0;
+        double m4 = 0;
+        for (int i = offset; i < offset + len; i++) {
+            double d = values[i] - mean;
+            double d2 = d * d;
+            m2 += d2;
+            m3 += d2 * d;
+            m4 += d2 * d2;
+        }
+        stat.n = len;
+        stat.m1 = mean;
+        stat.m2 = m2;
+        stat.m3 = m3;
+        stat.m4 = m4;
+        stat.min = min;
+        stat.max = max;
+        return stat;
+    }
+
+    /**
+     * @return number of non missing values
+     */
+    public int count() {
+        return (int) stat.n();
+    }
+
+    /**
+     * @return number of missing values
+     */
+    public int missing() {
+        return missing;
+    }
+
+    public double mean() {
+        return stat.n() == 0 ? Double.NaN : stat.mean();
+    }
+
+    public double variance() {
+        return stat.n() == 0 ? Double.NaN : stat.variance();
+    }
+
+    public double sd() {
+        return Math.sqrt(variance());
+    }
+
+    public double skewness() {
+        return stat.n() == 0 ? Double.NaN : stat.skewness();
+    }
+
+    public double kurtosis() {
+        return stat.n() == 0 ? Double.NaN : stat.kurtosis();
+    }
+
+    public double min() {
+        return stat.n() == 0 ? Double.NaN : stat.min();
+    }
+
+    public double max() {
+        return stat.n() == 0 ? Double.NaN : stat.max();
+    }
+
+    public double sum() {
+        return stat.n() * stat.mean();
+    }
+
+    /**
+     * @return estimated quantiles, in the order of the percentiles given at construction
+     */
+    public double[] quantiles() {
+        return quantiles;
+    }
+
+    /**
+     * @return merged online statistics of non missing values
+     */
+    public OnlineStat onlineStat() {
+        OnlineStat copy = new OnlineStat();
+        copy.apply(stat);
+        return copy;
+    }
+
+    @Override
+    public void buildSummary(StringBuilder sb) {
+        sb.append(String.format("> stat[%s]\n", varName));
+        sb.append(String.format("count: %d, missing: %d\n", count(), missing));
+        sb.append(String.format("mean: %s, sd: %s\n",
+                Printer.formatDecLong.format(mean()), Printer.formatDecLong.format(sd())));
+        sb.append(String.format("min: %s, max: %s\n",
+                Printer.formatDecLong.format(min()), Printer.formatDecLong.format(max())));
+        for (int i = 0; i < quantiles.length; i++) {
+            sb.append(String.format("quantile[%f] = %f\n", percentiles[i], quantiles[i]));
+        }
+    }
+}
@@ -20,6 +20,7 @@
 
 package rapaio.data.matrix;
 
+import java.util.stream.IntStream;
 
 /**
  * Cholesky Decomposition.
@@ -30,6 +31,10 @@ package rapaio.data.matrix;
  * If the rapaio.data.matrix is not symmetric or positive definite, the constructor returns
  * a partial decomposition and sets an internal flag that may be queried by the
  * isSPD() method.
+ * <p>
+ * The decomposition is computed on blocks of columns. Each diagonal block
+ * is factored, the block below it is solved and the lower triangle of the
+ * trailing matrix is updated with matrix multiplications.
  */
 
 public class CholeskyDecomposition implements java.io.Serializable {
@@ -37,12 +42,17 @@ public class CholeskyDecomposition implements java.io.Serializable {
     /*
      * ------------------------ Class variables ------------------------
      */
+    /**
+     * Number of columns factored in a block.
+     */
+    private static final int BLOCK_SIZE = 64;
+
     /**
      * Array for internal storage of decomposition.
      *
      * @serial internal array storage.
      */
-    private double[][] L;
+    private Matrix L;
 
     /**
      * Row and column dimension (square rapaio.data.matrix).
@@ -68,35 +78,101 @@ public class CholeskyDecomposition implements java.io.Serializable {
      *
      * @param Arg Square, symmetric rapaio.data.matrix.
      */
-//    public CholeskyDecomposition(Matrix Arg) {
-//
-//        // Initialize.
-//        double[][] A = Arg.getArray();
-//        n = Arg.getRows();
-//        L = new double[n][n];
-//        isspd = (Arg.getCols() == n);
-//        // Main loop.
-//        for (int j = 0; j < n; j++) {
-//            double[] Lrowj = L[j];
-//            double d = 0.0;
-//            for (int k = 0; k < j; k++) {
-//                double[] Lrowk = L[k];
-//                double s = 0.0;
-//                for (int i = 0; i < k; i++) {
-//                    s += Lrowk[i] * Lrowj[i];
-//                }
-//                Lrowj[k] = s = (A[j][k] - s) / L[k][k];
-//                d = d + s * s;
-//                isspd = isspd & (A[k][j] == A[j][k]);
-//            }
-//            d = A[j][j] - d;
-//            isspd = isspd & (d > 0.0);
-//            L[j][j] = Math.sqrt(Math.max(d, 0.0));
-//            for (int k = j + 1; k < n; k++) {
-//                L[j][k] = 0.0;
-//            }
-//        }
-//    }
+    public CholeskyDecomposition(Matrix Arg) {
+
+        // Initialize.
+        n = Arg.getRows();
+        isspd = (Arg.getCols() == n);
+        for (int j = 0; isspd && j < n; j++) {
+            for (int k = 0; k < j; k++) {
+                isspd = isspd & (Arg.get(k, j) == Arg.get(j, k));
+            }
+        }
+        L = new Matrix(n, n);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i && j < Arg.getCols(); j++) {
+                L.set(i, j, Arg.get(i, j));
+            }
+        }
+
+        // Main loop, on blocks of columns.
+        for (int j0 = 0; j0 < n; j0 += BLOCK_SIZE) {
+            int jb = Math.min(BLOCK_SIZE, n - j0);
+            factorDiagonal(j0, jb);
+            int rest = n - j0 - jb;
+            if (rest > 0) {
+                solvePanel(j0, jb);
+                updateTrailing(j0, jb);
+            }
+        }
+
+        // Trailing updates write also above diagonal.
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                L.set(i, j, 0.0);
+            }
+        }
+    }
+
+    /**
+     * Factors the diagonal block of columns j0 to j0+jb-1, already
+     * updated with previous blocks.
+     */
+    private void factorDiagonal(int j0, int jb) {
+        double[] l = L.values;
+        for (int j = j0; j < j0 + jb; j++) {
+            double d = 0.0;
+            for (int k = j0; k < j; k++) {
+                double s = 0.0;
+                for (int i = j0; i < k; i++) {
+                    s += l[k * n + i] * l[j * n + i];
+                }
+                l[j * n + k] = s = (l[j * n + k] - s) / l[k * n + k];
+                d = d + s * s;
+            }
+            d = l[j * n + j] - d;
+            isspd = isspd & (d > 0.0);
+            l[j * n + j] = Math.sqrt(Math.max(d, 0.0));
+        }
+    }
+
+    /**
+     * Solves L21 * L11' = A21 for the rows below the diagonal block.
+     */
+    private void solvePanel(int j0, int jb) {
+        double[] l = L.values;
+        IntStream.range(j0 + jb, n).parallel().forEach(i -> {
+            for (int k = j0; k < j0 + jb; k++) {
+                double s = 0.0;
+                for (int t = j0; t < k; t++) {
+                    s += l[i * n + t] * l[k * n + t];
+                }
+                l[i * n + k] = (l[i * n + k] - s) / l[k * n + k];
+            }
+        });
+    }
+
+    /**
+     * Symmetric rank jb update of the lower triangle of the trailing matrix,
+     * A22 -= L21 * L21'. The trailing matrix is updated on strips of rows, each
+     * strip only up to its diagonal, thus about half of the full product is
+     * computed. Diagonal blocks are computed whole, which writes a few values
+     * above the diagonal, cleared at the end.
+     */
+    private void updateTrailing(int j0, int jb) {
+        int start = j0 + jb;
+        int rest = n - start;
+        Matrix L21 = L.blockView(start, j0, rest, jb);
+        Matrix L21t = L21.transposeView();
+        for (int i0 = 0; i0 < rest; i0 += BLOCK_SIZE) {
+            int ib = Math.min(BLOCK_SIZE, rest - i0);
+            // rows i0..i0+ib-1, columns 0..i0+ib-1 of the trailing matrix
+            MatrixMultiply.multiplyAdd(-1,
+                    L21.blockView(i0, 0, ib, jb),
+                    L21t.blockView(0, 0, jb, i0 + ib),
+                    L.blockView(start + i0, start, ib, i0 + ib));
+        }
+    }
 
     /*
      * ------------------------ Temporary, experimental code.
@@ -153,50 +229,50 @@ public class CholeskyDecomposition implements java.io.Serializable {
      *
      * @return L
      */
-//    public Matrix getL() {
-//        return new Matrix(L, n, n);
-//    }
-
-//    /**
-//     * Solve A*X = B
-//     *
-//     * @param B A Matrix with as many getRowCount as A and any number of columns.
-//     * @return X so that L*L'*X = B
-//     * @throws IllegalArgumentException Matrix row dimensions must agree.
-//     * @throws RuntimeException         Matrix is not symmetric positive definite.
-//     */
-//    public Matrix solve(Matrix B) {
-//        if (B.getRows() != n) {
-//            throw new IllegalArgumentException("Matrix row dimensions must agree.");
-//        }
-//        if (!isspd) {
-//            throw new RuntimeException("Matrix is not symmetric positive definite.");
-//        }
-//
-//        // Copy right hand side.
-//        double[][] X = B.getArrayCopy();
-//        int nx = B.getCols();
-//
-//        // Solve L*Y = B;
-//        for (int k = 0; k < n; k++) {
-//            for (int j = 0; j < nx; j++) {
-//                for (int i = 0; i < k; i++) {
-//                    X[k][j] -= X[i][j] * L[k][i];
-//                }
-//                X[k][j] /= L[k][k];
-//            }
-//        }
-//
-//        // Solve L'*X = Y;
-//        for (int k = n - 1; k >= 0; k--) {
-//            for (int j = 0; j < nx; j++) {
-//                for (int i = k + 1; i < n; i++) {
-//                    X[k][j] -= X[i][j] * L[i][k];
-//                }
-//                X[k][j] /= L[k][k];
-//            }
-//        }
-//
-//        return new Matrix(X, n, nx);
-//    }
+    public Matrix getL() {
+        return L.copy();
+    }
+
+    /**
+     * Solve A*X = B
+     *
+     * @param B A Matrix with as many getRowCount as A and any number of columns.
+     * @return X so that L*L'*X = B
+     * @throws IllegalArgumentException Matrix row dimensions must agree.
+     * @throws RuntimeException         Matrix is not symmetric positive definite.
+     */
+    public Matrix solve(Matrix B) {
+        if (B.getRows() != n) {
+            throw new IllegalArgumentException("Matrix row dimensions must agree.");
+        }
+        if (!isspd) {
+            throw new RuntimeException("Matrix is not symmetric positive definite.");
+        }
+
+        // Copy right hand side.
+        double[][] X = B.getArrayCopy();
+        int nx = B.getCols();
+
+        // Solve L*Y = B;
+        for (int k = 0; k < n; k++) {
+            for (int j = 0; j < nx; j++) {
+                for (int i = 0; i < k; i++) {
+                    X[k][j] -= X[i][j] * L.get(k, i);
+                }
+                X[k][j] /= L.get(k, k);
+            }
+        }
+
+        // Solve L'*X = Y;
+        for (int k = n - 1; k >= 0; k--) {
+            for (int j = 0; j < nx; j++) {
+                for (int i = k + 1; i < n; i++) {
+                    X[k][j] -= X[i][j] * L.get(i, k);
+                }
+                X[k][j] /= L.get(k, k);
+            }
+        }
+
+        return new Matrix(X);
+    }
 }
@@ -31,6 +31,10 @@ package rapaio.data.matrix;
  * singular, so the constructor will never fail. The primary use of the LU
  * decomposition is in the solution of square systems of simultaneous linear
  * equations. This will fail if isNonsingular() returns false.
+ * <p>
+ * The decomposition is computed on blocks of columns. Each block is factored
+ * with partial pivoting, then the remaining rows of the block are solved and
+ * the trailing matrix is updated with a matrix multiplication.
  */
 
 public class LUDecomposition implements java.io.Serializable {
@@ -38,12 +42,17 @@ public class LUDecomposition implements java.io.Serializable {
     /*
      * ------------------------ Class variables ------------------------
      */
+    /**
+     * Number of columns factored in a block.
+     */
+    private static final int BLOCK_SIZE = 64;
+
     /**
      * Array for internal storage of decomposition.
      *
      * @serial internal array storage.
      */
-    private double[][] LU;
+    private Matrix LU;
 
     /**
      * Row and column dimensions, and pivot sign.
@@ -72,8 +81,8 @@ public class LUDecomposition implements java.io.Serializable {
      */
     public LUDecomposition(Matrix A) {
 
-        // Use a "left-looking", dot-product, Crout/Doolittle algorithm.
-        LU = A.getArrayCopy();
+        // Use a "right-looking", blocked algorithm.
+        LU = A.copy();
         m = A.getRows();
         n = A.getCols();
         piv = new int[m];
@@ -81,43 +90,45 @@ public class LUDecomposition implements java.io.Serializable {
             piv[i] = i;
         }
         pivsign = 1;
-        double[] LUrowi;
-        double[] LUcolj = new double[m];
-
-        // Outer loop.
-        for (int j = 0; j < n; j++) {
 
-            // Make a copy of the j-th column to localize references.
-            for (int i = 0; i < m; i++) {
-                LUcolj[i] = LU[i][j];
-            }
-
-            // Apply previous transformations.
-            for (int i = 0; i < m; i++) {
-                LUrowi = LU[i];
-
-                // Most of the time is spent in the following dot product.
-                int kmax = Math.min(i, j);
-                double s = 0.0;
-                for (int k = 0; k < kmax; k++) {
-                    s += LUrowi[k] * LUcolj[k];
+        int r = Math.min(m, n);
+        for (int j0 = 0; j0 < r; j0 += BLOCK_SIZE) {
+            int jb = Math.min(BLOCK_SIZE, r - j0);
+            factorPanel(j0, jb);
+            int rest = n - j0 - jb;
+            if (rest > 0) {
+                solveUpperPanel(j0, jb);
+                if (m - j0 - jb > 0) {
+                    // A22 -= L21 * U12
+                    MatrixMultiply.multiplyAdd(-1,
+                            LU.blockView(j0 + jb, j0, m - j0 - jb, jb),
+                            LU.blockView(j0, j0 + jb, jb, rest),
+                            LU.blockView(j0 + jb, j0 + jb, m - j0 - jb, rest));
                 }
-
-                LUrowi[j] = LUcolj[i] -= s;
             }
+        }
+    }
+
+    /**
+     * Factors columns j0 to j0+jb-1 with partial pivoting. Rows are
+     * exchanged on their whole length.
+     */
+    private void factorPanel(int j0, int jb) {
+        double[] lu = LU.values;
+        for (int j = j0; j < j0 + jb; j++) {
 
             // Find pivot and exchange if necessary.
             int p = j;
             for (int i = j + 1; i < m; i++) {
-                if (Math.abs(LUcolj[i]) > Math.abs(LUcolj[p])) {
+                if (Math.abs(lu[i * n + j]) > Math.abs(lu[p * n + j])) {
                     p = i;
                 }
             }
             if (p != j) {
                 for (int k = 0; k < n; k++) {
-                    double t = LU[p][k];
-                    LU[p][k] = LU[j][k];
-                    LU[j][k] = t;
+                    double t = lu[p * n + k];
+                    lu[p * n + k] = lu[j * n + k];
+                    lu[j * n + k] = t;
                 }
                 int k = piv[p];
                 piv[p] = piv[j];
@@ -125,10 +136,32 @@ public class LUDecomposition implements java.io.Serializable {
                 pivsign = -pivsign;
             }
 
-            // Compute multipliers.
-            if (j < m & LU[j][j] != 0.0) {
+            // Compute multipliers and eliminate in the columns of the panel.
+            double pivot = lu[j * n + j];
+            if (pivot != 0.0) {
                 for (int i = j + 1; i < m; i++) {
-                    LU[i][j] /= LU[j][j];
+                    double l = lu[i * n + j] /= pivot;
+                    for (int k = j + 1; k < j0 + jb; k++) {
+                        lu[i * n + k] -= l * lu[j * n + k];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves L11 * U12 = A12, where L11 is the unit lower triangular
+     * block of the panel and A12 is on the right of the panel.
+     */
+    private void solveUpperPanel(int j0, int jb) {
+        double[] lu = LU.values;
+        for (int k = j0; k < j0 + jb; k++) {
+            for (int i = k + 1; i < j0 + jb; i++) {
+                double l = lu[i * n + k];
+                if (l != 0.0) {
+                    for (int j = j0 + jb; j < n; j++) {
+                        lu[i * n + j] -= l * lu[k * n + j];
+                    }
                 }
             }
         }
@@ -173,7 +206,7 @@ public class LUDecomposition implements java.io.Serializable {
      */
     public boolean isNonsingular() {
         for (int j = 0; j < n; j++) {
-            if (LU[j][j] == 0) {
+            if (LU.get(j, j) == 0) {
                 return false;
             }
         }
@@ -190,7 +223,7 @@ public class LUDecomposition implements java.io.Serializable {
         for (int i = 0; i < m; i++) {
             for (int j = 0; j <= i && j < n; j++) {
                 if (i > j) {
-                    L.set(i, j, LU[i][j]);
+                    L.set(i, j, LU.get(i, j));
                 } else {
                     L.set(i, j, 1.0);
                 }
@@ -209,7 +242,7 @@ public class LUDecomposition implements java.io.Serializable {
         for (int i = 0; i < n; i++) {
             for (int j = i; j < n; j++) {
                 if (i <= j) {
-                    U.set(i, j, LU[i][j]);
+                    U.set(i, j, LU.get(i, j));
                 }
             }
         }
@@ -252,7 +285,7 @@ public class LUDecomposition implements java.io.Serializable {
         }
         double d = (double) pivsign;
         for (int j = 0; j < n; j++) {
-            d *= LU[j][j];
+            d *= LU.get(j, j);
         }
         return d;
     }
@@ -281,18 +314,18 @@ public class LUDecomposition implements java.io.Serializable {
         for (int k = 0; k < n; k++) {
             for (int i = k + 1; i < n; i++) {
                 for (int j = 0; j < nx; j++) {
-                    X.set(i, j, X.get(i, j) - X.get(k, j) * LU[i][k]);
+                    X.set(i, j, X.get(i, j) - X.get(k, j) * LU.get(i, k));
                 }
             }
         }
         // Solve U*X = Y;
         for (int k = n - 1; k >= 0; k--) {
             for (int j = 0; j < nx; j++) {
-                X.set(k, j, X.get(k, j) / LU[k][k]);
+                X.set(k, j, X.get(k, j) / LU.get(k, k));
             }
             for (int i = 0; i < k; i++) {
                 for (int j = 0; j < nx; j++) {
-                    X.set(i, j, X.get(i, j) - X.get(k, j) * LU[i][k]);
+                    X.set(i, j, X.get(i, j) - X.get(k, j) * LU.get(i, k));
                 }
             }
         }
@@ -22,6 +22,8 @@ package rapaio.data.matrix;
 
 import rapaio.core.RandomSource;
 
+import java.util.Arrays;
+
 /**
  * Matrix operations
  * <p>
@@ -47,30 +49,62 @@ public class MathMatrix {
                 throw new IllegalArgumentException("Added matrices must have same dimensions");
             }
         }
-        Matrix C = new Matrix(A[0].m, A[0].n);
-        for (int i = 0; i < C.m; i++) {
-            for (int j = 0; j < C.n; j++) {
-                double sum = 0.;
-                for (Matrix aA : A) {
-                    sum += aA.get(i, j);
-                }
-                C.set(i, j, sum);
-            }
+        Matrix C = A[0].copy();
+        for (int i = 1; i < A.length; i++) {
+            plusInPlace(C, A[i]);
         }
         return C;
     }
 
+    /**
+     * Adds B to A, A += B
+     *
+     * @return A
+     */
+    public static Matrix plusInPlace(Matrix A, Matrix B) {
+        checkMatrixDimensions(A, B);
+        if (A.isCompact() && B.isCompact()) {
+            double[] a = A.values;
+            double[] b = B.values;
+            for (int i = 0; i < a.length; i++) {
+                a[i] += b[i];
+            }
+            return A;
+        }
+        for (int i = 0; i < A.m; i++) {
+            for (int j = 0; j < A.n; j++) {
+                A.set(i, j, A.get(i, j) + B.get(i, j));
+            }
+        }
+        return A;
+    }
+
     public static Matrix minus(Matrix A, Matrix B) {
-        if (A.m != B.m || A.n != A.n) {
-            throw new IllegalArgumentException("Matrices must have the same dimensions");
+        checkMatrixDimensions(A, B);
+        return minusInPlace(A.copy(), B);
+    }
+
+    /**
+     * Subtracts B from A, A -= B
+     *
+     * @return A
+     */
+    public static Matrix minusInPlace(Matrix A, Matrix B) {
+        checkMatrixDimensions(A, B);
+        if (A.isCompact() && B.isCompact()) {
+            double[] a = A.values;
+            double[] b = B.values;
+            for (int i = 0; i < a.length; i++) {
+                a[i] -= b[i];
+            }
+            return A;
         }
-        Matrix C = new Matrix(A.m, A.n);
-        for (int i = 0; i < C.m; i++) {
-            for (int j = 0; j < C.n; j++) {
-                C.set(i, j, A.get(i, j) - B.get(i, j));
+        for (int i = 0; i < A.m; i++) {
+            for (int j = 0; j < A.n; j++) {
+                A.set(i, j, A.get(i, j) - B.get(i, j));
             }
         }
-        return C;
+        return A;
     }
 
     /**
@@ -79,13 +113,7 @@ public class MathMatrix {
      * @return -A
      */
     public Matrix uminus(Matrix A) {
-        Matrix C = new Matrix(A.m, A.n);
-        for (int i = 0; i < C.m; i++) {
-            for (int j = 0; j < C.n; j++) {
-                C.set(i, j, -A.get(i, j));
-            }
-        }
-        return C;
+        return times(A, -1);
     }
 
     /**
@@ -95,13 +123,7 @@ public class MathMatrix {
      * @return A^T transpose of A
      */
     public static Matrix t(Matrix A) {
-        Matrix X = new Matrix(A.n, A.m);
-        for (int i = 0; i < X.m; i++) {
-            for (int j = 0; j < X.n; j++) {
-                X.set(i, j, A.get(j, i));
-            }
-        }
-        return X;
+        return A.transposeView().copy();
     }
 
     /**
@@ -112,17 +134,35 @@ public class MathMatrix {
      * @return value*A
      */
     public static Matrix times(Matrix A, double value) {
-        Matrix C = new Matrix(A.m, A.n);
-        for (int i = 0; i < C.m; i++) {
-            for (int j = 0; j < C.n; j++) {
-                C.set(i, j, A.get(i, j) * value);
+        return timesInPlace(A.copy(), value);
+    }
+
+    /**
+     * Matrix scalar multiplication in place, A *= value
+     *
+     * @return A
+     */
+    public static Matrix timesInPlace(Matrix A, double value) {
+        if (A.isCompact()) {
+            double[] a = A.values;
+            for (int i = 0; i < a.length; i++) {
+                a[i] *= value;
             }
+            return A;
         }
-        return C;
+        for (int i = 0; i < A.m; i++) {
+            for (int j = 0; j < A.n; j++) {
+                A.set(i, j, A.get(i, j) * value);
+            }
+        }
+        return A;
     }
 
     /**
      * Matrix multiplication, A * B
+     * <p>
+     * Multiplication is cache blocked and large products
+     * are computed in parallel.
      *
      * @param A first matrix
      * @param B second matrix
@@ -134,19 +174,39 @@ public class MathMatrix {
             throw new IllegalArgumentException("Matrix inner dimensions must agree.");
         }
         Matrix C = new Matrix(A.m, B.n);
-        double[] BCol = new double[A.n];
-        for (int j = 0; j < B.n; j++) {
-            for (int k = 0; k < A.n; k++) {
-                BCol[k] = B.get(k, j);
-            }
-            for (int i = 0; i < A.m; i++) {
-                double s = 0;
-                for (int k = 0; k < A.n; k++) {
-                    s += A.get(i, k) * BCol[k];
+        MatrixMultiply.multiplyAdd(A, B, C);
+        return C;
+    }
+
+    /**
+     * Matrix multiplication into a given matrix, C = A * B
+     *
+     * @param C result matrix, which must not share values with A or B
+     * @return C
+     */
+    public static Matrix times(Matrix A, Matrix B, Matrix C) {
+        MatrixMultiply.checkOperands(A, B, C);
+        if (C.isCompact()) {
+            Arrays.fill(C.values, 0);
+        } else {
+            for (int i = 0; i < C.m; i++) {
+                for (int j = 0; j < C.n; j++) {
+                    C.set(i, j, 0);
                 }
-                C.set(i, j, s);
             }
         }
+        MatrixMultiply.multiplyAdd(A, B, C);
+        return C;
+    }
+
+    /**
+     * Matrix multiplication accumulated into a given matrix, C += A * B
+     *
+     * @param C result matrix, which must not share values with A or B
+     * @return C
+     */
+    public static Matrix timesPlus(Matrix A, Matrix B, Matrix C) {
+        MatrixMultiply.multiplyAdd(A, B, C);
         return C;
     }
 
@@ -317,7 +377,7 @@ public class MathMatrix {
         return solve(t(A), t(B));
     }
 
-    private void checkMatrixDimensions(Matrix A, Matrix B) {
+    private static void checkMatrixDimensions(Matrix A, Matrix B) {
         if (B.m != A.m || B.n != A.n) {
             throw new IllegalArgumentException("Matrix dimensions must agree.");
         }
@@ -23,39 +23,69 @@ package rapaio.data.matrix;
 import rapaio.data.Numeric;
 
 import java.io.PrintWriter;
+import java.io.Serializable;
 import java.text.NumberFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
+ * Dense matrix of double values.
+ * <p>
+ * Values are stored in a single array, in row-major order. An element is
+ * addressed through an offset and a stride for rows and one for columns,
+ * thus transposed matrices and blocks of a matrix can be views which share
+ * the array of values of the original matrix.
+ * <p>
  * User: Aurelian Tutuianu <padreati@yahoo.com>
  */
-public class Matrix {
+public class Matrix implements Serializable {
 
     final int m; // row count
     final int n; // col count
-    final List<Numeric> data; // matrices are stored as column vectors
+    final double[] values; // storage, shared with views
+    final int offset; // position of first element in values
+    final int rowStride; // distance in values between consecutive rows
+    final int colStride; // distance in values between consecutive columns
 
     public Matrix(int m, int n) {
+        this(m, n, new double[m * n]);
+    }
+
+    /**
+     * Builds a matrix which wraps the given values, in row-major order.
+     *
+     * @param m      row count
+     * @param n      col count
+     * @param values row-major values, of length m*n
+     */
+    public Matrix(int m, int n, double[] values) {
+        this(m, n, values, 0, n, 1);
+        if (values.length != m * n) {
+            throw new IllegalArgumentException("length of values does not match dimensions");
+        }
+    }
+
+    Matrix(int m, int n, double[] values, int offset, int rowStride, int colStride) {
         this.m = m;
         this.n = n;
-        data = new ArrayList<>(n);
-        for (int i = 0; i < n; i++) {
-            data.add(Numeric.newFill(m));
-        }
+        this.values = values;
+        this.offset = offset;
+        this.rowStride = rowStride;
+        this.colStride = colStride;
     }
 
     public Matrix(Numeric... vectors) {
-        m = vectors[0].rowCount();
-        n = vectors.length;
-        data = new ArrayList<>(Arrays.asList(vectors).subList(0, n));
+        this(Arrays.asList(vectors));
     }
 
     public Matrix(List<Numeric> vectors) {
-        m = vectors.get(0).rowCount();
-        n = vectors.size();
-        data = new ArrayList<>(vectors);
+        this(vectors.get(0).rowCount(), vectors.size());
+        for (int j = 0; j < n; j++) {
+            Numeric vector = vectors.get(j);
+            for (int i = 0; i < m; i++) {
+                values[i * n + j] = vector.value(i);
+            }
+        }
     }
 
     public Matrix(int step, double[] values) {
@@ -65,17 +95,10 @@ public class Matrix {
         if (m * n != len) {
             throw new IllegalArgumentException("step does not fit the length of values");
         }
-
-        data = new ArrayList<>();
-        for (int i = 0; i < n; i++) {
-            data.add(Numeric.newEmpty());
-        }
-        int pos = 0;
-        for (int i = 0; i < m; i++) {
-            for (int j = 0; j < n; j++) {
-                data.get(j).addValue(values[pos++]);
-            }
-        }
+        this.values = Arrays.copyOf(values, len);
+        this.offset = 0;
+        this.rowStride = n;
+        this.colStride = 1;
     }
 
     public Matrix(double[][] source) {
@@ -83,16 +106,9 @@ public class Matrix {
     }
 
     public Matrix(double[][] source, int mFirst, int mLast, int nFirst, int nLast) {
-        m = mLast - mFirst + 1;
-        n = nLast - nFirst + 1;
-        data = new ArrayList<>(n);
-        for (int i = 0; i < n; i++) {
-            data.add(Numeric.newFill(m));
-        }
+        this(mLast - mFirst + 1, nLast - nFirst + 1);
         for (int i = 0; i < m; i++) {
-            for (int j = 0; j < n; j++) {
-                set(i, j, source[i + mFirst][j + nFirst]);
-            }
+            System.arraycopy(source[i + mFirst], nFirst, values, i * n, n);
         }
     }
 
@@ -120,12 +136,46 @@ public class Matrix {
         return B;
     }
 
+    /**
+     * Builds a view of a block of this matrix. The view shares the values
+     * with this matrix, changes on one of them are visible in the other.
+     *
+     * @param i0   first row of the block
+     * @param j0   first column of the block
+     * @param rows row count of the block
+     * @param cols col count of the block
+     * @return view of A(i0:i0+rows-1, j0:j0+cols-1)
+     */
+    public Matrix blockView(int i0, int j0, int rows, int cols) {
+        if (i0 < 0 || j0 < 0 || rows < 0 || cols < 0 || i0 + rows > m || j0 + cols > n) {
+            throw new IllegalArgumentException("block is outside of matrix");
+        }
+        return new Matrix(rows, cols, values, offset + i0 * rowStride + j0 * colStride, rowStride, colStride);
+    }
+
+    /**
+     * Builds a view of the transpose of this matrix, which shares
+     * the values with this matrix.
+     *
+     * @return view of A^T
+     */
+    public Matrix transposeView() {
+        return new Matrix(n, m, values, offset, colStride, rowStride);
+    }
+
+    /**
+     * @return true if this matrix is not a view with gaps or a different order in values
+     */
+    public boolean isCompact() {
+        return offset == 0 && colStride == 1 && rowStride == n && values.length == m * n;
+    }
+
     public double get(int i, int j) {
-        return data.get(j).value(i);
+        return values[offset + i * rowStride + j * colStride];
     }
 
     public void set(int i, int j, double x) {
-        data.get(j).setValue(i, x);
+        values[offset + i * rowStride + j * colStride] = x;
     }
 
     public int getRows() {
@@ -151,6 +201,29 @@ public class Matrix {
         return C;
     }
 
+    /**
+     * @return copy of values in row-major order
+     */
+    public double[] getRowMajorCopy() {
+        if (isCompact()) {
+            return Arrays.copyOf(values, values.length);
+        }
+        double[] copy = new double[m * n];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                copy[i * n + j] = get(i, j);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return compact copy of this matrix
+     */
+    public Matrix copy() {
+        return new Matrix(m, n, getRowMajorCopy());
+    }
+
     public void print(NumberFormat format, int width) {
         print(new PrintWriter(System.out, true), format, width);
     }
@@ -177,7 +250,7 @@ public class Matrix {
         output.println();  // start on new line.
         for (int i = 0; i < m; i++) {
             for (int j = 0; j < n; j++) {
-                String s = format.format(data.get(j).value(i)); // format the number
+                String s = format.format(get(i, j)); // format the number
                 int padding = Math.max(1, width - s.length()); // At _least_ 1 space
                 for (int k = 0; k < padding; k++)
                     output.print(' ');
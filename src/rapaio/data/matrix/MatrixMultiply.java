@@ -0,0 +1,277 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.data.matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Cache blocked matrix multiplication, C += alpha * A * B.
+ * <p>
+ * The result is split recursively in blocks which are computed as fork/join
+ * tasks. Each task copies panels of A and B in contiguous buffers, sized to
+ * stay in cache, and multiplies them in tiles of 4x4 elements of C kept in
+ * local variables. Operands can be views with any strides.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+final class MatrixMultiply extends RecursiveAction {
+
+    // rows of a tile of C
+    private static final int MR = 4;
+    // cols of a tile of C
+    private static final int NR = 4;
+    // rows of a packed panel of A
+    private static final int MC = 64;
+    // depth of packed panels
+    private static final int KC = 256;
+    // cols of a packed panel of B
+    private static final int NC = 256;
+    // tasks with less multiplications are not split
+    private static final long TASK_WORK = 1L << 21;
+
+    /**
+     * Computes C += A * B.
+     */
+    static void multiplyAdd(Matrix A, Matrix B, Matrix C) {
+        checkOperands(A, B, C);
+        multiplyAdd(1, A, B, C);
+    }
+
+    /**
+     * Computes C += alpha * A * B, without checks. Operands can be views
+     * of the same values if they do not overlap with C.
+     */
+    static void multiplyAdd(double alpha, Matrix A, Matrix B, Matrix C) {
+        if (C.m == 0 || C.n == 0 || A.n == 0) {
+            return;
+        }
+        MatrixMultiply task = new MatrixMultiply(alpha, A, B, C, 0, C.m, 0, C.n);
+        if ((long) C.m * C.n * A.n <= TASK_WORK) {
+            task.compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+    }
+
+    static void checkOperands(Matrix A, Matrix B, Matrix C) {
+        if (A.n != B.m) {
+            throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+        }
+        if (C.m != A.m || C.n != B.n) {
+            throw new IllegalArgumentException("Result matrix dimensions must agree.");
+        }
+        if (C.values == A.values || C.values == B.values) {
+            throw new IllegalArgumentException("Result matrix must not share values with operands.");
+        }
+    }
+
+    private final double alpha;
+    private final Matrix A;
+    private final Matrix B;
+    private final Matrix C;
+    private final int i0;
+    private final int i1;
+    private final int j0;
+    private final int j1;
+
+    private MatrixMultiply(double alpha, Matrix A, Matrix B, Matrix C, int i0, int i1, int j0, int j1) {
+        this.alpha = alpha;
+        this.A = A;
+        this.B = B;
+        this.C = C;
+        this.i0 = i0;
+        this.i1 = i1;
+        this.j0 = j0;
+        this.j1 = j1;
+    }
+
+    @Override
+    protected void compute() {
+        int rows = i1 - i0;
+        int cols = j1 - j0;
+        if ((long) rows * cols * A.n > TASK_WORK && (rows > MC || cols > NC)) {
+            // split the larger side, at a multiple of tile size
+            if (rows >= cols) {
+                int mid = i0 + ((rows / 2 + MR - 1) / MR) * MR;
+                invokeAll(new MatrixMultiply(alpha, A, B, C, i0, mid, j0, j1), new MatrixMultiply(alpha, A, B, C, mid, i1, j0, j1));
+            } else {
+                int mid = j0 + ((cols / 2 + NR - 1) / NR) * NR;
+                invokeAll(new MatrixMultiply(alpha, A, B, C, i0, i1, j0, mid), new MatrixMultiply(alpha, A, B, C, i0, i1, mid, j1));
+            }
+            return;
+        }
+        multiplyBlock();
+    }
+
+    private void multiplyBlock() {
+        int k = A.n;
+        double[] aPack = new double[roundUp(Math.min(MC, i1 - i0), MR) * Math.min(KC, k)];
+        double[] bPack = new double[roundUp(Math.min(NC, j1 - j0), NR) * Math.min(KC, k)];
+        for (int kk = 0; kk < k; kk += KC) {
+            int kc = Math.min(KC, k - kk);
+            for (int jj = j0; jj < j1; jj += NC) {
+                int nc = Math.min(NC, j1 - jj);
+                packB(bPack, kk, kc, jj, nc);
+                for (int ii = i0; ii < i1; ii += MC) {
+                    int mc = Math.min(MC, i1 - ii);
+                    packA(aPack, ii, mc, kk, kc);
+                    multiplyPanels(aPack, bPack, ii, mc, jj, nc, kc);
+                }
+            }
+        }
+    }
+
+    private static int roundUp(int value, int multiple) {
+        return ((value + multiple - 1) / multiple) * multiple;
+    }
+
+    // panels of MR rows of A, for each k the MR values are consecutive, padded with zeros
+    private void packA(double[] aPack, int ii, int mc, int kk, int kc) {
+        double[] a = A.values;
+        int pos = 0;
+        for (int p = 0; p < mc; p += MR) {
+            for (int t = 0; t < kc; t++) {
+                int base = A.offset + (kk + t) * A.colStride;
+                for (int r = 0; r < MR; r++) {
+                    aPack[pos++] = (p + r < mc) ? a[base + (ii + p + r) * A.rowStride] : 0;
+                }
+            }
+        }
+    }
+
+    // panels of NR cols of B, for each k the NR values are consecutive, padded with zeros
+    private void packB(double[] bPack, int kk, int kc, int jj, int nc) {
+        double[] b = B.values;
+        int pos = 0;
+        for (int q = 0; q < nc; q += NR) {
+            for (int t = 0; t < kc; t++) {
+                int base = B.offset + (kk + t) * B.rowStride;
+                for (int c = 0; c < NR; c++) {
+                    bPack[pos++] = (q + c < nc) ? b[base + (jj + q + c) * B.colStride] : 0;
+                }
+            }
+        }
+    }
+
+    private void multiplyPanels(double[] aPack, double[] bPack, int ii, int mc, int jj, int nc, int kc) {
+        double[] c = C.values;
+        for (int q = 0; q < nc; q += NR) {
+            int bBase = q * kc;
+            for (int p = 0; p < mc; p += MR) {
+                int aBase = p * kc;
+
+                // 4x4 tile of C in local variables
+                double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+                double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+                double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+                double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+                int ap = aBase;
+                int bp = bBase;
+                for (int t = 0; t < kc; t++) {
+                    double a0 = aPack[ap];
+                    double a1 = aPack[ap + 1];
+                    double a2 = aPack[ap + 2];
+                    double a3 = aPack[ap + 3];
+                    double b0 = bPack[bp];
+                    double b1 = bPack[bp + 1];
+                    double b2 = bPack[bp + 2];
+                    double b3 = bPack[bp + 3];
+                    c00 += a0 * b0;
+                    c01 += a0 * b1;
+                    c02 += a0 * b2;
+                    c03 += a0 * b3;
+                    c10 += a1 * b0;
+                    c11 += a1 * b1;
+                    c12 += a1 * b2;
+                    c13 += a1 * b3;
+                    c20 += a2 * b0;
+                    c21 += a2 * b1;
+                    c22 += a2 * b2;
+                    c23 += a2 * b3;
+                    c30 += a3 * b0;
+                    c31 += a3 * b1;
+                    c32 += a3 * b2;
+                    c33 += a3 * b3;
+                    ap += MR;
+                    bp += NR;
+                }
+
+                if (alpha != 1) {
+                    c00 *= alpha;
+                    c01 *= alpha;
+                    c02 *= alpha;
+                    c03 *= alpha;
+                    c10 *= alpha;
+                    c11 *= alpha;
+                    c12 *= alpha;
+                    c13 *= alpha;
+                    c20 *= alpha;
+                    c21 *= alpha;
+                    c22 *= alpha;
+                    c23 *= alpha;
+                    c30 *= alpha;
+                    c31 *= alpha;
+                    c32 *= alpha;
+                    c33 *= alpha;
+                }
+
+                int rows = Math.min(MR, mc - p);
+                int cols = Math.min(NR, nc - q);
+                if (rows == MR && cols == NR) {
+                    int row = C.offset + (ii + p) * C.rowStride + (jj + q) * C.colStride;
+                    int cs = C.colStride;
+                    c[row] += c00;
+                    c[row + cs] += c01;
+                    c[row + 2 * cs] += c02;
+                    c[row + 3 * cs] += c03;
+                    row += C.rowStride;
+                    c[row] += c10;
+                    c[row + cs] += c11;
+                    c[row + 2 * cs] += c12;
+                    c[row + 3 * cs] += c13;
+                    row += C.rowStride;
+                    c[row] += c20;
+                    c[row + cs] += c21;
+                    c[row + 2 * cs] += c22;
+                    c[row + 3 * cs] += c23;
+                    row += C.rowStride;
+                    c[row] += c30;
+                    c[row + cs] += c31;
+                    c[row + 2 * cs] += c32;
+                    c[row + 3 * cs] += c33;
+                } else {
+                    double[] tile = new double[]{
+                            c00, c01, c02, c03,
+                            c10, c11, c12, c13,
+                            c20, c21, c22, c23,
+                            c30, c31, c32, c33};
+                    for (int r = 0; r < rows; r++) {
+                        int row = C.offset + (ii + p + r) * C.rowStride + (jj + q) * C.colStride;
+                        for (int s = 0; s < cols; s++) {
+                            c[row + s * C.colStride] += tile[r * NR + s];
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
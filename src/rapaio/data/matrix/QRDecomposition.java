@@ -33,48 +33,70 @@ package rapaio.data.matrix;
  * of simultaneous linear equations.  This will fail if isFullRank()
  * returns false.
  * <p>
+ * Householder reflections are computed on panels of columns. The reflections
+ * of a panel are accumulated in the compact form I - V*T*V' and applied to
+ * the trailing columns with matrix multiplications.
+ * <p>
  * User: Aurelian Tutuianu <padreati@yahoo.com>
  */
 public class QRDecomposition implements java.io.Serializable {
 
-    private double[][] QR;
+    private static final int BLOCK_SIZE = 32;
+
+    private Matrix QR;
     private int m, n;
     private double[] Rdiag;
 
     public QRDecomposition(Matrix A) {
         // Initialize.
-        QR = A.getArrayCopy();
+        QR = A.copy();
         m = A.getRows();
         n = A.getCols();
         Rdiag = new double[n];
 
-        // Main loop.
-        for (int k = 0; k < n; k++) {
+        // Main loop, on panels of columns.
+        for (int j0 = 0; j0 < n; j0 += BLOCK_SIZE) {
+            int jb = Math.min(BLOCK_SIZE, n - j0);
+            factorPanel(j0, jb);
+            int rest = n - j0 - jb;
+            if (rest > 0) {
+                applyPanel(j0, jb, rest);
+            }
+        }
+    }
+
+    /**
+     * Computes the Householder vectors of columns j0 to j0+jb-1, applying
+     * each reflection only to the columns of the panel.
+     */
+    private void factorPanel(int j0, int jb) {
+        double[] qr = QR.values;
+        for (int k = j0; k < j0 + jb; k++) {
             // Compute 2-norm of k-th column without under/overflow.
             double nrm = 0;
             for (int i = k; i < m; i++) {
-                nrm = StrictMath.hypot(nrm, QR[i][k]);
+                nrm = StrictMath.hypot(nrm, qr[i * n + k]);
             }
 
             if (nrm != 0.0) {
                 // Form k-th Householder var.
-                if (QR[k][k] < 0) {
+                if (qr[k * n + k] < 0) {
                     nrm = -nrm;
                 }
                 for (int i = k; i < m; i++) {
-                    QR[i][k] /= nrm;
+                    qr[i * n + k] /= nrm;
                 }
-                QR[k][k] += 1.0;
+                qr[k * n + k] += 1.0;
 
-                // Apply transformation to remaining columns.
-                for (int j = k + 1; j < n; j++) {
+                // Apply transformation to remaining columns of the panel.
+                for (int j = k + 1; j < j0 + jb; j++) {
                     double s = 0.0;
                     for (int i = k; i < m; i++) {
-                        s += QR[i][k] * QR[i][j];
+                        s += qr[i * n + k] * qr[i * n + j];
                     }
-                    s = -s / QR[k][k];
+                    s = -s / qr[k * n + k];
                     for (int i = k; i < m; i++) {
-                        QR[i][j] += s * QR[i][k];
+                        qr[i * n + j] += s * qr[i * n + k];
                     }
                 }
             }
@@ -82,6 +104,55 @@ public class QRDecomposition implements java.io.Serializable {
         }
     }
 
+    /**
+     * Applies the reflections of the panel to the trailing columns,
+     * as A2 = A2 - V*T'*(V'*A2).
+     */
+    private void applyPanel(int j0, int jb, int rest) {
+        int rows = m - j0;
+
+        // Householder vectors, with zeros above diagonal.
+        Matrix V = new Matrix(rows, jb);
+        for (int i = 0; i < rows; i++) {
+            for (int c = 0; c <= i && c < jb; c++) {
+                V.set(i, c, QR.get(j0 + i, j0 + c));
+            }
+        }
+
+        // Triangular factor, such that H1*H2*...*Hjb = I - V*T*V'.
+        Matrix T = new Matrix(jb, jb);
+        double[] w = new double[jb];
+        for (int c = 0; c < jb; c++) {
+            double vkk = V.get(c, c);
+            double tau = (vkk == 0.0) ? 0.0 : 1.0 / vkk;
+            if (tau == 0.0) {
+                continue;
+            }
+            for (int p = 0; p < c; p++) {
+                double s = 0.0;
+                for (int i = c; i < rows; i++) {
+                    s += V.get(i, p) * V.get(i, c);
+                }
+                w[p] = s;
+            }
+            for (int p = 0; p < c; p++) {
+                double s = 0.0;
+                for (int q = p; q < c; q++) {
+                    s += T.get(p, q) * w[q];
+                }
+                T.set(p, c, -tau * s);
+            }
+            T.set(c, c, tau);
+        }
+
+        Matrix A2 = QR.blockView(j0, j0 + jb, rows, rest);
+        Matrix W = new Matrix(jb, rest);
+        MatrixMultiply.multiplyAdd(1, V.transposeView(), A2, W);
+        Matrix TW = new Matrix(jb, rest);
+        MatrixMultiply.multiplyAdd(1, T.transposeView(), W, TW);
+        MatrixMultiply.multiplyAdd(-1, V, TW, A2);
+    }
+
 /* ------------------------
    Public Methods
  * ------------------------ */
@@ -111,7 +182,7 @@ public class QRDecomposition implements java.io.Serializable {
         for (int i = 0; i < m; i++) {
             for (int j = 0; j < n; j++) {
                 if (i >= j) {
-                    H.set(i, j, QR[i][j]);
+                    H.set(i, j, QR.get(i, j));
                 } else {
                     H.set(i, j, 0.0);
                 }
@@ -131,7 +202,7 @@ public class QRDecomposition implements java.io.Serializable {
         for (int i = 0; i < n; i++) {
             for (int j = 0; j < n; j++) {
                 if (i < j) {
-                    R.set(i, j, QR[i][j]);
+                    R.set(i, j, QR.get(i, j));
                 } else if (i == j) {
                     R.set(i, j, Rdiag[i]);
                 } else {
@@ -156,14 +227,14 @@ public class QRDecomposition implements java.io.Serializable {
             }
             Q.set(k, k, 1.0);
             for (int j = k; j < n; j++) {
-                if (QR[k][k] != 0) {
+                if (QR.get(k, k) != 0) {
                     double s = 0.0;
                     for (int i = k; i < m; i++) {
-                        s += QR[i][k] * Q.get(i, j);
+                        s += QR.get(i, k) * Q.get(i, j);
                     }
-                    s = -s / QR[k][k];
+                    s = -s / QR.get(k, k);
                     for (int i = k; i < m; i++) {
-                        Q.set(i, j, Q.get(i, j) + s * QR[i][k]);
+                        Q.set(i, j, Q.get(i, j) + s * QR.get(i, k));
                     }
                 }
             }
@@ -175,7 +246,7 @@ public class QRDecomposition implements java.io.Serializable {
         Matrix X = new Matrix(m, n);
         for (int i = 0; i < m; i++) {
             for (int j = 0; j < n; j++) {
-                X.set(i, j, QR[i][j]);
+                X.set(i, j, QR.get(i, j));
             }
         }
         return X;
@@ -207,11 +278,11 @@ public class QRDecomposition implements java.io.Serializable {
             for (int j = 0; j < nx; j++) {
                 double s = 0.0;
                 for (int i = k; i < m; i++) {
-                    s += QR[i][k] * X[i][j];
+                    s += QR.get(i, k) * X[i][j];
                 }
-                s = -s / QR[k][k];
+                s = -s / QR.get(k, k);
                 for (int i = k; i < m; i++) {
-                    X[i][j] += s * QR[i][k];
+                    X[i][j] += s * QR.get(i, k);
                 }
             }
         }
@@ -222,7 +293,7 @@ public class QRDecomposition implements java.io.Serializable {
             }
             for (int i = 0; i < k; i++) {
                 for (int j = 0; j < nx; j++) {
-                    X[i][j] -= X[k][j] * QR[i][k];
+                    X[i][j] -= X[k][j] * QR.get(i, k);
                 }
             }
         }
@@ -22,57 +22,644 @@ package rapaio.experiment.cluster.algorithm;
 
 import rapaio.core.RandomSource;
 import rapaio.data.Frame;
-import rapaio.experiment.cluster.distance.Distance;
-import rapaio.util.Pair;
+import rapaio.data.Nominal;
+import rapaio.data.SolidFrame;
+import rapaio.data.Var;
+import rapaio.data.VarRange;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
 
 /**
- * Created with IntelliJ IDEA.
- * User: tincu
- * Date: 2/4/14
- * Time: 12:53 PM
+ * K-means clustering with Euclidean distance.
+ * <p>
+ * The selected variables are copied once in a dense row major matrix and all
+ * the computation is done on that matrix. Initial centroids are chosen
+ * uniformly at random or with k-means++ seeding. Assignments are computed on
+ * blocks of rows in parallel, with one of the following methods:
+ * <ul>
+ * <li>Lloyd: distances to all centroids are computed in each iteration</li>
+ * <li>Hamerly: one upper and one lower bound for each row are used to skip
+ * distance computations; needs O(n) additional memory</li>
+ * <li>Elkan: one upper bound and one lower bound for each row and centroid,
+ * which skips most of distance computations; needs O(nk) additional memory</li>
+ * <li>MiniBatch: centroids are updated from random samples of rows, with a
+ * learning rate which decreases with the number of rows assigned to the
+ * centroid, as in Sculley's web scale k-means; the result is approximate</li>
+ * </ul>
+ * Lloyd, Hamerly and Elkan methods compute the same clustering, iterating
+ * until assignments do not change or the maximum number of iterations is reached.
+ * A centroid which loses all its rows is not moved.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
  */
-@Deprecated
 public class KMeans {
-    private int clusterNumber;
-    private Distance distance;
+
+    private static final int BLOCK_ROWS = 4096;
+
+    public enum Init {
+        RANDOM, PLUS_PLUS
+    }
+
+    public enum Method {
+        LLOYD, HAMERLY, ELKAN, MINI_BATCH
+    }
+
+    // parameters
+
+    private int k = 2;
+    private int maxIterations = 100;
+    private Init init = Init.PLUS_PLUS;
+    private Method method = Method.HAMERLY;
+    private int batchSize = 1024;
+    private Long seed = null;
+
+    // clustering artifacts
+
+    private String[] varNames;
+    private int n;
+    private int d;
+    private double[] x;
     private double[] centroids;
-    private double[] meanDistances;
-    private int maxIterations;
-    public static final int MAX_ITERATIONS = 100;
+    private int[] assignment;
+    private int iterations;
+    private double inertia;
+
+    public KMeans withK(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("number of clusters must be at least 1");
+        }
+        this.k = k;
+        return this;
+    }
 
-    public KMeans(int clusterNumber, Distance distance, int maxIterations) {
-        RandomSource.setSeed(1);
+    public KMeans withMaxIterations(int maxIterations) {
         this.maxIterations = maxIterations;
-        this.clusterNumber = clusterNumber;
-        this.distance = distance;
-        this.centroids = new double[clusterNumber];
-        this.meanDistances = new double[clusterNumber];
-        for (int i = 0; i < clusterNumber; i++) {
-            centroids[i] = RandomSource.nextDouble();
-            meanDistances[i] = Double.NaN;
+        return this;
+    }
+
+    public KMeans withInit(Init init) {
+        this.init = init;
+        return this;
+    }
+
+    public KMeans withMethod(Method method) {
+        this.method = method;
+        return this;
+    }
+
+    /**
+     * Number of rows sampled in each iteration of the mini batch method.
+     *
+     * @param batchSize number of sampled rows
+     * @return this instance
+     */
+    public KMeans withBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size must be at least 1");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Specifies the seed of the random stream used for initialization and
+     * sampling, thus clusterings computed with the same seed on the same data
+     * are identical.
+     *
+     * @param seed random seed, null if the seed is drawn from {@link RandomSource}
+     * @return this instance
+     */
+    public KMeans withSeed(Long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public void learn(Frame df, String varRange) {
+        List<String> names = new VarRange(varRange).parseVarNames(df);
+        for (String varName : names) {
+            if (!df.var(varName).type().isNumeric())
+                throw new IllegalArgumentException("all matched vars must be numeric: check var " + varName);
+        }
+        varNames = names.toArray(new String[names.size()]);
+        n = df.rowCount();
+        d = varNames.length;
+        if (n < k) {
+            throw new IllegalArgumentException("number of rows is lower than the number of clusters");
+        }
+        x = denseCopy(df, true);
+
+        Random random = RandomSource.newRandom(seed == null ? RandomSource.nextLong() : seed);
+        centroids = (init == Init.PLUS_PLUS) ? initPlusPlus(random) : initRandom(random);
+        assignment = new int[n];
+
+        switch (method) {
+            case LLOYD:
+                lloyd();
+                break;
+            case HAMERLY:
+                hamerly();
+                break;
+            case ELKAN:
+                elkan();
+                break;
+            default:
+                miniBatch(random);
+        }
+        inertia = blockSum(b -> {
+            double sum = 0;
+            for (int i = blockStart(b); i < blockEnd(b); i++) {
+                sum += dist2(x, i * d, centroids, assignment[i] * d);
+            }
+            return sum;
+        });
+        x = null;
+    }
+
+    private double[] denseCopy(Frame df, boolean strict) {
+        int rows = df.rowCount();
+        double[] values = new double[rows * d];
+        for (int j = 0; j < d; j++) {
+            Var var = df.var(varNames[j]);
+            for (int i = 0; i < rows; i++) {
+                if (strict && var.missing(i)) {
+                    throw new IllegalArgumentException("all matched vars must have non-missing values: check var " + varNames[j]);
+                }
+                values[i * d + j] = var.value(i);
+            }
+        }
+        return values;
+    }
+
+    private IntStream blocks() {
+        return IntStream.range(0, (n + BLOCK_ROWS - 1) / BLOCK_ROWS).parallel();
+    }
+
+    /**
+     * Computes a value for each block in parallel and sums the values in block
+     * order, thus the result does not depend on how the blocks are split between threads.
+     */
+    private double blockSum(IntToDoubleFunction blockValue) {
+        double[] partials = new double[(n + BLOCK_ROWS - 1) / BLOCK_ROWS];
+        blocks().forEach(b -> partials[b] = blockValue.applyAsDouble(b));
+        double sum = 0;
+        for (double partial : partials) {
+            sum += partial;
+        }
+        return sum;
+    }
+
+    private int blockStart(int b) {
+        return b * BLOCK_ROWS;
+    }
+
+    private int blockEnd(int b) {
+        return Math.min(n, (b + 1) * BLOCK_ROWS);
+    }
+
+    private double dist2(double[] a, int aOff, double[] b, int bOff) {
+        double sum = 0;
+        for (int j = 0; j < d; j++) {
+            double delta = a[aOff + j] - b[bOff + j];
+            sum += delta * delta;
+        }
+        return sum;
+    }
+
+    private double dist(double[] a, int aOff, double[] b, int bOff) {
+        return Math.sqrt(dist2(a, aOff, b, bOff));
+    }
+
+    // initialization
+
+    private double[] initRandom(Random random) {
+        double[] c = new double[k * d];
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++) {
+            rows[i] = i;
         }
+        // partial Fisher-Yates shuffle
+        for (int j = 0; j < k; j++) {
+            int pos = j + random.nextInt(n - j);
+            int tmp = rows[j];
+            rows[j] = rows[pos];
+            rows[pos] = tmp;
+            System.arraycopy(x, rows[j] * d, c, j * d, d);
+        }
+        return c;
     }
 
-    public KMeans(int clusterNumber, Distance distance) {
-        this(clusterNumber, distance, MAX_ITERATIONS);
+    /**
+     * k-means++ seeding: each new centroid is a row sampled with
+     * probability proportional to its squared distance to the closest
+     * centroid already chosen.
+     */
+    private double[] initPlusPlus(Random random) {
+        double[] c = new double[k * d];
+        double[] min = new double[n];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        int row = random.nextInt(n);
+        System.arraycopy(x, row * d, c, 0, d);
+        for (int j = 1; j < k; j++) {
+            int last = j - 1;
+            double total = blockSum(b -> {
+                double sum = 0;
+                for (int i = blockStart(b); i < blockEnd(b); i++) {
+                    min[i] = Math.min(min[i], dist2(x, i * d, c, last * d));
+                    sum += min[i];
+                }
+                return sum;
+            });
+            if (total == 0) {
+                // all rows are already centroids
+                row = random.nextInt(n);
+            } else {
+                double target = random.nextDouble() * total;
+                double sum = 0;
+                row = n - 1;
+                for (int i = 0; i < n; i++) {
+                    sum += min[i];
+                    if (sum > target) {
+                        row = i;
+                        break;
+                    }
+                }
+            }
+            System.arraycopy(x, row * d, c, j * d, d);
+        }
+        return c;
     }
 
-    public List<Pair<Integer, Integer>> learn(Frame frame) {
-        boolean isStable = false;
-        int iterations = 0;
-        while (!isStable || iterations < maxIterations) {
+    // centroid updates
+
+    /**
+     * Computes centroids as means of assigned rows, with sums computed on blocks
+     * in parallel. Centroids without rows are left unchanged.
+     *
+     * @return the distance each centroid moved
+     */
+    private double[] updateCentroids() {
+        double[][] partials = new double[(n + BLOCK_ROWS - 1) / BLOCK_ROWS][];
+        blocks().forEach(b -> {
+            double[] partial = new double[k * (d + 1)];
+            for (int i = blockStart(b); i < blockEnd(b); i++) {
+                int off = assignment[i] * (d + 1);
+                for (int j = 0; j < d; j++) {
+                    partial[off + j] += x[i * d + j];
+                }
+                partial[off + d]++;
+            }
+            partials[b] = partial;
+        });
+
+        // partial sums are added in block order, which keeps the result deterministic
+        double[] sums = new double[k * (d + 1)];
+        for (double[] partial : partials) {
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += partial[i];
+            }
+        }
+
+        double[] moved = new double[k];
+        double[] c = new double[d];
+        for (int j = 0; j < k; j++) {
+            double count = sums[j * (d + 1) + d];
+            if (count == 0) {
+                continue;
+            }
+            for (int t = 0; t < d; t++) {
+                c[t] = sums[j * (d + 1) + t] / count;
+            }
+            moved[j] = dist(c, 0, centroids, j * d);
+            System.arraycopy(c, 0, centroids, j * d, d);
+        }
+        return moved;
+    }
+
+    /**
+     * @return half of the distance from each centroid to the closest other centroid
+     */
+    private double[] halfClosest(double[] cc) {
+        double[] s = new double[k];
+        for (int j = 0; j < k; j++) {
+            double min = Double.POSITIVE_INFINITY;
+            for (int t = 0; t < k; t++) {
+                if (t != j) {
+                    min = Math.min(min, cc[j * k + t]);
+                }
+            }
+            s[j] = min / 2;
+        }
+        return s;
+    }
+
+    private double[] centroidDistances() {
+        double[] cc = new double[k * k];
+        for (int j = 0; j < k; j++) {
+            for (int t = j + 1; t < k; t++) {
+                cc[j * k + t] = cc[t * k + j] = dist(centroids, j * d, centroids, t * d);
+            }
+        }
+        return cc;
+    }
+
+    // Lloyd
+
+    private void lloyd() {
+        assignAll(null, null);
+        for (iterations = 0; iterations < maxIterations; iterations++) {
+            updateCentroids();
+            if (assignAll(null, null) == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Assigns each row to the closest centroid, optionally storing the
+     * distance to it and the distance to the second closest one.
+     *
+     * @return number of rows which changed their centroid
+     */
+    private int assignAll(double[] upper, double[] lower) {
+        return blocks().map(b -> {
+            int changed = 0;
+            for (int i = blockStart(b); i < blockEnd(b); i++) {
+                double best = Double.POSITIVE_INFINITY;
+                double second = Double.POSITIVE_INFINITY;
+                int bestIndex = 0;
+                for (int j = 0; j < k; j++) {
+                    double dd = dist2(x, i * d, centroids, j * d);
+                    if (dd < best) {
+                        second = best;
+                        best = dd;
+                        bestIndex = j;
+                    } else if (dd < second) {
+                        second = dd;
+                    }
+                }
+                if (assignment[i] != bestIndex) {
+                    assignment[i] = bestIndex;
+                    changed++;
+                }
+                if (upper != null) {
+                    upper[i] = Math.sqrt(best);
+                    lower[i] = Math.sqrt(second);
+                }
+            }
+            return changed;
+        }).sum();
+    }
+
+    // Hamerly
+
+    private void hamerly() {
+        double[] upper = new double[n];
+        double[] lower = new double[n];
+        assignAll(upper, lower);
+
+        for (iterations = 0; iterations < maxIterations; iterations++) {
+            double[] moved = updateCentroids();
+
+            // largest and second largest movements
+            int r = 0;
+            for (int j = 1; j < k; j++) {
+                if (moved[j] > moved[r]) {
+                    r = j;
+                }
+            }
+            double other = 0;
+            for (int j = 0; j < k; j++) {
+                if (j != r) {
+                    other = Math.max(other, moved[j]);
+                }
+            }
+            int largest = r;
+            double maxMoved = moved[r];
+            double secondMoved = other;
+            double[] s = halfClosest(centroidDistances());
+
+            int changed = blocks().map(b -> {
+                int count = 0;
+                for (int i = blockStart(b); i < blockEnd(b); i++) {
+                    int a = assignment[i];
+                    upper[i] += moved[a];
+                    lower[i] -= (a == largest) ? secondMoved : maxMoved;
 
+                    double m = Math.max(s[a], lower[i]);
+                    if (upper[i] <= m) {
+                        continue;
+                    }
+                    upper[i] = dist(x, i * d, centroids, a * d);
+                    if (upper[i] <= m) {
+                        continue;
+                    }
+                    double best = Double.POSITIVE_INFINITY;
+                    double second = Double.POSITIVE_INFINITY;
+                    int bestIndex = 0;
+                    for (int j = 0; j < k; j++) {
+                        double dd = dist(x, i * d, centroids, j * d);
+                        if (dd < best) {
+                            second = best;
+                            best = dd;
+                            bestIndex = j;
+                        } else if (dd < second) {
+                            second = dd;
+                        }
+                    }
+                    if (bestIndex != a) {
+                        assignment[i] = bestIndex;
+                        count++;
+                    }
+                    upper[i] = best;
+                    lower[i] = second;
+                }
+                return count;
+            }).sum();
+            if (changed == 0) {
+                break;
+            }
         }
-        return null;
     }
 
-    private void distributeValues(Frame frame) {
+    // Elkan
+
+    private void elkan() {
+        double[] upper = new double[n];
+        double[] lower = new double[n * k];
+        blocks().forEach(b -> {
+            for (int i = blockStart(b); i < blockEnd(b); i++) {
+                int bestIndex = 0;
+                for (int j = 0; j < k; j++) {
+                    lower[i * k + j] = dist(x, i * d, centroids, j * d);
+                    if (lower[i * k + j] < lower[i * k + bestIndex]) {
+                        bestIndex = j;
+                    }
+                }
+                assignment[i] = bestIndex;
+                upper[i] = lower[i * k + bestIndex];
+            }
+        });
+
+        for (iterations = 0; iterations < maxIterations; iterations++) {
+            double[] moved = updateCentroids();
+            double[] cc = centroidDistances();
+            double[] s = halfClosest(cc);
+
+            int changed = blocks().map(b -> {
+                int count = 0;
+                for (int i = blockStart(b); i < blockEnd(b); i++) {
+                    int a = assignment[i];
+                    for (int j = 0; j < k; j++) {
+                        lower[i * k + j] = Math.max(0, lower[i * k + j] - moved[j]);
+                    }
+                    upper[i] += moved[a];
+                    if (upper[i] <= s[a]) {
+                        continue;
+                    }
+                    boolean stale = true;
+                    for (int j = 0; j < k; j++) {
+                        if (j == a || upper[i] <= lower[i * k + j] || upper[i] <= cc[a * k + j] / 2) {
+                            continue;
+                        }
+                        if (stale) {
+                            upper[i] = dist(x, i * d, centroids, a * d);
+                            lower[i * k + a] = upper[i];
+                            stale = false;
+                            if (upper[i] <= lower[i * k + j] || upper[i] <= cc[a * k + j] / 2) {
+                                continue;
+                            }
+                        }
+                        double dd = dist(x, i * d, centroids, j * d);
+                        lower[i * k + j] = dd;
+                        if (dd < upper[i] || (dd == upper[i] && j < a)) {
+                            a = j;
+                            upper[i] = dd;
+                        }
+                    }
+                    if (a != assignment[i]) {
+                        assignment[i] = a;
+                        count++;
+                    }
+                }
+                return count;
+            }).sum();
+            if (changed == 0) {
+                break;
+            }
+        }
+    }
+
+    // mini batch
+
+    private void miniBatch(Random random) {
+        double[] counts = new double[k];
+        int size = Math.min(batchSize, n);
+        int[] rows = new int[size];
+        int[] closest = new int[size];
+        for (iterations = 0; iterations < maxIterations; iterations++) {
+            for (int i = 0; i < size; i++) {
+                rows[i] = random.nextInt(n);
+            }
+            IntStream.range(0, (size + BLOCK_ROWS - 1) / BLOCK_ROWS).parallel().forEach(b -> {
+                for (int i = b * BLOCK_ROWS; i < Math.min(size, (b + 1) * BLOCK_ROWS); i++) {
+                    closest[i] = nearest(x, rows[i] * d);
+                }
+            });
+            for (int i = 0; i < size; i++) {
+                int c = closest[i];
+                counts[c]++;
+                double eta = 1.0 / counts[c];
+                for (int j = 0; j < d; j++) {
+                    centroids[c * d + j] += eta * (x[rows[i] * d + j] - centroids[c * d + j]);
+                }
+            }
+        }
+        assignAll(null, null);
+    }
+
+    private int nearest(double[] values, int off) {
+        int bestIndex = 0;
+        double best = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < k; j++) {
+            double dd = dist2(values, off, centroids, j * d);
+            if (dd < best) {
+                best = dd;
+                bestIndex = j;
+            }
+        }
+        return bestIndex;
+    }
+
+    // results
+
+    /**
+     * Assigns the rows of a frame to the closest centroid.
+     *
+     * @param df frame which contains the clustered variables
+     * @return cluster index of each row
+     */
+    public int[] predict(Frame df) {
+        double[] values = denseCopy(df, false);
+        int[] clusters = new int[df.rowCount()];
+        IntStream.range(0, (df.rowCount() + BLOCK_ROWS - 1) / BLOCK_ROWS).parallel().forEach(b -> {
+            for (int i = b * BLOCK_ROWS; i < Math.min(df.rowCount(), (b + 1) * BLOCK_ROWS); i++) {
+                clusters[i] = nearest(values, i * d);
+            }
+        });
+        return clusters;
+    }
+
+    /**
+     * @return frame with one row for each centroid and one column for each clustered variable
+     */
+    public Frame getCentroids() {
+        Frame df = SolidFrame.newMatrix(k, varNames);
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j < d; j++) {
+                df.setValue(i, j, centroids[i * d + j]);
+            }
+        }
+        return df;
+    }
+
+    /**
+     * @return cluster index of each learned row
+     */
+    public int[] getAssignment() {
+        return Arrays.copyOf(assignment, assignment.length);
+    }
+
+    /**
+     * @return nominal variable with cluster labels c1, c2, ... for each learned row
+     */
+    public Var getClusterAssignment() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < k; i++) {
+            names.add("c" + (i + 1));
+        }
+        Var var = Nominal.newEmpty(assignment.length, names);
+        for (int i = 0; i < assignment.length; i++) {
+            var.setIndex(i, assignment[i] + 1);
+        }
+        return var;
+    }
 
+    /**
+     * @return number of iterations after the initial assignment
+     */
+    public int getIterations() {
+        return iterations;
     }
 
-    public int classify(Frame frame, int rowNumber) {
-        return 0;
+    /**
+     * @return sum of squared distances from rows to their centroids
+     */
+    public double getInertia() {
+        return inertia;
     }
 }
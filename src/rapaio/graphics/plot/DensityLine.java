@@ -69,26 +69,29 @@ public class DensityLine extends PlotComponent {
 
     @Override
     public Range buildRange() {
-        Pin<Double> xmin = new Pin<>(Double.NaN);
-        Pin<Double> xmax = new Pin<>(Double.NaN);
-        Pin<Double> ymin = new Pin<>(0.0);
-        Pin<Double> ymax = new Pin<>(Double.NaN);
+        Pin<Double> vmin = new Pin<>(Double.NaN);
+        Pin<Double> vmax = new Pin<>(Double.NaN);
 
         var.stream().filter(s -> !s.missing()).forEach(s -> {
-            double xMin = kde.getKernel().getMinValue(s.value(), bandwidth);
-            double xMax = kde.getKernel().getMaxValue(s.value(), bandwidth);
-            double yMax = kde.getPdf().apply(s.value());
-            xmin.set(Double.isNaN(xmin.get()) ? xMin : Math.min(xmin.get(), xMin));
-            xmax.set(Double.isNaN(xmax.get()) ? xMax : Math.max(xmax.get(), xMax));
-            ymax.set(Double.isNaN(ymax.get()) ? yMax : Math.max(ymax.get(), yMax));
+            vmin.set(Double.isNaN(vmin.get()) ? s.value() : Math.min(vmin.get(), s.value()));
+            vmax.set(Double.isNaN(vmax.get()) ? s.value() : Math.max(vmax.get(), s.value()));
         });
+        double xmin = kde.getKernel().getMinValue(vmin.get(), bandwidth);
+        double xmax = kde.getKernel().getMaxValue(vmax.get(), bandwidth);
+        double ymax = Double.NaN;
+        if (xmax > xmin) {
+            // density approximated on a grid, computed with a single pass over values
+            for (double y : kde.pdfGrid(xmin, xmax, points + 1)) {
+                ymax = Double.isNaN(ymax) ? y : Math.max(ymax, y);
+            }
+        }
         // give some space
-        ymax.set(ymax.get() * 1.05);
+        ymax = ymax * 1.05;
         Range range = new Range();
-        range.setX1(xmin.get());
-        range.setX2(xmax.get());
-        range.setY1(ymin.get());
-        range.setY2(ymax.get());
+        range.setX1(xmin);
+        range.setX2(xmax);
+        range.setY1(0.0);
+        range.setY2(ymax);
         return range;
     }
 
@@ -99,9 +102,10 @@ public class DensityLine extends PlotComponent {
         Var x = Numeric.newFill(points + 1, 0);
         Var y = Numeric.newFill(points + 1, 0);
         double xstep = (range.x2() - range.x1()) / points;
+        double[] density = kde.pdfGrid(range.x1(), range.x1() + points * xstep, points + 1);
         for (int i = 0; i < x.rowCount(); i++) {
             x.setValue(i, range.x1() + i * xstep);
-            y.setValue(i, kde.getPdf().apply(x.value(i)));
+            y.setValue(i, density[i]);
         }
 
         for (int i = 1; i < x.rowCount(); i++) {
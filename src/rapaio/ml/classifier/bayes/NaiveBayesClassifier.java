@@ -27,6 +27,7 @@ import rapaio.core.distributions.empirical.KFuncGaussian;
 import rapaio.core.stat.Mean;
 import rapaio.core.stat.Variance;
 import rapaio.data.Frame;
+import rapaio.data.Numeric;
 import rapaio.data.Var;
 import rapaio.data.VarRange;
 import rapaio.ml.classifier.AbstractClassifier;
@@ -35,15 +36,27 @@ import rapaio.ml.classifier.tools.DensityVector;
 import rapaio.ml.common.VarSelector;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
+ * Naive Bayes classifier, for numeric and nominal features.
+ * <p>
+ * Prediction uses a compiled form of the model: an array of log priors, one
+ * table of log conditional probabilities for each nominal feature, indexed by
+ * class and level index of the scored frame, and log densities of numeric
+ * features computed for blocks of rows at once. Blocks of rows are scored in
+ * parallel. The log scores are normalized into posterior probabilities.
+ *
  * @author <a href="mailto:padreati@yahoo.com>Aurelian Tutuianu</a>
  */
 public class NaiveBayesClassifier extends AbstractClassifier {
 
+    private static final int PREDICT_BLOCK_SIZE = 1024;
+
     // algorithm parameters
 
     private CvpEstimator cvpEstimator = new CvpEstimatorGaussianEmpiric();
@@ -52,6 +65,8 @@ public class NaiveBayesClassifier extends AbstractClassifier {
     // prediction artifacts
 
     private Map<String, Double> priors;
+    private double[] logPriors;
+    private NaiveBayesStats stats;
     private Map<String, CvpEstimator> cvpEstimatorMap;
     private Map<String, DvpEstimator> dvpEstimatorMap;
 
@@ -113,23 +128,20 @@ public class NaiveBayesClassifier extends AbstractClassifier {
             throw new IllegalArgumentException("NaiveBayes is able to predict only one target variable");
         }
         this.targetNames = new String[]{list.get(0)};
-        this.dict = new HashMap<>();
-        this.dict.put(firstTargetName(), df.var(firstTargetName()).dictionary());
 
-        // build priors
+        if (cvpEstimator.isMergeable() && dvpEstimator.isMergeable()) {
+            stats = NaiveBayesStats.newFrom(df, weights, firstTargetName());
+            learnFromStats();
+            return;
+        }
+        stats = null;
 
-        priors = new HashMap<>();
-        DensityVector dv = new DensityVector(dict.get(firstTargetName()));
-        df.stream().forEach(s -> dv.update(s.index(firstTargetName()), weights.value(s.row())));
+        // build priors
 
-        // laplace add-one smoothing
-        for (int i = 0; i < dict.get(firstTargetName()).length; i++) {
-            dv.update(i, 1.0);
-        }
-        dv.normalize(false);
-        for (int i = 1; i < dict.get(firstTargetName()).length; i++) {
-            priors.put(firstDictionary()[i], dv.get(i));
-        }
+        String[] classLabels = df.var(firstTargetName()).dictionary();
+        double[] classWeights = new double[classLabels.length];
+        df.stream().forEach(s -> classWeights[s.index(firstTargetName())] += weights.value(s.row()));
+        buildPriors(classLabels, classWeights);
 
         // build conditional probabilities
 
@@ -155,32 +167,183 @@ public class NaiveBayesClassifier extends AbstractClassifier {
         }
     }
 
+    /**
+     * Updates the model with new rows, without learning again on previous data.
+     * Available only when both estimators are mergeable.
+     *
+     * @param df new rows, with the same target variable
+     */
+    public void learnFurther(Frame df) {
+        learnFurther(df, Numeric.newFill(df.rowCount(), 1.0));
+    }
+
+    /**
+     * Updates the model with new weighted rows, without learning again on previous data.
+     * Available only when both estimators are mergeable.
+     *
+     * @param df      new rows, with the same target variable
+     * @param weights weights of new rows
+     */
+    public void learnFurther(Frame df, Var weights) {
+        if (stats == null) {
+            throw new IllegalStateException("NaiveBayes can learn further only after learning with mergeable estimators");
+        }
+        learnFurther(NaiveBayesStats.newFrom(df, weights, firstTargetName()));
+    }
+
+    /**
+     * Updates the model with statistics built on other rows, for example
+     * on another partition of the data.
+     *
+     * @param other statistics built on other rows, with the same target variable
+     */
+    public void learnFurther(NaiveBayesStats other) {
+        if (stats == null) {
+            throw new IllegalStateException("NaiveBayes can learn further only after learning with mergeable estimators");
+        }
+        stats.merge(other);
+        learnFromStats();
+    }
+
+    /**
+     * @return statistics the model was built from, null if estimators are not mergeable
+     */
+    public NaiveBayesStats getStats() {
+        return stats;
+    }
+
+    private void learnFromStats() {
+        buildPriors(stats.getClassLabels(), stats.getClassWeights());
+
+        cvpEstimatorMap = new HashMap<>();
+        for (String testCol : stats.getNumericVarNames()) {
+            CvpEstimator estimator = cvpEstimator.newInstance();
+            estimator.learn(stats, testCol);
+            cvpEstimatorMap.put(testCol, estimator);
+        }
+        dvpEstimatorMap = new HashMap<>();
+        for (String testCol : stats.getNominalVarNames()) {
+            DvpEstimator estimator = dvpEstimator.newInstance();
+            estimator.learn(stats, testCol);
+            dvpEstimatorMap.put(testCol, estimator);
+        }
+    }
+
+    private void buildPriors(String[] classLabels, double[] classWeights) {
+        this.dict = new HashMap<>();
+        this.dict.put(firstTargetName(), classLabels);
+
+        priors = new HashMap<>();
+        DensityVector dv = new DensityVector(classLabels);
+        for (int i = 0; i < classLabels.length; i++) {
+            dv.update(i, classWeights[i]);
+        }
+
+        // laplace add-one smoothing
+        for (int i = 0; i < classLabels.length; i++) {
+            dv.update(i, 1.0);
+        }
+        dv.normalize(false);
+        logPriors = new double[classLabels.length];
+        for (int i = 1; i < classLabels.length; i++) {
+            priors.put(classLabels[i], dv.get(i));
+            logPriors[i] = Math.log(dv.get(i));
+        }
+    }
+
     @Override
     public CResult predict(Frame df, final boolean withClasses, final boolean withDensities) {
 
         CResult pred = CResult.newEmpty(this, df, withClasses, withDensities);
         pred.addTarget(firstTargetName(), firstDictionary());
 
-        for (int i = 0; i < df.rowCount(); i++) {
-            DensityVector dv = new DensityVector(dict.get(firstTargetName()));
-            for (int j = 1; j < firstDictionary().length; j++) {
-                double sumLog = Math.log(priors.get(dict.get(firstTargetName())[j]));
-                for (String testCol : cvpEstimatorMap.keySet()) {
-                    if (df.missing(i, testCol)) continue;
-                    sumLog += cvpEstimatorMap.get(testCol).cpValue(df.value(i, testCol), dict.get(firstTargetName())[j]);
+        // compile features, in the order of estimator maps
+
+        String[] classLabels = firstDictionary();
+        int k = classLabels.length;
+
+        Var[] numVars = cvpEstimatorMap.keySet().stream().map(df::var).toArray(Var[]::new);
+        CvpEstimator[] numEstimators = cvpEstimatorMap.values().toArray(new CvpEstimator[cvpEstimatorMap.size()]);
+
+        Var[] nomVars = dvpEstimatorMap.keySet().stream().map(df::var).toArray(Var[]::new);
+        DvpEstimator[] nomEstimators = dvpEstimatorMap.values().toArray(new DvpEstimator[dvpEstimatorMap.size()]);
+        double[][][] nomTables = new double[nomVars.length][k][];
+        for (int f = 0; f < nomVars.length; f++) {
+            String[] levels = nomVars[f].dictionary();
+            for (int j = 1; j < k; j++) {
+                double[] cp = nomEstimators[f].cpValues(levels, classLabels[j]);
+                nomTables[f][j] = new double[cp.length];
+                for (int l = 0; l < cp.length; l++) {
+                    nomTables[f][j][l] = Math.log(cp[l]);
+                }
+            }
+        }
+
+        // scores are computed on independent blocks of rows, concurrently
+
+        int n = df.rowCount();
+        double[] scores = new double[n * k];
+        int blocks = (n + PREDICT_BLOCK_SIZE - 1) / PREDICT_BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int start = b * PREDICT_BLOCK_SIZE;
+            int len = Math.min(n, start + PREDICT_BLOCK_SIZE) - start;
+
+            double[][] sum = new double[k][len];
+            for (int j = 1; j < k; j++) {
+                for (int r = 0; r < len; r++) {
+                    sum[j][r] = logPriors[j];
                 }
-                for (String testCol : dvpEstimatorMap.keySet()) {
-                    if (df.missing(i, testCol)) continue;
-                    sumLog += dvpEstimatorMap.get(testCol).cpValue(df.label(i, testCol), dict.get(firstTargetName())[j]);
+            }
+            double[] values = new double[len];
+            double[] cp = new double[len];
+            boolean[] missing = new boolean[len];
+            for (int f = 0; f < numVars.length; f++) {
+                for (int r = 0; r < len; r++) {
+                    missing[r] = numVars[f].missing(start + r);
+                    values[r] = numVars[f].value(start + r);
+                }
+                for (int j = 1; j < k; j++) {
+                    numEstimators[f].logCpValues(values, len, classLabels[j], cp);
+                    for (int r = 0; r < len; r++) {
+                        if (!missing[r]) {
+                            sum[j][r] += cp[r];
+                        }
+                    }
+                }
+            }
+            for (int f = 0; f < nomVars.length; f++) {
+                for (int r = 0; r < len; r++) {
+                    if (nomVars[f].missing(start + r)) continue;
+                    int level = nomVars[f].index(start + r);
+                    for (int j = 1; j < k; j++) {
+                        sum[j][r] += nomTables[f][j][level];
+                    }
                 }
-                dv.update(j, sumLog);
             }
+            for (int r = 0; r < len; r++) {
+                for (int j = 1; j < k; j++) {
+                    scores[(start + r) * k + j] = sum[j][r];
+                }
+            }
+        });
+
+        for (int i = 0; i < n; i++) {
+            // posterior from log scores, shifted by the maximum to avoid underflow
+            double max = Double.NEGATIVE_INFINITY;
+            for (int j = 1; j < k; j++) {
+                max = Math.max(max, scores[i * k + j]);
+            }
+            DensityVector dv = new DensityVector(classLabels);
+            for (int j = 1; j < k; j++) {
+                dv.update(j, (max == Double.NEGATIVE_INFINITY) ? 1 : Math.exp(scores[i * k + j] - max));
+            }
+            dv.normalize(false);
 
             if (withClasses) {
                 pred.firstClasses().setIndex(i, dv.findBestIndex());
             }
             if (withDensities) {
-                for (int j = 0; j < firstDictionary().length; j++) {
+                for (int j = 0; j < k; j++) {
                     pred.firstDensity().setValue(i, j, dv.get(j));
                 }
             }
@@ -200,8 +363,34 @@ public class NaiveBayesClassifier extends AbstractClassifier {
         default void learn(Frame df, String targetCol, String testCol) {
         }
 
+        /**
+         * @return true if the estimator can be learned from {@link NaiveBayesStats}
+         */
+        default boolean isMergeable() {
+            return false;
+        }
+
+        default void learn(NaiveBayesStats stats, String testCol) {
+            throw new UnsupportedOperationException("Estimator " + name() + " cannot learn from statistics");
+        }
+
         double cpValue(String testLabel, String classLabel);
 
+        /**
+         * Computes conditional values for all levels of a nominal variable.
+         *
+         * @param testLabels dictionary of the tested variable
+         * @param classLabel class label
+         * @return conditional values indexed by level index
+         */
+        default double[] cpValues(String[] testLabels, String classLabel) {
+            double[] values = new double[testLabels.length];
+            for (int i = 0; i < testLabels.length; i++) {
+                values[i] = cpValue(testLabels[i], classLabel);
+            }
+            return values;
+        }
+
         DvpEstimator newInstance();
     }
 
@@ -211,8 +400,48 @@ public class NaiveBayesClassifier extends AbstractClassifier {
 
         void learn(Frame df, String targetCol, String testCol);
 
+        /**
+         * @return true if the estimator can be learned from {@link NaiveBayesStats}
+         */
+        default boolean isMergeable() {
+            return false;
+        }
+
+        default void learn(NaiveBayesStats stats, String testCol) {
+            throw new UnsupportedOperationException("Estimator " + name() + " cannot learn from statistics");
+        }
+
         double cpValue(double testValue, String classLabel);
 
+        /**
+         * Computes conditional values for a block of values.
+         *
+         * @param testValues values of the tested variable
+         * @param len        number of values to be used
+         * @param classLabel class label
+         * @param result     array where conditional values are stored
+         */
+        default void cpValues(double[] testValues, int len, String classLabel, double[] result) {
+            for (int i = 0; i < len; i++) {
+                result[i] = cpValue(testValues[i], classLabel);
+            }
+        }
+
+        /**
+         * Computes logarithms of conditional values for a block of values.
+         *
+         * @param testValues values of the tested variable
+         * @param len        number of values to be used
+         * @param classLabel class label
+         * @param result     array where log conditional values are stored
+         */
+        default void logCpValues(double[] testValues, int len, String classLabel, double[] result) {
+            cpValues(testValues, len, classLabel, result);
+            for (int i = 0; i < len; i++) {
+                result[i] = Math.log(result[i]);
+            }
+        }
+
         CvpEstimator newInstance();
     }
 
@@ -240,11 +469,56 @@ public class NaiveBayesClassifier extends AbstractClassifier {
             }
         }
 
+        @Override
+        public boolean isMergeable() {
+            return true;
+        }
+
+        @Override
+        public void learn(NaiveBayesStats stats, String testCol) {
+            String[] dict = stats.getClassLabels();
+            normals.clear();
+
+            for (int i = 0; i < dict.length; i++) {
+                if ("?".equals(dict[i])) continue;
+                double mu = stats.getMean(testCol, i);
+                double sd = Math.sqrt(stats.getVariance(testCol, i));
+                normals.put(dict[i], new Normal(mu, sd));
+            }
+        }
+
         @Override
         public double cpValue(double testValue, String classLabel) {
             return normals.get(classLabel).pdf(testValue);
         }
 
+        @Override
+        public void cpValues(double[] testValues, int len, String classLabel, double[] result) {
+            // same computation as Normal.pdf, with constants computed once
+            Normal normal = normals.get(classLabel);
+            double mu = normal.getMu();
+            double var = normal.getVar();
+            double c = 1 / Math.sqrt(2 * Math.PI * var);
+            for (int i = 0; i < len; i++) {
+                double d = testValues[i] - mu;
+                result[i] = c * Math.exp(-d * d / (2 * var));
+            }
+        }
+
+        @Override
+        public void logCpValues(double[] testValues, int len, String classLabel, double[] result) {
+            // Gaussian log density, -log(2 pi var) / 2 - (x - mu)^2 / (2 var)
+            Normal normal = normals.get(classLabel);
+            double mu = normal.getMu();
+            double var = normal.getVar();
+            double c = -0.5 * Math.log(2 * Math.PI * var);
+            double f = 1 / (2 * var);
+            for (int i = 0; i < len; i++) {
+                double d = testValues[i] - mu;
+                result[i] = c - d * d * f;
+            }
+        }
+
         @Override
         public CvpEstimator newInstance() {
             return new CvpEstimatorGaussianEmpiric();
@@ -289,6 +563,12 @@ public class NaiveBayesClassifier extends AbstractClassifier {
             return kde.get(classLabel).pdf(testValue);
         }
 
+        @Override
+        public void cpValues(double[] testValues, int len, String classLabel, double[] result) {
+            double[] values = kde.get(classLabel).pdf(Arrays.copyOf(testValues, len));
+            System.arraycopy(values, 0, result, 0, len);
+        }
+
         @Override
         public CvpEstimator newInstance() {
             return new CvpEstimatorKDE();
@@ -329,12 +609,47 @@ public class NaiveBayesClassifier extends AbstractClassifier {
                 }
             }
             df.stream().forEach(s -> density[s.index(targetCol)][s.index(testCol)]++);
+            normalize(targetDict.length, testDict.length);
+        }
+
+        @Override
+        public boolean isMergeable() {
+            return true;
+        }
+
+        @Override
+        public void learn(NaiveBayesStats stats, String testCol) {
+
+            String[] targetDict = stats.getClassLabels();
+            String[] testDict = stats.getLevels(testCol);
+
+            invTreeTarget = new HashMap<>();
+            invTreeTest = new HashMap<>();
+
             for (int i = 0; i < targetDict.length; i++) {
-                double t = 0;
+                invTreeTarget.put(targetDict[i], i);
+            }
+            for (int i = 0; i < testDict.length; i++) {
+                invTreeTest.put(testDict[i], i);
+            }
+
+            density = new double[targetDict.length][];
+            for (int i = 0; i < targetDict.length; i++) {
+                density[i] = stats.getLevelCounts(testCol, i);
                 for (int j = 0; j < testDict.length; j++) {
+                    density[i][j] += 1.0;
+                }
+            }
+            normalize(targetDict.length, testDict.length);
+        }
+
+        private void normalize(int targetLen, int testLen) {
+            for (int i = 0; i < targetLen; i++) {
+                double t = 0;
+                for (int j = 0; j < testLen; j++) {
                     t += density[i][j];
                 }
-                for (int j = 0; j < testDict.length; j++) {
+                for (int j = 0; j < testLen; j++) {
                     density[i][j] /= t;
                 }
             }
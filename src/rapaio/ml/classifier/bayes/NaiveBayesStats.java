@@ -0,0 +1,357 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.classifier.bayes;
+
+import rapaio.data.Frame;
+import rapaio.data.Var;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Sufficient statistics for a naive Bayes model.
+ * <p>
+ * Holds the weighted count of each class, and for each feature and class the
+ * count, mean and sum of squared deviations of numeric values, or the counts
+ * of levels for nominal values. Feature statistics are not weighted, as are
+ * the estimators built from them.
+ * <p>
+ * Statistics are built with a single pass over the rows and can be merged,
+ * which allows learning on partitions in parallel and updating a model with new
+ * chunks of data. Class and level labels are matched by name when merging, new
+ * labels being appended to the dictionaries.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public final class NaiveBayesStats implements Serializable {
+
+    private static final int PARTITION_SIZE = 16_384;
+
+    private final String targetName;
+    private String[] classLabels;
+    private double[] classWeights;
+    private final Map<String, NumericStats> numeric = new LinkedHashMap<>();
+    private final Map<String, NominalStats> nominal = new LinkedHashMap<>();
+
+    /**
+     * Builds statistics for all numeric and nominal features of the frame,
+     * computing them in parallel on partitions of rows.
+     *
+     * @param df         data frame
+     * @param weights    row weights, used for class counts
+     * @param targetName target variable name
+     * @return sufficient statistics
+     */
+    public static NaiveBayesStats newFrom(Frame df, Var weights, String targetName) {
+        int partitions = Math.max(1, (df.rowCount() + PARTITION_SIZE - 1) / PARTITION_SIZE);
+        return IntStream.range(0, partitions).parallel()
+                .mapToObj(p -> new NaiveBayesStats(df, targetName)
+                        .update(df, weights, p * PARTITION_SIZE, Math.min(df.rowCount(), (p + 1) * PARTITION_SIZE)))
+                .reduce(NaiveBayesStats::merge)
+                .get();
+    }
+
+    private NaiveBayesStats(Frame df, String targetName) {
+        this.targetName = targetName;
+        this.classLabels = df.var(targetName).dictionary();
+        this.classWeights = new double[classLabels.length];
+        for (String varName : df.varNames()) {
+            if (targetName.equals(varName)) continue;
+            Var var = df.var(varName);
+            if (var.type().isNumeric()) {
+                numeric.put(varName, new NumericStats(classLabels.length));
+                continue;
+            }
+            if (var.type().isNominal()) {
+                nominal.put(varName, new NominalStats(var.dictionary(), classLabels.length));
+            }
+        }
+    }
+
+    private NaiveBayesStats update(Frame df, Var weights, int start, int end) {
+        Var target = df.var(targetName);
+        int[] classes = new int[end - start];
+        for (int i = start; i < end; i++) {
+            classes[i - start] = target.index(i);
+            classWeights[classes[i - start]] += weights.value(i);
+        }
+        for (Map.Entry<String, NumericStats> e : numeric.entrySet()) {
+            Var var = df.var(e.getKey());
+            NumericStats s = e.getValue();
+            for (int i = start; i < end; i++) {
+                if (var.missing(i)) continue;
+                s.update(classes[i - start], var.value(i));
+            }
+        }
+        for (Map.Entry<String, NominalStats> e : nominal.entrySet()) {
+            Var var = df.var(e.getKey());
+            double[][] counts = e.getValue().counts;
+            for (int i = start; i < end; i++) {
+                counts[classes[i - start]][var.index(i)]++;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds the statistics of another instance, built for the same target variable.
+     *
+     * @param other statistics to be merged into this instance
+     * @return this instance
+     */
+    public NaiveBayesStats merge(NaiveBayesStats other) {
+        if (!targetName.equals(other.targetName)) {
+            throw new IllegalArgumentException("Cannot merge statistics built for different target variables");
+        }
+        int[] classMap = mergeLabels(other.classLabels);
+        classWeights = Arrays.copyOf(classWeights, classLabels.length);
+        for (int i = 0; i < classMap.length; i++) {
+            classWeights[classMap[i]] += other.classWeights[i];
+        }
+        for (NumericStats s : numeric.values()) {
+            s.resize(classLabels.length);
+        }
+        for (NominalStats s : nominal.values()) {
+            s.resize(classLabels.length, s.levels.length);
+        }
+
+        for (Map.Entry<String, NumericStats> e : other.numeric.entrySet()) {
+            if (nominal.containsKey(e.getKey())) {
+                throw new IllegalArgumentException("Variable " + e.getKey() + " is numeric in merged statistics but nominal here");
+            }
+            numeric.computeIfAbsent(e.getKey(), name -> new NumericStats(classLabels.length))
+                    .merge(e.getValue(), classMap);
+        }
+        for (Map.Entry<String, NominalStats> e : other.nominal.entrySet()) {
+            if (numeric.containsKey(e.getKey())) {
+                throw new IllegalArgumentException("Variable " + e.getKey() + " is nominal in merged statistics but numeric here");
+            }
+            nominal.computeIfAbsent(e.getKey(), name -> new NominalStats(new String[]{"?"}, classLabels.length))
+                    .merge(e.getValue(), classMap);
+        }
+        return this;
+    }
+
+    /**
+     * Appends to class labels the labels from other dictionary
+     * which are not known, and returns the position of each
+     * label from other dictionary in class labels.
+     */
+    private int[] mergeLabels(String[] otherLabels) {
+        if (Arrays.equals(classLabels, otherLabels)) {
+            return IntStream.range(0, classLabels.length).toArray();
+        }
+        String[] merged = NominalStats.union(classLabels, otherLabels);
+        classLabels = merged;
+        return NominalStats.positions(merged, otherLabels);
+    }
+
+    public String getTargetName() {
+        return targetName;
+    }
+
+    /**
+     * @return dictionary of the target variable, with missing label first
+     */
+    public String[] getClassLabels() {
+        return Arrays.copyOf(classLabels, classLabels.length);
+    }
+
+    /**
+     * @return weighted count of rows for each class label
+     */
+    public double[] getClassWeights() {
+        return Arrays.copyOf(classWeights, classWeights.length);
+    }
+
+    public String[] getNumericVarNames() {
+        return numeric.keySet().toArray(new String[numeric.size()]);
+    }
+
+    public String[] getNominalVarNames() {
+        return nominal.keySet().toArray(new String[nominal.size()]);
+    }
+
+    /**
+     * @return number of non missing values of a numeric variable for a given class index
+     */
+    public double getCount(String varName, int classIndex) {
+        return numericStats(varName).count[classIndex];
+    }
+
+    /**
+     * @return mean of a numeric variable for a given class index, NaN if there are no values
+     */
+    public double getMean(String varName, int classIndex) {
+        NumericStats s = numericStats(varName);
+        return (s.count[classIndex] == 0) ? Double.NaN : s.mean[classIndex];
+    }
+
+    /**
+     * @return sample variance of a numeric variable for a given class index, NaN if there are less than two values
+     */
+    public double getVariance(String varName, int classIndex) {
+        NumericStats s = numericStats(varName);
+        return (s.count[classIndex] < 2) ? Double.NaN : s.m2[classIndex] / (s.count[classIndex] - 1);
+    }
+
+    /**
+     * @return dictionary of a nominal variable, with missing label first
+     */
+    public String[] getLevels(String varName) {
+        String[] levels = nominalStats(varName).levels;
+        return Arrays.copyOf(levels, levels.length);
+    }
+
+    /**
+     * @return counts of levels of a nominal variable for a given class index
+     */
+    public double[] getLevelCounts(String varName, int classIndex) {
+        double[] counts = nominalStats(varName).counts[classIndex];
+        return Arrays.copyOf(counts, counts.length);
+    }
+
+    private NumericStats numericStats(String varName) {
+        NumericStats s = numeric.get(varName);
+        if (s == null) {
+            throw new IllegalArgumentException("There are no numeric statistics for variable " + varName);
+        }
+        return s;
+    }
+
+    private NominalStats nominalStats(String varName) {
+        NominalStats s = nominal.get(varName);
+        if (s == null) {
+            throw new IllegalArgumentException("There are no nominal statistics for variable " + varName);
+        }
+        return s;
+    }
+
+    /**
+     * Count, mean and sum of squared deviations from mean, for each class,
+     * updated with Welford's method and merged with Chan's formula.
+     */
+    private static final class NumericStats implements Serializable {
+
+        private double[] count;
+        private double[] mean;
+        private double[] m2;
+
+        NumericStats(int classes) {
+            count = new double[classes];
+            mean = new double[classes];
+            m2 = new double[classes];
+        }
+
+        void update(int c, double x) {
+            count[c]++;
+            double delta = x - mean[c];
+            mean[c] += delta / count[c];
+            m2[c] += delta * (x - mean[c]);
+        }
+
+        void resize(int classes) {
+            count = Arrays.copyOf(count, classes);
+            mean = Arrays.copyOf(mean, classes);
+            m2 = Arrays.copyOf(m2, classes);
+        }
+
+        void merge(NumericStats other, int[] classMap) {
+            for (int i = 0; i < classMap.length; i++) {
+                int c = classMap[i];
+                double nb = other.count[i];
+                if (nb == 0) continue;
+                double na = count[c];
+                double n = na + nb;
+                double delta = other.mean[i] - mean[c];
+                mean[c] += delta * nb / n;
+                m2[c] += other.m2[i] + delta * delta * na * nb / n;
+                count[c] = n;
+            }
+        }
+    }
+
+    /**
+     * Counts of levels for each class.
+     */
+    private static final class NominalStats implements Serializable {
+
+        private String[] levels;
+        private double[][] counts;
+
+        NominalStats(String[] levels, int classes) {
+            this.levels = levels;
+            this.counts = new double[classes][levels.length];
+        }
+
+        void resize(int classes, int levelCount) {
+            double[][] copy = new double[classes][];
+            for (int i = 0; i < classes; i++) {
+                copy[i] = (i < counts.length) ? Arrays.copyOf(counts[i], levelCount) : new double[levelCount];
+            }
+            counts = copy;
+        }
+
+        void merge(NominalStats other, int[] classMap) {
+            int[] levelMap;
+            if (Arrays.equals(levels, other.levels)) {
+                levelMap = IntStream.range(0, levels.length).toArray();
+            } else {
+                levels = union(levels, other.levels);
+                levelMap = positions(levels, other.levels);
+                resize(counts.length, levels.length);
+            }
+            for (int i = 0; i < classMap.length; i++) {
+                for (int j = 0; j < levelMap.length; j++) {
+                    counts[classMap[i]][levelMap[j]] += other.counts[i][j];
+                }
+            }
+        }
+
+        static String[] union(String[] labels, String[] otherLabels) {
+            Map<String, Integer> index = new HashMap<>();
+            for (String label : labels) {
+                index.put(label, index.size());
+            }
+            String[] merged = Arrays.copyOf(labels, labels.length + otherLabels.length);
+            int len = labels.length;
+            for (String label : otherLabels) {
+                if (!index.containsKey(label)) {
+                    index.put(label, len);
+                    merged[len++] = label;
+                }
+            }
+            return Arrays.copyOf(merged, len);
+        }
+
+        static int[] positions(String[] labels, String[] otherLabels) {
+            Map<String, Integer> index = new HashMap<>();
+            for (int i = 0; i < labels.length; i++) {
+                index.put(labels[i], i);
+            }
+            return Arrays.stream(otherLabels).mapToInt(index::get).toArray();
+        }
+    }
+}
@@ -27,12 +27,14 @@ import rapaio.ml.classifier.CResult;
 import rapaio.ml.classifier.Classifier;
 import rapaio.ml.classifier.RunningClassifier;
 import rapaio.ml.classifier.tree.ctree.CTree;
+import rapaio.ml.common.ValidationMonitor;
 import rapaio.ml.common.VarSelector;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * User: Aurelian Tutuianu <paderati@yahoo.com>
@@ -40,6 +42,7 @@ import java.util.stream.Collectors;
 public class AdaBoostSAMMEClassifier extends AbstractClassifier implements RunningClassifier {
 
     final double delta_error = 10e-10;
+    private static final int PREDICT_BLOCK_SIZE = 4_096;
 
     // parameters
 
@@ -47,14 +50,21 @@ public class AdaBoostSAMMEClassifier extends AbstractClassifier implements Runni
     private int runs = 0;
     private double sampling = 0;
     private boolean stopOnError = false;
+    private ValidationMonitor monitor;
 
     // model artifacts
 
     private List<Double> a;
     private List<Classifier> h;
-    private Var w;
+    // instance weights, normalized to sum 1
+    private double[] w;
     private double k;
 
+    // validation artifacts: cached holdout votes, weights and votes of the best round
+    private double[] holdoutVotes;
+    private double[] bestW;
+    private double[] bestHoldoutVotes;
+
     public AdaBoostSAMMEClassifier() {
         this.a = new ArrayList<>();
         this.h = new ArrayList<>();
@@ -67,6 +77,7 @@ public class AdaBoostSAMMEClassifier extends AbstractClassifier implements Runni
                 .withRuns(this.runs)
                 .withVarSelector(this.varSelector)
                 .withStopOnError(stopOnError)
+                .withMonitor(monitor == null ? null : monitor.newInstance())
                 .withSampling(sampling);
     }
 
@@ -110,6 +121,27 @@ public class AdaBoostSAMMEClassifier extends AbstractClassifier implements Runni
         return this;
     }
 
+    /**
+     * Monitor used to evaluate each round on a holdout frame, to stop early
+     * and keep only the weak learners up to the best round.
+     * The monitored score is the holdout misclassification error.
+     */
+    public AdaBoostSAMMEClassifier withMonitor(ValidationMonitor monitor) {
+        this.monitor = monitor;
+        return this;
+    }
+
+    public ValidationMonitor getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * @return number of weak learners built
+     */
+    public int getLearnedRuns() {
+        return h.size();
+    }
+
     private int[] getSamplingRows(Frame df) {
         if (sampling > 0.0) {
             return Sampling.sampleWR((int) (df.rowCount() * sampling), df.rowCount());
@@ -137,17 +169,17 @@ public class AdaBoostSAMMEClassifier extends AbstractClassifier implements Runni
 
         h = new ArrayList<>();
         a = new ArrayList<>();
-        w = weights.solidCopy();
-
-        double total = w.stream().mapToDouble().reduce(0.0, (x, y) -> x + y);
-        w.stream().transValue(x -> x / total);
+        w = new double[df.rowCount()];
+        for (int i = 0; i < w.length; i++) {
+            w[i] = weights.value(i);
+        }
+        normalize(w);
 
-        for (int i = 0; i < runs; i++) {
-            boolean success = learnRound(df);
-            if (!success && stopOnError) {
-                break;
-            }
+        holdoutVotes = null;
+        if (monitor != null) {
+            startValidation();
         }
+        learnRounds(df);
     }
 
     @Override
@@ -169,32 +201,145 @@ public class AdaBoostSAMMEClassifier extends AbstractClassifier implements Runni
             return;
         }
 
-        double total = w.stream().mapToDouble().reduce(0.0, (x, y) -> x + y);
-        w.stream().transValue(x -> x / total);
+        normalize(w);
+
+        if (monitor != null && holdoutVotes == null) {
+            startValidation();
+        }
+        learnRounds(df);
+    }
 
+    private void learnRounds(Frame df) {
+        Var target = df.var(firstTargetName());
+        int[] y = new int[df.rowCount()];
+        for (int i = 0; i < y.length; i++) {
+            y[i] = target.index(i);
+        }
         for (int i = h.size(); i < runs; i++) {
-            boolean success = learnRound(df);
+            int size = h.size();
+            boolean success = learnRound(df, y);
+            if (monitor != null && h.size() > size && validate()) {
+                break;
+            }
             if (!success && stopOnError) {
                 break;
             }
         }
+        truncateToBest();
+    }
+
+    /**
+     * Resets the monitor and caches the holdout votes of the current ensemble.
+     */
+    private void startValidation() {
+        monitor.reset();
+        Frame holdout = monitor.getHoldout();
+        int len = firstDictionary().length;
+        holdoutVotes = new double[holdout.rowCount() * len];
+        for (int i = 0; i < h.size(); i++) {
+            addHoldoutVotes(h.get(i), a.get(i));
+        }
+        if (!h.isEmpty()) {
+            registerScore();
+        }
+    }
+
+    private void addHoldoutVotes(Classifier hh, double alpha) {
+        int len = firstDictionary().length;
+        CResult hp = hh.predict(monitor.getHoldout(), true, false);
+        for (int j = 0; j < hp.firstClasses().rowCount(); j++) {
+            holdoutVotes[j * len + hp.firstClasses().index(j)] += alpha;
+        }
+    }
+
+    /**
+     * Adds the votes of the last weak learner to the cached holdout votes
+     * and registers the holdout score with the monitor.
+     *
+     * @return true if learning should stop
+     */
+    private boolean validate() {
+        addHoldoutVotes(h.get(h.size() - 1), a.get(a.size() - 1));
+        return registerScore();
+    }
+
+    private boolean registerScore() {
+        Var target = monitor.getHoldout().var(firstTargetName());
+        int len = firstDictionary().length;
+        double err = 0;
+        for (int i = 0; i < target.rowCount(); i++) {
+            // same decision rule as predict
+            double max = 0;
+            int prediction = 0;
+            for (int j = 1; j < len; j++) {
+                if (holdoutVotes[i * len + j] > max) {
+                    prediction = j;
+                    max = holdoutVotes[i * len + j];
+                }
+            }
+            if (prediction != target.index(i)) {
+                err++;
+            }
+        }
+        int round = h.size();
+        boolean stop = monitor.update(round, target.rowCount() == 0 ? 0 : err / target.rowCount());
+        if (monitor.getBestRound() == round) {
+            bestW = Arrays.copyOf(w, w.length);
+            bestHoldoutVotes = Arrays.copyOf(holdoutVotes, holdoutVotes.length);
+        }
+        return stop;
+    }
+
+    /**
+     * Drops the weak learners built after the best round of the monitor, if any,
+     * and restores the weights of the best round.
+     */
+    private void truncateToBest() {
+        if (monitor == null || monitor.getBestRound() < 0 || monitor.getBestRound() >= h.size()) {
+            return;
+        }
+        h.subList(monitor.getBestRound(), h.size()).clear();
+        a.subList(monitor.getBestRound(), a.size()).clear();
+        w = Arrays.copyOf(bestW, bestW.length);
+        holdoutVotes = Arrays.copyOf(bestHoldoutVotes, bestHoldoutVotes.length);
+    }
+
+    private static void normalize(double[] w) {
+        double total = 0;
+        for (double x : w) {
+            total += x;
+        }
+        for (int i = 0; i < w.length; i++) {
+            w[i] /= total;
+        }
     }
 
-    private boolean learnRound(Frame df) {
+    private boolean learnRound(Frame df, int[] y) {
         int[] rows = getSamplingRows(df);
         Frame dfTrain = MappedFrame.newByRow(df, rows);
-        Numeric dfWeights = (Numeric) w.mapRows(rows).solidCopy();
+        double[] sampleWeights = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            sampleWeights[i] = w[rows[i]];
+        }
 
         Classifier hh = base.newInstance();
-        hh.learn(dfTrain, dfWeights, targetNames);
-        CResult p = hh.predict(df, true, false);
+        hh.learn(dfTrain, Numeric.newWrapOf(sampleWeights), targetNames);
+        Var pred = hh.predict(df, true, false).firstClasses();
+
+        // misclassified rows and weighted error in a single pass
+
+        boolean[] miss = new boolean[w.length];
         double err = 0;
-        for (int j = 0; j < df.rowCount(); j++) {
-            if (p.firstClasses().index(j) != df.var(firstTargetName()).index(j)) {
-                err += w.value(j);
+        double total = 0;
+        for (int j = 0; j < w.length; j++) {
+            miss[j] = pred.index(j) != y[j];
+            if (miss[j]) {
+                err += w[j];
             }
+            total += w[j];
         }
-        err /= w.stream().mapToDouble().sum();
+        double errWeight = err;
+        err /= total;
         double alpha = Math.log((1. - err) / err) + Math.log(k - 1);
         if (err == 0) {
             if (h.isEmpty()) {
@@ -209,14 +354,15 @@ public class AdaBoostSAMMEClassifier extends AbstractClassifier implements Runni
         h.add(hh);
         a.add(alpha);
 
-        for (int j = 0; j < w.rowCount(); j++) {
-            if (p.firstClasses().index(j) != df.var(firstTargetName()).index(j)) {
-                w.setValue(j, w.value(j) * Math.exp(alpha));
-            }
-        }
-        double total = w.stream().mapToDouble().reduce(0.0, (x, y) -> x + y);
-        w.stream().transValue(x -> x / total);
+        // reweight with normalization fused, since the new total is known in advance
 
+        double factor = Math.exp(alpha);
+        double newTotal = total - errWeight + errWeight * factor;
+        double missScale = factor / newTotal;
+        double hitScale = 1.0 / newTotal;
+        for (int j = 0; j < w.length; j++) {
+            w[j] *= miss[j] ? missScale : hitScale;
+        }
         return true;
     }
 
@@ -225,26 +371,41 @@ public class AdaBoostSAMMEClassifier extends AbstractClassifier implements Runni
         CResult p = CResult.newEmpty(this, df, withClasses, true);
         p.addTarget(firstTargetName(), firstDictionary());
 
-        for (int i = 0; i < h.size(); i++) {
-            CResult hp = h.get(i).predict(df, true, false);
-            for (int j = 0; j < df.rowCount(); j++) {
-                int index = hp.firstClasses().index(j);
-                p.firstDensity().setValue(j, index, p.firstDensity().value(j, index) + a.get(i));
+        // votes of all weak learners are aggregated on blocks of rows,
+        // blocks being independent are processed concurrently
+
+        int n = df.rowCount();
+        int len = firstDictionary().length;
+        double[] alpha = a.stream().mapToDouble(x -> x).toArray();
+        double[] votes = new double[n * len];
+        int blocks = (n + PREDICT_BLOCK_SIZE - 1) / PREDICT_BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int start = b * PREDICT_BLOCK_SIZE;
+            int end = Math.min(n, start + PREDICT_BLOCK_SIZE);
+            Frame block = df.mapRows(Mapping.newRangeOf(start, end));
+            for (int i = 0; i < h.size(); i++) {
+                Var classes = h.get(i).predict(block, true, false).firstClasses();
+                for (int j = 0; j < end - start; j++) {
+                    votes[(start + j) * len + classes.index(j)] += alpha[i];
+                }
             }
-        }
+        });
 
         // simply predict
-        for (int i = 0; i < p.firstDensity().rowCount(); i++) {
-
+        for (int i = 0; i < n; i++) {
             double max = 0;
             int prediction = 0;
-            for (int j = 1; j < p.firstDensity().varCount(); j++) {
-                if (p.firstDensity().value(i, j) > max) {
+            for (int j = 0; j < len; j++) {
+                double vote = votes[i * len + j];
+                p.firstDensity().setValue(i, j, vote);
+                if (j > 0 && vote > max) {
                     prediction = j;
-                    max = p.firstDensity().value(i, j);
+                    max = vote;
                 }
             }
-            p.firstClasses().setIndex(i, prediction);
+            if (withClasses) {
+                p.firstClasses().setIndex(i, prediction);
+            }
         }
         return p;
     }
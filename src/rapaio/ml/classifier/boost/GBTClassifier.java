@@ -20,8 +20,10 @@
 
 package rapaio.ml.classifier.boost;
 
+import rapaio.core.RandomSource;
 import rapaio.core.sample.Sampling;
 import rapaio.data.Frame;
+import rapaio.data.Mapping;
 import rapaio.data.Numeric;
 import rapaio.data.Var;
 import rapaio.data.VarRange;
@@ -29,14 +31,18 @@ import rapaio.ml.classifier.AbstractClassifier;
 import rapaio.ml.classifier.CResult;
 import rapaio.ml.classifier.Classifier;
 import rapaio.ml.classifier.RunningClassifier;
+import rapaio.ml.common.ValidationMonitor;
 import rapaio.ml.regressor.RResult;
 import rapaio.ml.regressor.boost.gbt.BTRegressor;
 import rapaio.ml.regressor.boost.gbt.GBTLossFunction;
 import rapaio.ml.regressor.tree.rtree.RTree;
+import rapaio.ml.regressor.tree.rtree.RTreeEnsemble;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * Created by <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a> at 12/12/14.
@@ -48,17 +54,27 @@ public class GBTClassifier extends AbstractClassifier implements RunningClassifi
     private boolean useBootstrap = true;
     private double bootstrapSize = 1.0;
     private BTRegressor classifier = RTree.buildCART().withMaxDepth(4);
+    private ValidationMonitor monitor;
 
     // prediction artifact
 
     int K;
-    double[][] f;
-    double[][] p;
+    // f and p are n x K matrices stored by rows
+    double[] f;
+    double[] p;
     private List<List<BTRegressor>> trees;
+    // compiled trees used for prediction, built on first use
+    private RTreeEnsemble compiled;
+
+    // validation artifacts: cached holdout f and f values of the best round
+    double[] holdoutF;
+    private double[] bestF;
+    private double[] bestHoldoutF;
 
     @Override
     public Classifier newInstance() {
         return new GBTClassifier()
+                .withMonitor(monitor == null ? null : monitor.newInstance())
                 .withRuns(runs);
     }
 
@@ -102,6 +118,27 @@ public class GBTClassifier extends AbstractClassifier implements RunningClassifi
         return this;
     }
 
+    /**
+     * Monitor used to evaluate each round on a holdout frame, to stop early
+     * and keep only the trees up to the best round.
+     * The monitored score is the multinomial deviance of the holdout rows.
+     */
+    public GBTClassifier withMonitor(ValidationMonitor monitor) {
+        this.monitor = monitor;
+        return this;
+    }
+
+    public ValidationMonitor getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * @return number of rounds of the learned ensemble
+     */
+    public int getLearnedRuns() {
+        return trees == null ? 0 : trees.get(0).size();
+    }
+
     @Override
     public void learn(Frame df, Var weights, String... targetVarNames) {
         List<String> list = new VarRange(targetVarNames).parseVarNames(df);
@@ -121,15 +158,26 @@ public class GBTClassifier extends AbstractClassifier implements RunningClassifi
         // algorithm described by ESTL pag. 387
 
         K = firstDictionary().length - 1;
-        f = new double[df.rowCount()][K];
-        p = new double[df.rowCount()][K];
+        f = new double[df.rowCount() * K];
+        p = new double[df.rowCount() * K];
+        holdoutF = null;
+        compiled = null;
         trees = new ArrayList<>();
         for (int i = 0; i < K; i++) {
             trees.add(new ArrayList<>());
         }
+        Frame x = df.removeVars(new VarRange(targetNames));
+        if (monitor != null) {
+            startValidation();
+        }
         for (int m = 0; m < runs; m++) {
-            buildAdditionalTree(df, weights);
+            buildAdditionalTree(df, x, weights);
+            if (monitor != null && registerScore()) {
+                break;
+            }
         }
+        truncateToBest();
+        compiled = null;
     }
 
     @Override
@@ -151,75 +199,223 @@ public class GBTClassifier extends AbstractClassifier implements RunningClassifi
         if (runs <= 0) {
             throw new IllegalArgumentException("runs parameter must be greater than 0");
         }
-        if (this.runs >= runs) {
+        if (getLearnedRuns() >= runs) {
             throw new IllegalArgumentException("runs parameter must be greater than the current runs learned");
         }
-        if (f.length != df.rowCount()) {
+        if (f.length != df.rowCount() * K) {
             throw new IllegalArgumentException("learn further called for different frame");
         }
 
         // algorithm described by ESTL pag. 387
 
-        for (int m = this.runs; m < runs; m++) {
-            buildAdditionalTree(df, weights);
+        Frame x = df.removeVars(new VarRange(targetNames));
+        if (monitor != null) {
+            if (holdoutF == null) {
+                startValidation();
+            } else {
+                monitor.resume();
+            }
+        }
+        for (int m = getLearnedRuns(); m < runs; m++) {
+            buildAdditionalTree(df, x, weights);
+            if (monitor != null && registerScore()) {
+                break;
+            }
         }
+        truncateToBest();
+        compiled = null;
         this.runs = runs;
 
     }
 
-    private void buildAdditionalTree(Frame df, Var weights) {
+    private void buildAdditionalTree(Frame df, Frame x, Var weights) {
 
-        // a) Set p_k(x)
+        int n = df.rowCount();
 
-        for (int i = 0; i < df.rowCount(); i++) {
+        // a) Set p_k(x), softmax computed once per row, shifted by max for stability
+
+        for (int i = 0; i < n; i++) {
+            int offset = i * K;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < K; k++) {
+                max = Math.max(max, f[offset + k]);
+            }
             double sum = 0;
             for (int k = 0; k < K; k++) {
-                sum += Math.pow(Math.E, f[i][k]);
+                p[offset + k] = Math.exp(f[offset + k] - max);
+                sum += p[offset + k];
             }
             for (int k = 0; k < K; k++) {
-                p[i][k] = Math.pow(Math.E, f[i][k]) / sum;
+                p[offset + k] /= sum;
             }
         }
 
-        // b)
+        // b) the K trees of the round are built concurrently on the same features,
+        // bootstrap samples and tree seeds are drawn in advance to not depend on threads
 
+        Var target = df.var(firstTargetName());
+        int[] y = new int[n];
+        for (int i = 0; i < n; i++) {
+            y[i] = target.index(i);
+        }
+        int[][] samples = new int[K][];
+        if (useBootstrap) {
+            for (int k = 0; k < K; k++) {
+                samples[k] = Sampling.sampleWR((int) (bootstrapSize * n), n);
+            }
+        }
+
+        long[] seeds = new long[K];
         for (int k = 0; k < K; k++) {
+            seeds[k] = RandomSource.nextLong();
+        }
 
-            Numeric r = Numeric.newEmpty().withName("##tt##");
-            for (int i = 0; i < df.rowCount(); i++) {
-                double y_i = (df.var(firstTargetName()).index(i) == k + 1) ? 1 : 0;
-                r.addValue(y_i - p[i][k]);
-            }
+        BTRegressor[] roundTrees = new BTRegressor[K];
+        IntStream.range(0, K).parallel().forEach(k -> {
 
-            Frame x = df.removeVars(new VarRange(targetNames));
+            double[] residuals = new double[n];
+            for (int i = 0; i < n; i++) {
+                residuals[i] = ((y[i] == k + 1) ? 1 : 0) - p[i * K + k];
+            }
+            Numeric r = Numeric.newWrapOf(residuals).withName("##tt##");
             Frame train = x.bindVars(r);
 
-            BTRegressor tree = classifier.newInstance();
+            BTRegressor tree = classifier.newInstance().withSeed(seeds[k]);
 
             Frame bootTrain = train;
             Var bootWeights = weights;
             Frame bootX = x;
             Var bootR = r;
             if (useBootstrap) {
-                int[] map = Sampling.sampleWR((int) (bootstrapSize * df.rowCount()), df.rowCount());
-                bootTrain = train.mapRows(map);
-                bootWeights = weights.mapRows(map);
-                bootX = x.mapRows(map);
-                bootR = r.mapRows(map);
+                bootTrain = train.mapRows(samples[k]);
+                bootWeights = weights.mapRows(samples[k]);
+                bootX = x.mapRows(samples[k]);
+                bootR = r.mapRows(samples[k]);
             }
             tree.learn(bootTrain, bootWeights, "##tt##");
-            tree.boostFit(bootX, bootR, bootR, new ClassifierLossFunction(K));
+            double[] bootFit = tree.boostFit(bootX, bootR, bootR, new ClassifierLossFunction(K));
 
-            RResult rr = tree.predict(train, true);
+            // fitted values of rows assigned to leaves are taken from fit pass,
+            // the other rows are predicted
 
-            for (int i = 0; i < df.rowCount(); i++) {
-                f[i][k] += shrinkage * rr.firstFit().value(i);
+            double[] fit = bootFit;
+            if (useBootstrap) {
+                fit = new double[n];
+                Arrays.fill(fit, Double.NaN);
+                for (int j = 0; j < bootFit.length; j++) {
+                    fit[samples[k][j]] = bootFit[j];
+                }
+            }
+            Mapping unassigned = Mapping.newEmpty();
+            for (int i = 0; i < n; i++) {
+                if (Double.isNaN(fit[i])) {
+                    unassigned.add(i);
+                }
+            }
+            if (unassigned.size() > 0) {
+                RResult rr = tree.predict(x.mapRows(unassigned), false);
+                for (int j = 0; j < unassigned.size(); j++) {
+                    fit[unassigned.get(j)] = rr.firstFit().value(j);
+                }
             }
 
-            trees.get(k).add(tree);
+            for (int i = 0; i < n; i++) {
+                f[i * K + k] += shrinkage * fit[i];
+            }
+
+            // holdout cache is updated with the new tree only
+
+            if (monitor != null && holdoutF != null) {
+                RResult hr = tree.predict(monitor.getHoldout(), false);
+                for (int i = 0; i < hr.firstFit().rowCount(); i++) {
+                    holdoutF[i * K + k] += shrinkage * hr.firstFit().value(i);
+                }
+            }
+            roundTrees[k] = tree;
+        });
+        for (int k = 0; k < K; k++) {
+            trees.get(k).add(roundTrees[k]);
         }
     }
 
+    /**
+     * Resets the monitor and registers the score of the current ensemble,
+     * its holdout f values being cached for the next rounds.
+     */
+    private void startValidation() {
+        monitor.reset();
+        Frame holdout = monitor.getHoldout();
+        holdoutF = new double[holdout.rowCount() * K];
+        CResult cr = predict(holdout, true, true);
+        for (int i = 0; i < holdout.rowCount(); i++) {
+            for (int k = 0; k < K; k++) {
+                holdoutF[i * K + k] = cr.firstDensity().value(i, k + 1);
+            }
+        }
+        registerScore();
+    }
+
+    /**
+     * Registers the multinomial deviance of the cached holdout f values with the monitor.
+     *
+     * @return true if learning should stop
+     */
+    private boolean registerScore() {
+        Var target = monitor.getHoldout().var(firstTargetName());
+        double loss = 0;
+        int count = 0;
+        for (int i = 0; i < target.rowCount(); i++) {
+            int y = target.index(i) - 1;
+            if (y < 0) {
+                continue;
+            }
+            int offset = i * K;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < K; k++) {
+                max = Math.max(max, holdoutF[offset + k]);
+            }
+            double sum = 0;
+            for (int k = 0; k < K; k++) {
+                sum += Math.exp(holdoutF[offset + k] - max);
+            }
+            loss += Math.log(sum) + max - holdoutF[offset + y];
+            count++;
+        }
+        int round = getLearnedRuns();
+        boolean stop = monitor.update(round, count == 0 ? 0 : loss / count);
+        if (monitor.getBestRound() == round) {
+            bestF = Arrays.copyOf(f, f.length);
+            bestHoldoutF = Arrays.copyOf(holdoutF, holdoutF.length);
+        }
+        return stop;
+    }
+
+    /**
+     * Drops the trees built after the best round of the monitor, if any,
+     * and restores the f values of the best round.
+     */
+    private void truncateToBest() {
+        if (monitor == null || monitor.getBestRound() < 0 || monitor.getBestRound() >= getLearnedRuns()) {
+            return;
+        }
+        for (List<BTRegressor> classTrees : trees) {
+            classTrees.subList(monitor.getBestRound(), classTrees.size()).clear();
+        }
+        f = Arrays.copyOf(bestF, bestF.length);
+        holdoutF = Arrays.copyOf(bestHoldoutF, bestHoldoutF.length);
+    }
+
+    /**
+     * Compiles the trees into an ensemble with one output for each class,
+     * which can score single rows without allocation. Scores are the additive
+     * f values of classes, probabilities being given by their softmax.
+     *
+     * @return compiled ensemble
+     */
+    public RTreeEnsemble compile() {
+        return RTreeEnsemble.newCompiled(trees, shrinkage, new double[K]);
+    }
+
     @Override
     public CResult predict(Frame df, boolean withClasses, boolean withDistributions) {
         CResult cr = CResult.newEmpty(this, df, withClasses, withDistributions);
@@ -227,14 +423,26 @@ public class GBTClassifier extends AbstractClassifier implements RunningClassifi
             cr.addTarget(targetName, dictionaries().get(targetName));
         }
 
-        for (int k = 0; k < K; k++) {
-            List<BTRegressor> predictors = trees.get(k);
-            for (BTRegressor tree : predictors) {
-                RResult rr = tree.predict(df, false);
-                for (int i = 0; i < df.rowCount(); i++) {
-                    double p = cr.firstDensity().value(i, k + 1);
-                    p += shrinkage * rr.firstFit().value(i);
-                    cr.firstDensity().setValue(i, k + 1, p);
+        if (compiled == null && RTreeEnsemble.canCompile(trees)) {
+            compiled = compile();
+        }
+        if (compiled != null) {
+            double[] scores = compiled.score(df);
+            for (int i = 0; i < df.rowCount(); i++) {
+                for (int k = 0; k < K; k++) {
+                    cr.firstDensity().setValue(i, k + 1, scores[i * K + k]);
+                }
+            }
+        } else {
+            for (int k = 0; k < K; k++) {
+                List<BTRegressor> predictors = trees.get(k);
+                for (BTRegressor tree : predictors) {
+                    RResult rr = tree.predict(df, false);
+                    for (int i = 0; i < df.rowCount(); i++) {
+                        double p = cr.firstDensity().value(i, k + 1);
+                        p += shrinkage * rr.firstFit().value(i);
+                        cr.firstDensity().setValue(i, k + 1, p);
+                    }
                 }
             }
         }
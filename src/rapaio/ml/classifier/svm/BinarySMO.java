@@ -32,7 +32,7 @@ import rapaio.data.Var;
 import rapaio.data.VarRange;
 import rapaio.ml.classifier.AbstractClassifier;
 import rapaio.ml.classifier.CResult;
-import rapaio.ml.classifier.Classifier;
+import rapaio.ml.classifier.svm.kernel.FeatureVector;
 import rapaio.ml.classifier.svm.kernel.Kernel;
 import rapaio.ml.classifier.svm.kernel.PolyKernel;
 import rapaio.ml.common.VarSelector;
@@ -42,12 +42,33 @@ import java.io.Serializable;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Class for building a binary support vector machine.
  */
 public class BinarySMO extends AbstractClassifier implements Serializable {
 
+    /**
+     * Strategy used to select the pair of Lagrange multipliers optimized at each step.
+     */
+    public enum WorkingSet {
+        /**
+         * Platt's SMO with modification 2 of Keerthi et al., which examines
+         * examples in passes over all training rows.
+         */
+        KEERTHI,
+        /**
+         * Second order selection of Fan, Chen and Lin, as used in libsvm. The first
+         * index is the maximal violating one, the second is the one which gives
+         * the largest decrease of the objective function. The maximum number
+         * of runs bounds the number of optimized pairs.
+         */
+        WSS3
+    }
+
+    private static final double TAU = 1e-12;
+
     protected double[] alpha; // Lagrange multipliers from dual
     protected double b, bLow, bUp; // thresholds
     protected int iLow, iUp; // indices for bLow and bUp
@@ -66,6 +87,26 @@ public class BinarySMO extends AbstractClassifier implements Serializable {
     protected Var weights;
     protected String[] varNames;
 
+    protected double cacheSize = 100; // size of kernel cache in MB
+    protected boolean sparse = false; // if feature vectors keep only non zero values
+    protected Long seed = null; // seed of random stream used during learning
+    protected transient Random random;
+    protected FeatureVector[] x; // feature vectors of training instances
+    protected KernelCache cache; // kernel rows cache, used during learning
+    protected KernelCache sharedCache; // cache of all rows of learning frame, shared with other machines
+    protected int[] trainRows; // indexes of training instances in the learning frame
+
+    protected WorkingSet workingSet = WorkingSet.KEERTHI;
+    protected boolean shrinking = false;
+
+    // state of WSS3 solver, used during learning
+    protected double[] ci; // upper bounds of multipliers
+    protected double[] grad; // gradient of dual objective
+    protected double[] gradBar; // gradient part given by multipliers at upper bound
+    protected int[] active; // indexes of instances, active ones first
+    protected int activeSize;
+    protected boolean unshrink;
+
 
     protected int classIndex;
     /**
@@ -108,8 +149,20 @@ public class BinarySMO extends AbstractClassifier implements Serializable {
     }
 
     @Override
-    public Classifier newInstance() {
-        return null;
+    public BinarySMO newInstance() {
+        BinarySMO smo = new BinarySMO()
+                .withKernel(kernel)
+                .withC(C)
+                .withTol(m_tol)
+                .withMaxRuns(maxRuns)
+                .withCacheSize(cacheSize)
+                .withSparse(sparse)
+                .withWorkingSet(workingSet)
+                .withShrinking(shrinking)
+                .withClassIndexes(cl1, cl2)
+                .withSeed(seed);
+        smo.withVarSelector(varSelector);
+        return smo;
     }
 
     public BinarySMO withKernel(Kernel value) {
@@ -132,6 +185,96 @@ public class BinarySMO extends AbstractClassifier implements Serializable {
         return this;
     }
 
+    /**
+     * Size of the kernel rows cache used during learning, in megabytes.
+     */
+    public BinarySMO withCacheSize(double cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    /**
+     * Sets the indexes in the target dictionary of the two classes separated by
+     * this machine. The first class has negative output. Instances of other
+     * classes are ignored.
+     */
+    public BinarySMO withClassIndexes(int cl1, int cl2) {
+        this.cl1 = cl1;
+        this.cl2 = cl2;
+        return this;
+    }
+
+    public int getFirstClassIndex() {
+        return cl1;
+    }
+
+    public int getSecondClassIndex() {
+        return cl2;
+    }
+
+    /**
+     * Sets a kernel cache built on all the rows of the frame which will be learned,
+     * which can be shared with other machines learned on the same frame. The cache
+     * must be built with the kernel of this machine. Feature vectors of the shared
+     * cache are used instead of the ones extracted from the frame. The shared
+     * cache is used only for the next learning.
+     * <p>
+     * Rows of the training subset are gathered from the shared cache into a cache
+     * of this machine, bounded by {@link #withCacheSize(double)}, thus the memory
+     * used is the sum of the two sizes.
+     */
+    public BinarySMO withSharedCache(KernelCache sharedCache) {
+        this.sharedCache = sharedCache;
+        return this;
+    }
+
+    /**
+     * Specifies the seed of the random stream used during learning, thus machines
+     * learned with the same seed on the same data are identical, even if
+     * they are learned concurrently.
+     *
+     * @param seed random seed, null if random values are drawn from {@link RandomSource}
+     * @return self instance
+     */
+    public BinarySMO withSeed(Long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Sets if feature vectors of instances are stored sparse, which keeps
+     * only the non zero values. Sparse vectors are faster to evaluate on
+     * data with many zero values, like indicator features.
+     */
+    public BinarySMO withSparse(boolean sparse) {
+        this.sparse = sparse;
+        return this;
+    }
+
+    /**
+     * Strategy used to select the pair of multipliers optimized at each step.
+     * Both strategies build the same model, up to the tolerance of accuracy.
+     */
+    public BinarySMO withWorkingSet(WorkingSet workingSet) {
+        this.workingSet = workingSet;
+        return this;
+    }
+
+    /**
+     * Sets if multipliers which are likely to stay at bounds are temporarily
+     * removed from the active set. The gradient of removed instances is
+     * reconstructed before the optimality is checked on all instances.
+     * Used only with {@link WorkingSet#WSS3} selection.
+     */
+    public BinarySMO withShrinking(boolean shrinking) {
+        this.shrinking = shrinking;
+        return this;
+    }
+
+    public KernelCache getCache() {
+        return cache;
+    }
+
     @Override
     public void learn(Frame df, Var weights, String... targetVarNames) {
 
@@ -152,6 +295,7 @@ public class BinarySMO extends AbstractClassifier implements Serializable {
         Mapping map = df.stream().filter(s -> s.index(firstTargetName()) == cl1 || s.index(firstTargetName()) == cl2).collectMapping();
         df = df.mapRows(map);
         weights = weights.mapRows(map);
+        trainRows = map.rowStream().toArray();
 
         if (df.rowCount() == 0) {
             throw new IllegalArgumentException("After filtering other classes, there " +
@@ -244,95 +388,111 @@ public class BinarySMO extends AbstractClassifier implements Serializable {
         sparseWeights = null;
         sparseIndices = null;
 
-        // init kernel
+        random = (seed == null) ? null : RandomSource.newRandom(seed);
+
+        // init kernel and the cache of kernel rows on feature vectors
         kernel.buildKernel(varNames);
+        if (sharedCache != null) {
+            cache = new KernelCache(sharedCache, trainRows, cacheSize);
+            x = cache.getX();
+        } else {
+            x = featureVectors(train);
+            cache = new KernelCache(kernel, x, cacheSize);
+        }
 
-        // Initialize error cache
-        fCache = new double[df.rowCount()];
-        fCache[iLow] = 1;
-        fCache[iUp] = -1;
+        if (workingSet == WorkingSet.WSS3) {
+            solveWss3();
+        } else {
 
-        // Build up I1 and I4
-        for (int i = 0; i < train.rowCount(); i++) {
-            if (target[i] == 1) {
-                I1.set(i, true);
-            } else {
-                I4.set(i, true);
+            // Initialize error cache
+            fCache = new double[df.rowCount()];
+            fCache[iLow] = 1;
+            fCache[iUp] = -1;
+
+            // Build up I1 and I4
+            for (int i = 0; i < train.rowCount(); i++) {
+                if (target[i] == 1) {
+                    I1.set(i, true);
+                } else {
+                    I4.set(i, true);
+                }
             }
-        }
 
-        // Loop to find all the support vectors
-        int numChanged = 0;
-        boolean examineAll = true;
+            // Loop to find all the support vectors
+            int numChanged = 0;
+            boolean examineAll = true;
 
-        int runs = maxRuns;
+            int runs = maxRuns;
 
-        while (numChanged > 0 || examineAll) {
-            numChanged = 0;
+            while (numChanged > 0 || examineAll) {
+                numChanged = 0;
 
-            if (examineAll) {
+                if (examineAll) {
 
-                // add random as an additional step
-                int offset = RandomSource.nextInt(train.rowCount());
-                for (int i = offset; i < train.rowCount() + offset; i++) {
-                    int pos = i;
-                    if (pos >= train.rowCount())
-                        pos -= train.rowCount();
-                    if (examineExample(pos)) {
-                        numChanged++;
+                    // add random as an additional step
+                    int offset = (random == null) ? RandomSource.nextInt(train.rowCount()) : random.nextInt(train.rowCount());
+                    for (int i = offset; i < train.rowCount() + offset; i++) {
+                        int pos = i;
+                        if (pos >= train.rowCount())
+                            pos -= train.rowCount();
+                        if (examineExample(pos)) {
+                            numChanged++;
+                        }
                     }
-                }
 
-            } else {
+                } else {
 
-                // This code implements Modification 1 from Keerthi et al.'s paper
-//                int offset = RandomSource.nextInt(train.rowCount());
-//                for (int i = offset; i < train.rowCount() + offset; i++) {
-//
-//                    int pos = i;
-//                    if (pos >= train.rowCount())
-//                        pos -= train.rowCount();
-//
-//                    if (alpha[pos] > 0 && alpha[pos] < C * weights.value(pos)) {
-//                        if (examineExample(pos)) {
-//                            numChanged++;
-//                        }
-////                        Is optimality on unbound vectors obtained?
-//                        if (bUp > bLow - 2 * m_tol) {
-//                            numChanged = 0;
-//                            break;
-//                        }
-//                    }
-//                }
-
-                //This is the code for Modification 2 from Keerthi et al.'s paper
-                boolean innerLoopSuccess = true;
-                numChanged = 0;
-                while ((bUp < bLow - 2 * m_tol) && innerLoopSuccess) {
-                    innerLoopSuccess = takeStep(iUp, iLow);
-                    if (innerLoopSuccess) {
-                        numChanged++;
+                    // This code implements Modification 1 from Keerthi et al.'s paper
+    //                int offset = RandomSource.nextInt(train.rowCount());
+    //                for (int i = offset; i < train.rowCount() + offset; i++) {
+    //
+    //                    int pos = i;
+    //                    if (pos >= train.rowCount())
+    //                        pos -= train.rowCount();
+    //
+    //                    if (alpha[pos] > 0 && alpha[pos] < C * weights.value(pos)) {
+    //                        if (examineExample(pos)) {
+    //                            numChanged++;
+    //                        }
+    ////                        Is optimality on unbound vectors obtained?
+    //                        if (bUp > bLow - 2 * m_tol) {
+    //                            numChanged = 0;
+    //                            break;
+    //                        }
+    //                    }
+    //                }
+
+                    //This is the code for Modification 2 from Keerthi et al.'s paper
+                    boolean innerLoopSuccess = true;
+                    numChanged = 0;
+                    while ((bUp < bLow - 2 * m_tol) && innerLoopSuccess) {
+                        innerLoopSuccess = takeStep(iUp, iLow);
+                        if (innerLoopSuccess) {
+                            numChanged++;
+                        }
                     }
                 }
-            }
 
-            if (examineAll) {
-                examineAll = false;
-            } else if (numChanged == 0) {
-                examineAll = true;
-            }
+                if (examineAll) {
+                    examineAll = false;
+                } else if (numChanged == 0) {
+                    examineAll = true;
+                }
 
-            if (runs == 0) {
-                break;
+                if (runs == 0) {
+                    break;
+                }
+                runs--;
             }
-            runs--;
-        }
 
-        // Set threshold
-        b = (bLow + bUp) / 2.0;
+            // Set threshold
+            b = (bLow + bUp) / 2.0;
+        }
 
         // Save memory
         kernel.clean();
+        cache = null;
+        sharedCache = null;
 
         fCache = null;
         I0 = I1 = I2 = I3 = I4 = null;
@@ -433,8 +593,9 @@ public class BinarySMO extends AbstractClassifier implements Serializable {
                 }
             }
         } else {
+            FeatureVector xr = FeatureVector.newFrom(df, row, varIndexes(df), sparse);
             for (int i = supportVectors.nextSetBit(0); i != -1; i = supportVectors.nextSetBit(i + 1)) {
-                result += target[i] * alpha[i] * kernel.eval(train, i, df, row);
+                result += target[i] * alpha[i] * kernel.eval(x[i], xr);
             }
         }
         result -= b;
@@ -442,6 +603,365 @@ public class BinarySMO extends AbstractClassifier implements Serializable {
         return result;
     }
 
+    /**
+     * Computes SVM output for a training instance, during learning. Uses the
+     * kernel row of the instance if it is cached.
+     */
+    protected double predictTrain(int row) {
+        if (kernel.isLinear()) {
+            return predict(train, row);
+        }
+        double result = 0;
+        double[] kernelRow = cache.cachedRow(row);
+        if (kernelRow != null) {
+            for (int i = supportVectors.nextSetBit(0); i != -1; i = supportVectors.nextSetBit(i + 1)) {
+                result += target[i] * alpha[i] * kernelRow[i];
+            }
+        } else {
+            for (int i = supportVectors.nextSetBit(0); i != -1; i = supportVectors.nextSetBit(i + 1)) {
+                result += target[i] * alpha[i] * (i == row ? cache.diagonal(i) : kernel.eval(x[i], x[row]));
+            }
+        }
+        return result - b;
+    }
+
+    private int[] varIndexes(Frame df) {
+        int[] indexes = new int[varNames.length];
+        for (int p = 0; p < varNames.length; p++) {
+            indexes[p] = df.varIndex(varNames[p]);
+        }
+        return indexes;
+    }
+
+    private FeatureVector[] featureVectors(Frame df) {
+        int[] indexes = varIndexes(df);
+        FeatureVector[] vectors = new FeatureVector[df.rowCount()];
+        for (int i = 0; i < df.rowCount(); i++) {
+            vectors[i] = FeatureVector.newFrom(df, i, indexes, sparse);
+        }
+        return vectors;
+    }
+
+
+    /**
+     * Solves the dual problem with second order working set selection,
+     * following Fan, Chen and Lin, "Working Set Selection Using Second Order
+     * Information for Training Support Vector Machines" (2005).
+     * <p>
+     * The dual is written as min 1/2 a'Qa - e'a, with Q_ij = y_i y_j K_ij,
+     * and the gradient is kept for all the active instances.
+     */
+    protected void solveWss3() {
+        int n = train.rowCount();
+        ci = new double[n];
+        grad = new double[n];
+        gradBar = new double[n];
+        active = new int[n];
+        for (int i = 0; i < n; i++) {
+            ci[i] = C * weights.value(i);
+            grad[i] = -1;
+            active[i] = i;
+        }
+        activeSize = n;
+        unshrink = false;
+
+        int[] pair = new int[2];
+        int counter = Math.min(n, 1000) + 1;
+        for (int run = 0; run < maxRuns; run++) {
+            if (shrinking && --counter == 0) {
+                counter = Math.min(n, 1000);
+                shrink();
+            }
+            if (!selectWorkingSet(pair)) {
+                // check optimality on all instances
+                reconstructGradient();
+                activeSize = n;
+                if (!selectWorkingSet(pair)) {
+                    break;
+                }
+                counter = 1;
+            }
+            updatePair(pair[0], pair[1]);
+        }
+        reconstructGradient();
+        activeSize = n;
+
+        // threshold is the middle of the violation interval, as with Keerthi's bLow and bUp
+        bUp = Double.MAX_VALUE;
+        bLow = -Double.MAX_VALUE;
+        for (int t = 0; t < n; t++) {
+            double f = target[t] * grad[t];
+            if (isUp(t)) {
+                bUp = Math.min(bUp, f);
+            }
+            if (isLow(t)) {
+                bLow = Math.max(bLow, f);
+            }
+        }
+        b = (bLow + bUp) / 2.0;
+
+        for (int t = 0; t < n; t++) {
+            supportVectors.set(t, alpha[t] > 0);
+        }
+        if (kernel.isLinear()) {
+            for (int t = supportVectors.nextSetBit(0); t != -1; t = supportVectors.nextSetBit(t + 1)) {
+                for (int p = 0; p < varNames.length; p++) {
+                    if (p != classIndex) {
+                        m_weights[p] += target[t] * alpha[t] * train.value(t, p);
+                    }
+                }
+            }
+        }
+
+        ci = null;
+        grad = null;
+        gradBar = null;
+        active = null;
+    }
+
+    // instance can move up, it belongs to I0, I1 or I2
+    private boolean isUp(int t) {
+        return (target[t] == 1) ? alpha[t] < ci[t] : alpha[t] > 0;
+    }
+
+    // instance can move down, it belongs to I0, I3 or I4
+    private boolean isLow(int t) {
+        return (target[t] == 1) ? alpha[t] > 0 : alpha[t] < ci[t];
+    }
+
+    /**
+     * Selects the maximal violating instance and the instance which, paired
+     * with it, gives the largest decrease of the objective.
+     *
+     * @return false if the active instances are optimal within tolerance
+     */
+    private boolean selectWorkingSet(int[] pair) {
+        double gMax = -Double.MAX_VALUE;
+        int iMax = -1;
+        for (int k = 0; k < activeSize; k++) {
+            int t = active[k];
+            if (isUp(t) && -target[t] * grad[t] >= gMax) {
+                gMax = -target[t] * grad[t];
+                iMax = t;
+            }
+        }
+        if (iMax == -1) {
+            return false;
+        }
+
+        double[] rowI = cache.row(iMax);
+        double kii = cache.diagonal(iMax);
+        double gMax2 = -Double.MAX_VALUE;
+        double objMin = Double.MAX_VALUE;
+        int jMin = -1;
+        for (int k = 0; k < activeSize; k++) {
+            int t = active[k];
+            if (!isLow(t)) {
+                continue;
+            }
+            double g = target[t] * grad[t];
+            gMax2 = Math.max(gMax2, g);
+            double gradDiff = gMax + g;
+            if (gradDiff > 0) {
+                double quad = kii + cache.diagonal(t) - 2 * rowI[t];
+                double obj = -gradDiff * gradDiff / (quad > 0 ? quad : TAU);
+                if (obj <= objMin) {
+                    objMin = obj;
+                    jMin = t;
+                }
+            }
+        }
+        if (gMax + gMax2 < 2 * m_tol || jMin == -1) {
+            return false;
+        }
+        pair[0] = iMax;
+        pair[1] = jMin;
+        return true;
+    }
+
+    /**
+     * Solves analytically the sub problem for two multipliers and updates
+     * the gradient of active instances.
+     */
+    private void updatePair(int i, int j) {
+        double[] rowI = cache.row(i);
+        double[] rowJ = cache.row(j);
+        double ci = this.ci[i];
+        double cj = this.ci[j];
+        double oldAi = alpha[i];
+        double oldAj = alpha[j];
+        double ai = oldAi;
+        double aj = oldAj;
+
+        double quad = cache.diagonal(i) + cache.diagonal(j) - 2 * rowI[j];
+        if (quad <= 0) {
+            quad = TAU;
+        }
+        if (target[i] != target[j]) {
+            double delta = (-grad[i] - grad[j]) / quad;
+            double diff = ai - aj;
+            ai += delta;
+            aj += delta;
+            if (diff > 0) {
+                if (aj < 0) {
+                    aj = 0;
+                    ai = diff;
+                }
+            } else {
+                if (ai < 0) {
+                    ai = 0;
+                    aj = -diff;
+                }
+            }
+            if (diff > ci - cj) {
+                if (ai > ci) {
+                    ai = ci;
+                    aj = ci - diff;
+                }
+            } else {
+                if (aj > cj) {
+                    aj = cj;
+                    ai = cj + diff;
+                }
+            }
+        } else {
+            double delta = (grad[i] - grad[j]) / quad;
+            double sum = ai + aj;
+            ai -= delta;
+            aj += delta;
+            if (sum > ci) {
+                if (ai > ci) {
+                    ai = ci;
+                    aj = sum - ci;
+                }
+            } else {
+                if (aj < 0) {
+                    aj = 0;
+                    ai = sum;
+                }
+            }
+            if (sum > cj) {
+                if (aj > cj) {
+                    aj = cj;
+                    ai = sum - cj;
+                }
+            } else {
+                if (ai < 0) {
+                    ai = 0;
+                    aj = sum;
+                }
+            }
+        }
+
+        // update gradient of active instances
+        double di = target[i] * (ai - oldAi);
+        double dj = target[j] * (aj - oldAj);
+        for (int k = 0; k < activeSize; k++) {
+            int t = active[k];
+            grad[t] += target[t] * (di * rowI[t] + dj * rowJ[t]);
+        }
+
+        boolean upperI = oldAi >= ci;
+        boolean upperJ = oldAj >= cj;
+        alpha[i] = ai;
+        alpha[j] = aj;
+
+        // update gradient part of multipliers at upper bound, for all instances
+        updateGradBar(i, rowI, upperI);
+        updateGradBar(j, rowJ, upperJ);
+    }
+
+    private void updateGradBar(int i, double[] rowI, boolean wasUpper) {
+        boolean upper = alpha[i] >= ci[i];
+        if (upper == wasUpper) {
+            return;
+        }
+        double factor = (upper ? 1 : -1) * ci[i] * target[i];
+        for (int t = 0; t < gradBar.length; t++) {
+            gradBar[t] += factor * target[t] * rowI[t];
+        }
+    }
+
+    /**
+     * Removes from the active set the instances at bounds which
+     * are not likely to change.
+     */
+    void shrink() {
+        double gMax1 = -Double.MAX_VALUE;
+        double gMax2 = -Double.MAX_VALUE;
+        for (int k = 0; k < activeSize; k++) {
+            int t = active[k];
+            double g = target[t] * grad[t];
+            if (isUp(t)) {
+                gMax1 = Math.max(gMax1, -g);
+            }
+            if (isLow(t)) {
+                gMax2 = Math.max(gMax2, g);
+            }
+        }
+        if (!unshrink && gMax1 + gMax2 <= 20 * m_tol) {
+            // close to optimum, the gradient of all instances is needed again
+            unshrink = true;
+            reconstructGradient();
+            activeSize = active.length;
+        }
+        for (int k = 0; k < activeSize; k++) {
+            if (!canShrink(active[k], gMax1, gMax2)) {
+                continue;
+            }
+            activeSize--;
+            while (activeSize > k) {
+                if (!canShrink(active[activeSize], gMax1, gMax2)) {
+                    int tmp = active[k];
+                    active[k] = active[activeSize];
+                    active[activeSize] = tmp;
+                    break;
+                }
+                activeSize--;
+            }
+        }
+    }
+
+    // same rule as be_shrunk from libsvm, written with the signed gradient y_t * G_t
+    private boolean canShrink(int t, double gMax1, double gMax2) {
+        double g = target[t] * grad[t];
+        boolean up = isUp(t);
+        boolean low = isLow(t);
+        if (up && !low) {
+            // can only move up, stays while it could still be selected as second index
+            return g > gMax2;
+        }
+        if (low && !up) {
+            // can only move down, stays while it could still be selected as first index
+            return -g > gMax1;
+        }
+        return false;
+    }
+
+    /**
+     * Computes the gradient of inactive instances from the gradient part
+     * of multipliers at upper bound and the free multipliers.
+     */
+    private void reconstructGradient() {
+        int n = active.length;
+        if (activeSize == n) {
+            return;
+        }
+        for (int k = activeSize; k < n; k++) {
+            int t = active[k];
+            grad[t] = gradBar[t] - 1;
+        }
+        for (int j = 0; j < n; j++) {
+            if (alpha[j] > 0 && alpha[j] < ci[j]) {
+                double[] rowJ = cache.row(j);
+                double factor = alpha[j] * target[j];
+                for (int k = activeSize; k < n; k++) {
+                    int t = active[k];
+                    grad[t] += factor * target[t] * rowJ[t];
+                }
+            }
+        }
+    }
 
     /**
      * Examines instance.
@@ -457,7 +977,7 @@ public class BinarySMO extends AbstractClassifier implements Serializable {
         if (I0.get(i2)) {
             F2 = fCache[i2];
         } else {
-            F2 = predict(train, i2) + b - y2;
+            F2 = predictTrain(i2) + b - y2;
             fCache[i2] = F2;
 
             // Update thresholds
@@ -547,10 +1067,13 @@ public class BinarySMO extends AbstractClassifier implements Serializable {
             return false;
         }
 
-        // Compute second derivative of objective function
-        double k11 = kernel.eval(train, i1, train, i1);
-        double k12 = kernel.eval(train, i1, train, i2);
-        double k22 = kernel.eval(train, i2, train, i2);
+        // Compute second derivative of objective function, rows of both
+        // instances are needed later to update the error cache
+        double[] row1 = cache.row(i1);
+        double[] row2 = cache.row(i2);
+        double k11 = cache.diagonal(i1);
+        double k12 = row1[i2];
+        double k22 = cache.diagonal(i2);
         double eta = 2 * k12 - k11 - k22;
 
         double a1, a2;
@@ -571,8 +1094,8 @@ public class BinarySMO extends AbstractClassifier implements Serializable {
         } else {
 
             // Look at endpoints of diagonal
-            double f1 = predict(train, i1);
-            double f2 = predict(train, i2);
+            double f1 = predictTrain(i1);
+            double f2 = predictTrain(i2);
             double v1 = f1 + b - y1 * alph1 * k11 - y2 * alph2 * k12;
             double v2 = f2 + b - y1 * alph1 * k12 - y2 * alph2 * k22;
             double gamma = alph1 + s * alph2;
@@ -690,9 +1213,7 @@ public class BinarySMO extends AbstractClassifier implements Serializable {
         // Update error cache using new Lagrange multipliers
         for (int j = I0.nextSetBit(0); j != -1; j = I0.nextSetBit(j + 1)) {
             if ((j != i1) && (j != i2)) {
-                fCache[j] +=
-                        y1 * (a1 - alph1) * kernel.eval(train, i1, train, j) +
-                                y2 * (a2 - alph2) * kernel.eval(train, i2, train, j);
+                fCache[j] += y1 * (a1 - alph1) * row1[j] + y2 * (a2 - alph2) * row2[j];
             }
         }
 
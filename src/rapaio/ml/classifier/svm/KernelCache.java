@@ -0,0 +1,217 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.classifier.svm;
+
+import rapaio.ml.classifier.svm.kernel.FeatureVector;
+import rapaio.ml.classifier.svm.kernel.Kernel;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Bounded cache of kernel matrix rows, with least recently used eviction.
+ * <p>
+ * Rows are computed in bulk from the feature vectors of the examples,
+ * extracted once in dense or sparse form. The size of the cache is given in megabytes, as in libsvm,
+ * but at least two rows are kept, which are the rows needed by an SMO step.
+ * The diagonal of the kernel matrix is always kept.
+ * <p>
+ * The cache can be shared between threads. Caches of subsets of examples
+ * can be built over a parent cache, as for the binary problems of a
+ * multi-class machine.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class KernelCache implements Serializable {
+
+    private static final int PARALLEL_THRESHOLD = 4_096;
+
+    private final Kernel kernel;
+    private final FeatureVector[] x;
+    private final double[] diagonal;
+    private final int capacity;
+    private final LinkedHashMap<Integer, double[]> rows;
+    private final KernelCache parent;
+    private final int[] parentRows;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * @param kernel kernel already built with the feature names
+     * @param x      feature vectors of examples
+     * @param sizeMB maximum size of cached rows, in megabytes
+     */
+    public KernelCache(Kernel kernel, FeatureVector[] x, double sizeMB) {
+        this(kernel, x, null, null, sizeMB);
+    }
+
+    /**
+     * Builds a cache for a subset of the examples of a parent cache. Rows of the
+     * subset are gathered from rows of the parent cache, thus the kernel values
+     * are computed once for all the subsets which share the parent.
+     *
+     * @param parent     cache of all the examples
+     * @param parentRows indexes in the parent cache of the examples of the subset
+     * @param sizeMB     maximum size of cached rows of the subset, in megabytes
+     */
+    public KernelCache(KernelCache parent, int[] parentRows, double sizeMB) {
+        this(parent.kernel, subset(parent.x, parentRows), parent, parentRows, sizeMB);
+    }
+
+    private KernelCache(Kernel kernel, FeatureVector[] x, KernelCache parent, int[] parentRows, double sizeMB) {
+        this.kernel = kernel;
+        this.x = x;
+        this.parent = parent;
+        this.parentRows = parentRows;
+        this.diagonal = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            diagonal[i] = (parent == null) ? kernel.eval(x[i], x[i]) : parent.diagonal[parentRows[i]];
+        }
+        long rowBytes = 8L * Math.max(1, x.length);
+        this.capacity = (int) Math.max(2, Math.min(x.length, (long) (sizeMB * 1024 * 1024) / rowBytes));
+        this.rows = new LinkedHashMap<Integer, double[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, double[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    private static FeatureVector[] subset(FeatureVector[] x, int[] rows) {
+        FeatureVector[] result = new FeatureVector[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            result[i] = x[rows[i]];
+        }
+        return result;
+    }
+
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * @return feature vectors of examples
+     */
+    public FeatureVector[] getX() {
+        return x;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return kernel value of the example with itself
+     */
+    public double diagonal(int i) {
+        return diagonal[i];
+    }
+
+    /**
+     * Returns the row of kernel values between the given example and all
+     * the examples. The returned row must not be modified.
+     */
+    public double[] row(int i) {
+        synchronized (rows) {
+            double[] row = rows.get(i);
+            if (row != null) {
+                hits++;
+                return row;
+            }
+            misses++;
+        }
+        double[] row = computeRow(i);
+        synchronized (rows) {
+            rows.put(i, row);
+        }
+        return row;
+    }
+
+    /**
+     * Returns the row of kernel values of the given example if it is cached,
+     * without computing it, null otherwise. The returned row must not be modified.
+     */
+    public double[] cachedRow(int i) {
+        synchronized (rows) {
+            double[] row = rows.get(i);
+            if (row != null) {
+                hits++;
+            }
+            return row;
+        }
+    }
+
+    /**
+     * Evaluates the kernel for two examples, from a cached row if there is one.
+     */
+    public double eval(int i, int j) {
+        if (i == j) {
+            return diagonal[i];
+        }
+        synchronized (rows) {
+            double[] row = rows.get(i);
+            if (row == null) {
+                row = rows.get(j);
+                if (row != null) {
+                    return row[i];
+                }
+            } else {
+                return row[j];
+            }
+        }
+        if (parent != null) {
+            return parent.eval(parentRows[i], parentRows[j]);
+        }
+        return kernel.eval(x[i], x[j]);
+    }
+
+    private double[] computeRow(int i) {
+        double[] row = new double[x.length];
+        if (parent != null) {
+            double[] parentRow = parent.row(parentRows[i]);
+            for (int j = 0; j < x.length; j++) {
+                row[j] = parentRow[parentRows[j]];
+            }
+            return row;
+        }
+        FeatureVector xi = x[i];
+        if (x.length < PARALLEL_THRESHOLD) {
+            for (int j = 0; j < x.length; j++) {
+                row[j] = kernel.eval(xi, x[j]);
+            }
+        } else {
+            IntStream.range(0, x.length).parallel().forEach(j -> row[j] = kernel.eval(xi, x[j]));
+        }
+        row[i] = diagonal[i];
+        return row;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+}
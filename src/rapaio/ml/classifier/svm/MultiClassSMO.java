@@ -0,0 +1,395 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.classifier.svm;
+
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.data.Nominal;
+import rapaio.data.SolidFrame;
+import rapaio.data.Var;
+import rapaio.data.VarRange;
+import rapaio.ml.classifier.AbstractClassifier;
+import rapaio.ml.classifier.CResult;
+import rapaio.ml.classifier.svm.kernel.FeatureVector;
+import rapaio.ml.classifier.svm.kernel.Kernel;
+import rapaio.ml.common.VarSelector;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Multi-class support vector machine built from binary machines.
+ * <p>
+ * The binary machines are copies of a {@link BinarySMO} template and are learned
+ * concurrently. All of them use a kernel cache built on all the learning rows,
+ * thus a kernel row is computed once even if more machines need it.
+ * <p>
+ * Prediction evaluates the kernel once for each support vector of any machine,
+ * and the outputs of all machines are computed from those values.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class MultiClassSMO extends AbstractClassifier implements Serializable {
+
+    /**
+     * How the multi-class problem is decomposed in binary problems.
+     */
+    public enum Strategy {
+        /**
+         * One machine for each pair of classes, the predicted class
+         * is the one with most votes.
+         */
+        ONE_VS_ONE,
+        /**
+         * One machine for each class against all the other classes, the
+         * predicted class is the one with the largest output.
+         */
+        ONE_VS_REST
+    }
+
+    private static final int PREDICT_BLOCK_SIZE = 1_024;
+
+    // parameters
+
+    private BinarySMO binary = new BinarySMO();
+    private Strategy strategy = Strategy.ONE_VS_ONE;
+    private double cacheSize = 200;
+    private Long seed = null;
+
+    // model artifacts
+
+    private String[] varNames;
+    private List<BinarySMO> machines;
+    private int[] negative; // class of negative output of each machine, -1 for rest
+    private int[] positive; // class of positive output of each machine
+    private FeatureVector[] supportVectors; // support vectors of all machines
+    private int[][] svIndexes; // indexes in support vectors of each machine
+    private double[][] svCoefficients; // coefficients of support vectors of each machine
+
+    @Override
+    public MultiClassSMO newInstance() {
+        return new MultiClassSMO()
+                .withBinarySMO(binary.newInstance())
+                .withStrategy(strategy)
+                .withCacheSize(cacheSize)
+                .withSeed(seed);
+    }
+
+    @Override
+    public String name() {
+        return "MultiClassSMO";
+    }
+
+    @Override
+    public String fullName() {
+        return String.format("MultiClassSMO (strategy: %s, kernel: %s, C: %s)",
+                strategy.name(), binary.kernel.getClass().getSimpleName(), String.valueOf(binary.C));
+    }
+
+    /**
+     * Template of binary machines. Kernel, complexity, tolerance and
+     * solver options are copied from it; the classes are set for each machine.
+     */
+    public MultiClassSMO withBinarySMO(BinarySMO binary) {
+        this.binary = binary;
+        return this;
+    }
+
+    public MultiClassSMO withStrategy(Strategy strategy) {
+        this.strategy = strategy;
+        return this;
+    }
+
+    /**
+     * Total size of kernel row caches used during learning, in megabytes.
+     * <p>
+     * Half of it is used by the cache of rows on all instances, shared by the binary
+     * machines. The other half is split evenly between the binary machines, each of
+     * them keeping the rows of its own subset of instances. Since each cache keeps at
+     * least two rows, for very small sizes the memory used can be larger, by at
+     * most two rows for each cache.
+     */
+    public MultiClassSMO withCacheSize(double cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    /**
+     * Specifies the seed from which the seeds of binary machines are drawn,
+     * thus the model does not depend on the order the machines are learned.
+     *
+     * @param seed master seed, null if the seed is drawn from {@link RandomSource}
+     * @return self instance
+     */
+    public MultiClassSMO withSeed(Long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public List<BinarySMO> getMachines() {
+        return machines;
+    }
+
+    @Override
+    public void learn(Frame df, Var weights, String... targetVarNames) {
+
+        List<String> targetVarsList = new VarRange(targetVarNames).parseVarNames(df);
+        if (targetVarsList.size() != 1) {
+            throw new IllegalArgumentException("Multi-class SMO can learn only one target variable");
+        }
+        this.targetNames = targetVarsList.toArray(new String[targetVarsList.size()]);
+        this.dict = Arrays.stream(targetNames).collect(Collectors.toMap(s -> s, s -> df.var(s).dictionary()));
+
+        this.varSelector = new VarSelector.Standard();
+        this.varSelector.initialize(df, new VarRange(targetVarNames));
+        this.varNames = varSelector.nextVarNames();
+
+        // classes which appear in data
+
+        Var target = df.var(firstTargetName());
+        int[] counts = new int[firstDictionary().length];
+        for (int i = 0; i < df.rowCount(); i++) {
+            counts[target.index(i)]++;
+        }
+        List<Integer> classes = new ArrayList<>();
+        for (int i = 1; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                classes.add(i);
+            }
+        }
+        if (classes.size() < 2) {
+            throw new IllegalArgumentException("Multi-class SMO needs at least two classes in data");
+        }
+
+        List<Integer> negativeList = new ArrayList<>();
+        List<Integer> positiveList = new ArrayList<>();
+        if (strategy == Strategy.ONE_VS_ONE) {
+            for (int i = 0; i < classes.size(); i++) {
+                for (int j = i + 1; j < classes.size(); j++) {
+                    negativeList.add(classes.get(i));
+                    positiveList.add(classes.get(j));
+                }
+            }
+        } else {
+            for (int c : classes) {
+                negativeList.add(-1);
+                positiveList.add(c);
+            }
+        }
+        negative = negativeList.stream().mapToInt(x -> x).toArray();
+        positive = positiveList.stream().mapToInt(x -> x).toArray();
+
+        // kernel cache on all rows, shared by binary machines
+
+        Kernel kernel = binary.kernel;
+        kernel.buildKernel(varNames);
+        int[] indexes = Arrays.stream(varNames).mapToInt(df::varIndex).toArray();
+        FeatureVector[] x = new FeatureVector[df.rowCount()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = FeatureVector.newFrom(df, i, indexes, binary.sparse);
+        }
+        KernelCache cache = new KernelCache(kernel, x, cacheSize / 2);
+        double machineCacheSize = cacheSize / 2 / positive.length;
+
+        // seeds are drawn sequentially, thus results does not depend on threads
+
+        Random random = RandomSource.newRandom(seed == null ? RandomSource.nextLong() : seed);
+        BinarySMO[] smos = new BinarySMO[positive.length];
+        for (int m = 0; m < smos.length; m++) {
+            smos[m] = binary.newInstance().withSeed(random.nextLong())
+                    .withCacheSize(machineCacheSize).withSharedCache(cache);
+        }
+        IntStream.range(0, smos.length).parallel().forEach(m -> {
+            if (negative[m] == -1) {
+                smos[m].withClassIndexes(1, 2);
+                smos[m].learn(oneVsRestFrame(df, positive[m]), weights, firstTargetName());
+            } else {
+                smos[m].withClassIndexes(negative[m], positive[m]);
+                smos[m].learn(df, weights, firstTargetName());
+            }
+        });
+        machines = Arrays.asList(smos);
+
+        if (!kernel.isLinear()) {
+            collectSupportVectors(x);
+        }
+    }
+
+    /**
+     * Builds a frame with the same columns, where the target has
+     * the label of the given class and a label for all the other classes.
+     */
+    private Frame oneVsRestFrame(Frame df, int cl) {
+        String label = firstDictionary()[cl];
+        String rest = "rest".equals(label) ? "~rest" : "rest";
+        Var target = df.var(firstTargetName());
+        Nominal binaryTarget = Nominal.newEmpty(df.rowCount(), rest, label).withName(firstTargetName());
+        for (int i = 0; i < df.rowCount(); i++) {
+            if (target.missing(i)) {
+                binaryTarget.setMissing(i);
+            } else {
+                binaryTarget.setLabel(i, target.index(i) == cl ? label : rest);
+            }
+        }
+        List<Var> vars = new ArrayList<>();
+        for (String varName : df.varNames()) {
+            vars.add(varName.equals(firstTargetName()) ? binaryTarget : df.var(varName));
+        }
+        return SolidFrame.newWrapOf(df.rowCount(), vars);
+    }
+
+    /**
+     * Collects support vectors of all machines, each of them once,
+     * and the coefficients of support vectors of each machine.
+     */
+    private void collectSupportVectors(FeatureVector[] x) {
+        int[] position = new int[x.length];
+        Arrays.fill(position, -1);
+        List<FeatureVector> vectors = new ArrayList<>();
+        svIndexes = new int[machines.size()][];
+        svCoefficients = new double[machines.size()][];
+        for (int m = 0; m < machines.size(); m++) {
+            BinarySMO smo = machines.get(m);
+            int count = smo.supportVectors.cardinality();
+            svIndexes[m] = new int[count];
+            svCoefficients[m] = new double[count];
+            int pos = 0;
+            for (int i = smo.supportVectors.nextSetBit(0); i != -1; i = smo.supportVectors.nextSetBit(i + 1)) {
+                int row = smo.trainRows[i];
+                if (position[row] == -1) {
+                    position[row] = vectors.size();
+                    vectors.add(x[row]);
+                }
+                svIndexes[m][pos] = position[row];
+                svCoefficients[m][pos] = smo.target[i] * smo.alpha[i];
+                pos++;
+            }
+        }
+        supportVectors = vectors.toArray(new FeatureVector[vectors.size()]);
+    }
+
+    @Override
+    public CResult predict(Frame df, boolean withClasses, boolean withDistributions) {
+        CResult cr = CResult.newEmpty(this, df, withClasses, withDistributions);
+        cr.addTarget(firstTargetName(), firstDictionary());
+
+        // outputs of all machines are computed on blocks of rows,
+        // blocks being independent are processed concurrently
+
+        int n = df.rowCount();
+        int len = machines.size();
+        double[] outputs = new double[n * len];
+        int blocks = (n + PREDICT_BLOCK_SIZE - 1) / PREDICT_BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int start = b * PREDICT_BLOCK_SIZE;
+            int end = Math.min(n, start + PREDICT_BLOCK_SIZE);
+            if (supportVectors == null) {
+                for (int i = start; i < end; i++) {
+                    for (int m = 0; m < len; m++) {
+                        outputs[i * len + m] = machines.get(m).predict(df, i);
+                    }
+                }
+                return;
+            }
+            int[] indexes = Arrays.stream(varNames).mapToInt(df::varIndex).toArray();
+            Kernel kernel = binary.kernel;
+            double[] values = new double[supportVectors.length];
+            for (int i = start; i < end; i++) {
+                FeatureVector xr = FeatureVector.newFrom(df, i, indexes, binary.sparse);
+                for (int s = 0; s < supportVectors.length; s++) {
+                    values[s] = kernel.eval(supportVectors[s], xr);
+                }
+                for (int m = 0; m < len; m++) {
+                    double result = 0;
+                    int[] sv = svIndexes[m];
+                    double[] coef = svCoefficients[m];
+                    for (int s = 0; s < sv.length; s++) {
+                        result += coef[s] * values[sv[s]];
+                    }
+                    outputs[i * len + m] = result - machines.get(m).b;
+                }
+            }
+        });
+
+        double[] votes = new double[firstDictionary().length];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(votes, 0);
+            if (strategy == Strategy.ONE_VS_ONE) {
+                // same decision rule as binary machines
+                for (int m = 0; m < len; m++) {
+                    votes[outputs[i * len + m] < 0 ? negative[m] : positive[m]] += 1.0 / len;
+                }
+            } else {
+                int best = 0;
+                for (int m = 1; m < len; m++) {
+                    if (outputs[i * len + m] > outputs[i * len + best]) {
+                        best = m;
+                    }
+                }
+                votes[positive[best]] = 1;
+            }
+            int prediction = 0;
+            for (int j = 1; j < votes.length; j++) {
+                if (votes[j] > votes[prediction]) {
+                    prediction = j;
+                }
+            }
+            if (withClasses) {
+                cr.firstClasses().setIndex(i, prediction);
+            }
+            if (withDistributions) {
+                for (int j = 0; j < votes.length; j++) {
+                    cr.firstDensity().setValue(i, j, votes[j]);
+                }
+            }
+        }
+        return cr;
+    }
+
+    @Override
+    public void buildSummary(StringBuilder sb) {
+        if (machines == null) {
+            sb.append("MultiClassSMO: No model built yet.\n");
+            return;
+        }
+        sb.append("MultiClassSMO\n\n");
+        sb.append("Strategy: ").append(strategy.name()).append("\n");
+        sb.append("Kernel: ").append(binary.kernel.getClass().getSimpleName()).append("\n");
+        sb.append("Number of binary machines: ").append(machines.size()).append("\n");
+        if (supportVectors != null) {
+            sb.append("Number of support vectors: ").append(supportVectors.length).append("\n");
+        }
+        sb.append("\n");
+        for (int m = 0; m < machines.size(); m++) {
+            sb.append(negative[m] == -1 ? "rest" : firstDictionary()[negative[m]])
+                    .append(" vs ").append(firstDictionary()[positive[m]]);
+            if (svIndexes != null) {
+                sb.append(": ").append(svIndexes[m].length).append(" support vectors");
+            }
+            sb.append("\n");
+        }
+    }
+}
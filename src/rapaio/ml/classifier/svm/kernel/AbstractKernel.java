@@ -50,8 +50,21 @@ public abstract class AbstractKernel implements Kernel {
     protected double deltaDotProd(Frame df1, int row1, Frame df2, int row2) {
         double result = 0;
         for (String varName : varNames) {
-            result += Math.pow(df1.value(row1, varName) - df2.value(row2, varName), 2);
+            double delta = df1.value(row1, varName) - df2.value(row2, varName);
+            result += delta * delta;
         }
         return result;
     }
+
+    protected double dotProd(FeatureVector x1, FeatureVector x2) {
+        return x1.dot(x2);
+    }
+
+    /**
+     * Squared distance computed from the precomputed squared norms and a single
+     * dot product, since ||x-y||^2 = ||x||^2 + ||y||^2 - 2<x,y>.
+     */
+    protected double deltaDotProd(FeatureVector x1, FeatureVector x2) {
+        return Math.max(0, x1.norm2() + x2.norm2() - 2 * x1.dot(x2));
+    }
 }
@@ -41,4 +41,13 @@ public class CircularKernel extends AbstractKernel {
         double f = dot / sigma;
         return 2 * (Math.acos(-f) - f * Math.sqrt(1 - f * f)) / Math.PI;
     }
+
+    @Override
+    public double eval(FeatureVector x1, FeatureVector x2) {
+        double dot = deltaDotProd(x1, x2);
+        if (dot < sigma)
+            return 0;
+        double f = dot / sigma;
+        return 2 * (Math.acos(-f) - f * Math.sqrt(1 - f * f)) / Math.PI;
+    }
 }
@@ -49,4 +49,10 @@ public class ExponentialKernel extends AbstractKernel {
         double value = deltaDotProd(df1, row1, df2, row2);
         return 1.0 / Math.pow(Math.E, factor * value);
     }
+
+    @Override
+    public double eval(FeatureVector x1, FeatureVector x2) {
+        double value = deltaDotProd(x1, x2);
+        return 1.0 / Math.pow(Math.E, factor * value);
+    }
 }
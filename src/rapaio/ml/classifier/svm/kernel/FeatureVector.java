@@ -0,0 +1,240 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.classifier.svm.kernel;
+
+import rapaio.data.Frame;
+
+import java.io.Serializable;
+
+/**
+ * Feature vector of an instance, extracted from a frame for kernel evaluation.
+ * <p>
+ * Vectors are stored either dense, as an array of values, or sparse, as sorted
+ * indexes of non zero values and their values. The squared norm is computed
+ * once, when the vector is built.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public interface FeatureVector extends Serializable {
+
+    static FeatureVector newDense(double[] values) {
+        return new Dense(values);
+    }
+
+    /**
+     * Builds a sparse vector from sorted indexes and their values.
+     */
+    static FeatureVector newSparse(int[] indexes, double[] values) {
+        if (indexes.length != values.length) {
+            throw new IllegalArgumentException("indexes and values must have the same length");
+        }
+        return new Sparse(indexes, values);
+    }
+
+    /**
+     * Builds a feature vector from the values of given columns of a row.
+     *
+     * @param df         frame
+     * @param row        row of the instance
+     * @param varIndexes indexes of frame columns used as features
+     * @param sparse     if the vector keeps only non zero values
+     */
+    static FeatureVector newFrom(Frame df, int row, int[] varIndexes, boolean sparse) {
+        double[] values = new double[varIndexes.length];
+        int count = 0;
+        for (int i = 0; i < varIndexes.length; i++) {
+            values[i] = df.value(row, varIndexes[i]);
+            if (values[i] != 0) {
+                count++;
+            }
+        }
+        if (!sparse) {
+            return new Dense(values);
+        }
+        int[] sparseIndexes = new int[count];
+        double[] sparseValues = new double[count];
+        int pos = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                sparseIndexes[pos] = i;
+                sparseValues[pos] = values[i];
+                pos++;
+            }
+        }
+        return new Sparse(sparseIndexes, sparseValues);
+    }
+
+    /**
+     * @return number of stored values
+     */
+    int size();
+
+    /**
+     * @return squared euclidean norm
+     */
+    double norm2();
+
+    /**
+     * @return dot product with the other vector
+     */
+    double dot(FeatureVector other);
+
+    /**
+     * @return squared euclidean distance to the other vector
+     */
+    double deltaDot(FeatureVector other);
+
+    final class Dense implements FeatureVector {
+
+        private final double[] values;
+        private final double norm2;
+
+        private Dense(double[] values) {
+            this.values = values;
+            double sum = 0;
+            for (double value : values) {
+                sum += value * value;
+            }
+            this.norm2 = sum;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public double norm2() {
+            return norm2;
+        }
+
+        @Override
+        public double dot(FeatureVector other) {
+            if (other instanceof Sparse) {
+                return other.dot(this);
+            }
+            double[] v = ((Dense) other).values;
+            double result = 0;
+            for (int i = 0; i < values.length; i++) {
+                result += values[i] * v[i];
+            }
+            return result;
+        }
+
+        @Override
+        public double deltaDot(FeatureVector other) {
+            if (other instanceof Sparse) {
+                return other.deltaDot(this);
+            }
+            double[] v = ((Dense) other).values;
+            double result = 0;
+            for (int i = 0; i < values.length; i++) {
+                double delta = values[i] - v[i];
+                result += delta * delta;
+            }
+            return result;
+        }
+    }
+
+    final class Sparse implements FeatureVector {
+
+        private final int[] indexes;
+        private final double[] values;
+        private final double norm2;
+
+        private Sparse(int[] indexes, double[] values) {
+            this.indexes = indexes;
+            this.values = values;
+            double sum = 0;
+            for (double value : values) {
+                sum += value * value;
+            }
+            this.norm2 = sum;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public double norm2() {
+            return norm2;
+        }
+
+        @Override
+        public double dot(FeatureVector other) {
+            double result = 0;
+            if (other instanceof Dense) {
+                double[] v = ((Dense) other).values;
+                for (int i = 0; i < indexes.length; i++) {
+                    result += values[i] * v[indexes[i]];
+                }
+                return result;
+            }
+            Sparse s = (Sparse) other;
+            int i = 0;
+            int j = 0;
+            while (i < indexes.length && j < s.indexes.length) {
+                if (indexes[i] == s.indexes[j]) {
+                    result += values[i++] * s.values[j++];
+                } else if (indexes[i] < s.indexes[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public double deltaDot(FeatureVector other) {
+            double result = 0;
+            if (other instanceof Dense) {
+                double[] v = ((Dense) other).values;
+                int p = 0;
+                for (int i = 0; i < v.length; i++) {
+                    double delta = v[i];
+                    if (p < indexes.length && indexes[p] == i) {
+                        delta -= values[p++];
+                    }
+                    result += delta * delta;
+                }
+                return result;
+            }
+            Sparse s = (Sparse) other;
+            int i = 0;
+            int j = 0;
+            while (i < indexes.length || j < s.indexes.length) {
+                double delta;
+                if (j == s.indexes.length || (i < indexes.length && indexes[i] < s.indexes[j])) {
+                    delta = values[i++];
+                } else if (i == indexes.length || s.indexes[j] < indexes[i]) {
+                    delta = s.values[j++];
+                } else {
+                    delta = values[i++] - s.values[j++];
+                }
+                result += delta * delta;
+            }
+            return result;
+        }
+    }
+}
@@ -33,6 +33,12 @@ public interface Kernel {
 
     double eval(Frame df1, int row1, Frame df2, int row2);
 
+    /**
+     * Evaluates the kernel on feature vectors, with features
+     * given in the order of the var names the kernel was built with.
+     */
+    double eval(FeatureVector x1, FeatureVector x2);
+
     default void clean() {
     }
 }
@@ -38,4 +38,10 @@ public class MultiQuadraticKernel extends AbstractKernel {
         double dot = deltaDotProd(df1, row1, df2, row2);
         return Math.sqrt(dot * dot + c * c);
     }
+
+    @Override
+    public double eval(FeatureVector x1, FeatureVector x2) {
+        double dot = deltaDotProd(x1, x2);
+        return Math.sqrt(dot * dot + c * c);
+    }
 }
@@ -64,4 +64,18 @@ public class PolyKernel extends AbstractKernel {
         }
         return result;
     }
+
+    @Override
+    public double eval(FeatureVector x1, FeatureVector x2) {
+
+        if (varNames == null) {
+            throw new IllegalArgumentException("This kernel is not build with var names");
+        }
+
+        double result = dotProd(x1, x2);
+        if (exponent != 1.0) {
+            result = Math.pow(slope * result + bias, exponent);
+        }
+        return result;
+    }
 }
\ No newline at end of file
@@ -37,4 +37,9 @@ public class PowerKernel extends AbstractKernel {
     public double eval(Frame df1, int row1, Frame df2, int row2) {
         return -Math.pow(deltaDotProd(df1, row1, df2, row2), degree);
     }
+
+    @Override
+    public double eval(FeatureVector x1, FeatureVector x2) {
+        return -Math.pow(deltaDotProd(x1, x2), degree);
+    }
 }
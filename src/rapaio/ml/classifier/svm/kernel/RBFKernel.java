@@ -54,4 +54,10 @@ public class RBFKernel extends AbstractKernel {
         double value = deltaDotProd(df1, row1, df2, row2);
         return 1.0 / Math.pow(Math.E, factor * value * value);
     }
+
+    @Override
+    public double eval(FeatureVector x1, FeatureVector x2) {
+        double value = deltaDotProd(x1, x2);
+        return 1.0 / Math.pow(Math.E, factor * value * value);
+    }
 }
@@ -39,4 +39,11 @@ public class RationalQuadraticKernel extends AbstractKernel {
         double square = dot * dot;
         return 1.0 - square / (square + c);
     }
+
+    @Override
+    public double eval(FeatureVector x1, FeatureVector x2) {
+        double dot = deltaDotProd(x1, x2);
+        double square = dot * dot;
+        return 1.0 - square / (square + c);
+    }
 }
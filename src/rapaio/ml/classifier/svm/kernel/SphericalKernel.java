@@ -41,4 +41,13 @@ public class SphericalKernel extends AbstractKernel {
         double f = dot / sigma;
         return 1 - 3 * f / 2 + Math.pow(f, 3) / 2;
     }
+
+    @Override
+    public double eval(FeatureVector x1, FeatureVector x2) {
+        double dot = deltaDotProd(x1, x2);
+        if (dot < sigma)
+            return 0;
+        double f = dot / sigma;
+        return 1 - 3 * f / 2 + Math.pow(f, 3) / 2;
+    }
 }
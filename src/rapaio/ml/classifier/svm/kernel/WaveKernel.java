@@ -44,4 +44,10 @@ public class WaveKernel extends AbstractKernel {
         double dot = dotProd(df1, row1, df2, row2);
         return theta * Math.sin(dot / theta) / dot;
     }
+
+    @Override
+    public double eval(FeatureVector x1, FeatureVector x2) {
+        double dot = dotProd(x1, x2);
+        return theta * Math.sin(dot / theta) / dot;
+    }
 }
@@ -104,6 +104,18 @@ public final class DensityTable implements Serializable {
         }
     }
 
+    public String[] testLabels() {
+        return testLabels;
+    }
+
+    public String[] targetLabels() {
+        return targetLabels;
+    }
+
+    public double get(int row, int col) {
+        return values[row][col];
+    }
+
     public void reset() {
         for (double[] line : values) Arrays.fill(line, 0, line.length, 0);
     }
@@ -0,0 +1,206 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.classifier.tools;
+
+/**
+ * Density table for binary splits evaluated incrementally, as in the scan of
+ * sorted values of a numeric test. The table has three rows as in
+ * {@link DensityTable#NUMERIC_DEFAULT_LABELS}: missing, less-equals and greater.
+ * Instances are moved from greater to less-equals with {@link #move(int, double)}
+ * and split criteria are evaluated in O(classes) time, without allocations,
+ * using a precomputed table of logarithms for integer frequencies.
+ * <p>
+ * Criteria are computed as {@link DensityTable} does, without using the missing row.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public final class RunningDensityTable {
+
+    private static final double LN2 = Math.log(2);
+    private static final int LOG_TABLE_SIZE = 1 << 16;
+    private static final double[] LOG_TABLE = new double[LOG_TABLE_SIZE];
+
+    static {
+        LOG_TABLE[0] = Double.NEGATIVE_INFINITY;
+        for (int i = 1; i < LOG_TABLE_SIZE; i++) {
+            LOG_TABLE[i] = Math.log(i);
+        }
+    }
+
+    private final String[] targetLabels;
+    private final double[] missing;
+    private final double[] left;
+    private final double[] right;
+
+    public RunningDensityTable(String[] targetLabels) {
+        this.targetLabels = targetLabels;
+        this.missing = new double[targetLabels.length];
+        this.left = new double[targetLabels.length];
+        this.right = new double[targetLabels.length];
+    }
+
+    public String[] targetLabels() {
+        return targetLabels;
+    }
+
+    /**
+     * Updates frequencies of a row with the given weight
+     *
+     * @param row    0 for missing, 1 for less-equals, 2 for greater
+     * @param col    target index
+     * @param weight weight of the update
+     */
+    public void update(int row, int col, double weight) {
+        switch (row) {
+            case 0:
+                missing[col] += weight;
+                break;
+            case 1:
+                left[col] += weight;
+                break;
+            default:
+                right[col] += weight;
+        }
+    }
+
+    /**
+     * Moves weight of the given target index from greater row to less-equals row.
+     *
+     * @param col    target index
+     * @param weight moved weight
+     */
+    public void move(int col, double weight) {
+        right[col] -= weight;
+        left[col] += weight;
+    }
+
+    public double get(int row, int col) {
+        return row == 0 ? missing[col] : (row == 1 ? left[col] : right[col]);
+    }
+
+    private static double log(double x) {
+        int n = (int) x;
+        if (n == x && n < LOG_TABLE_SIZE) {
+            return LOG_TABLE[n];
+        }
+        return Math.log(x);
+    }
+
+    private static double xlogx(double x) {
+        return (x > 0) ? x * log(x) : 0;
+    }
+
+    public double getTargetEntropy() {
+        double total = 0;
+        double sum = 0;
+        for (int j = 1; j < targetLabels.length; j++) {
+            double t = left[j] + right[j];
+            total += t;
+            sum += xlogx(t);
+        }
+        if (total <= 0) {
+            return 0;
+        }
+        return (log(total) - sum / total) / LN2;
+    }
+
+    public double getSplitEntropy() {
+        double leftTotal = left[0];
+        double rightTotal = right[0];
+        double leftSum = 0;
+        double rightSum = 0;
+        double leftLog = 0;
+        double rightLog = 0;
+        for (int j = 1; j < targetLabels.length; j++) {
+            leftTotal += left[j];
+            rightTotal += right[j];
+            leftSum += left[j];
+            rightSum += right[j];
+            leftLog += xlogx(left[j]);
+            rightLog += xlogx(right[j]);
+        }
+        double total = leftTotal + rightTotal;
+        if (total <= 0) {
+            return 0;
+        }
+        double gain = 0;
+        if (leftSum > 0) {
+            gain += leftSum * log(leftTotal) - leftLog;
+        }
+        if (rightSum > 0) {
+            gain += rightSum * log(rightTotal) - rightLog;
+        }
+        return gain / (total * LN2);
+    }
+
+    public double getInfoGain() {
+        return getTargetEntropy() - getSplitEntropy();
+    }
+
+    public double getSplitInfo() {
+        double leftTotal = 0;
+        double rightTotal = 0;
+        for (int j = 1; j < targetLabels.length; j++) {
+            leftTotal += left[j];
+            rightTotal += right[j];
+        }
+        double total = leftTotal + rightTotal;
+        if (total <= 0) {
+            return 0;
+        }
+        return (log(total) - (xlogx(leftTotal) + xlogx(rightTotal)) / total) / LN2;
+    }
+
+    public double getGainRatio() {
+        return getInfoGain() / getSplitInfo();
+    }
+
+    public double getGiniIndex() {
+        double leftTotal = left[0];
+        double rightTotal = right[0];
+        double leftSquares = 0;
+        double rightSquares = 0;
+        double targetTotal = 0;
+        double targetSquares = 0;
+        for (int j = 1; j < targetLabels.length; j++) {
+            leftTotal += left[j];
+            rightTotal += right[j];
+            leftSquares += left[j] * left[j];
+            rightSquares += right[j] * right[j];
+            double t = left[j] + right[j];
+            targetTotal += t;
+            targetSquares += t * t;
+        }
+        double testTotal = leftTotal + rightTotal;
+
+        double gini = 1;
+        if (targetTotal != 0) {
+            gini -= targetSquares / (targetTotal * targetTotal);
+        }
+        if (testTotal != 0) {
+            double leftGini = (leftTotal != 0) ? 1 - leftSquares / (leftTotal * leftTotal) : 1;
+            double rightGini = (rightTotal != 0) ? 1 - rightSquares / (rightTotal * rightTotal) : 1;
+            gini -= leftGini * leftTotal / testTotal;
+            gini -= rightGini * rightTotal / testTotal;
+        }
+        return gini;
+    }
+}
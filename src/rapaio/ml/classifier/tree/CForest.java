@@ -20,8 +20,10 @@
 
 package rapaio.ml.classifier.tree;
 
+import rapaio.core.RandomSource;
 import rapaio.core.sample.Sampling;
 import rapaio.data.*;
+import rapaio.data.stream.FSpot;
 import rapaio.ml.classifier.AbstractClassifier;
 import rapaio.ml.classifier.CResult;
 import rapaio.ml.classifier.Classifier;
@@ -29,15 +31,16 @@ import rapaio.ml.classifier.RunningClassifier;
 import rapaio.ml.classifier.tools.DensityVector;
 import rapaio.ml.classifier.tree.ctree.CTree;
 import rapaio.ml.common.VarSelector;
-import rapaio.ml.eval.ConfusionMatrix;
 import rapaio.util.Pair;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
 import java.util.stream.IntStream;
 
 /**
@@ -49,11 +52,14 @@ public class CForest extends AbstractClassifier implements RunningClassifier {
     boolean oobCompute = false;
     Classifier c = CTree.newC45();
     double sampling = 1;
+    boolean weightedBootstrap = false;
     BaggingMethod baggingMethod = BaggingMethods.VOTING;
+    Long seed = null;
     //
-    double totalOobInstances = 0;
-    double totalOobError = 0;
+    Random random;
+    double[][] oobVotes;
     double oobError = Double.NaN;
+    transient CResult oobPrediction;
     List<Classifier> predictors = new ArrayList<>();
 
     public static CForest buildRandomForest(int runs, int mcols, double sampling) {
@@ -99,7 +105,9 @@ public class CForest extends AbstractClassifier implements RunningClassifier {
                 .withRuns(runs)
                 .withBaggingMethod(baggingMethod)
                 .withSampling(sampling)
+                .withWeightedBootstrap(weightedBootstrap)
                 .withOobError(oobCompute)
+                .withSeed(seed)
                 .withClassifier(c);
     }
 
@@ -145,6 +153,36 @@ public class CForest extends AbstractClassifier implements RunningClassifier {
         return oobError;
     }
 
+    /**
+     * Returns the out of bag prediction for the rows of the learning frame,
+     * each row being predicted only by the weak predictors which does not
+     * contain that row in their bootstrap sample. Rows which were in bag for
+     * all weak predictors have missing class and zero densities.
+     *
+     * @return out of bag prediction, or null if out of bag was not computed
+     */
+    public CResult getOobPrediction() {
+        return oobPrediction;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Specifies the master seed of the forest. Each weak predictor gets
+     * its own random stream derived from the master seed, thus the forest
+     * learned on the same data is the same regardless of the number of
+     * threads used.
+     *
+     * @param seed master seed, null if the seed is drawn from {@link RandomSource}
+     * @return self instance
+     */
+    public CForest withSeed(Long seed) {
+        this.seed = seed;
+        return this;
+    }
+
     public CForest withSampling(double sampling) {
         this.sampling = sampling;
         return this;
@@ -154,6 +192,24 @@ public class CForest extends AbstractClassifier implements RunningClassifier {
         return sampling;
     }
 
+    public boolean getWeightedBootstrap() {
+        return weightedBootstrap;
+    }
+
+    /**
+     * Specifies how bootstrap samples are given to weak predictors. If false,
+     * rows sampled multiple times are repeated in the sample frame. If true,
+     * each in bag row appears once in the sample frame, with its weight
+     * multiplied by the number of times it was sampled.
+     *
+     * @param weightedBootstrap true for unique in bag rows with multiplicity weights
+     * @return self instance
+     */
+    public CForest withWeightedBootstrap(boolean weightedBootstrap) {
+        this.weightedBootstrap = weightedBootstrap;
+        return this;
+    }
+
     public BaggingMethod getBaggingMethod() {
         return baggingMethod;
     }
@@ -172,44 +228,55 @@ public class CForest extends AbstractClassifier implements RunningClassifier {
         return this;
     }
 
-    public Pair<List<Frame>, List<Var>> produceSamples(Frame df, Var weights) {
-        List<Frame> frames = new ArrayList<>();
-        List<Var> weightsList = new ArrayList<>();
-
+    /**
+     * Draws the bootstrap multiplicities of a sample, which is the number of times
+     * each row is in bag. Rows with zero counts are out of bag. If sampling is
+     * disabled all rows are in bag once.
+     *
+     * @param rowCount number of rows
+     * @param random   random stream used to draw the sample
+     * @return in bag counts for each row
+     */
+    public int[] produceInBagCounts(int rowCount, Random random) {
+        int[] counts = new int[rowCount];
         if (sampling <= 0) {
             // no sampling
-            frames.add(df.stream().toMappedFrame());
-            frames.add(MappedFrame.newByRow(df));
-
-            weightsList.add(weights);
-            weightsList.add(Numeric.newEmpty());
-
-            return new Pair<>(frames, weightsList);
+            Arrays.fill(counts, 1);
+            return counts;
         }
+        for (int row : Sampling.sampleWR((int) (rowCount * sampling), rowCount, random)) {
+            counts[row]++;
+        }
+        return counts;
+    }
 
+    /**
+     * Builds the in bag sample frame and weights, as specified by in bag counts.
+     * If weighted bootstrap is used, the in bag rows are not repeated, their
+     * counts being used as multipliers for their weights.
+     *
+     * @param df      learning frame
+     * @param weights learning weights
+     * @param counts  in bag counts for each row
+     * @return in bag frame and weights
+     */
+    public Pair<Frame, Var> produceSample(Frame df, Var weights, int[] counts) {
         Mapping train = Mapping.newEmpty();
-        Mapping oob = Mapping.newEmpty();
-
-        weightsList.add(Numeric.newEmpty());
-        weightsList.add(Numeric.newEmpty());
-
-        int[] sample = Sampling.sampleWR((int) (df.rowCount() * sampling), df.rowCount());
-        HashSet<Integer> rows = new HashSet<>();
-        for (int row : sample) {
-            rows.add(row);
-            train.add(row);
-            weightsList.get(0).addValue(weights.value(row));
-        }
-        for (int i = 0; i < df.rowCount(); i++) {
-            if (rows.contains(i)) continue;
-            oob.add(i);
-            weightsList.get(1).addValue(weights.value(i));
+        Numeric trainWeights = Numeric.newEmpty();
+        for (int row = 0; row < counts.length; row++) {
+            if (weightedBootstrap) {
+                if (counts[row] > 0) {
+                    train.add(row);
+                    trainWeights.addValue(weights.value(row) * counts[row]);
+                }
+                continue;
+            }
+            for (int j = 0; j < counts[row]; j++) {
+                train.add(row);
+                trainWeights.addValue(weights.value(row));
+            }
         }
-
-        frames.add(MappedFrame.newByRow(df, train));
-        frames.add(MappedFrame.newByRow(df, oob));
-
-        return new Pair<>(frames, weightsList);
+        return new Pair<>(MappedFrame.newByRow(df, train), trainWeights);
     }
 
     @Override
@@ -224,15 +291,11 @@ public class CForest extends AbstractClassifier implements RunningClassifier {
         this.dict.put(firstTargetName(), df.var(firstTargetName()).dictionary());
 
         predictors.clear();
+        random = RandomSource.newRandom(seed == null ? RandomSource.nextLong() : seed);
+        oobVotes = oobCompute ? new double[df.rowCount()][firstDictionary().length] : null;
 
-        totalOobInstances = 0;
-        totalOobError = 0;
-
-        IntStream.range(0, runs).parallel().forEach(s -> buildWeakPredictor(df, weights));
-
-        if (oobCompute) {
-            oobError = totalOobError / totalOobInstances;
-        }
+        buildWeakPredictors(df, weights, runs);
+        computeOob(df);
     }
 
     @Override
@@ -240,32 +303,152 @@ public class CForest extends AbstractClassifier implements RunningClassifier {
 
         if (this.targetNames != null && dict != null) {
             this.runs += additionalRuns;
+            if (oobVotes != null && oobVotes.length != df.rowCount()) {
+                // out of bag votes are meaningful only on the same learning frame
+                oobVotes = null;
+            }
         } else {
             this.runs = additionalRuns;
             learn(df, targetVars);
             return;
         }
-        IntStream.range(0, runs).parallel().forEach(s -> buildWeakPredictor(df, weights));
+        buildWeakPredictors(df, weights, additionalRuns);
+        computeOob(df);
+    }
+
+    private void buildWeakPredictors(Frame df, Var weights, int count) {
+
+        // seeds are drawn sequentially from the master stream and the weak predictors
+        // are added in the order of the seeds, thus results does not depend on threads
+
+        long[] seeds = new long[count];
+        for (int i = 0; i < count; i++) {
+            seeds[i] = random.nextLong();
+        }
+        Classifier[] weaks = new Classifier[count];
+        IntStream.range(0, count).parallel().forEach(s -> weaks[s] = buildWeakPredictor(df, weights, seeds[s]));
+        predictors.addAll(Arrays.asList(weaks));
     }
 
-    private void buildWeakPredictor(Frame df, Var weights) {
+    private Classifier buildWeakPredictor(Frame df, Var weights, long seed) {
+        Random weakRandom = RandomSource.newRandom(seed);
+
         Classifier weak = c.newInstance();
-        weak.withVarSelector(varSelector);
+        weak.withVarSelector(varSelector.newInstance());
+        if (weak instanceof CTree) {
+            ((CTree) weak).withSeed(weakRandom.nextLong());
+        }
 
-        Pair<List<Frame>, List<Var>> ss = produceSamples(df, weights);
+        int[] counts = produceInBagCounts(df.rowCount(), weakRandom);
+        Pair<Frame, Var> sample = produceSample(df, weights, counts);
+
+        weak.learn(sample.first, sample.second, firstTargetName());
+        if (oobCompute && oobVotes != null) {
+            updateOobVotes(df, weak, counts);
+        }
+        return weak;
+    }
+
+    /**
+     * Adds the votes of a weak predictor for its out of bag rows. Tree predictors
+     * score the out of bag rows one by one on the learning frame, other predictors
+     * predict a frame mapped on those rows. Each row of the vote matrix is updated
+     * under its own lock, thus weak predictors built concurrently rarely contend.
+     */
+    private void updateOobVotes(Frame df, Classifier weak, int[] counts) {
+        int classes = firstDictionary().length;
+        double[] votes = new double[classes];
+        if (weak instanceof CTree) {
+            CTree tree = (CTree) weak;
+            for (int row = 0; row < counts.length; row++) {
+                if (counts[row] == 0) {
+                    DensityVector density = tree.predictDensity(new FSpot(df, row));
+                    addOobVotes(row, density::get, votes);
+                }
+            }
+            return;
+        }
+
+        Mapping oob = Mapping.newEmpty();
+        for (int row = 0; row < counts.length; row++) {
+            if (counts[row] == 0) {
+                oob.add(row);
+            }
+        }
+        if (oob.size() == 0) {
+            return;
+        }
+        Frame density = weak.predict(df.mapRows(oob), false, true).firstDensity();
+        for (int i = 0; i < oob.size(); i++) {
+            final int pos = i;
+            addOobVotes(oob.get(i), j -> density.value(pos, j), votes);
+        }
+    }
 
-        weak.learn(ss.first.get(0), ss.second.get(0), firstTargetName());
-        if (oobCompute) {
-            CResult cp = weak.predict(ss.first.get(1));
-            double oobError = new ConfusionMatrix(ss.first.get(1).var(firstTargetName()), cp.firstClasses()).errorCases();
-            synchronized (this) {
-                totalOobInstances += ss.first.get(1).rowCount();
-                totalOobError += oobError;
+    private void addOobVotes(int row, IntToDoubleFunction density, double[] votes) {
+        int classes = votes.length;
+        if (baggingMethod == BaggingMethods.VOTING) {
+            int best = 1;
+            for (int j = 2; j < classes; j++) {
+                if (density.applyAsDouble(j) > density.applyAsDouble(best)) {
+                    best = j;
+                }
+            }
+            Arrays.fill(votes, 0);
+            votes[best] = 1;
+        } else {
+            double t = 0;
+            for (int j = 0; j < classes; j++) {
+                votes[j] = density.applyAsDouble(j);
+                t += votes[j];
+            }
+            for (int j = 0; j < classes; j++) {
+                votes[j] = (t == 0) ? 0 : votes[j] / t;
+            }
+        }
+        double[] rowVotes = oobVotes[row];
+        synchronized (rowVotes) {
+            for (int j = 0; j < classes; j++) {
+                rowVotes[j] += votes[j];
             }
         }
-        synchronized (this) {
-            predictors.add(weak);
+    }
+
+    private void computeOob(Frame df) {
+        if (!oobCompute || oobVotes == null || oobVotes.length != df.rowCount()) {
+            oobError = Double.NaN;
+            oobPrediction = null;
+            return;
+        }
+        oobPrediction = CResult.newEmpty(this, df, true, true);
+        oobPrediction.addTarget(firstTargetName(), firstDictionary());
+
+        Var target = df.var(firstTargetName());
+        int count = 0;
+        int errors = 0;
+        for (int i = 0; i < oobVotes.length; i++) {
+            double t = 0;
+            int best = 0;
+            for (int j = 1; j < oobVotes[i].length; j++) {
+                t += oobVotes[i][j];
+                if (oobVotes[i][j] > oobVotes[i][best]) {
+                    best = j;
+                }
+            }
+            if (t == 0) {
+                oobPrediction.firstClasses().setMissing(i);
+                continue;
+            }
+            for (int j = 0; j < oobVotes[i].length; j++) {
+                oobPrediction.firstDensity().setValue(i, j, oobVotes[i][j] / t);
+            }
+            oobPrediction.firstClasses().setIndex(i, best);
+            count++;
+            if (best != target.index(i)) {
+                errors++;
+            }
         }
+        oobError = (count == 0) ? Double.NaN : errors / (double) count;
     }
 
     @Override
@@ -20,9 +20,11 @@
 
 package rapaio.ml.classifier.tree.ctree;
 
+import rapaio.core.RandomSource;
 import rapaio.data.Frame;
 import rapaio.data.Var;
 import rapaio.data.VarRange;
+import rapaio.data.stream.FSpot;
 import rapaio.ml.classifier.AbstractClassifier;
 import rapaio.ml.classifier.CResult;
 import rapaio.ml.classifier.tools.DensityVector;
@@ -50,6 +52,10 @@ public class CTree extends AbstractClassifier {
     CTreeSplitter splitter = new CTreeSplitter.RemainsIgnored();
     CTreePredictor predictor = new CTreePredictor.Standard();
 
+    // seed of the random stream used at learning time,
+    // if not specified it is drawn from RandomSource
+    Long seed = null;
+
     // tree root node
     private CTreeNode root;
     private int rows;
@@ -108,6 +114,7 @@ public class CTree extends AbstractClassifier {
                 .withFunction(function.newInstance())
                 .withSplitter(splitter.newInstance())
                 .withPredictor(predictor.newInstance())
+                .withSeed(seed)
                 .withVarSelector(varSelector.newInstance());
     }
 
@@ -193,6 +200,23 @@ public class CTree extends AbstractClassifier {
         return this;
     }
 
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Specifies the seed of the random stream used for variable selection,
+     * tie breaks and random splits. Trees learned with the same seed on
+     * the same data are identical, regardless of the number of threads used.
+     *
+     * @param seed random seed, null if the seed is drawn from {@link RandomSource}
+     * @return self instance
+     */
+    public CTree withSeed(Long seed) {
+        this.seed = seed;
+        return this;
+    }
+
     @Override
     public String name() {
         return "TreeClassifier";
@@ -233,7 +257,7 @@ public class CTree extends AbstractClassifier {
         testCounter.initialize(df, firstTargetName());
 
         root = new CTreeNode(null, "root", spot -> true);
-        root.learn(this, df, weights, maxDepth);
+        root.learn(this, df, weights, maxDepth, RandomSource.newRandom(seed == null ? RandomSource.nextLong() : seed));
     }
 
     @Override
@@ -254,6 +278,16 @@ public class CTree extends AbstractClassifier {
         return prediction;
     }
 
+    /**
+     * Predicts the class densities of a single row, without building a prediction result.
+     *
+     * @param spot row to predict
+     * @return class densities, indexed as the target dictionary
+     */
+    public DensityVector predictDensity(FSpot spot) {
+        return predictor.predict(this, spot, root).second;
+    }
+
     @Override
     public void buildSummary(StringBuilder sb) {
         sb.append("> ").append(fullName()).append("\n");
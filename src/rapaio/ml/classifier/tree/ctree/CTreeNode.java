@@ -20,10 +20,12 @@
 
 package rapaio.ml.classifier.tree.ctree;
 
+import rapaio.core.RandomSource;
 import rapaio.data.Frame;
 import rapaio.data.Numeric;
 import rapaio.data.Var;
 import rapaio.data.stream.FSpot;
+import rapaio.ml.classifier.tools.DensityTable;
 import rapaio.ml.classifier.tools.DensityVector;
 import rapaio.util.Pair;
 
@@ -32,7 +34,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Random;
 import java.util.function.Predicate;
 import java.util.stream.IntStream;
 
@@ -94,7 +96,7 @@ public class CTreeNode implements Serializable {
         return bestCandidate;
     }
 
-    public void learn(CTree tree, Frame df, Var weights, int depth) {
+    public void learn(CTree tree, Frame df, Var weights, int depth, Random random) {
         density = new DensityVector(df.var(tree.firstTargetName()), weights);
         counter = new DensityVector(df.var(tree.firstTargetName()), Numeric.newFill(df.rowCount(), 1));
         bestIndex = density.findBestIndex();
@@ -107,25 +109,51 @@ public class CTreeNode implements Serializable {
             return;
         }
 
-        List<CTreeCandidate> candidateList = new ArrayList<>();
         tree.getVarSelector().initialize(df, null);
+        String[] testCols = tree.getVarSelector().nextVarNames(random);
+
+        // each test has its own random stream and its own slot for candidates,
+        // so that the outcome does not depend on the order of the parallel execution
+
+        long[] testSeeds = new long[testCols.length];
+        for (int i = 0; i < testSeeds.length; i++) {
+            testSeeds[i] = random.nextLong();
+        }
 
-        ConcurrentLinkedQueue<CTreeCandidate> candidates = new ConcurrentLinkedQueue<>();
-        Arrays.stream(tree.getVarSelector().nextVarNames()).parallel().forEach(testCol -> {
+        // count tables for all nominal tests are built in a single pass over rows
+
+        int[] nominalPos = new int[testCols.length];
+        List<String> nominalCols = new ArrayList<>();
+        for (int i = 0; i < testCols.length; i++) {
+            nominalPos[i] = -1;
+            if (testCols[i].equals(tree.firstTargetName()) || !tree.testCounter.canUse(testCols[i]))
+                continue;
+            if (!df.var(testCols[i]).type().isNumeric() && !(tree.getNominalMethod() instanceof CTreeNominalMethod.Ignore)) {
+                nominalPos[i] = nominalCols.size();
+                nominalCols.add(testCols[i]);
+            }
+        }
+        Pair<DensityTable[], DensityTable[]> tables = CTreeNominalMethod.buildTables(
+                df, weights, nominalCols.toArray(new String[nominalCols.size()]), tree.firstTargetName());
+
+        List<List<CTreeCandidate>> candidates = new ArrayList<>(Collections.nCopies(testCols.length, Collections.emptyList()));
+        IntStream.range(0, testCols.length).parallel().forEach(i -> {
+            String testCol = testCols[i];
             if (testCol.equals(tree.firstTargetName())) return;
             if (!tree.testCounter.canUse(testCol)) return;
 
+            Random testRandom = RandomSource.newRandom(testSeeds[i]);
             if (df.var(testCol).type().isNumeric()) {
-                tree.getNumericMethod().computeCandidates(
-                        tree, df, weights, testCol, tree.firstTargetName(), tree.getFunction())
-                        .forEach(candidates::add);
-            } else {
-                tree.getNominalMethod().computeCandidates(
-                        tree, df, weights, testCol, tree.firstTargetName(), tree.getFunction())
-                        .forEach(candidates::add);
+                candidates.set(i, tree.getNumericMethod().computeCandidates(
+                        tree, df, weights, testCol, tree.firstTargetName(), tree.getFunction(), testRandom));
+            } else if (nominalPos[i] >= 0) {
+                candidates.set(i, tree.getNominalMethod().computeCandidates(
+                        tree, testCol, df.var(testCol).dictionary(),
+                        tables.first[nominalPos[i]], tables.second[nominalPos[i]], tree.getFunction(), testRandom));
             }
         });
-        candidateList.addAll(candidates);
+        List<CTreeCandidate> candidateList = new ArrayList<>();
+        candidates.forEach(candidateList::addAll);
         Collections.sort(candidateList);
 
         if (candidateList.isEmpty()) {
@@ -143,14 +171,14 @@ public class CTreeNode implements Serializable {
             return;
         }
 
-        Pair<List<Frame>, List<Numeric>> frames = tree.getSplitter().performSplit(df, weights, bestCandidate);
+        Pair<List<Frame>, List<Numeric>> frames = tree.getSplitter().performSplit(df, weights, bestCandidate, random);
 
-        IntStream.range(0, frames.first.size()).parallel().forEach(i -> {
-            CTreeNode child = new CTreeNode(this, bestCandidate.getGroupNames().get(i), bestCandidate.getGroupPredicates().get(i));
-            synchronized (children) {
-                children.add(child);
-            }
-            child.learn(tree, frames.first.get(i), frames.second.get(i), depth - 1);
-        });
+        long[] childSeeds = new long[frames.first.size()];
+        for (int i = 0; i < frames.first.size(); i++) {
+            children.add(new CTreeNode(this, bestCandidate.getGroupNames().get(i), bestCandidate.getGroupPredicates().get(i)));
+            childSeeds[i] = random.nextLong();
+        }
+        IntStream.range(0, frames.first.size()).parallel().forEach(i ->
+                children.get(i).learn(tree, frames.first.get(i), frames.second.get(i), depth - 1, RandomSource.newRandom(childSeeds[i])));
     }
 }
@@ -20,14 +20,18 @@
 
 package rapaio.ml.classifier.tree.ctree;
 
-import rapaio.core.RandomSource;
 import rapaio.data.Frame;
 import rapaio.data.Var;
+import rapaio.data.stream.FSpot;
 import rapaio.ml.classifier.tools.DensityTable;
+import rapaio.util.Pair;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
 
 /**
  * Created by <a href="mailto:padreati@yahoo.com>Aurelian Tutuianu</a>.
@@ -38,7 +42,121 @@ public interface CTreeNominalMethod extends Serializable {
 
     CTreeNominalMethod newInstance();
 
-    List<CTreeCandidate> computeCandidates(CTree c, Frame df, Var weights, String testColName, String targetColName, CTreeTestFunction function);
+    /**
+     * Computes split candidates for a nominal test variable. The count and density tables
+     * of the test variable against the target variable are built in advance, in a single
+     * pass over the node rows for all the nominal test variables.
+     *
+     * @param c           tree classifier
+     * @param testColName test variable name
+     * @param testDict    test variable dictionary
+     * @param counts      table with counts of instances
+     * @param density     table with weights of instances
+     * @param function    test function
+     * @param random      random stream used for tie breaks
+     * @return split candidates
+     */
+    List<CTreeCandidate> computeCandidates(CTree c, String testColName, String[] testDict,
+                                           DensityTable counts, DensityTable density, CTreeTestFunction function, Random random);
+
+    /**
+     * Builds the count and density tables for all the given nominal test variables
+     * in a single pass over the frame rows.
+     *
+     * @param df            frame with instances
+     * @param weights       instance weights
+     * @param testColNames  nominal test variable names
+     * @param targetColName target variable name
+     * @return pair of count tables and density tables, indexed as the test variables
+     */
+    static Pair<DensityTable[], DensityTable[]> buildTables(Frame df, Var weights, String[] testColNames, String targetColName) {
+        Var target = df.var(targetColName);
+        Var[] tests = new Var[testColNames.length];
+        double[][][] counts = new double[testColNames.length][][];
+        double[][][] densities = new double[testColNames.length][][];
+        int targetLen = target.dictionary().length;
+        for (int k = 0; k < tests.length; k++) {
+            tests[k] = df.var(testColNames[k]);
+            counts[k] = new double[tests[k].dictionary().length][targetLen];
+            densities[k] = new double[tests[k].dictionary().length][targetLen];
+        }
+        for (int row = 0; row < df.rowCount(); row++) {
+            int targetIndex = target.index(row);
+            double w = weights.value(row);
+            for (int k = 0; k < tests.length; k++) {
+                int testIndex = tests[k].index(row);
+                counts[k][testIndex][targetIndex]++;
+                densities[k][testIndex][targetIndex] += w;
+            }
+        }
+        DensityTable[] countTables = new DensityTable[tests.length];
+        DensityTable[] densityTables = new DensityTable[tests.length];
+        for (int k = 0; k < tests.length; k++) {
+            countTables[k] = new DensityTable(tests[k].dictionary(), target.dictionary());
+            densityTables[k] = new DensityTable(tests[k].dictionary(), target.dictionary());
+            for (int i = 0; i < counts[k].length; i++) {
+                for (int j = 0; j < targetLen; j++) {
+                    countTables[k].update(i, j, counts[k][i][j]);
+                    densityTables[k].update(i, j, densities[k][i][j]);
+                }
+            }
+        }
+        return new Pair<>(countTables, densityTables);
+    }
+
+    /**
+     * Builds a predicate which tests if the nominal value is (or is not) the given level.
+     *
+     * @param testColName test variable name
+     * @param testDict    test variable dictionary at learning time
+     * @param index       level index
+     * @param equal       if true tests equality, otherwise tests inequality
+     * @return predicate
+     */
+    static Predicate<FSpot> levelPredicate(String testColName, String[] testDict, int index, boolean equal) {
+        return new LevelPredicate(testColName, testDict[index], equal);
+    }
+
+    /**
+     * Predicate which compares int codes of a nominal variable with the code of a level.
+     * The code is looked up in the dictionary of the tested variable only when the
+     * variable instance changes, thus once per frame and not once per row, which also
+     * handles frames with a different level order than at learning time.
+     */
+    final class LevelPredicate implements Predicate<FSpot> {
+
+        private final String testColName;
+        private final String label;
+        private final boolean equal;
+        private volatile LevelCode cache;
+
+        LevelPredicate(String testColName, String label, boolean equal) {
+            this.testColName = testColName;
+            this.label = label;
+            this.equal = equal;
+        }
+
+        @Override
+        public boolean test(FSpot spot) {
+            Var var = spot.getFrame().var(testColName);
+            LevelCode code = cache;
+            if (code == null || code.var != var) {
+                code = new LevelCode(var, Arrays.asList(var.dictionary()).indexOf(label));
+                cache = code;
+            }
+            return (var.index(spot.row()) == code.code) == equal;
+        }
+
+        private static final class LevelCode {
+            private final Var var;
+            private final int code;
+
+            LevelCode(Var var, int code) {
+                this.var = var;
+                this.code = code;
+            }
+        }
+    }
 
     public static class Ignore implements CTreeNominalMethod {
         @Override
@@ -52,7 +170,8 @@ public interface CTreeNominalMethod extends Serializable {
         }
 
         @Override
-        public List<CTreeCandidate> computeCandidates(CTree c, Frame df, Var weights, String testColName, String targetColName, CTreeTestFunction function) {
+        public List<CTreeCandidate> computeCandidates(CTree c, String testColName, String[] testDict,
+                                                      DensityTable counts, DensityTable density, CTreeTestFunction function, Random random) {
             return new ArrayList<>();
         }
     };
@@ -69,25 +188,21 @@ public interface CTreeNominalMethod extends Serializable {
         }
 
         @Override
-        public List<CTreeCandidate> computeCandidates(CTree c, Frame df, Var weights, String testColName, String targetColName, CTreeTestFunction function) {
+        public List<CTreeCandidate> computeCandidates(CTree c, String testColName, String[] testDict,
+                                                      DensityTable counts, DensityTable density, CTreeTestFunction function, Random random) {
             List<CTreeCandidate> result = new ArrayList<>();
-            Var test = df.var(testColName);
-            Var target = df.var(targetColName);
 
-            if (new DensityTable(test, target).countWithMinimum(false, c.getMinCount()) < 2) {
+            if (counts.countWithMinimum(false, c.getMinCount()) < 2) {
                 return result;
             }
 
-            DensityTable dt = new DensityTable(test, target, weights);
-            double value = function.compute(dt);
+            double value = function.compute(density);
 
             CTreeCandidate candidate = new CTreeCandidate(value, function.sign(), testColName);
-            for (int i = 1; i < test.dictionary().length; i++) {
-
-                final String label = test.dictionary()[i];
+            for (int i = 1; i < testDict.length; i++) {
                 candidate.addGroup(
-                        String.format("%s == %s", testColName, label),
-                        spot -> !spot.missing(testColName) && spot.label(testColName).equals(label));
+                        String.format("%s == %s", testColName, testDict[i]),
+                        levelPredicate(testColName, testDict, i, true));
             }
 
             result.add(candidate);
@@ -108,34 +223,44 @@ public interface CTreeNominalMethod extends Serializable {
         }
 
         @Override
-        public List<CTreeCandidate> computeCandidates(CTree c, Frame df, Var weights, String testColName, String targetColName, CTreeTestFunction function) {
+        public List<CTreeCandidate> computeCandidates(CTree c, String testColName, String[] testDict,
+                                                      DensityTable counts, DensityTable density, CTreeTestFunction function, Random random) {
 
             List<CTreeCandidate> result = new ArrayList<>();
-            CTreeCandidate best = null;
-            for (int i = 1; i < df.var(testColName).dictionary().length; i++) {
-                Var test = df.var(testColName);
-                Var target = df.var(targetColName);
-                String testLabel = df.var(testColName).dictionary()[i];
+            if (counts.countWithMinimum(false, c.getMinCount()) < 2) {
+                return result;
+            }
 
-                if (new DensityTable(test, target).countWithMinimum(false, c.getMinCount()) < 2) {
-                    return result;
+            // totals of non missing rows, used to build the "other" row of each binary split
+
+            String[] targetDict = density.targetLabels();
+            double[] totals = new double[targetDict.length];
+            for (int i = 1; i < testDict.length; i++) {
+                for (int j = 0; j < targetDict.length; j++) {
+                    totals[j] += density.get(i, j);
                 }
+            }
 
-                DensityTable dt = new DensityTable(test, target, weights, testLabel);
+            CTreeCandidate best = null;
+            for (int i = 1; i < testDict.length; i++) {
+                String testLabel = testDict[i];
+
+                DensityTable dt = new DensityTable(new String[]{"?", testLabel, "other"}, targetDict);
+                for (int j = 0; j < targetDict.length; j++) {
+                    dt.update(0, j, density.get(0, j));
+                    dt.update(1, j, density.get(i, j));
+                    dt.update(2, j, totals[j] - density.get(i, j));
+                }
                 double value = function.compute(dt);
                 CTreeCandidate candidate = new CTreeCandidate(value, function.sign(), testColName);
-                if (best == null) {
-                    best = candidate;
-                    best.addGroup(testColName + " == " + testLabel, spot -> spot.label(testColName).equals(testLabel));
-                    best.addGroup(testColName + " != " + testLabel, spot -> !spot.label(testColName).equals(testLabel));
-                } else {
+                if (best != null) {
                     int comp = best.compareTo(candidate);
                     if (comp < 0) continue;
-                    if (comp == 0 && RandomSource.nextDouble() > 0.5) continue;
-                    best = candidate;
-                    best.addGroup(testColName + " == " + testLabel, spot -> spot.label(testColName).equals(testLabel));
-                    best.addGroup(testColName + " != " + testLabel, spot -> !spot.label(testColName).equals(testLabel));
+                    if (comp == 0 && random.nextDouble() > 0.5) continue;
                 }
+                best = candidate;
+                best.addGroup(testColName + " == " + testLabel, levelPredicate(testColName, testDict, i, true));
+                best.addGroup(testColName + " != " + testLabel, levelPredicate(testColName, testDict, i, false));
             }
             if (best != null)
                 result.add(best);
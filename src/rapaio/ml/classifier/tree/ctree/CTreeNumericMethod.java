@@ -20,17 +20,17 @@
 
 package rapaio.ml.classifier.tree.ctree;
 
-import rapaio.core.RandomSource;
 import rapaio.data.Frame;
 import rapaio.data.Index;
 import rapaio.data.RowComparators;
 import rapaio.data.Var;
 import rapaio.data.filter.var.VFRefSort;
-import rapaio.ml.classifier.tools.DensityTable;
+import rapaio.ml.classifier.tools.RunningDensityTable;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by <a href="mailto:padreati@yahoo.com>Aurelian Tutuianu</a>.
@@ -41,7 +41,7 @@ public interface CTreeNumericMethod extends Serializable {
 
     CTreeNumericMethod newInstance();
 
-    List<CTreeCandidate> computeCandidates(CTree c, Frame df, Var weights, String testColName, String targetColName, CTreeTestFunction function);
+    List<CTreeCandidate> computeCandidates(CTree c, Frame df, Var weights, String testColName, String targetColName, CTreeTestFunction function, Random random);
 
     public static class Ignore implements CTreeNumericMethod {
         @Override
@@ -55,7 +55,7 @@ public interface CTreeNumericMethod extends Serializable {
         }
 
         @Override
-        public List<CTreeCandidate> computeCandidates(CTree c, Frame df, Var weights, String testColName, String targetColName, CTreeTestFunction function) {
+        public List<CTreeCandidate> computeCandidates(CTree c, Frame df, Var weights, String testColName, String targetColName, CTreeTestFunction function, Random random) {
             return new ArrayList<>();
         }
     }
@@ -75,11 +75,11 @@ public interface CTreeNumericMethod extends Serializable {
         }
 
         @Override
-        public List<CTreeCandidate> computeCandidates(CTree c, Frame df, Var weights, String testColName, String targetColName, CTreeTestFunction function) {
+        public List<CTreeCandidate> computeCandidates(CTree c, Frame df, Var weights, String testColName, String targetColName, CTreeTestFunction function, Random random) {
             Var test = df.var(testColName);
             Var target = df.var(targetColName);
 
-            DensityTable dt = new DensityTable(DensityTable.NUMERIC_DEFAULT_LABELS, target.dictionary());
+            RunningDensityTable dt = new RunningDensityTable(target.dictionary());
             int misCount = 0;
             for (int i = 0; i < df.rowCount(); i++) {
                 int row = (test.missing(i)) ? 0 : 2;
@@ -96,8 +96,7 @@ public interface CTreeNumericMethod extends Serializable {
 
                 if (test.missing(row)) continue;
 
-                dt.update(2, target.index(row), -weights.value(row));
-                dt.update(1, target.index(row), +weights.value(row));
+                dt.move(target.index(row), weights.value(row));
 
                 if (i >= misCount + c.getMinCount() - 1 &&
                         i < df.rowCount() - c.getMinCount() &&
@@ -117,7 +116,7 @@ public interface CTreeNumericMethod extends Serializable {
                     } else {
                         int comp = best.compareTo(current);
                         if (comp < 0) continue;
-                        if (comp == 0 && RandomSource.nextDouble() > 0.5) continue;
+                        if (comp == 0 && random.nextDouble() > 0.5) continue;
                         best = current;
 
                         final double testValue = test.value(sort.index(i));
@@ -167,11 +166,11 @@ public interface CTreeNumericMethod extends Serializable {
         }
 
         @Override
-        public List<CTreeCandidate> computeCandidates(CTree c, Frame df, Var weights, String testColName, String targetColName, CTreeTestFunction function) {
+        public List<CTreeCandidate> computeCandidates(CTree c, Frame df, Var weights, String testColName, String targetColName, CTreeTestFunction function, Random random) {
             Var test = df.var(testColName);
             Var target = df.var(targetColName);
 
-            DensityTable dt = new DensityTable(DensityTable.NUMERIC_DEFAULT_LABELS, target.dictionary());
+            RunningDensityTable dt = new RunningDensityTable(target.dictionary());
             int misCount = 0;
             for (int i = 0; i < df.rowCount(); i++) {
                 int row = (test.missing(i)) ? 0 : 2;
@@ -193,8 +192,7 @@ public interface CTreeNumericMethod extends Serializable {
 
                 if (test.missing(row)) continue;
 
-                dt.update(2, target.index(row), -weights.value(row));
-                dt.update(1, target.index(row), +weights.value(row));
+                dt.move(target.index(row), weights.value(row));
 
                 if (count != 0) continue;
                 if (i >= misCount + c.getMinCount() - 1 &&
@@ -215,7 +213,7 @@ public interface CTreeNumericMethod extends Serializable {
                     } else {
                         int comp = best.compareTo(current);
                         if (comp < 0) continue;
-                        if (comp == 0 && RandomSource.nextDouble() > 0.5) continue;
+                        if (comp == 0 && random.nextDouble() > 0.5) continue;
                         best = current;
 
                         final double testValue = test.value(sort.index(i));
@@ -20,7 +20,6 @@
 
 package rapaio.ml.classifier.tree.ctree;
 
-import rapaio.core.RandomSource;
 import rapaio.data.*;
 import rapaio.data.stream.FSpot;
 import rapaio.util.Pair;
@@ -40,7 +39,7 @@ public interface CTreeSplitter extends Serializable {
 
     CTreeSplitter newInstance();
 
-    public Pair<List<Frame>, List<Numeric>> performSplit(Frame df, Var weights, CTreeCandidate candidate);
+    public Pair<List<Frame>, List<Numeric>> performSplit(Frame df, Var weights, CTreeCandidate candidate, Random random);
 
     public static class RemainsIgnored implements CTreeSplitter {
 
@@ -55,7 +54,7 @@ public interface CTreeSplitter extends Serializable {
         }
 
         @Override
-        public Pair<List<Frame>, List<Numeric>> performSplit(Frame df, Var weights, CTreeCandidate candidate) {
+        public Pair<List<Frame>, List<Numeric>> performSplit(Frame df, Var weights, CTreeCandidate candidate, Random random) {
             List<Mapping> mappings = new ArrayList<>();
             List<Numeric> weightsList = new ArrayList<>();
             for (int i = 0; i < candidate.getGroupPredicates().size(); i++) {
@@ -95,7 +94,7 @@ public interface CTreeSplitter extends Serializable {
         }
 
         @Override
-        public Pair<List<Frame>, List<Numeric>> performSplit(Frame df, Var weights, CTreeCandidate candidate) {
+        public Pair<List<Frame>, List<Numeric>> performSplit(Frame df, Var weights, CTreeCandidate candidate, Random random) {
             List<Mapping> mappings = new ArrayList<>();
             List<Numeric> weightsList = new ArrayList<>();
             for (int i = 0; i < candidate.getGroupPredicates().size(); i++) {
@@ -150,7 +149,7 @@ public interface CTreeSplitter extends Serializable {
         }
 
         @Override
-        public Pair<List<Frame>, List<Numeric>> performSplit(Frame df, Var weights, CTreeCandidate candidate) {
+        public Pair<List<Frame>, List<Numeric>> performSplit(Frame df, Var weights, CTreeCandidate candidate, Random random) {
             List<Mapping> mappings = new ArrayList<>();
             List<Numeric> weightsList = new ArrayList<>();
             for (int i = 0; i < candidate.getGroupPredicates().size(); i++) {
@@ -204,7 +203,7 @@ public interface CTreeSplitter extends Serializable {
         }
 
         @Override
-        public Pair<List<Frame>, List<Numeric>> performSplit(Frame df, Var weights, CTreeCandidate candidate) {
+        public Pair<List<Frame>, List<Numeric>> performSplit(Frame df, Var weights, CTreeCandidate candidate, Random random) {
             List<Mapping> mappings = new ArrayList<>();
             List<Numeric> weightList = new ArrayList<>();
             for (int i = 0; i < candidate.getGroupPredicates().size(); i++) {
@@ -224,7 +223,7 @@ public interface CTreeSplitter extends Serializable {
                 }
                 missingSpots.add(s.row());
             });
-            missingSpots.forEach(rowId -> mappings.get(RandomSource.nextInt(mappings.size())).add(rowId));
+            missingSpots.forEach(rowId -> mappings.get(random.nextInt(mappings.size())).add(rowId));
             List<Frame> frames = mappings.stream().map(mapping -> MappedFrame.newByRow(df, mapping)).collect(Collectors.toList());
             return new Pair<>(frames, weightList);
         }
@@ -243,7 +242,7 @@ public interface CTreeSplitter extends Serializable {
         }
 
         @Override
-        public Pair<List<Frame>, List<Numeric>> performSplit(Frame df, Var weights, CTreeCandidate candidate) {
+        public Pair<List<Frame>, List<Numeric>> performSplit(Frame df, Var weights, CTreeCandidate candidate, Random random) {
             // TODO partition tree classifier - remains surrogates
             throw new NotImplementedException();
         }
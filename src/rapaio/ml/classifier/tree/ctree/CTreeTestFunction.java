@@ -21,6 +21,7 @@
 package rapaio.ml.classifier.tree.ctree;
 
 import rapaio.ml.classifier.tools.DensityTable;
+import rapaio.ml.classifier.tools.RunningDensityTable;
 
 import java.io.Serializable;
 
@@ -35,6 +36,15 @@ public interface CTreeTestFunction extends Serializable {
 
     double compute(DensityTable dt);
 
+    /**
+     * Computes the test function on a binary split table which is updated
+     * incrementally, as in scans over numeric test values.
+     *
+     * @param dt running binary split table
+     * @return test function value
+     */
+    double compute(RunningDensityTable dt);
+
     int sign();
 
 
@@ -55,6 +65,11 @@ public interface CTreeTestFunction extends Serializable {
             return dt.getSplitEntropy(false);
         }
 
+        @Override
+        public double compute(RunningDensityTable dt) {
+            return dt.getSplitEntropy();
+        }
+
         @Override
         public int sign() {
             return 1;
@@ -82,6 +97,11 @@ public interface CTreeTestFunction extends Serializable {
         public double compute(DensityTable dt) {
             return dt.getInfoGain(false);
         }
+
+        @Override
+        public double compute(RunningDensityTable dt) {
+            return dt.getInfoGain();
+        }
     };
 
     public static class GainRatio implements CTreeTestFunction {
@@ -105,6 +125,11 @@ public interface CTreeTestFunction extends Serializable {
         public double compute(DensityTable dt) {
             return dt.getGainRatio();
         }
+
+        @Override
+        public double compute(RunningDensityTable dt) {
+            return dt.getGainRatio();
+        }
     };
 
     public static class GiniGain implements CTreeTestFunction {
@@ -128,6 +153,11 @@ public interface CTreeTestFunction extends Serializable {
         public double compute(DensityTable dt) {
             return dt.getGiniIndex();
         }
+
+        @Override
+        public double compute(RunningDensityTable dt) {
+            return dt.getGiniIndex();
+        }
     };
 }
 
@@ -0,0 +1,177 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.common;
+
+import rapaio.data.Frame;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validation monitor used by running learners to stop learning early.
+ * <p>
+ * After each round the learner computes a score on the holdout frame
+ * (lower is better) from cached holdout predictions and reports it to the
+ * monitor. The monitor keeps the best round found so far and tells the learner
+ * to stop when there was no improvement greater than tolerance in the last
+ * patience rounds. The learner truncates its ensemble to the best round.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class ValidationMonitor implements Serializable {
+
+    private final Frame holdout;
+    private int patience = 10;
+    private double tolerance = 0;
+    private Listener listener;
+
+    // monitor state
+
+    private final List<Double> scores = new ArrayList<>();
+    private int bestRound = -1;
+    private double bestScore = Double.POSITIVE_INFINITY;
+    private int lastRound = -1;
+
+    public ValidationMonitor(Frame holdout) {
+        if (holdout == null) {
+            throw new IllegalArgumentException("holdout frame must not be null");
+        }
+        this.holdout = holdout;
+    }
+
+    public ValidationMonitor newInstance() {
+        return new ValidationMonitor(holdout)
+                .withPatience(patience)
+                .withTolerance(tolerance)
+                .withListener(listener);
+    }
+
+    /**
+     * Number of consecutive rounds without improvement after which learning stops.
+     */
+    public ValidationMonitor withPatience(int patience) {
+        if (patience < 1) {
+            throw new IllegalArgumentException("patience must be greater than 0");
+        }
+        this.patience = patience;
+        return this;
+    }
+
+    /**
+     * Minimum decrease of the score which is considered an improvement.
+     */
+    public ValidationMonitor withTolerance(double tolerance) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("tolerance must be non negative");
+        }
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    /**
+     * Listener called after each round with the round, its score and
+     * if the round is the best so far.
+     */
+    public ValidationMonitor withListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public Frame getHoldout() {
+        return holdout;
+    }
+
+    public int getPatience() {
+        return patience;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Clears the state of the monitor, called by learners when a new learning starts.
+     */
+    public void reset() {
+        scores.clear();
+        bestRound = -1;
+        bestScore = Double.POSITIVE_INFINITY;
+        lastRound = -1;
+    }
+
+    /**
+     * Drops the scores registered after the best round. Called by learners which
+     * continue learning from the ensemble truncated to the best round, so that
+     * rounds without improvement are counted again from the best round.
+     */
+    public void resume() {
+        if (bestRound >= 0 && lastRound > bestRound) {
+            scores.subList(scores.size() - (lastRound - bestRound), scores.size()).clear();
+            lastRound = bestRound;
+        }
+    }
+
+    /**
+     * Registers the holdout score of the ensemble built after the given round.
+     *
+     * @param round number of rounds of the ensemble which was evaluated
+     * @param score holdout score, lower is better
+     * @return true if learning should stop
+     */
+    public boolean update(int round, double score) {
+        scores.add(score);
+        lastRound = round;
+        boolean best = bestRound < 0 || score < bestScore - tolerance;
+        if (best) {
+            bestRound = round;
+            bestScore = score;
+        }
+        if (listener != null) {
+            listener.round(round, score, best);
+        }
+        return round - bestRound >= patience;
+    }
+
+    /**
+     * @return number of rounds of the best ensemble, -1 if nothing was registered
+     */
+    public int getBestRound() {
+        return bestRound;
+    }
+
+    public double getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * @return all registered scores, in the order of registration
+     */
+    public List<Double> getScores() {
+        return Collections.unmodifiableList(scores);
+    }
+
+    @FunctionalInterface
+    public interface Listener extends Serializable {
+        void round(int round, double score, boolean best);
+    }
+}
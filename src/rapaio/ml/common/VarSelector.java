@@ -20,6 +20,7 @@
 
 package rapaio.ml.common;
 
+import rapaio.core.RandomSource;
 import rapaio.core.sample.Sampling;
 import rapaio.data.Frame;
 import rapaio.data.VarRange;
@@ -39,13 +40,24 @@ public interface VarSelector extends Serializable {
 
     void initialize(Frame df, VarRange except);
 
-    String[] nextVarNames();
+    default String[] nextVarNames() {
+        return nextVarNames(RandomSource.getRandom());
+    }
+
+    /**
+     * Selects the next variable names, drawing the random selection
+     * (if any) from the given random stream.
+     *
+     * @param random random stream used for selection
+     * @return selected variable names
+     */
+    String[] nextVarNames(java.util.Random random);
 
     // built-in instances
 
     public static final class Standard implements VarSelector {
 
-        private String[] selection;
+        private volatile String[] selection;
 
         public String name() {
             return "Std";
@@ -60,7 +72,7 @@ public interface VarSelector extends Serializable {
         public synchronized void initialize(Frame df, VarRange except) {
             String[] all = df.varNames();
             List<Integer> ex = except == null ? new ArrayList<>() : except.parseVarIndexes(df);
-            selection = new String[all.length - ex.size()];
+            String[] names = new String[all.length - ex.size()];
             int p = 0;
             int s = 0;
             for (int i = 0; i < all.length; i++) {
@@ -68,12 +80,13 @@ public interface VarSelector extends Serializable {
                     p++;
                     continue;
                 }
-                selection[s++] = all[i];
+                names[s++] = all[i];
             }
+            selection = names;
         }
 
         @Override
-        public String[] nextVarNames() {
+        public String[] nextVarNames(java.util.Random random) {
             return selection;
         }
     }
@@ -81,7 +94,7 @@ public interface VarSelector extends Serializable {
     public static final class Random implements VarSelector {
 
         private final int mVars;
-        private String[] candidates;
+        private volatile String[] candidates;
 
         public Random() {
             this.mVars = -1;
@@ -93,7 +106,7 @@ public interface VarSelector extends Serializable {
 
         @Override
         public VarSelector newInstance() {
-            return new Random();
+            return new Random(mVars);
         }
 
         public String name() {
@@ -102,7 +115,7 @@ public interface VarSelector extends Serializable {
 
         public synchronized void initialize(Frame df, VarRange except) {
             List<Integer> exceptColumns = except == null ? new ArrayList<>() : except.parseVarIndexes(df);
-            candidates = new String[df.varCount() - exceptColumns.size()];
+            String[] names = new String[df.varCount() - exceptColumns.size()];
             int pos = 0;
             int expos = 0;
             for (int i = 0; i < df.varCount(); i++) {
@@ -110,14 +123,16 @@ public interface VarSelector extends Serializable {
                     expos++;
                     continue;
                 }
-                candidates[pos++] = df.varNames()[i];
+                names[pos++] = df.varNames()[i];
             }
+            candidates = names;
         }
 
         @Override
-        public synchronized String[] nextVarNames() {
+        public String[] nextVarNames(java.util.Random random) {
+            String[] candidates = this.candidates;
             int m = (mVars < 1) ? Math.max((int) Math.sqrt(candidates.length), 1) : mVars;
-            int[] indexes = Sampling.sampleWR(m, candidates.length);
+            int[] indexes = Sampling.sampleWR(m, candidates.length, random);
             String[] result = new String[m];
             for (int i = 0; i < indexes.length; i++) {
                 result[i] = candidates[indexes[i]];
@@ -22,6 +22,7 @@ package rapaio.ml.regressor.boost;
 
 import rapaio.core.sample.Sampling;
 import rapaio.data.*;
+import rapaio.ml.common.ValidationMonitor;
 import rapaio.ml.regressor.AbstractRegressor;
 import rapaio.ml.regressor.RResult;
 import rapaio.ml.regressor.Regressor;
@@ -30,9 +31,12 @@ import rapaio.ml.regressor.boost.gbt.BTRegressor;
 import rapaio.ml.regressor.boost.gbt.GBTLossFunction;
 import rapaio.ml.regressor.simple.L2Regressor;
 import rapaio.ml.regressor.tree.rtree.RTree;
+import rapaio.ml.regressor.tree.rtree.RTreeEnsemble;
 import rapaio.printer.Printer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -51,11 +55,20 @@ public class GBTRegressor extends AbstractRegressor implements RunningRegressor
     double shrinkage = 1.0;
     boolean useBootstrap = false;
     double bootstrapSize = 1.0;
+    ValidationMonitor monitor;
 
     // prediction
     Numeric fitLearn;
     Numeric fitValues;
     List<BTRegressor> trees;
+    double initValue;
+    // compiled trees used for prediction, built on first use
+    RTreeEnsemble compiled;
+
+    // validation artifacts: cached holdout fit and fit values of the best round
+    double[] holdoutFit;
+    double[] bestFitLearn;
+    double[] bestHoldoutFit;
 
     @Override
     public Regressor newInstance() {
@@ -66,6 +79,7 @@ public class GBTRegressor extends AbstractRegressor implements RunningRegressor
                 .withShrinkage(shrinkage)
                 .withBootstrap(useBootstrap)
                 .withBootstrapSize(bootstrapSize)
+                .withMonitor(monitor == null ? null : monitor.newInstance())
                 .withRuns(runs);
     }
 
@@ -124,6 +138,19 @@ public class GBTRegressor extends AbstractRegressor implements RunningRegressor
         return this;
     }
 
+    /**
+     * Monitor used to evaluate each round on a holdout frame, to stop early
+     * and keep only the trees up to the best round.
+     */
+    public GBTRegressor withMonitor(ValidationMonitor monitor) {
+        this.monitor = monitor;
+        return this;
+    }
+
+    public ValidationMonitor getMonitor() {
+        return monitor;
+    }
+
     @Override
     public void learn(Frame df, Var weights, String... targetVarNames) {
 
@@ -140,60 +167,30 @@ public class GBTRegressor extends AbstractRegressor implements RunningRegressor
         initRegressor.learn(df, firstTargetName());
         RResult initPred = initRegressor.predict(df, false);
         trees = new ArrayList<>();
+        compiled = null;
 
         fitLearn = Numeric.newFill(df.rowCount());
+        initValue = df.rowCount() > 0 ? initPred.firstFit().value(0) : Double.NaN;
         for (int i = 0; i < df.rowCount(); i++) {
             fitLearn.setValue(i, initPred.firstFit().value(i));
-        }
-
-        for (int i = 1; i <= runs; i++) {
-            Numeric gradient = lossFunction.gradient(y, fitLearn).withName("target");
-
-            Frame xm = x.bindVars(gradient);
-            BTRegressor tree = regressor.newInstance();
-
-            // bootstrap samples
-
-            Frame xmLearn = xm;
-            Frame xLearn = x;
-            Mapping bootstrapMapping = null;
-            if (useBootstrap) {
-                bootstrapMapping = Mapping.newEmpty();
-                int[] sample = Sampling.sampleWOR((int) (bootstrapSize * xmLearn.rowCount()), xmLearn.rowCount());
-                for (int aSample : sample) {
-                    bootstrapMapping.add(aSample);
-                }
-                xmLearn = MappedFrame.newByRow(xm, bootstrapMapping);
-                xLearn = MappedFrame.newByRow(x, bootstrapMapping);
-            }
-
-            // build regions
-
-            tree.learn(xmLearn, "target");
-
-            // fit residuals
-
-            if (bootstrapMapping == null) {
-                tree.boostFit(xLearn, y, fitLearn, lossFunction);
-            } else {
-                tree.boostFit(
-                        xLearn,
-                        MappedVar.newByRows(y, bootstrapMapping),
-                        MappedVar.newByRows(fitLearn, bootstrapMapping),
-                        lossFunction);
+            if (initPred.firstFit().value(i) != initValue) {
+                initValue = Double.NaN;
             }
+        }
 
-            // add next prediction to the fit values
+        holdoutFit = null;
+        if (monitor != null) {
+            startValidation();
+        }
 
-            RResult treePred = tree.predict(df, false);
-            for (int j = 0; j < df.rowCount(); j++) {
-                fitLearn.setValue(j, fitLearn.value(j) + shrinkage * treePred.firstFit().value(j));
+        for (int i = 1; i <= runs; i++) {
+            trees.add(learnTree(df, x, y));
+            if (monitor != null && validate()) {
+                break;
             }
-
-            // add tree in the predictors list
-
-            trees.add(tree);
         }
+        truncateToBest();
+        compiled = null;
 
         fitValues = Numeric.newEmpty();
         for (int i = 0; i < fitLearn.rowCount(); i++) {
@@ -227,64 +224,171 @@ public class GBTRegressor extends AbstractRegressor implements RunningRegressor
         Var y = df.var(firstTargetName());
         Frame x = df.removeVars(new VarRange(firstTargetName()));
 
+        if (monitor != null) {
+            if (holdoutFit == null) {
+                startValidation();
+            } else {
+                monitor.resume();
+            }
+        }
         for (int i = trees.size(); i < runs; i++) {
+            trees.add(learnTree(df, x, y));
+            if (monitor != null && validate()) {
+                break;
+            }
+        }
+        truncateToBest();
+        compiled = null;
 
-            // build gradient
-
-            Numeric gradient = lossFunction.gradient(y, fitLearn).withName("target");
+        fitValues = Numeric.newEmpty();
+        for (int i = 0; i < fitLearn.rowCount(); i++) {
+            fitValues.addValue(fitLearn.value(i));
+        }
+    }
 
-            // build next tree and gradient learning data set
+    /**
+     * Builds the next tree and adds its shrunk prediction to the learning fit values.
+     * The fit values are updated from the leaf values assigned to rows while fitting
+     * the tree regions, only rows not assigned (out of bootstrap sample or
+     * with missing values) being predicted by the tree.
+     */
+    private BTRegressor learnTree(Frame df, Frame x, Var y) {
 
-            Frame xm = x.bindVars(gradient);
-            BTRegressor tree = regressor.newInstance();
+        // build gradient
 
-            // bootstrap samples if is the case
+        Numeric gradient = lossFunction.gradient(y, fitLearn).withName("target");
 
-            Frame xmLearn = xm;
-            Frame xLearn = x;
-            Mapping bootstrapMapping = null;
-            if (useBootstrap) {
-                bootstrapMapping = Mapping.newEmpty();
-                int[] sample = Sampling.sampleWOR((int) (bootstrapSize * xmLearn.rowCount()), xmLearn.rowCount());
-                for (int aSample : sample) {
-                    bootstrapMapping.add(aSample);
-                }
-                xmLearn = MappedFrame.newByRow(xm, bootstrapMapping);
-                xLearn = MappedFrame.newByRow(x, bootstrapMapping);
-            }
+        // build next tree and gradient learning data set
 
-            // learn regions from gradients
+        Frame xm = x.bindVars(gradient);
+        BTRegressor tree = regressor.newInstance();
 
-            tree.learn(xmLearn, "target");
+        // bootstrap samples if is the case
 
-            // fit residuals
+        Frame xmLearn = xm;
+        Frame xLearn = x;
+        Mapping bootstrapMapping = null;
+        if (useBootstrap) {
+            bootstrapMapping = Mapping.newEmpty();
+            int[] sample = Sampling.sampleWOR((int) (bootstrapSize * xmLearn.rowCount()), xmLearn.rowCount());
+            for (int aSample : sample) {
+                bootstrapMapping.add(aSample);
+            }
+            xmLearn = MappedFrame.newByRow(xm, bootstrapMapping);
+            xLearn = MappedFrame.newByRow(x, bootstrapMapping);
+        }
 
-            if (bootstrapMapping == null) {
-                tree.boostFit(xLearn, y, fitLearn, lossFunction);
-            } else {
-                tree.boostFit(
-                        xLearn,
-                        MappedVar.newByRows(y, bootstrapMapping),
-                        MappedVar.newByRows(fitLearn, bootstrapMapping),
-                        lossFunction);
+        // learn regions from gradients
+
+        tree.learn(xmLearn, "target");
+
+        // fit residuals and collect the fitted leaf value of each row
+
+        double[] fit;
+        if (bootstrapMapping == null) {
+            fit = tree.boostFit(xLearn, y, fitLearn, lossFunction);
+        } else {
+            fit = new double[df.rowCount()];
+            Arrays.fill(fit, Double.NaN);
+            double[] bootFit = tree.boostFit(
+                    xLearn,
+                    MappedVar.newByRows(y, bootstrapMapping),
+                    MappedVar.newByRows(fitLearn, bootstrapMapping),
+                    lossFunction);
+            for (int j = 0; j < bootFit.length; j++) {
+                fit[bootstrapMapping.get(j)] = bootFit[j];
             }
+        }
 
-            // add next prediction to the fit values
+        // predict only rows which were not assigned to a leaf
 
-            RResult treePred = tree.predict(df, false);
-            for (int j = 0; j < df.rowCount(); j++) {
-                fitLearn.setValue(j, fitLearn.value(j) + shrinkage * treePred.firstFit().value(j));
+        Mapping unassigned = Mapping.newEmpty();
+        for (int j = 0; j < fit.length; j++) {
+            if (Double.isNaN(fit[j])) {
+                unassigned.add(j);
             }
+        }
+        if (unassigned.size() > 0) {
+            RResult treePred = tree.predict(df.mapRows(unassigned), false);
+            for (int j = 0; j < unassigned.size(); j++) {
+                fit[unassigned.get(j)] = treePred.firstFit().value(j);
+            }
+        }
 
-            // add tree to the list of trees
+        // add next prediction to the fit values
 
-            trees.add(tree);
+        for (int j = 0; j < fit.length; j++) {
+            fitLearn.setValue(j, fitLearn.value(j) + shrinkage * fit[j]);
         }
+        return tree;
+    }
 
-        fitValues = Numeric.newEmpty();
-        for (int i = 0; i < fitLearn.rowCount(); i++) {
-            fitValues.addValue(fitLearn.value(i));
+    /**
+     * Resets the monitor and registers the score of the current ensemble,
+     * its holdout prediction being cached for the next rounds.
+     */
+    private void startValidation() {
+        monitor.reset();
+        RResult holdoutPred = predict(monitor.getHoldout(), false);
+        holdoutFit = new double[monitor.getHoldout().rowCount()];
+        for (int i = 0; i < holdoutFit.length; i++) {
+            holdoutFit[i] = holdoutPred.firstFit().value(i);
+        }
+        registerScore();
+    }
+
+    /**
+     * Adds the prediction of the last tree to the cached holdout fit
+     * and registers the holdout score with the monitor.
+     *
+     * @return true if learning should stop
+     */
+    private boolean validate() {
+        RResult treePred = trees.get(trees.size() - 1).predict(monitor.getHoldout(), false);
+        for (int i = 0; i < holdoutFit.length; i++) {
+            holdoutFit[i] += shrinkage * treePred.firstFit().value(i);
         }
+        return registerScore();
+    }
+
+    private boolean registerScore() {
+        Frame holdout = monitor.getHoldout();
+        double score = lossFunction.error(holdout.var(firstTargetName()), Numeric.newWrapOf(holdoutFit));
+        boolean stop = monitor.update(trees.size(), score);
+        if (monitor.getBestRound() == trees.size()) {
+            bestFitLearn = fitLearn.stream().mapToDouble().toArray();
+            bestHoldoutFit = Arrays.copyOf(holdoutFit, holdoutFit.length);
+        }
+        return stop;
+    }
+
+    /**
+     * Drops the trees built after the best round of the monitor, if any,
+     * and restores the fit values of the best round.
+     */
+    private void truncateToBest() {
+        if (monitor == null || monitor.getBestRound() < 0 || monitor.getBestRound() >= trees.size()) {
+            return;
+        }
+        trees.subList(monitor.getBestRound(), trees.size()).clear();
+        for (int i = 0; i < bestFitLearn.length; i++) {
+            fitLearn.setValue(i, bestFitLearn[i]);
+        }
+        holdoutFit = Arrays.copyOf(bestHoldoutFit, bestHoldoutFit.length);
+    }
+
+    /**
+     * Compiles the init value and the trees into an ensemble which can score
+     * single rows without allocation. Requires the init regressor to predict
+     * the same value for all learning rows, and trees to be regression trees.
+     *
+     * @return compiled ensemble with one output
+     */
+    public RTreeEnsemble compile() {
+        if (Double.isNaN(initValue)) {
+            throw new IllegalArgumentException("init regressor does not predict a constant value");
+        }
+        return RTreeEnsemble.newCompiled(Collections.singletonList(trees), shrinkage, new double[]{initValue});
     }
 
     @Override
@@ -294,12 +398,24 @@ public class GBTRegressor extends AbstractRegressor implements RunningRegressor
             pred.addTarget(targetName);
         }
 
-        RResult initPred = initRegressor.predict(df);
+        RResult initPred = initRegressor.predict(df, false);
+        if (compiled == null && RTreeEnsemble.canCompile(Collections.singletonList(trees))) {
+            compiled = RTreeEnsemble.newCompiled(Collections.singletonList(trees), shrinkage, new double[]{0});
+        }
+        if (compiled != null) {
+            double[] scores = compiled.score(df);
+            for (int i = 0; i < df.rowCount(); i++) {
+                pred.firstFit().setValue(i, initPred.firstFit().value(i) + scores[i]);
+            }
+            pred.buildComplete();
+            return pred;
+        }
+
         for (int i = 0; i < df.rowCount(); i++) {
             pred.firstFit().setValue(i, initPred.firstFit().value(i));
         }
         for (BTRegressor tree : trees) {
-            RResult treePred = tree.predict(df);
+            RResult treePred = tree.predict(df, false);
             for (int i = 0; i < df.rowCount(); i++) {
                 pred.firstFit().setValue(i, pred.firstFit().value(i) + shrinkage * treePred.firstFit().value(i));
             }
@@ -34,5 +34,28 @@ public interface BTRegressor extends Regressor {
     @Override
     BTRegressor newInstance();
 
-    void boostFit(Frame x, Var y, Var fx, GBTLossFunction lossFunction);
+    /**
+     * Specifies the seed of the random stream used at learning time. Regressors
+     * learned with the same seed on the same data are identical, regardless of
+     * the number of threads used.
+     *
+     * @param seed random seed, null if the seed is drawn from {@link rapaio.core.RandomSource}
+     * @return self instance
+     */
+    BTRegressor withSeed(Long seed);
+
+    /**
+     * Fits the values of the learned regions in order to minimize the loss function
+     * and returns the fitted value for each row of the given frame, as assigned by
+     * the fitting pass. Rows which could not be assigned to a region in
+     * the fitting pass (for example rows with missing values) have the fitted
+     * value {@link Double#NaN} and must be predicted.
+     *
+     * @param x            frame with instances
+     * @param y            target variable
+     * @param fx           current fitted values
+     * @param lossFunction loss function
+     * @return fitted values for each row of x, NaN for unassigned rows
+     */
+    double[] boostFit(Frame x, Var y, Var fx, GBTLossFunction lossFunction);
 }
@@ -21,7 +21,7 @@
 package rapaio.ml.regressor.boost.gbt;
 
 import rapaio.core.stat.Mean;
-import rapaio.core.stat.Quantiles;
+import rapaio.core.stat.Selection;
 import rapaio.data.Numeric;
 import rapaio.data.Var;
 import rapaio.printer.Printer;
@@ -41,6 +41,24 @@ public interface GBTLossFunction extends Serializable {
 
     Numeric gradient(Var y, Var fx);
 
+    /**
+     * Computes the average loss of the fitted values, used to monitor
+     * the boosting on validation data. Rows with missing residuals are
+     * skipped. Default is the mean squared error.
+     */
+    default double error(Var y, Var fx) {
+        double sum = 0;
+        int len = 0;
+        for (int i = 0; i < y.rowCount(); i++) {
+            double delta = y.value(i) - fx.value(i);
+            if (!Double.isNaN(delta)) {
+                sum += delta * delta;
+                len++;
+            }
+        }
+        return len == 0 ? 0 : sum / len;
+    }
+
     // standard implementations
 
     public static class L1 implements GBTLossFunction {
@@ -52,11 +70,15 @@ public interface GBTLossFunction extends Serializable {
 
         @Override
         public double findMinimum(Var y, Var fx) {
-            Numeric values = Numeric.newEmpty();
+            double[] values = new double[y.rowCount()];
+            int len = 0;
             for (int i = 0; i < y.rowCount(); i++) {
-                values.addValue(y.value(i) - fx.value(i));
+                double r = y.value(i) - fx.value(i);
+                if (!Double.isNaN(r)) {
+                    values[len++] = r;
+                }
             }
-            return new Quantiles(values, new double[]{0.5}).values()[0];
+            return Selection.quantile(values, 0, len, 0.5);
         }
 
         @Override
@@ -67,6 +89,20 @@ public interface GBTLossFunction extends Serializable {
             }
             return gradient;
         }
+
+        @Override
+        public double error(Var y, Var fx) {
+            double sum = 0;
+            int len = 0;
+            for (int i = 0; i < y.rowCount(); i++) {
+                double delta = y.value(i) - fx.value(i);
+                if (!Double.isNaN(delta)) {
+                    sum += Math.abs(delta);
+                    len++;
+                }
+            }
+            return len == 0 ? 0 : sum / len;
+        }
     }
 
     public static class L2 implements GBTLossFunction {
@@ -114,35 +150,36 @@ public interface GBTLossFunction extends Serializable {
         @Override
         public double findMinimum(Var y, Var fx) {
 
-            // compute residuals
+            // compute residuals and absolute residuals
 
-            Numeric residual = Numeric.newEmpty();
+            double[] residual = new double[y.rowCount()];
+            double[] absResidual = new double[y.rowCount()];
+            int len = 0;
             for (int i = 0; i < y.rowCount(); i++) {
-                residual.addValue(y.value(i) - fx.value(i));
+                double r = y.value(i) - fx.value(i);
+                if (!Double.isNaN(r)) {
+                    residual[len] = r;
+                    absResidual[len] = Math.abs(r);
+                    len++;
+                }
             }
 
-            // compute median of residuals
+            // compute median of residuals, selection reorders residuals
+            // but the approximation below does not depend on order
 
-            double r_bar = new Quantiles(residual, new double[]{0.5}).values()[0];
-
-            // compute absolute residuals
-
-            Numeric absResidual = Numeric.newEmpty();
-            for (int i = 0; i < y.rowCount(); i++) {
-                absResidual.addValue(Math.abs(y.value(i) - fx.value(i)));
-            }
+            double r_bar = Selection.quantile(residual, 0, len, 0.5);
 
             // compute rho as an alpha-quantile of absolute residuals
 
-            double rho = new Quantiles(absResidual, new double[]{alpha}).values()[0];
+            double rho = Selection.quantile(absResidual, 0, len, alpha);
 
             // compute one-iteration approximation
 
             double gamma = r_bar;
             double count = y.rowCount();
-            for (int i = 0; i < y.rowCount(); i++) {
-                gamma += (residual.value(i) - r_bar <= 0 ? -1 : 1)
-                        * Math.min(rho, Math.abs(residual.value(i) - r_bar))
+            for (int i = 0; i < len; i++) {
+                gamma += (residual[i] - r_bar <= 0 ? -1 : 1)
+                        * Math.min(rho, Math.abs(residual[i] - r_bar))
                         / count;
             }
             return gamma;
@@ -151,31 +188,65 @@ public interface GBTLossFunction extends Serializable {
         @Override
         public Numeric gradient(Var y, Var fx) {
 
-            // compute absolute residuals
+            // compute residuals and a copy of absolute residuals for selection
 
-            Numeric absResidual = Numeric.newEmpty();
+            double[] residual = new double[y.rowCount()];
+            double[] absResidual = new double[y.rowCount()];
+            int len = 0;
             for (int i = 0; i < y.rowCount(); i++) {
-                absResidual.addValue(Math.abs(y.value(i) - fx.value(i)));
+                residual[i] = y.value(i) - fx.value(i);
+                if (!Double.isNaN(residual[i])) {
+                    absResidual[len++] = Math.abs(residual[i]);
+                }
             }
 
             // compute rho as an alpha-quantile of absolute residuals
 
-            double rho = new Quantiles(absResidual, new double[]{alpha}).values()[0];
+            double rho = Selection.quantile(absResidual, 0, len, alpha);
 
             // now compute gradient
 
-            Numeric gradient = Numeric.newEmpty();
-            for (int i = 0; i < y.rowCount(); i++) {
-                if (absResidual.value(i) <= rho) {
-                    gradient.addValue(y.value(i) - fx.value(i));
+            double[] gradient = new double[y.rowCount()];
+            for (int i = 0; i < residual.length; i++) {
+                if (Math.abs(residual[i]) <= rho) {
+                    gradient[i] = residual[i];
                 } else {
-                    gradient.addValue(rho * ((y.value(i) - fx.value(i) <= 0) ? -1 : 1));
+                    gradient[i] = rho * ((residual[i] <= 0) ? -1 : 1);
                 }
             }
 
             // return gradient
 
-            return gradient;
+            return Numeric.newWrapOf(gradient);
+        }
+
+        @Override
+        public double error(Var y, Var fx) {
+
+            // compute absolute residuals, skipping missing values
+
+            double[] absResidual = new double[y.rowCount()];
+            int len = 0;
+            for (int i = 0; i < y.rowCount(); i++) {
+                double r = y.value(i) - fx.value(i);
+                if (!Double.isNaN(r)) {
+                    absResidual[len++] = Math.abs(r);
+                }
+            }
+            if (len == 0) {
+                return 0;
+            }
+
+            // compute rho as an alpha-quantile of absolute residuals
+
+            double rho = Selection.quantile(absResidual, 0, len, alpha);
+
+            double sum = 0;
+            for (int i = 0; i < len; i++) {
+                double a = absResidual[i];
+                sum += (a <= rho) ? a * a / 2 : rho * (a - rho / 2);
+            }
+            return sum / len;
         }
     }
 }
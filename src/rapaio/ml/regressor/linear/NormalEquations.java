@@ -0,0 +1,201 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.regressor.linear;
+
+import rapaio.data.Frame;
+import rapaio.data.Var;
+import rapaio.data.matrix.CholeskyDecomposition;
+import rapaio.data.matrix.Matrix;
+import rapaio.data.matrix.QRDecomposition;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Sufficient statistics for ordinary least squares, accumulated from chunks of rows.
+ * <p>
+ * Keeps X'X and X'Y, which have a size which depends only on the number of
+ * predictors and targets, so a design matrix with any number of rows can be
+ * processed one chunk at a time. All sums are Kahan compensated, to keep the
+ * rounding error independent of the number of accumulated rows.
+ * <p>
+ * Accumulators built on distinct chunks can be merged, which allows chunks to be
+ * processed in parallel. Rows with missing values on any used variable are skipped.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public final class NormalEquations implements Serializable {
+
+    private final String[] predictors;
+    private final String[] targets;
+    private final int p;
+    private final int q;
+
+    // X'X, upper triangle stored row by row, and compensations
+    private final double[] xtx;
+    private final double[] xtxErr;
+    // X'Y, stored as a p x q row major array, and compensations
+    private final double[] xty;
+    private final double[] xtyErr;
+    private long rows;
+
+    public NormalEquations(String[] predictors, String[] targets) {
+        this.predictors = Arrays.copyOf(predictors, predictors.length);
+        this.targets = Arrays.copyOf(targets, targets.length);
+        this.p = predictors.length;
+        this.q = targets.length;
+        this.xtx = new double[p * (p + 1) / 2];
+        this.xtxErr = new double[xtx.length];
+        this.xty = new double[p * q];
+        this.xtyErr = new double[xty.length];
+    }
+
+    public String[] getPredictors() {
+        return Arrays.copyOf(predictors, p);
+    }
+
+    public String[] getTargets() {
+        return Arrays.copyOf(targets, q);
+    }
+
+    /**
+     * @return number of rows accumulated so far
+     */
+    public long rowCount() {
+        return rows;
+    }
+
+    /**
+     * Adds all the rows of the given chunk.
+     *
+     * @param chunk frame which contains all predictor and target variables
+     * @return this accumulator
+     */
+    public NormalEquations update(Frame chunk) {
+        Var[] x = new Var[p];
+        for (int i = 0; i < p; i++) {
+            x[i] = chunk.var(predictors[i]);
+        }
+        Var[] y = new Var[q];
+        for (int i = 0; i < q; i++) {
+            y[i] = chunk.var(targets[i]);
+        }
+        double[] xr = new double[p];
+        double[] yr = new double[q];
+        for (int row = 0; row < chunk.rowCount(); row++) {
+            if (!readRow(x, row, xr) || !readRow(y, row, yr)) {
+                continue;
+            }
+            int pos = 0;
+            for (int i = 0; i < p; i++) {
+                for (int j = i; j < p; j++) {
+                    add(xtx, xtxErr, pos++, xr[i] * xr[j]);
+                }
+                for (int k = 0; k < q; k++) {
+                    add(xty, xtyErr, i * q + k, xr[i] * yr[k]);
+                }
+            }
+            rows++;
+        }
+        return this;
+    }
+
+    private static boolean readRow(Var[] vars, int row, double[] values) {
+        for (int i = 0; i < vars.length; i++) {
+            if (vars[i].missing(row)) {
+                return false;
+            }
+            values[i] = vars[i].value(row);
+        }
+        return true;
+    }
+
+    /**
+     * Kahan compensated addition of value to sum[pos].
+     */
+    private static void add(double[] sum, double[] err, int pos, double value) {
+        double y = value - err[pos];
+        double t = sum[pos] + y;
+        err[pos] = (t - sum[pos]) - y;
+        sum[pos] = t;
+    }
+
+    /**
+     * Adds the statistics of another accumulator, built on the same variables.
+     *
+     * @param other accumulator to be merged into this one
+     * @return this accumulator
+     */
+    public NormalEquations merge(NormalEquations other) {
+        if (!Arrays.equals(predictors, other.predictors) || !Arrays.equals(targets, other.targets)) {
+            throw new IllegalArgumentException("Cannot merge normal equations built on different variables");
+        }
+        for (int i = 0; i < xtx.length; i++) {
+            add(xtx, xtxErr, i, other.xtx[i]);
+            add(xtx, xtxErr, i, -other.xtxErr[i]);
+        }
+        for (int i = 0; i < xty.length; i++) {
+            add(xty, xtyErr, i, other.xty[i]);
+            add(xty, xtyErr, i, -other.xtyErr[i]);
+        }
+        rows += other.rows;
+        return this;
+    }
+
+    /**
+     * @return the symmetric matrix X'X
+     */
+    public Matrix getXtX() {
+        Matrix m = new Matrix(p, p);
+        int pos = 0;
+        for (int i = 0; i < p; i++) {
+            for (int j = i; j < p; j++) {
+                m.set(i, j, xtx[pos]);
+                m.set(j, i, xtx[pos]);
+                pos++;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * @return the matrix X'Y
+     */
+    public Matrix getXtY() {
+        return new Matrix(p, q, Arrays.copyOf(xty, xty.length));
+    }
+
+    /**
+     * Solves the normal equations X'X*B = X'Y. Cholesky decomposition is used
+     * when X'X is positive definite, otherwise QR decomposition is tried.
+     *
+     * @return coefficients matrix with one row for each predictor and one column for each target
+     * @throws RuntimeException if the normal equations are rank deficient
+     */
+    public Matrix solve() {
+        Matrix a = getXtX();
+        CholeskyDecomposition chol = new CholeskyDecomposition(a);
+        if (chol.isSPD()) {
+            return chol.solve(getXtY());
+        }
+        return new QRDecomposition(a).solve(getXtY());
+    }
+}
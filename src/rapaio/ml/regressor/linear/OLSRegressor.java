@@ -29,8 +29,18 @@ import rapaio.ml.regressor.Regressor;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
+ * Ordinary least squares regression.
+ * <p>
+ * By default the design matrix is built in memory and solved with QR decomposition.
+ * When a chunk size is specified, or when learning from a stream of frames, the
+ * rows are accumulated into {@link NormalEquations}, chunk by chunk, without
+ * building the design matrix. Chunks are processed in parallel when the
+ * stream is parallel.
+ * <p>
  * User: Aurelian Tutuianu <padreati@yahoo.com>
  */
 public class OLSRegressor extends AbstractRegressor {
@@ -38,10 +48,26 @@ public class OLSRegressor extends AbstractRegressor {
     List<String> predictors;
     Frame coefficients;
     Var fittedValues;
+    int chunkSize = 0;
 
     @Override
     public Regressor newInstance() {
-        return new OLSRegressor();
+        return new OLSRegressor().withChunkSize(chunkSize);
+    }
+
+    /**
+     * Number of rows accumulated at once into normal equations. If the value is 0,
+     * the whole design matrix is built and solved with QR decomposition.
+     *
+     * @param chunkSize number of rows in a chunk, 0 for the full design matrix
+     * @return this instance
+     */
+    public OLSRegressor withChunkSize(int chunkSize) {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("chunk size must be non negative");
+        }
+        this.chunkSize = chunkSize;
+        return this;
     }
 
     @Override
@@ -53,7 +79,7 @@ public class OLSRegressor extends AbstractRegressor {
     public String fullName() {
         StringBuilder sb = new StringBuilder();
         sb.append(name()).append("{");
-        sb.append("TODO");
+        sb.append("chunkSize=").append(chunkSize);
         sb.append("}");
         return sb.toString();
     }
@@ -66,13 +92,56 @@ public class OLSRegressor extends AbstractRegressor {
             throw new IllegalArgumentException("OLS must specify at least one target variable name");
         }
         targetNames = list.toArray(new String[list.size()]);
-        predictors = Arrays.stream(df.varNames())
-                .filter(c -> !list.contains(c) && df.var(c).type().isNumeric())
-                .collect(Collectors.toList());
+        predictors = predictorNames(df, list);
+
+        if (chunkSize > 0) {
+            int chunks = (df.rowCount() + chunkSize - 1) / chunkSize;
+            Stream<Frame> stream = IntStream.range(0, chunks).parallel().mapToObj(
+                    i -> MappedFrame.newByRow(df, Mapping.newRangeOf(i * chunkSize, Math.min(df.rowCount(), (i + 1) * chunkSize))));
+            learn(stream, targetNames);
+            return;
+        }
 
         Matrix X = buildX(df);
         Matrix Y = buildY(df);
-        Matrix beta = new QRDecomposition(X).solve(Y);
+        buildCoefficients(new QRDecomposition(X).solve(Y));
+    }
+
+    /**
+     * Fit the model on a stream of frames, which are chunks of rows of the same data set.
+     * Each chunk is accumulated into normal equations, which are merged and solved at the end.
+     * If the stream is parallel, chunks are processed in parallel. Rows with missing values
+     * are ignored.
+     *
+     * @param chunks         frames which contain the same variables
+     * @param targetVarNames target variables
+     */
+    public void learn(Stream<Frame> chunks, String... targetVarNames) {
+        NormalEquations ne = chunks
+                .map(chunk -> {
+                    List<String> list = new VarRange(targetVarNames).parseVarNames(chunk);
+                    if (list.isEmpty()) {
+                        throw new IllegalArgumentException("OLS must specify at least one target variable name");
+                    }
+                    List<String> names = predictorNames(chunk, list);
+                    return new NormalEquations(names.toArray(new String[names.size()]), list.toArray(new String[list.size()]))
+                            .update(chunk);
+                })
+                .reduce(NormalEquations::merge)
+                .orElseThrow(() -> new IllegalArgumentException("OLS cannot learn from an empty stream of frames"));
+
+        targetNames = ne.getTargets();
+        predictors = Arrays.asList(ne.getPredictors());
+        buildCoefficients(ne.solve());
+    }
+
+    private static List<String> predictorNames(Frame df, List<String> targets) {
+        return Arrays.stream(df.varNames())
+                .filter(c -> !targets.contains(c) && df.var(c).type().isNumeric())
+                .collect(Collectors.toList());
+    }
+
+    private void buildCoefficients(Matrix beta) {
         Var betaN = Nominal.newEmpty().withName("Term");
         Var betaC = Numeric.newEmpty().withName("Coefficient");
         for (int i = 0; i < predictors.size(); i++) {
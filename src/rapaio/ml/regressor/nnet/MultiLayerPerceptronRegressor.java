@@ -29,25 +29,48 @@ import rapaio.ml.regressor.RResult;
 import rapaio.ml.regressor.Regressor;
 import rapaio.printer.Printer;
 
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
 
 /**
+ * Feed forward neural network with fully connected layers, trained with back propagation.
+ * <p>
+ * Each layer keeps its weights in a flat row major array, one row for each output
+ * node, with the bias weight first. Each run of the learning algorithm samples a
+ * mini batch of rows, feeds it forward and propagates it back one layer at a time
+ * for all rows of the batch, and updates the weights with the average gradient.
+ * Large batches are split into parts which are processed in parallel, each part
+ * with its own gradient buffers. Predictions are computed on blocks of rows, in parallel.
+ * <p>
  * User: Aurelian Tutuianu <padreati@yahoo.com>
  */
 public class MultiLayerPerceptronRegressor extends AbstractRegressor {
 
+    /**
+     * Number of batch rows processed by a parallel task. Parts do not depend on
+     * the number of cores, so the results are the same on any machine.
+     */
+    private static final int TASK_ROWS = 256;
+    private static final int PREDICT_BLOCK_SIZE = 1024;
+
     private final int[] layerSizes;
-    private final NetNode[][] net;
+    private final DenseLayer[] layers;
     private TFunction function = TFunction.SIGMOID;
     private double learningRate = 1.0;
+    private int batchSize = 1;
 
     String[] inputNames;
     int runs = 0;
 
     @Override
     public Regressor newInstance() {
-        return new MultiLayerPerceptronRegressor(layerSizes);
+        return new MultiLayerPerceptronRegressor(layerSizes)
+                .withFunction(function)
+                .withLearningRate(learningRate)
+                .withBatchSize(batchSize)
+                .withRuns(runs);
     }
 
     public MultiLayerPerceptronRegressor(int... layerSizes) {
@@ -57,43 +80,9 @@ public class MultiLayerPerceptronRegressor extends AbstractRegressor {
             throw new IllegalArgumentException("neural net must have at least 2 layers (including input layer)");
         }
 
-        // build design
-
-        net = new NetNode[layerSizes.length][];
-        for (int i = 0; i < layerSizes.length; i++) {
-            int add = (i != net.length - 1) ? 1 : 0;
-            net[i] = new NetNode[layerSizes[i] + add];
-            for (int j = 0; j < net[i].length; j++) {
-                net[i][j] = new NetNode();
-            }
-        }
-
-        // wire-up nodes
-        for (int i = 0; i < net.length; i++) {
-            if (i == 0) {
-                for (int j = 0; j < net[i].length; j++) {
-                    net[i][j].setInputs(null);
-                    if (j == 0) {
-                        net[i][j].value = 1.;
-                    }
-                }
-                continue;
-            }
-            if (i == net.length - 1) {
-                for (int j = 0; j < net[i].length; j++) {
-                    net[i][j].setInputs(net[i - 1]);
-                }
-                continue;
-            }
-
-            for (int j = 0; j < net[i].length; j++) {
-                if (j == 0) {
-                    net[i][j].setInputs(null);
-                    net[i][j].value = 1.;
-                    continue;
-                }
-                net[i][j].setInputs(net[i - 1]);
-            }
+        layers = new DenseLayer[layerSizes.length - 1];
+        for (int i = 0; i < layers.length; i++) {
+            layers[i] = new DenseLayer(layerSizes[i], layerSizes[i + 1]);
         }
     }
 
@@ -108,6 +97,7 @@ public class MultiLayerPerceptronRegressor extends AbstractRegressor {
         sb.append(name()).append("{");
         sb.append("function=").append(function.name()).append(", ");
         sb.append("learningRate=").append(Printer.formatDecShort.format(learningRate)).append(", ");
+        sb.append("batchSize=").append(batchSize).append(", ");
         sb.append("layerSizes=").append(Arrays.deepToString(Arrays.stream(layerSizes).mapToObj(i -> i).toArray()));
         sb.append("}");
         return sb.toString();
@@ -123,6 +113,21 @@ public class MultiLayerPerceptronRegressor extends AbstractRegressor {
         return this;
     }
 
+    /**
+     * Number of rows sampled for each run. With a batch size of 1 the
+     * learning algorithm is plain stochastic gradient descent.
+     *
+     * @param batchSize number of rows in a mini batch
+     * @return this instance
+     */
+    public MultiLayerPerceptronRegressor withBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size must be at least 1");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
     public MultiLayerPerceptronRegressor withRuns(int runs) {
         this.runs = runs;
         return this;
@@ -134,80 +139,51 @@ public class MultiLayerPerceptronRegressor extends AbstractRegressor {
         List<String> list = new VarRange(targetVarNames).parseVarNames(df);
 
         this.targetNames = list.toArray(new String[list.size()]);
-        this.inputNames = new String[df.varCount() - targetNames.length];
-        int pos = 0;
-        for (String varName : df.varNames()) {
-            if (list.contains(varName)) continue;
-            if (df.var(varName).type().isNominal()) continue;
-            inputNames[pos++] = varName;
-        }
+        this.inputNames = Arrays.stream(df.varNames())
+                .filter(varName -> !list.contains(varName) && !df.var(varName).type().isNominal())
+                .toArray(String[]::new);
 
         // validate
 
-        if (this.targetNames.length != net[net.length - 1].length) {
+        if (this.targetNames.length != layerSizes[layerSizes.length - 1]) {
             throw new IllegalArgumentException("target var names does not fit output nodes");
         }
-        if (inputNames.length != net[0].length - 1) {
+        if (inputNames.length != layerSizes[0]) {
             throw new IllegalArgumentException("input var names does not fit input nodes");
         }
 
         // learn network
 
-        for (int kk = 0; kk < runs; kk++) {
-            pos = RandomSource.nextInt(df.rowCount());
+        Var[] x = vars(df, inputNames);
+        Var[] y = vars(df, targetNames);
 
-            // set inputs
-            for (int i = 0; i < inputNames.length; i++) {
-                if (df.missing(pos, inputNames[i])) {
-                    throw new RuntimeException("detected NaN in input values");
-                }
-                net[0][i + 1].value = df.value(pos, inputNames[i]);
-            }
+        int parts = (batchSize + TASK_ROWS - 1) / TASK_ROWS;
+        int partSize = Math.min(batchSize, TASK_ROWS);
+        Workspace[] ws = new Workspace[parts];
+        for (int i = 0; i < parts; i++) {
+            ws[i] = new Workspace(partSize);
+        }
+        int[] rows = new int[batchSize];
 
-            // feed forward
-            for (int i = 1; i < net.length; i++) {
-                for (int j = 0; j < net[i].length; j++) {
-                    if (net[i][j].inputs != null) {
-                        double t = 0;
-                        for (int k = 0; k < net[i][j].inputs.length; k++) {
-                            t += net[i][j].inputs[k].value * net[i][j].weights[k];
-                        }
-                        net[i][j].value = function.compute(t);
-                    }
-                }
+        for (int kk = 0; kk < runs; kk++) {
+            for (int i = 0; i < batchSize; i++) {
+                rows[i] = RandomSource.nextInt(df.rowCount());
             }
-
-            // back propagate
-
-            for (NetNode[] layer : net) {
-                for (NetNode node : layer) {
-                    node.gamma = 0;
-                }
+            if (parts == 1) {
+                ws[0].gradient(x, y, rows, 0, batchSize);
+            } else {
+                IntStream.range(0, parts).parallel().forEach(
+                        p -> ws[p].gradient(x, y, rows, p * partSize, Math.min(batchSize, (p + 1) * partSize)));
             }
 
-            int last = net.length - 1;
-            for (int i = 0; i < net[last].length; i++) {
-                double expected = df.value(pos, targetNames[i]);
-                double actual = net[last][i].value;
-                net[last][i].gamma = function.differential(actual) * (expected - actual);
-            }
-            for (int i = last - 1; i > 0; i--) {
-                for (int j = 0; j < net[i].length; j++) {
-                    double sum = 0;
-                    for (int k = 0; k < net[i + 1].length; k++) {
-                        if (net[i + 1][k].weights == null) continue;
-                        sum += net[i + 1][k].weights[j] * net[i + 1][k].gamma;
-                    }
-                    net[i][j].gamma = function.differential(net[i][j].value) * sum;
-                }
-            }
-            for (int i = net.length - 1; i > 0; i--) {
-                for (int j = 0; j < net[i].length; j++) {
-                    if (net[i][j].weights != null) {
-                        for (int k = 0; k < net[i][j].weights.length; k++) {
-                            net[i][j].weights[k] +=
-                                    learningRate * net[i][j].inputs[k].value * net[i][j].gamma;
-                        }
+            // update weights with the average gradient
+            double step = learningRate / batchSize;
+            for (int l = 0; l < layers.length; l++) {
+                double[] w = layers[l].weights;
+                for (Workspace part : ws) {
+                    double[] g = part.grad[l];
+                    for (int k = 0; k < w.length; k++) {
+                        w[k] += step * g[k];
                     }
                 }
             }
@@ -221,50 +197,189 @@ public class MultiLayerPerceptronRegressor extends AbstractRegressor {
             pred.addTarget(targetName);
         }
 
-        for (int pos = 0; pos < df.rowCount(); pos++) {
+        Var[] x = vars(df, inputNames);
+        Var[] fit = Arrays.stream(targetNames).map(pred::fit).toArray(Var[]::new);
+        int outputs = layerSizes[layerSizes.length - 1];
+        int blocks = (df.rowCount() + PREDICT_BLOCK_SIZE - 1) / PREDICT_BLOCK_SIZE;
+
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int start = b * PREDICT_BLOCK_SIZE;
+            int end = Math.min(df.rowCount(), start + PREDICT_BLOCK_SIZE);
+            int[] rows = IntStream.range(start, end).toArray();
+            Workspace ws = new Workspace(rows.length);
+            double[] out = ws.feedForward(x, rows, 0, rows.length, false);
+            for (int r = 0; r < rows.length; r++) {
+                for (int i = 0; i < outputs; i++) {
+                    fit[i].setValue(rows[r], out[r * (outputs + 1) + i + 1]);
+                }
+            }
+        });
+        pred.buildComplete();
+        return pred;
+    }
 
-            // set inputs
-            for (int i = 0; i < inputNames.length; i++) {
-                net[0][i + 1].value = df.value(pos, inputNames[i]);
+    private static Var[] vars(Frame df, String[] names) {
+        return Arrays.stream(names).map(df::var).toArray(Var[]::new);
+    }
+
+    /**
+     * Buffers for the activations, deltas and gradients of a part of a batch.
+     * Activations of each layer have a leading bias column equal to 1.
+     */
+    private final class Workspace {
+
+        private final double[][] act;
+        private final double[][] delta;
+        private final double[][] grad;
+
+        Workspace(int capacity) {
+            act = new double[layerSizes.length][];
+            for (int l = 0; l < layerSizes.length; l++) {
+                act[l] = new double[capacity * (layerSizes[l] + 1)];
+            }
+            delta = new double[layers.length][];
+            grad = new double[layers.length][];
+            for (int l = 0; l < layers.length; l++) {
+                delta[l] = new double[capacity * layers[l].outputs];
+                grad[l] = new double[layers[l].weights.length];
             }
+        }
 
-            // feed forward
-            for (int i = 1; i < net.length; i++) {
-                for (int j = 0; j < net[i].length; j++) {
-                    if (net[i][j].inputs != null) {
-                        double t = 0;
-                        for (int k = 0; k < net[i][j].inputs.length; k++) {
-                            t += net[i][j].inputs[k].value * net[i][j].weights[k];
-                        }
-                        net[i][j].value = function.compute(t);
+        /**
+         * Loads the given rows and feeds them forward.
+         *
+         * @return activations of the output layer
+         */
+        double[] feedForward(Var[] x, int[] rows, int from, int to, boolean strict) {
+            int n = to - from;
+            int w0 = x.length + 1;
+            double[] a0 = act[0];
+            for (int r = 0; r < n; r++) {
+                int row = rows[from + r];
+                a0[r * w0] = 1.;
+                for (int i = 0; i < x.length; i++) {
+                    if (strict && x[i].missing(row)) {
+                        throw new RuntimeException("detected NaN in input values");
                     }
+                    a0[r * w0 + i + 1] = x[i].value(row);
                 }
             }
-            for (int i = 0; i < targetNames.length; i++) {
-                pred.fit(targetNames[i]).setValue(pos, net[net.length - 1][i].value);
+            for (int l = 0; l < layers.length; l++) {
+                layers[l].forward(act[l], act[l + 1], n, function);
+            }
+            return act[layers.length];
+        }
+
+        /**
+         * Computes the sum of gradients over the given rows.
+         */
+        void gradient(Var[] x, Var[] y, int[] rows, int from, int to) {
+            int n = to - from;
+            double[] out = feedForward(x, rows, from, to, true);
+
+            // output deltas
+            int last = layers.length - 1;
+            int outputs = layers[last].outputs;
+            double[] d = delta[last];
+            for (int r = 0; r < n; r++) {
+                int row = rows[from + r];
+                for (int j = 0; j < outputs; j++) {
+                    double actual = out[r * (outputs + 1) + j + 1];
+                    d[r * outputs + j] = function.differential(actual) * (y[j].value(row) - actual);
+                }
+            }
+
+            // back propagate
+            for (int l = last; l > 0; l--) {
+                layers[l].backward(delta[l], act[l], delta[l - 1], n, function);
+            }
+            for (int l = 0; l < layers.length; l++) {
+                Arrays.fill(grad[l], 0);
+                layers[l].gradient(delta[l], act[l], grad[l], n);
             }
         }
-        pred.buildComplete();
-        return pred;
     }
 }
 
-class NetNode {
+/**
+ * Fully connected layer. Weights are stored row major with one row
+ * for each output node; the first weight of each row is the bias.
+ */
+final class DenseLayer implements Serializable {
 
-    double value = RandomSource.nextDouble() / 10.;
-    NetNode[] inputs;
-    double[] weights;
-    double gamma;
+    final int inputs;
+    final int outputs;
+    final double[] weights;
 
-    public void setInputs(NetNode[] inputs) {
+    DenseLayer(int inputs, int outputs) {
         this.inputs = inputs;
-        if (inputs == null) {
-            this.weights = null;
-            return;
-        }
-        this.weights = new double[inputs.length];
+        this.outputs = outputs;
+        this.weights = new double[outputs * (inputs + 1)];
         for (int i = 0; i < weights.length; i++) {
             weights[i] = RandomSource.nextDouble() / 10.;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Computes out = f(in * W'), where in has a leading bias column.
+     * A leading bias column is also written in out.
+     */
+    void forward(double[] in, double[] out, int rows, TFunction f) {
+        int iw = inputs + 1;
+        int ow = outputs + 1;
+        for (int r = 0; r < rows; r++) {
+            int io = r * iw;
+            out[r * ow] = 1.;
+            for (int j = 0; j < outputs; j++) {
+                int wo = j * iw;
+                double t = 0;
+                for (int k = 0; k < iw; k++) {
+                    t += in[io + k] * weights[wo + k];
+                }
+                out[r * ow + j + 1] = f.compute(t);
+            }
+        }
+    }
+
+    /**
+     * Computes the deltas of the input nodes, inDelta = f'(in) .* (delta * W),
+     * ignoring the bias column.
+     */
+    void backward(double[] delta, double[] in, double[] inDelta, int rows, TFunction f) {
+        int iw = inputs + 1;
+        Arrays.fill(inDelta, 0, rows * inputs, 0);
+        for (int r = 0; r < rows; r++) {
+            int dio = r * inputs;
+            for (int j = 0; j < outputs; j++) {
+                double dj = delta[r * outputs + j];
+                int wo = j * iw + 1;
+                for (int k = 0; k < inputs; k++) {
+                    inDelta[dio + k] += weights[wo + k] * dj;
+                }
+            }
+            for (int k = 0; k < inputs; k++) {
+                inDelta[dio + k] *= f.differential(in[r * iw + k + 1]);
+            }
+        }
+    }
+
+    /**
+     * Accumulates grad += delta' * in.
+     */
+    void gradient(double[] delta, double[] in, double[] grad, int rows) {
+        int iw = inputs + 1;
+        for (int r = 0; r < rows; r++) {
+            int io = r * iw;
+            for (int j = 0; j < outputs; j++) {
+                double dj = delta[r * outputs + j];
+                if (dj == 0) {
+                    continue;
+                }
+                int go = j * iw;
+                for (int k = 0; k < iw; k++) {
+                    grad[go + k] += dj * in[io + k];
+                }
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@
 
 package rapaio.ml.regressor.tree.rtree;
 
+import rapaio.core.RandomSource;
 import rapaio.data.Frame;
 import rapaio.data.Var;
 import rapaio.data.VarRange;
@@ -30,6 +31,7 @@ import rapaio.ml.regressor.boost.gbt.GBTLossFunction;
 import rapaio.printer.Printer;
 import rapaio.util.Pair;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -48,6 +50,10 @@ public class RTree extends AbstractRegressor implements BTRegressor {
     RTreeSplitter splitter = RTreeSplitter.REMAINS_IGNORED;
     RTreePredictor predictor = RTreePredictor.STANDARD;
 
+    // seed of the random stream used at learning time,
+    // if not specified it is drawn from RandomSource
+    Long seed = null;
+
     // tree root node
     private RTreeNode root;
     private int rows;
@@ -82,8 +88,15 @@ public class RTree extends AbstractRegressor implements BTRegressor {
     }
 
     @Override
-    public void boostFit(Frame x, Var y, Var fx, GBTLossFunction lossFunction) {
-        root.boostFit(x, y, fx, lossFunction);
+    public double[] boostFit(Frame x, Var y, Var fx, GBTLossFunction lossFunction) {
+        int[] rows = new int[x.rowCount()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        double[] fit = new double[x.rowCount()];
+        Arrays.fill(fit, Double.NaN);
+        root.boostFit(x, y, fx, lossFunction, rows, fit);
+        return fit;
     }
 
     @Override
@@ -95,6 +108,7 @@ public class RTree extends AbstractRegressor implements BTRegressor {
                 .withMaxDepth(maxDepth)
                 .withSplitter(splitter)
                 .withFunction(function)
+                .withSeed(seed)
                 .withVarSelector(varSelector);
     }
 
@@ -155,6 +169,24 @@ public class RTree extends AbstractRegressor implements BTRegressor {
         return this;
     }
 
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Specifies the seed of the random stream used for variable selection,
+     * tie breaks and random splits. Trees learned with the same seed on
+     * the same data are identical, regardless of the number of threads used.
+     *
+     * @param seed random seed, null if the seed is drawn from {@link RandomSource}
+     * @return self instance
+     */
+    @Override
+    public RTree withSeed(Long seed) {
+        this.seed = seed;
+        return this;
+    }
+
     @Override
     public void learn(Frame df, Var weights, String... targetVarNames) {
 
@@ -170,7 +202,7 @@ public class RTree extends AbstractRegressor implements BTRegressor {
         rows = df.rowCount();
 
         root = new RTreeNode(null, "root", spot -> true);
-        root.learn(this, df, weights, maxDepth);
+        root.learn(this, df, weights, maxDepth, RandomSource.newRandom(seed == null ? RandomSource.nextLong() : seed));
     }
 
     @Override
@@ -185,6 +217,10 @@ public class RTree extends AbstractRegressor implements BTRegressor {
         return pred;
     }
 
+    public RTreeNode getRoot() {
+        return root;
+    }
+
     @Override
     public void buildSummary(StringBuilder sb) {
         sb.append("> ").append(fullName()).append("\n");
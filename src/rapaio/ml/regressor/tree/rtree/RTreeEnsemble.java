@@ -0,0 +1,411 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.regressor.tree.rtree;
+
+import rapaio.data.Frame;
+import rapaio.data.Var;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Compiled additive ensemble of regression trees, used for fast scoring
+ * of boosted trees.
+ * <p>
+ * All the nodes of all trees are laid out contiguously in primitive arrays.
+ * Each output of the ensemble is computed as the bias of the output plus the
+ * shrunk sum of the predictions of the trees assigned to that output, which
+ * gives the same results as the standard tree predictor.
+ * <p>
+ * Features are given in the order of {@link #featureNames()}. Numeric features
+ * are given by value, nominal features are given by the code of the label,
+ * see {@link #levelCode(String, String)}. Missing values are given as NaN.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class RTreeEnsemble implements Serializable {
+
+    private static final int BLOCK_SIZE = 256;
+
+    private static final byte LESS_EQUAL = 0;
+    private static final byte GREATER = 1;
+    private static final byte EQUAL = 2;
+    private static final byte NOT_EQUAL = 3;
+
+    private final int outputs;
+    private final double shrinkage;
+    private final double[] bias;
+
+    // features
+
+    private final String[] featureNames;
+    private final List<Map<String, Integer>> levels;
+
+    // trees
+
+    private final int[] treeRoot;
+    private final int[] treeOutput;
+
+    // nodes, the edges of a node are stored contiguously
+
+    private final double[] nodeValue;
+    private final double[] nodeWeight;
+    private final int[] nodeFirstEdge;
+    private final int[] nodeEdgeCount;
+
+    // edges, an edge is the test which leads to a child node
+
+    private final int[] edgeFeature;
+    private final byte[] edgeOp;
+    private final double[] edgeValue;
+    private final int[] edgeChild;
+
+    /**
+     * Compiles trees into an ensemble.
+     *
+     * @param trees     lists of trees, one list for each output
+     * @param shrinkage multiplier of tree predictions
+     * @param bias      initial value of each output
+     */
+    public static RTreeEnsemble newCompiled(List<? extends List<?>> trees, double shrinkage, double[] bias) {
+        if (trees.size() != bias.length) {
+            throw new IllegalArgumentException("bias must be specified for each output");
+        }
+        return new RTreeEnsemble(trees, shrinkage, bias);
+    }
+
+    /**
+     * @return true if all the trees can be compiled
+     */
+    public static boolean canCompile(List<? extends List<?>> trees) {
+        for (List<?> list : trees) {
+            for (Object tree : list) {
+                if (!(tree instanceof RTree)) {
+                    return false;
+                }
+                RTree rtree = (RTree) tree;
+                if (rtree.predictor != RTreePredictor.STANDARD || rtree.getRoot() == null
+                        || !canCompile(rtree.getRoot())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean canCompile(RTreeNode node) {
+        if (node.isLeaf()) {
+            return true;
+        }
+        for (RTreeNode child : node.getChildren()) {
+            if (!(child.getPredicate() instanceof RTreeGroupTest) || !canCompile(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private RTreeEnsemble(List<? extends List<?>> trees, double shrinkage, double[] bias) {
+        if (!canCompile(trees)) {
+            throw new IllegalArgumentException("only regression trees with standard predictor and group tests can be compiled");
+        }
+        this.outputs = trees.size();
+        this.shrinkage = shrinkage;
+        this.bias = bias.clone();
+
+        // collect nodes in pre order, children of a node being consecutive edges
+
+        Map<String, Integer> features = new LinkedHashMap<>();
+        List<Map<String, Integer>> levelList = new ArrayList<>();
+        List<RTreeNode> nodes = new ArrayList<>();
+        List<Integer> roots = new ArrayList<>();
+        List<Integer> rootOutputs = new ArrayList<>();
+        int edges = 0;
+        for (int k = 0; k < trees.size(); k++) {
+            for (Object tree : trees.get(k)) {
+                roots.add(nodes.size());
+                rootOutputs.add(k);
+                edges += collect(((RTree) tree).getRoot(), nodes);
+            }
+        }
+
+        treeRoot = roots.stream().mapToInt(Integer::intValue).toArray();
+        treeOutput = rootOutputs.stream().mapToInt(Integer::intValue).toArray();
+
+        nodeValue = new double[nodes.size()];
+        nodeWeight = new double[nodes.size()];
+        nodeFirstEdge = new int[nodes.size()];
+        nodeEdgeCount = new int[nodes.size()];
+        edgeFeature = new int[edges];
+        edgeOp = new byte[edges];
+        edgeValue = new double[edges];
+        edgeChild = new int[edges];
+
+        Map<RTreeNode, Integer> positions = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            positions.put(nodes.get(i), i);
+        }
+        int edge = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            RTreeNode node = nodes.get(i);
+            nodeValue[i] = node.getValue();
+            nodeWeight[i] = node.getWeight();
+            nodeFirstEdge[i] = edge;
+            if (node.isLeaf()) {
+                continue;
+            }
+            nodeEdgeCount[i] = node.getChildren().size();
+            for (RTreeNode child : node.getChildren()) {
+                RTreeGroupTest test = (RTreeGroupTest) child.getPredicate();
+                Integer feature = features.get(test.getTestName());
+                if (feature == null) {
+                    feature = features.size();
+                    features.put(test.getTestName(), feature);
+                    levelList.add(test.isNumeric() ? null : new HashMap<>());
+                }
+                Map<String, Integer> codes = levelList.get(feature);
+                if ((codes == null) != test.isNumeric()) {
+                    throw new IllegalArgumentException("feature " + test.getTestName() + " is used as numeric and nominal");
+                }
+                edgeFeature[edge] = feature;
+                edgeChild[edge] = positions.get(child);
+                switch (test.getOp()) {
+                    case LESS_EQUAL:
+                        edgeOp[edge] = LESS_EQUAL;
+                        edgeValue[edge] = test.getValue();
+                        break;
+                    case GREATER:
+                        edgeOp[edge] = GREATER;
+                        edgeValue[edge] = test.getValue();
+                        break;
+                    default:
+                        edgeOp[edge] = test.getOp() == RTreeGroupTest.Op.EQUAL ? EQUAL : NOT_EQUAL;
+                        codes.putIfAbsent(test.getLabel(), codes.size() + 1);
+                        edgeValue[edge] = codes.get(test.getLabel());
+                }
+                edge++;
+            }
+        }
+        featureNames = features.keySet().toArray(new String[features.size()]);
+        levels = levelList;
+    }
+
+    private static int collect(RTreeNode node, List<RTreeNode> nodes) {
+        nodes.add(node);
+        if (node.isLeaf()) {
+            return 0;
+        }
+        int edges = node.getChildren().size();
+        for (RTreeNode child : node.getChildren()) {
+            edges += collect(child, nodes);
+        }
+        return edges;
+    }
+
+    public int outputCount() {
+        return outputs;
+    }
+
+    public int treeCount() {
+        return treeRoot.length;
+    }
+
+    public int nodeCount() {
+        return nodeValue.length;
+    }
+
+    /**
+     * @return names of features used by trees, in the order expected by scoring
+     */
+    public String[] featureNames() {
+        return featureNames.clone();
+    }
+
+    /**
+     * Returns the code used for a label of a nominal feature. Labels which were
+     * not used by trees have code 0, which behaves like any label not tested.
+     */
+    public int levelCode(String featureName, String label) {
+        for (int i = 0; i < featureNames.length; i++) {
+            if (featureNames[i].equals(featureName)) {
+                if (levels.get(i) == null) {
+                    throw new IllegalArgumentException("feature " + featureName + " is not nominal");
+                }
+                return levels.get(i).getOrDefault(label, 0);
+            }
+        }
+        throw new IllegalArgumentException("feature " + featureName + " is not used by ensemble");
+    }
+
+    /**
+     * Scores a single row on the first output, without allocating memory.
+     *
+     * @param features feature values in the order of {@link #featureNames()}
+     * @return score of the first output
+     */
+    public double score(double[] features) {
+        double score = bias[0];
+        for (int t = 0; t < treeRoot.length; t++) {
+            if (treeOutput[t] == 0) {
+                score += shrinkage * predict(treeRoot[t], features, 0);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Scores a single row on all outputs, without allocating memory.
+     *
+     * @param features feature values in the order of {@link #featureNames()}
+     * @param scores   array which receives the score of each output
+     */
+    public void score(double[] features, double[] scores) {
+        System.arraycopy(bias, 0, scores, 0, outputs);
+        for (int t = 0; t < treeRoot.length; t++) {
+            scores[treeOutput[t]] += shrinkage * predict(treeRoot[t], features, 0);
+        }
+    }
+
+    /**
+     * Scores all rows of a frame. Rows are processed in blocks, all trees being
+     * evaluated on a block before moving to the next one, blocks being scored
+     * concurrently.
+     *
+     * @param df frame which contains all features
+     * @return scores stored by rows, each row having the score of each output
+     */
+    public double[] score(Frame df) {
+        int n = df.rowCount();
+        int F = featureNames.length;
+        Var[] vars = new Var[F];
+        for (int i = 0; i < F; i++) {
+            vars[i] = df.var(featureNames[i]);
+        }
+        double[] scores = new double[n * outputs];
+        int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int start = b * BLOCK_SIZE;
+            int len = Math.min(n, start + BLOCK_SIZE) - start;
+
+            double[] x = new double[len * F];
+            for (int f = 0; f < F; f++) {
+                Map<String, Integer> codes = levels.get(f);
+                for (int i = 0; i < len; i++) {
+                    if (codes == null) {
+                        x[i * F + f] = vars[f].missing(start + i) ? Double.NaN : vars[f].value(start + i);
+                    } else {
+                        x[i * F + f] = codes.getOrDefault(vars[f].label(start + i), 0);
+                    }
+                }
+            }
+            for (int i = 0; i < len; i++) {
+                System.arraycopy(bias, 0, scores, (start + i) * outputs, outputs);
+            }
+            for (int t = 0; t < treeRoot.length; t++) {
+                int root = treeRoot[t];
+                int out = treeOutput[t];
+                for (int i = 0; i < len; i++) {
+                    scores[(start + i) * outputs + out] += shrinkage * predict(root, x, i * F);
+                }
+            }
+        });
+        return scores;
+    }
+
+    private boolean test(int edge, double value) {
+        switch (edgeOp[edge]) {
+            case LESS_EQUAL:
+                return value <= edgeValue[edge];
+            case GREATER:
+                return value > edgeValue[edge];
+            case EQUAL:
+                return value == edgeValue[edge];
+            default:
+                return value != edgeValue[edge];
+        }
+    }
+
+    /**
+     * Finds the child which accepts the row, -1 if no child accepts it.
+     */
+    private int next(int node, double[] x, int offset) {
+        int end = nodeFirstEdge[node] + nodeEdgeCount[node];
+        for (int e = nodeFirstEdge[node]; e < end; e++) {
+            if (test(e, x[offset + edgeFeature[e]])) {
+                return edgeChild[e];
+            }
+        }
+        return -1;
+    }
+
+    private double predict(int node, double[] x, int offset) {
+        while (nodeEdgeCount[node] > 0) {
+            int child = next(node, x, offset);
+            if (child < 0) {
+                return predictMissing(node, x, offset);
+            }
+            node = child;
+        }
+        return nodeValue[node];
+    }
+
+    /**
+     * When no child accepts the row, the prediction is the mean of children
+     * predictions weighted by the weights of their predictions, as
+     * {@link RTreePredictor#STANDARD} does.
+     */
+    private double predictMissing(int node, double[] x, int offset) {
+        double sum = 0;
+        double total = 0;
+        int end = nodeFirstEdge[node] + nodeEdgeCount[node];
+        for (int e = nodeFirstEdge[node]; e < end; e++) {
+            double value = predict(edgeChild[e], x, offset);
+            double weight = predictionWeight(edgeChild[e], x, offset);
+            if (Double.isNaN(value) || Double.isNaN(weight)) {
+                continue;
+            }
+            sum += weight * value;
+            total += weight;
+        }
+        return total == 0 ? Double.NaN : sum / total;
+    }
+
+    private double predictionWeight(int node, double[] x, int offset) {
+        while (nodeEdgeCount[node] > 0) {
+            int child = next(node, x, offset);
+            if (child < 0) {
+                double total = 0;
+                int end = nodeFirstEdge[node] + nodeEdgeCount[node];
+                for (int e = nodeFirstEdge[node]; e < end; e++) {
+                    total += predictionWeight(edgeChild[e], x, offset);
+                }
+                return total;
+            }
+            node = child;
+        }
+        return nodeWeight[node];
+    }
+}
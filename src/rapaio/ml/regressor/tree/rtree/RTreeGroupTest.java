@@ -0,0 +1,104 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.regressor.tree.rtree;
+
+import rapaio.data.stream.FSpot;
+
+import java.io.Serializable;
+import java.util.function.Predicate;
+
+/**
+ * Group predicate of a RTree split which keeps the description of the test,
+ * in order to allow trees to be compiled into flat structures
+ * (see {@link RTreeEnsemble}).
+ * <p>
+ * Numeric tests do not accept missing values, nominal tests compare labels.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public final class RTreeGroupTest implements Predicate<FSpot>, Serializable {
+
+    public enum Op {
+        LESS_EQUAL, GREATER, EQUAL, NOT_EQUAL
+    }
+
+    private final String testName;
+    private final Op op;
+    private final double value;
+    private final String label;
+
+    private RTreeGroupTest(String testName, Op op, double value, String label) {
+        this.testName = testName;
+        this.op = op;
+        this.value = value;
+        this.label = label;
+    }
+
+    public static RTreeGroupTest numLessEqual(String testName, double value) {
+        return new RTreeGroupTest(testName, Op.LESS_EQUAL, value, null);
+    }
+
+    public static RTreeGroupTest numGreater(String testName, double value) {
+        return new RTreeGroupTest(testName, Op.GREATER, value, null);
+    }
+
+    public static RTreeGroupTest nomEqual(String testName, String label) {
+        return new RTreeGroupTest(testName, Op.EQUAL, Double.NaN, label);
+    }
+
+    public static RTreeGroupTest nomNotEqual(String testName, String label) {
+        return new RTreeGroupTest(testName, Op.NOT_EQUAL, Double.NaN, label);
+    }
+
+    public String getTestName() {
+        return testName;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public boolean isNumeric() {
+        return op == Op.LESS_EQUAL || op == Op.GREATER;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    @Override
+    public boolean test(FSpot spot) {
+        switch (op) {
+            case LESS_EQUAL:
+                return !spot.missing(testName) && spot.value(testName) <= value;
+            case GREATER:
+                return !spot.missing(testName) && spot.value(testName) > value;
+            case EQUAL:
+                return spot.label(testName).equals(label);
+            default:
+                return !spot.label(testName).equals(label);
+        }
+    }
+}
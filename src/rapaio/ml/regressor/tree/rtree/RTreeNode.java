@@ -20,6 +20,7 @@
 
 package rapaio.ml.regressor.tree.rtree;
 
+import rapaio.core.RandomSource;
 import rapaio.core.stat.WeightedMean;
 import rapaio.data.Frame;
 import rapaio.data.Mapping;
@@ -29,11 +30,11 @@ import rapaio.ml.regressor.boost.gbt.GBTLossFunction;
 import rapaio.util.Pair;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Random;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 /**
  * Created by <a href="mailto:padreati@yahoo.com>Aurelian Tutuianu</a> on 11/24/14.
@@ -89,7 +90,7 @@ public class RTreeNode {
         return weight;
     }
 
-    public void learn(RTree tree, Frame df, Var weights, int depth) {
+    public void learn(RTree tree, Frame df, Var weights, int depth, Random random) {
         value = new WeightedMean(df.var(tree.firstTargetName()), weights).value();
         weight = weights.stream().parallel().complete().mapToDouble().sum();
 
@@ -97,24 +98,33 @@ public class RTreeNode {
             return;
         }
 
-        List<RTreeCandidate> candidateList = new ArrayList<>();
         tree.getVarSelector().initialize(df, null);
+        String[] testCols = tree.getVarSelector().nextVarNames(random);
+
+        // each test has its own random stream and its own slot for candidates,
+        // so that the outcome does not depend on the order of the parallel execution
+
+        long[] testSeeds = new long[testCols.length];
+        for (int i = 0; i < testSeeds.length; i++) {
+            testSeeds[i] = random.nextLong();
+        }
 
-        ConcurrentLinkedQueue<RTreeCandidate> candidates = new ConcurrentLinkedQueue<>();
-        Arrays.stream(tree.getVarSelector().nextVarNames()).parallel().forEach(testCol -> {
+        List<List<RTreeCandidate>> candidates = new ArrayList<>(Collections.nCopies(testCols.length, Collections.emptyList()));
+        IntStream.range(0, testCols.length).parallel().forEach(i -> {
+            String testCol = testCols[i];
             if (testCol.equals(tree.firstTargetName())) return;
 
+            Random testRandom = RandomSource.newRandom(testSeeds[i]);
             if (df.var(testCol).type().isNumeric()) {
-                tree.numericMethod.computeCandidates(
-                        tree, df, weights, testCol, tree.firstTargetName(), tree.function)
-                        .forEach(candidates::add);
+                candidates.set(i, tree.numericMethod.computeCandidates(
+                        tree, df, weights, testCol, tree.firstTargetName(), tree.function, testRandom));
             } else {
-                tree.nominalMethod.computeCandidates(
-                        tree, df, weights, testCol, tree.firstTargetName(), tree.function)
-                        .forEach(candidates::add);
+                candidates.set(i, tree.nominalMethod.computeCandidates(
+                        tree, df, weights, testCol, tree.firstTargetName(), tree.function, testRandom));
             }
         });
-        candidateList.addAll(candidates);
+        List<RTreeCandidate> candidateList = new ArrayList<>();
+        candidates.forEach(candidateList::addAll);
         Collections.sort(candidateList);
 
         if (candidateList.isEmpty()) {
@@ -130,18 +140,28 @@ public class RTreeNode {
             return;
         }
 
-        Pair<List<Frame>, List<Var>> frames = tree.splitter.performSplit(df, weights, bestCandidate);
+        Pair<List<Frame>, List<Var>> frames = tree.splitter.performSplit(df, weights, bestCandidate, random);
         children = new ArrayList<>(frames.first.size());
         for (int i = 0; i < frames.first.size(); i++) {
             RTreeNode child = new RTreeNode(this, bestCandidate.getGroupNames().get(i), bestCandidate.getGroupPredicates().get(i));
             children.add(child);
-            child.learn(tree, frames.first.get(i), frames.second.get(i), depth - 1);
+            child.learn(tree, frames.first.get(i), frames.second.get(i), depth - 1, random);
         }
     }
 
-    public void boostFit(Frame x, Var y, Var fx, GBTLossFunction lossFunction) {
+    /**
+     * Fits leaf values to minimize the loss function and stores the fitted
+     * leaf value of each row in the fit array.
+     *
+     * @param rows positions in the fit array of the rows from x
+     * @param fit  fitted values, indexed by positions from rows
+     */
+    public void boostFit(Frame x, Var y, Var fx, GBTLossFunction lossFunction, int[] rows, double[] fit) {
         if (leaf) {
             value = lossFunction.findMinimum(y, fx);
+            for (int row : rows) {
+                fit[row] = value;
+            }
             return;
         }
 
@@ -160,7 +180,11 @@ public class RTreeNode {
         });
 
         for (int i = 0; i < children.size(); i++) {
-            children.get(i).boostFit(x.mapRows(mapping[i]), y.mapRows(mapping[i]), fx.mapRows(mapping[i]), lossFunction);
+            int[] childRows = new int[mapping[i].size()];
+            for (int j = 0; j < childRows.length; j++) {
+                childRows[j] = rows[mapping[i].get(j)];
+            }
+            children.get(i).boostFit(x.mapRows(mapping[i]), y.mapRows(mapping[i]), fx.mapRows(mapping[i]), lossFunction, childRows, fit);
         }
     }
 }
@@ -20,13 +20,13 @@
 
 package rapaio.ml.regressor.tree.rtree;
 
-import rapaio.core.RandomSource;
 import rapaio.core.stat.Variance;
 import rapaio.data.Frame;
 import rapaio.data.Var;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by <a href="mailto:padreati@yahoo.com>Aurelian Tutuianu</a>.
@@ -35,7 +35,7 @@ public interface RTreeNominalMethod {
 
     String name();
 
-    List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testColName, String targetColName, RTreeTestFunction function);
+    List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testColName, String targetColName, RTreeTestFunction function, Random random);
 
     public RTreeNominalMethod IGNORE = new RTreeNominalMethod() {
 
@@ -45,7 +45,7 @@ public interface RTreeNominalMethod {
         }
 
         @Override
-        public List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testColName, String targetColName, RTreeTestFunction function) {
+        public List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testColName, String targetColName, RTreeTestFunction function, Random random) {
             return new ArrayList<>();
         }
     };
@@ -59,7 +59,7 @@ public interface RTreeNominalMethod {
 
 
         @Override
-        public List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testColName, String targetColName, RTreeTestFunction function) {
+        public List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testColName, String targetColName, RTreeTestFunction function, Random random) {
 
             List<RTreeCandidate> result = new ArrayList<>();
             RTreeCandidate best = null;
@@ -94,16 +94,16 @@ public interface RTreeNominalMethod {
                     best = candidate;
                     for (int j = 0; j < labels.size(); j++) {
                         String label = labels.get(j);
-                        best.addGroup(testColName + " == " + label, spot -> spot.label(testColName).equals(label));
+                        best.addGroup(testColName + " == " + label, RTreeGroupTest.nomEqual(testColName, label));
                     }
                 } else {
                     int comp = best.compareTo(candidate);
                     if (comp < 0) continue;
-                    if (comp == 0 && RandomSource.nextDouble() > 0.5) continue;
+                    if (comp == 0 && random.nextDouble() > 0.5) continue;
                     best = candidate;
                     for (int j = 0; j < labels.size(); j++) {
                         String label = labels.get(j);
-                        best.addGroup(testColName + " == " + label, spot -> spot.label(testColName).equals(label));
+                        best.addGroup(testColName + " == " + label, RTreeGroupTest.nomEqual(testColName, label));
                     }
                 }
             }
@@ -122,7 +122,7 @@ public interface RTreeNominalMethod {
 
 
         @Override
-        public List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testColName, String targetColName, RTreeTestFunction function) {
+        public List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testColName, String targetColName, RTreeTestFunction function, Random random) {
 
             List<RTreeCandidate> result = new ArrayList<>();
             RTreeCandidate best = null;
@@ -155,15 +155,15 @@ public interface RTreeNominalMethod {
                 RTreeCandidate candidate = new RTreeCandidate(value, testColName);
                 if (best == null) {
                     best = candidate;
-                    best.addGroup(testColName + " == " + testLabel, spot -> spot.label(testColName).equals(testLabel));
-                    best.addGroup(testColName + " != " + testLabel, spot -> !spot.label(testColName).equals(testLabel));
+                    best.addGroup(testColName + " == " + testLabel, RTreeGroupTest.nomEqual(testColName, testLabel));
+                    best.addGroup(testColName + " != " + testLabel, RTreeGroupTest.nomNotEqual(testColName, testLabel));
                 } else {
                     int comp = best.compareTo(candidate);
                     if (comp < 0) continue;
-                    if (comp == 0 && RandomSource.nextDouble() > 0.5) continue;
+                    if (comp == 0 && random.nextDouble() > 0.5) continue;
                     best = candidate;
-                    best.addGroup(testColName + " == " + testLabel, spot -> spot.label(testColName).equals(testLabel));
-                    best.addGroup(testColName + " != " + testLabel, spot -> !spot.label(testColName).equals(testLabel));
+                    best.addGroup(testColName + " == " + testLabel, RTreeGroupTest.nomEqual(testColName, testLabel));
+                    best.addGroup(testColName + " != " + testLabel, RTreeGroupTest.nomNotEqual(testColName, testLabel));
                 }
             }
             if (best != null)
@@ -20,7 +20,6 @@
 
 package rapaio.ml.regressor.tree.rtree;
 
-import rapaio.core.RandomSource;
 import rapaio.core.stat.OnlineStat;
 import rapaio.data.Frame;
 import rapaio.data.Index;
@@ -32,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by <a href="mailto:padreati@yahoo.com>Aurelian Tutuianu</a>.
@@ -40,7 +40,7 @@ public interface RTreeNumericMethod {
 
     String name();
 
-    List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testVarName, String targetVarName, RTreeTestFunction function);
+    List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testVarName, String targetVarName, RTreeTestFunction function, Random random);
 
     RTreeNumericMethod IGNORE = new RTreeNumericMethod() {
         @Override
@@ -49,7 +49,7 @@ public interface RTreeNumericMethod {
         }
 
         @Override
-        public List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testVarName, String targetVarName, RTreeTestFunction function) {
+        public List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testVarName, String targetVarName, RTreeTestFunction function, Random random) {
             return new ArrayList<>();
         }
     };
@@ -61,7 +61,7 @@ public interface RTreeNumericMethod {
         }
 
         @Override
-        public List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testVarName, String targetVarName, RTreeTestFunction function) {
+        public List<RTreeCandidate> computeCandidates(RTree c, Frame df, Var weights, String testVarName, String targetVarName, RTreeTestFunction function, Random random) {
             Var test = df.var(testVarName);
             Var target = df.var(targetVarName);
 
@@ -112,23 +112,23 @@ public interface RTreeNumericMethod {
                     final double testValue = test.value(sort.index(i));
                     current.addGroup(
                             String.format("%s <= %.6f", testVarName, testValue),
-                            spot -> !spot.missing(testVarName) && spot.value(testVarName) <= testValue);
+                            RTreeGroupTest.numLessEqual(testVarName, testValue));
                     current.addGroup(
                             String.format("%s > %.6f", testVarName, testValue),
-                            spot -> !spot.missing(testVarName) && spot.value(testVarName) > testValue);
+                            RTreeGroupTest.numGreater(testVarName, testValue));
                 } else {
                     int comp = best.compareTo(current);
                     if (comp < 0) continue;
-                    if (comp == 0 && RandomSource.nextDouble() > 0.5) continue;
+                    if (comp == 0 && random.nextDouble() > 0.5) continue;
                     best = current;
 
                     final double testValue = test.value(sort.index(i));
                     current.addGroup(
                             String.format("%s <= %.6f", testVarName, testValue),
-                            spot -> !spot.missing(testVarName) && spot.value(testVarName) <= testValue);
+                            RTreeGroupTest.numLessEqual(testVarName, testValue));
                     current.addGroup(
                             String.format("%s > %.6f", testVarName, testValue),
-                            spot -> !spot.missing(testVarName) && spot.value(testVarName) > testValue);
+                            RTreeGroupTest.numGreater(testVarName, testValue));
                 }
             }
             return (best != null) ? Arrays.asList(best) : Collections.EMPTY_LIST;
@@ -20,7 +20,6 @@
 
 package rapaio.ml.regressor.tree.rtree;
 
-import rapaio.core.RandomSource;
 import rapaio.data.*;
 import rapaio.data.stream.FSpot;
 import rapaio.util.Pair;
@@ -36,7 +35,7 @@ public interface RTreeSplitter {
 
     String name();
 
-    public Pair<List<Frame>, List<Var>> performSplit(Frame df, Var weights, RTreeCandidate candidate);
+    public Pair<List<Frame>, List<Var>> performSplit(Frame df, Var weights, RTreeCandidate candidate, Random random);
 
     RTreeSplitter REMAINS_IGNORED = new RTreeSplitter() {
         @Override
@@ -45,7 +44,7 @@ public interface RTreeSplitter {
         }
 
         @Override
-        public Pair<List<Frame>, List<Var>> performSplit(Frame df, Var weights, RTreeCandidate candidate) {
+        public Pair<List<Frame>, List<Var>> performSplit(Frame df, Var weights, RTreeCandidate candidate, Random random) {
             List<Mapping> mappings = new ArrayList<>();
             List<Var> weightsList = new ArrayList<>();
             for (int i = 0; i < candidate.getGroupPredicates().size(); i++) {
@@ -79,7 +78,7 @@ public interface RTreeSplitter {
         }
 
         @Override
-        public Pair<List<Frame>, List<Var>> performSplit(Frame df, Var weights, RTreeCandidate candidate) {
+        public Pair<List<Frame>, List<Var>> performSplit(Frame df, Var weights, RTreeCandidate candidate, Random random) {
             List<Mapping> mappings = new ArrayList<>();
             List<Var> weightsList = new ArrayList<>();
             for (int i = 0; i < candidate.getGroupPredicates().size(); i++) {
@@ -129,7 +128,7 @@ public interface RTreeSplitter {
         }
 
         @Override
-        public Pair<List<Frame>, List<Var>> performSplit(Frame df, Var weights, RTreeCandidate candidate) {
+        public Pair<List<Frame>, List<Var>> performSplit(Frame df, Var weights, RTreeCandidate candidate, Random random) {
             List<Mapping> mappings = new ArrayList<>();
             List<Var> weightsList = new ArrayList<>();
             for (int i = 0; i < candidate.getGroupPredicates().size(); i++) {
@@ -180,7 +179,7 @@ public interface RTreeSplitter {
         }
 
         @Override
-        public Pair<List<Frame>, List<Var>> performSplit(Frame df, Var weights, RTreeCandidate candidate) {
+        public Pair<List<Frame>, List<Var>> performSplit(Frame df, Var weights, RTreeCandidate candidate, Random random) {
             List<Mapping> mappings = new ArrayList<>();
             for (int i = 0; i < candidate.getGroupPredicates().size(); i++) {
                 mappings.add(Mapping.newEmpty());
@@ -197,7 +196,7 @@ public interface RTreeSplitter {
                 }
                 missingSpots.add(s.row());
             });
-            missingSpots.forEach(rowId -> mappings.get(RandomSource.nextInt(mappings.size())).add(rowId));
+            missingSpots.forEach(rowId -> mappings.get(random.nextInt(mappings.size())).add(rowId));
             List<Frame> frameList = mappings.stream()
                     .map(mapping -> MappedFrame.newByRow(df, mapping)).collect(Collectors.toList());
             List<Var> weightList = mappings.stream()
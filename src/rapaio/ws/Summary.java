@@ -21,8 +21,7 @@
 package rapaio.ws;
 
 import rapaio.core.Printable;
-import rapaio.core.stat.Mean;
-import rapaio.core.stat.Quantiles;
+import rapaio.core.stat.VarStat;
 import rapaio.data.Frame;
 import rapaio.data.Nominal;
 import rapaio.data.Var;
@@ -30,6 +29,7 @@ import rapaio.data.VarType;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.stream.IntStream;
 
 import static rapaio.WS.code;
 import static rapaio.WS.getPrinter;
@@ -39,6 +39,8 @@ import static rapaio.WS.getPrinter;
  */
 public class Summary {
 
+    private static final double[] SUMMARY_PERCENTILES = new double[]{0.25, 0.50, 0.75};
+
     public static void summary(Frame df) {
         summary(df, df.varNames());
     }
@@ -63,21 +65,20 @@ public class Summary {
             }
         }
 
+        // statistics of all numeric variables, each computed in a single parallel pass
+        VarStat[] stats = new VarStat[names.length];
+        IntStream.range(0, names.length).parallel()
+                .filter(k -> df.var(names[k]).type().isNumeric())
+                .forEach(k -> stats[k] = new VarStat(df.var(names[k]), SUMMARY_PERCENTILES));
+
         for (int k = 0; k < names.length; k++) {
             int i = df.varIndex(names[k]);
 
             Var v = df.var(i);
             if (v.type().isNumeric()) {
-                double[] p = new double[]{0., 0.25, 0.50, 0.75, 1.00};
-                double[] perc = new Quantiles(v, p).values();
-                double mean = new Mean(v).value();
-
-                int nas = 0;
-                for (int j = 0; j < df.rowCount(); j++) {
-                    if (v.missing(j)) {
-                        nas++;
-                    }
-                }
+                VarStat stat = stats[k];
+                double[] perc = stat.quantiles();
+                int nas = stat.missing();
 
                 first[k][0] = "Min.";
                 first[k][1] = "1st Qu.";
@@ -86,12 +87,12 @@ public class Summary {
                 first[k][4] = "2nd Qu.";
                 first[k][5] = "Max.";
 
-                second[k][0] = String.format("%.3f", perc[0]);
-                second[k][1] = String.format("%.3f", perc[1]);
-                second[k][2] = String.format("%.3f", perc[2]);
-                second[k][3] = String.format("%.3f", mean);
-                second[k][4] = String.format("%.3f", perc[3]);
-                second[k][5] = String.format("%.3f", perc[4]);
+                second[k][0] = String.format("%.3f", stat.min());
+                second[k][1] = String.format("%.3f", perc[0]);
+                second[k][2] = String.format("%.3f", perc[1]);
+                second[k][3] = String.format("%.3f", stat.mean());
+                second[k][4] = String.format("%.3f", perc[2]);
+                second[k][5] = String.format("%.3f", stat.max());
 
                 if (nas != 0) {
                     first[k][6] = "NA's";
@@ -271,16 +272,9 @@ public class Summary {
         }
 
         if (v.type() == VarType.INDEX || v.type() == VarType.NUMERIC) {
-            double[] p = new double[]{0., 0.25, 0.50, 0.75, 1.00};
-            double[] perc = new Quantiles(v, p).values();
-            double mean = new Mean(v).value();
-
-            int nas = 0;
-            for (int j = 0; j < v.rowCount(); j++) {
-                if (v.missing(j)) {
-                    nas++;
-                }
-            }
+            VarStat stat = new VarStat(v, SUMMARY_PERCENTILES);
+            double[] perc = stat.quantiles();
+            int nas = stat.missing();
 
             first[0] = "Min.";
             first[1] = "1st Qu.";
@@ -289,12 +283,12 @@ public class Summary {
             first[4] = "2nd Qu.";
             first[5] = "Max.";
 
-            second[0] = String.format("%.3f", perc[0]);
-            second[1] = String.format("%.3f", perc[1]);
-            second[2] = String.format("%.3f", perc[2]);
-            second[3] = String.format("%.3f", mean);
-            second[4] = String.format("%.3f", perc[3]);
-            second[5] = String.format("%.3f", perc[4]);
+            second[0] = String.format("%.3f", stat.min());
+            second[1] = String.format("%.3f", perc[0]);
+            second[2] = String.format("%.3f", perc[1]);
+            second[3] = String.format("%.3f", stat.mean());
+            second[4] = String.format("%.3f", perc[2]);
+            second[5] = String.format("%.3f", stat.max());
 
             if (nas != 0) {
                 first[6] = "NA's";
@@ -0,0 +1,143 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.core.correlation;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.data.Numeric;
+import rapaio.data.SolidFrame;
+import rapaio.data.Var;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class PearsonRCorrelationTest {
+
+    private static Var[] randomVars(int rows, int cols, double missing, long seed) {
+        Random random = RandomSource.newRandom(seed);
+        Var[] vars = new Var[cols];
+        for (int j = 0; j < cols; j++) {
+            vars[j] = Numeric.newEmpty(rows).withName("x" + j);
+            for (int i = 0; i < rows; i++) {
+                double value = 10 * random.nextGaussian() + 100 * j;
+                if (j > 0) {
+                    // correlate with previous variable
+                    value += 3 * vars[j - 1].value(i);
+                }
+                vars[j].setValue(i, value);
+            }
+        }
+        for (Var var : vars) {
+            for (int i = 0; i < rows; i++) {
+                if (random.nextDouble() < missing) {
+                    var.setMissing(i);
+                }
+            }
+        }
+        return vars;
+    }
+
+    /**
+     * Straightforward two pass computation on pairwise-complete observations.
+     */
+    private static double naive(Var x, Var y) {
+        int len = Math.min(x.rowCount(), y.rowCount());
+        double xMean = 0;
+        double yMean = 0;
+        int count = 0;
+        for (int i = 0; i < len; i++) {
+            if (x.missing(i) || y.missing(i)) {
+                continue;
+            }
+            xMean += x.value(i);
+            yMean += y.value(i);
+            count++;
+        }
+        xMean /= count;
+        yMean /= count;
+        double sxy = 0;
+        double sxx = 0;
+        double syy = 0;
+        for (int i = 0; i < len; i++) {
+            if (x.missing(i) || y.missing(i)) {
+                continue;
+            }
+            sxy += (x.value(i) - xMean) * (y.value(i) - yMean);
+            sxx += (x.value(i) - xMean) * (x.value(i) - xMean);
+            syy += (y.value(i) - yMean) * (y.value(i) - yMean);
+        }
+        return sxy / Math.sqrt(sxx * syy);
+    }
+
+    @Test
+    public void testKnownValue() {
+        Var x = Numeric.newCopyOf(1, 2, 3, 4, 5);
+        Var y = Numeric.newCopyOf(2, 4, 5, 4, 5);
+        assertEquals(0.7745966692, new PearsonRCorrelation(x, y).values()[0][1], 1e-10);
+        assertEquals(-1, new PearsonRCorrelation(x, Numeric.newCopyOf(5, 4, 3, 2, 1)).values()[0][1], 1e-12);
+    }
+
+    @Test
+    public void testMatrixComplete() {
+        Var[] vars = randomVars(1_000, 40, 0, 123);
+        Frame df = SolidFrame.newWrapOf(vars);
+        double[][] r = new PearsonRCorrelation(df).values();
+        for (int i = 0; i < vars.length; i++) {
+            assertEquals(1, r[i][i], 0);
+            for (int j = 0; j < vars.length; j++) {
+                if (i != j) {
+                    assertEquals(naive(vars[i], vars[j]), r[i][j], 1e-12);
+                    assertEquals(r[i][j], r[j][i], 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMatrixPairwiseComplete() {
+        Var[] vars = randomVars(1_000, 30, 0.1, 124);
+        double[][] r = new PearsonRCorrelation(vars).values();
+        for (int i = 0; i < vars.length; i++) {
+            for (int j = i + 1; j < vars.length; j++) {
+                assertEquals(naive(vars[i], vars[j]), r[i][j], 1e-10);
+                assertEquals(r[i][j], r[j][i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void testDifferentLengthsAndDegenerate() {
+        Var x = Numeric.newCopyOf(1, 2, 3, 4, 5, 6, 7);
+        Var y = Numeric.newCopyOf(2, 1, 4, 3, 5);
+        Var z = Numeric.newCopyOf(3, 3, 3, 3, 3);
+        double[][] r = new PearsonRCorrelation(x, y, z).values();
+        assertEquals(naive(x, y), r[0][1], 1e-12);
+        assertTrue(Double.isNaN(r[0][2]));
+        assertTrue(Double.isNaN(r[1][2]));
+        assertEquals(1, r[2][2], 0);
+    }
+}
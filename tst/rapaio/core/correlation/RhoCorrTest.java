@@ -50,4 +50,23 @@ public class RhoCorrTest {
         same = new RhoCorr(tvHours, tvHours);
         assertEquals(1., same.values()[0][1], 1e-10);
     }
+
+    @Test
+    public void testTiesAndMissing() {
+        Var x = Numeric.newCopyOf(1, 2, 2, 3, 5, 4, Double.NaN, 8);
+        Var y = Numeric.newCopyOf(3, 1, 1, 2, 9, Double.NaN, 7, 4);
+        Var z = Numeric.newCopyOf(8, 7, 6, 5, 4, 3, 2, 1);
+
+        // complete rows 0, 1, 2, 3, 4, 7 are ranked again, ties get average ranks
+        // x ranks: 1, 2.5, 2.5, 4, 5, 6
+        // y ranks: 4, 1.5, 1.5, 3, 6, 5
+        // centered on 3.5: sxy = 10, sxx = 17, syy = 17
+        double[][] rho = new RhoCorr(x, y, z).values();
+        assertEquals(10 / 17.0, rho[0][1], 1e-12);
+        assertEquals(rho[0][1], rho[1][0], 0);
+
+        // x without row 6, against z decreasing on the same rows
+        assertEquals(-new RhoCorr(Numeric.newCopyOf(1, 2, 2, 3, 5, 4, 8),
+                Numeric.newCopyOf(1, 2, 3, 4, 5, 6, 8)).values()[0][1], rho[0][2], 1e-12);
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.core.distributions.empirical;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.data.Numeric;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class KDETest {
+
+    private Numeric sample(int size) {
+        Random random = RandomSource.newRandom(123);
+        Numeric x = Numeric.newEmpty().withName("x");
+        for (int i = 0; i < size; i++) {
+            // rounded values give duplicates
+            x.addValue(Math.round(random.nextGaussian() * 100) / 100.0);
+        }
+        x.addValue(Double.NaN);
+        return x;
+    }
+
+    @Test
+    public void testBatchedIsExact() {
+        Numeric x = sample(5_000);
+        KFunc[] kernels = new KFunc[]{new KFuncGaussian(), new KFuncEpanechnikov(), new KFuncUniform(),
+                new KFuncTriangular(), new KFuncBiWeight(), new KFuncTricube()};
+        double[] points = new double[3_000];
+        Random random = RandomSource.newRandom(7);
+        for (int i = 0; i < points.length; i++) {
+            points[i] = (i % 3 == 0) ? x.value(i) : random.nextDouble() * 8 - 4;
+        }
+        for (KFunc kernel : kernels) {
+            KDE kde = new KDE(x, kernel, 0.3);
+            double[] batch = kde.pdf(points);
+            for (int i = 0; i < points.length; i++) {
+                assertEquals(kde.pdf(points[i]), batch[i], 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testGrid() {
+        Numeric x = sample(10_000);
+        for (KFunc kernel : new KFunc[]{new KFuncGaussian(), new KFuncEpanechnikov()}) {
+            KDE kde = new KDE(x, kernel, 0.5);
+            // small grid uses direct convolution, large grid uses FFT
+            for (int points : new int[]{201, 4001}) {
+                double[] grid = kde.pdfGrid(-5, 5, points);
+                double delta = 10.0 / (points - 1);
+                for (int i = 0; i < points; i++) {
+                    assertEquals(kde.pdf(-5 + i * delta), grid[i], points < 1000 ? 2e-3 : 1e-5);
+                }
+            }
+        }
+
+        KDE kde = new KDE(x, 0.2);
+        Function<Double, Double> pdf = kde.getBinnedPdf(2_000);
+        for (double v = -4; v < 4; v += 0.013) {
+            assertEquals(kde.pdf(v), pdf.apply(v), 1e-5);
+        }
+        assertEquals(0, pdf.apply(100.0), 1e-20);
+    }
+
+    @Test
+    public void testDeterministicAcrossThreads() throws InterruptedException, ExecutionException {
+        // enough values for several binning blocks and a parallel single point evaluation
+        KDE kde = new KDE(sample(300_000), 0.5);
+        double[] reference = new ForkJoinPool(1).submit(() -> kde.pdfGrid(-5, 5, 501)).get();
+        double referencePoint = new ForkJoinPool(1).submit(() -> kde.pdf(0.1)).get();
+        for (int threads : new int[]{2, 3, 7}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            assertArrayEquals(reference, pool.submit(() -> kde.pdfGrid(-5, 5, 501)).get(), 0);
+            assertEquals(referencePoint, pool.submit(() -> kde.pdf(0.1)).get(), 0);
+        }
+    }
+}
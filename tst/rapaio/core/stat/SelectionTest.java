@@ -0,0 +1,150 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.core.stat;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.data.Numeric;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class SelectionTest {
+
+    private double[] sample(Random random, int len, int distinct) {
+        double[] values = new double[len];
+        for (int i = 0; i < len; i++) {
+            values[i] = distinct > 0 ? random.nextInt(distinct) : random.nextGaussian();
+        }
+        return values;
+    }
+
+    @Test
+    public void testSelect() {
+        Random random = RandomSource.newRandom(1);
+        for (int len : new int[]{1, 2, 7, 16, 17, 100, 1_000, 10_000}) {
+            for (int distinct : new int[]{0, 1, 3, 50}) {
+                double[] values = sample(random, len, distinct);
+                double[] sorted = Arrays.copyOf(values, len);
+                Arrays.sort(sorted);
+                for (int t = 0; t < 5; t++) {
+                    int k = random.nextInt(len);
+                    double[] copy = Arrays.copyOf(values, len);
+                    assertEquals(sorted[k], Selection.select(copy, 0, len, k), 0);
+                    for (int i = 0; i < k; i++) {
+                        assertTrue(copy[i] <= copy[k]);
+                    }
+                    for (int i = k + 1; i < len; i++) {
+                        assertTrue(copy[i] >= copy[k]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testQuantilesLikeSorting() {
+        Random random = RandomSource.newRandom(2);
+        double[] p = new double[]{0.75, 0, 0.1, 0.25, 0.5, 0.5, 0.9, 0.99, 1};
+        for (int len : new int[]{1, 2, 3, 10, 101, 5_000}) {
+            for (int distinct : new int[]{0, 2, 100}) {
+                double[] values = sample(random, len, distinct);
+
+                // reference estimator on sorted values, R-8
+
+                double[] sorted = Arrays.copyOf(values, len);
+                Arrays.sort(sorted);
+                double[] q = Selection.quantiles(Arrays.copyOf(values, len), 0, len, p);
+                for (int i = 0; i < p.length; i++) {
+                    double expected;
+                    double h = (len + 1. / 3.) * p[i] + 1. / 3.;
+                    int hfloor = (int) Math.floor(h);
+                    if (p[i] < (2. / 3.) / (len + 1. / 3.)) {
+                        expected = sorted[0];
+                    } else if (p[i] >= (len - 1. / 3.) / (len + 1. / 3.)) {
+                        expected = sorted[len - 1];
+                    } else {
+                        double high = hfloor < len ? sorted[hfloor] : sorted[hfloor - 1];
+                        expected = sorted[hfloor - 1] + (h - hfloor) * (high - sorted[hfloor - 1]);
+                    }
+                    assertEquals(expected, q[i], 1e-12);
+                    assertEquals(expected, Selection.quantile(Arrays.copyOf(values, len), 0, len, p[i]), 1e-12);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testQuantilesWithMissing() {
+        Numeric x = Numeric.newCopyOf(Double.NaN, 4, 1, Double.NaN, 3, 2);
+        double[] q = new Quantiles(x, 0, 0.5, 1).values();
+        assertEquals(1, q[0], 1e-12);
+        assertEquals(2.5, q[1], 1e-12);
+        assertEquals(4, q[2], 1e-12);
+        assertTrue(Double.isNaN(Selection.quantile(new double[0], 0, 0, 0.5)));
+    }
+
+    @Test
+    public void testWeightedQuantile() {
+        Random random = RandomSource.newRandom(3);
+        for (int len : new int[]{1, 5, 20, 1_000}) {
+            for (int distinct : new int[]{0, 4}) {
+                double[] values = sample(random, len, distinct);
+                double[] weights = new double[len];
+                for (int i = 0; i < len; i++) {
+                    weights[i] = random.nextDouble();
+                }
+                for (double p : new double[]{0, 0.1, 0.5, 0.9, 1}) {
+
+                    // reference: smallest value with cumulated weight at least p * total
+
+                    Integer[] index = new Integer[len];
+                    double total = 0;
+                    for (int i = 0; i < len; i++) {
+                        index[i] = i;
+                        total += weights[i];
+                    }
+                    Arrays.sort(index, (i, j) -> Double.compare(values[i], values[j]));
+                    double expected = values[index[len - 1]];
+                    double sum = 0;
+                    for (int i = 0; i < len; i++) {
+                        sum += weights[index[i]];
+                        if (sum >= p * total) {
+                            expected = values[index[i]];
+                            break;
+                        }
+                    }
+                    double actual = Selection.weightedQuantile(
+                            Arrays.copyOf(values, len), Arrays.copyOf(weights, len), 0, len, p);
+                    assertEquals(expected, actual, 0);
+                }
+            }
+        }
+        assertEquals(3, Selection.weightedMedian(
+                new double[]{1, 2, 3, 4}, new double[]{1, 1, 4, 1}, 0, 4), 0);
+    }
+}
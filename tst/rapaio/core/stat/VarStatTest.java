@@ -0,0 +1,119 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.core.stat;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.data.Numeric;
+import rapaio.data.Var;
+import rapaio.data.VarType;
+import rapaio.io.Csv;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class VarStatTest {
+
+    @Test
+    public void testRReference() throws IOException {
+        Frame df = new Csv().withHeader(true).withDefaultTypes(VarType.NUMERIC).read(getClass(), "core_stat.csv");
+        VarStat stat = new VarStat(df.var(0));
+        assertEquals(Double.valueOf("999.98132402093892779"), stat.mean(), 1e-12);
+        assertEquals(Double.valueOf("1.0012615815492349469"), stat.sd(), 1e-12);
+        assertEquals(996.343866540788, stat.min(), 1e-12);
+        assertEquals(1004.24956126934, stat.max(), 1e-12);
+    }
+
+    @Test
+    public void testManyBlocksWithMissing() {
+        Random random = RandomSource.newRandom(42);
+        int rows = 100_000;
+        Var x = Numeric.newEmpty(rows);
+        OnlineStat sequential = new OnlineStat();
+        int missing = 0;
+        for (int i = 0; i < rows; i++) {
+            if (random.nextDouble() < 0.05) {
+                x.setMissing(i);
+                missing++;
+            } else {
+                double value = 100 + Math.exp(random.nextGaussian());
+                x.setValue(i, value);
+                sequential.update(value);
+            }
+        }
+
+        double[] p = new double[]{0.1, 0.25, 0.5, 0.75, 0.9};
+        VarStat stat = new VarStat(x, p);
+
+        assertEquals(rows - missing, stat.count());
+        assertEquals(missing, stat.missing());
+        assertEquals(new Mean(x).value(), stat.mean(), 1e-10);
+        assertEquals(new Variance(x).value(), stat.variance(), 1e-10);
+        assertEquals(new Minimum(x).value(), stat.min(), 0);
+        assertEquals(new Maximum(x).value(), stat.max(), 0);
+        assertEquals(new Sum(x).value(), stat.sum(), 1e-6);
+        assertEquals(sequential.skewness(), stat.skewness(), 1e-8);
+        assertEquals(sequential.kurtosis(), stat.kurtosis(), 1e-8);
+
+        double[] expected = new Quantiles(x, p).values();
+        double[] actual = stat.quantiles();
+        for (int i = 0; i < p.length; i++) {
+            assertEquals(expected[i], actual[i], 0);
+        }
+    }
+
+    @Test
+    public void testPositiveMinimumAndEmpty() {
+        VarStat stat = new VarStat(Numeric.newCopyOf(3, 7, 5), 0.5);
+        assertEquals(3, stat.min(), 0);
+        assertEquals(7, stat.max(), 0);
+        assertEquals(5, stat.quantiles()[0], 0);
+
+        stat = new VarStat(Numeric.newCopyOf(Double.NaN, Double.NaN), 0.5);
+        assertEquals(0, stat.count());
+        assertEquals(2, stat.missing());
+        assertTrue(Double.isNaN(stat.mean()));
+        assertTrue(Double.isNaN(stat.min()));
+        assertTrue(Double.isNaN(stat.quantiles()[0]));
+    }
+
+    @Test
+    public void testMergeWithEmpty() {
+        OnlineStat a = new OnlineStat();
+        OnlineStat b = new OnlineStat();
+        b.update(2);
+        b.update(4);
+        a.apply(b);
+        assertEquals(2, a.n(), 0);
+        assertEquals(3, a.mean(), 0);
+        assertEquals(2, a.min(), 0);
+        a.apply(new OnlineStat());
+        assertEquals(2, a.n(), 0);
+        assertEquals(2, a.variance(), 1e-12);
+    }
+}
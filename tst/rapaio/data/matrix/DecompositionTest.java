@@ -0,0 +1,133 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.data.matrix;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static rapaio.data.matrix.MathMatrix.*;
+
+/**
+ * Checks blocked decompositions on matrices larger than their block size.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class DecompositionTest {
+
+	private static final double TOL = 1e-9;
+
+	@Test
+	public void testQR() {
+		RandomSource.setSeed(1234);
+		Matrix A = random(200, 150);
+		QRDecomposition qr = new QRDecomposition(A);
+		assertTrue(qr.isFullRank());
+
+		Matrix Q = qr.getQ();
+		Matrix R = qr.getR();
+		assertEqualsM(A, times(Q, R), TOL);
+		assertEqualsM(identity(150), times(t(Q), Q), TOL);
+		for (int i = 0; i < 150; i++) {
+			for (int j = 0; j < i; j++) {
+				assertEquals(0.0, R.get(i, j));
+			}
+		}
+
+		// least squares solution has residual orthogonal on columns
+		Matrix B = random(200, 3);
+		Matrix X = qr.solve(B);
+		Matrix residual = minus(B, times(A, X));
+		assertEqualsM(new Matrix(150, 3), times(t(A), residual), TOL);
+	}
+
+	@Test
+	public void testLU() {
+		RandomSource.setSeed(1234);
+		Matrix A = random(170, 170);
+		LUDecomposition lu = new LUDecomposition(A);
+		assertTrue(lu.isNonsingular());
+
+		int[] piv = lu.getPivot();
+		Matrix PA = new Matrix(170, 170);
+		for (int i = 0; i < 170; i++) {
+			for (int j = 0; j < 170; j++) {
+				PA.set(i, j, A.get(piv[i], j));
+			}
+		}
+		assertEqualsM(PA, times(lu.getL(), lu.getU()), TOL);
+
+		Matrix B = random(170, 2);
+		assertEqualsM(B, times(A, lu.solve(B)), TOL);
+	}
+
+	@Test
+	public void testCholesky() {
+		RandomSource.setSeed(1234);
+		Matrix X = random(180, 150);
+		Matrix A = times(t(X), X);
+		CholeskyDecomposition chol = new CholeskyDecomposition(A);
+		assertTrue(chol.isSPD());
+
+		Matrix L = chol.getL();
+		assertEqualsM(A, times(L, t(L)), TOL);
+		for (int i = 0; i < 150; i++) {
+			for (int j = i + 1; j < 150; j++) {
+				assertEquals(0.0, L.get(i, j));
+			}
+		}
+
+		Matrix B = random(150, 2);
+		assertEqualsM(B, times(A, chol.solve(B)), 1e-7);
+
+		A.set(3, 3, -1);
+		assertTrue(!new CholeskyDecomposition(A).isSPD());
+	}
+
+	private Matrix random(int m, int n) {
+		Matrix X = new Matrix(m, n);
+		for (int i = 0; i < m; i++) {
+			for (int j = 0; j < n; j++) {
+				X.set(i, j, RandomSource.nextDouble() - 0.5);
+			}
+		}
+		return X;
+	}
+
+	private Matrix identity(int n) {
+		Matrix I = new Matrix(n, n);
+		for (int i = 0; i < n; i++) {
+			I.set(i, i, 1);
+		}
+		return I;
+	}
+
+	private void assertEqualsM(Matrix a, Matrix b, double tol) {
+		assertEquals(a.m, b.m);
+		assertEquals(a.n, b.n);
+		for (int i = 0; i < a.m; i++) {
+			for (int j = 0; j < a.n; j++) {
+				assertEquals(a.get(i, j), b.get(i, j), tol);
+			}
+		}
+	}
+}
@@ -22,6 +22,7 @@ package rapaio.data.matrix;
 
 import org.junit.Before;
 import org.junit.Test;
+import rapaio.core.RandomSource;
 
 import java.text.DecimalFormat;
 
@@ -110,6 +111,65 @@ public class MatrixMathTest {
 		print(times(C, invC));
 	}
 
+	@Test
+	public void testBlockedTimes() {
+		RandomSource.setSeed(1);
+		int[][] sizes = new int[][]{{1, 1, 1}, {3, 5, 2}, {17, 33, 9}, {70, 300, 67}, {129, 257, 130}};
+		for (int[] size : sizes) {
+			Matrix X = random(size[0], size[1]);
+			Matrix Y = random(size[1], size[2]);
+			assertEqualsM(times(X, Y), naiveTimes(X, Y), 1e-10);
+
+			// views with other strides
+			Matrix Xt = t(X).transposeView();
+			Matrix Yt = t(Y).transposeView();
+			assertEqualsM(times(Xt, Yt), naiveTimes(X, Y), 1e-10);
+
+			// accumulate
+			Matrix Z = random(size[0], size[2]);
+			Matrix expected = plus(Z, naiveTimes(X, Y));
+			assertEqualsM(timesPlus(X, Y, Z), expected, 1e-10);
+			assertEqualsM(times(X, Y, Z), naiveTimes(X, Y), 1e-10);
+		}
+
+		// block views are updated in place
+		Matrix big = new Matrix(6, 6);
+		times(A, Bt, big.blockView(2, 3, 2, 2));
+		assertEqualsM(big.blockView(2, 3, 2, 2), naiveTimes(A, Bt), 0);
+		assertEquals(0.0, big.get(1, 3));
+		assertEquals(0.0, big.get(2, 2));
+	}
+
+	@Test
+	public void testInPlace() {
+		Matrix X = A.copy();
+		plusInPlace(X, B);
+		assertEqualsM(X, plus(A, B));
+		minusInPlace(X, B);
+		assertEqualsM(X, A);
+		timesInPlace(X, 2);
+		assertEqualsM(X, plus(A, A));
+
+		// transposed views
+		Matrix Y = At.copy();
+		plusInPlace(Y.transposeView(), B);
+		assertEqualsM(Y, t(plus(A, B)));
+	}
+
+	private Matrix naiveTimes(Matrix X, Matrix Y) {
+		Matrix Z = new Matrix(X.m, Y.n);
+		for (int i = 0; i < X.m; i++) {
+			for (int j = 0; j < Y.n; j++) {
+				double s = 0;
+				for (int k = 0; k < X.n; k++) {
+					s += X.get(i, k) * Y.get(k, j);
+				}
+				Z.set(i, j, s);
+			}
+		}
+		return Z;
+	}
+
 	private void print(Matrix m) {
 		m.print(new DecimalFormat("0.000000000000000000"), 30);
 	}
@@ -124,4 +184,15 @@ public class MatrixMathTest {
 			}
 		}
 	}
+
+	private void assertEqualsM(Matrix a, Matrix b, double tol) {
+		assertEquals(a.n, b.n);
+		assertEquals(a.m, b.m);
+
+		for (int i = 0; i < a.m; i++) {
+			for (int j = 0; j < a.n; j++) {
+				assertEquals(a.get(i, j), b.get(i, j), tol);
+			}
+		}
+	}
 }
@@ -0,0 +1,140 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.experiment.cluster.algorithm;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.data.Numeric;
+import rapaio.data.SolidFrame;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class KMeansTest {
+
+    private static final double[][] CENTERS = new double[][]{{0, 0, 0}, {10, 0, 5}, {0, 10, -5}, {10, 10, 10}};
+
+    private Frame blobs(int rows) {
+        Random random = RandomSource.newRandom(42);
+        Numeric[] vars = new Numeric[3];
+        for (int j = 0; j < vars.length; j++) {
+            vars[j] = Numeric.newEmpty(rows).withName("x" + j);
+        }
+        for (int i = 0; i < rows; i++) {
+            double[] center = CENTERS[i % CENTERS.length];
+            for (int j = 0; j < vars.length; j++) {
+                vars[j].setValue(i, center[j] + random.nextGaussian());
+            }
+        }
+        return SolidFrame.newWrapOf(vars);
+    }
+
+    @Test
+    public void testMethodsAgree() {
+        Frame df = blobs(10_000);
+
+        KMeans lloyd = new KMeans().withK(4).withSeed(1L).withMethod(KMeans.Method.LLOYD);
+        lloyd.learn(df, "all");
+        for (KMeans.Method method : new KMeans.Method[]{KMeans.Method.HAMERLY, KMeans.Method.ELKAN}) {
+            KMeans km = new KMeans().withK(4).withSeed(1L).withMethod(method);
+            km.learn(df, "all");
+            assertArrayEquals(lloyd.getAssignment(), km.getAssignment());
+            assertEquals(lloyd.getIterations(), km.getIterations());
+            assertEquals(lloyd.getInertia(), km.getInertia(), 1e-6);
+            for (int i = 0; i < 4; i++) {
+                for (int j = 0; j < 3; j++) {
+                    assertEquals(lloyd.getCentroids().value(i, j), km.getCentroids().value(i, j), 1e-9);
+                }
+            }
+        }
+
+        // blobs are recovered, rows i and i+4 belong to the same blob
+        int[] assignment = lloyd.getAssignment();
+        int same = 0;
+        for (int i = 0; i + 4 < assignment.length; i++) {
+            if (assignment[i] == assignment[i + 4]) {
+                same++;
+            }
+        }
+        assertTrue(same > 0.99 * (assignment.length - 4));
+        assertArrayEquals(assignment, lloyd.predict(df));
+    }
+
+    @Test
+    public void testSeedAndInit() {
+        Frame df = blobs(2_000);
+        KMeans a = new KMeans().withK(4).withSeed(7L).withInit(KMeans.Init.RANDOM);
+        a.learn(df, "x0,x1");
+        KMeans b = new KMeans().withK(4).withSeed(7L).withInit(KMeans.Init.RANDOM);
+        b.learn(df, "x0,x1");
+        assertArrayEquals(a.getAssignment(), b.getAssignment());
+        assertEquals(2, a.getCentroids().varCount());
+        assertEquals(4, a.getClusterAssignment().dictionary().length - 1);
+    }
+
+    @Test
+    public void testDeterministicAcrossThreads() throws Exception {
+        // enough rows for many blocks, learned in pools with different parallelism
+        Frame df = blobs(50_000);
+        KMeans reference = new KMeans().withK(4).withSeed(5L);
+        new ForkJoinPool(1).submit(() -> reference.learn(df, "all")).get();
+
+        for (int threads : new int[]{2, 3, 7}) {
+            KMeans km = new KMeans().withK(4).withSeed(5L);
+            new ForkJoinPool(threads).submit(() -> km.learn(df, "all")).get();
+            assertArrayEquals(reference.getAssignment(), km.getAssignment());
+            assertEquals(reference.getInertia(), km.getInertia(), 0);
+            for (int i = 0; i < 4; i++) {
+                for (int j = 0; j < 3; j++) {
+                    assertEquals(reference.getCentroids().value(i, j), km.getCentroids().value(i, j), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMiniBatch() {
+        Frame df = blobs(20_000);
+        KMeans full = new KMeans().withK(4).withSeed(3L);
+        full.learn(df, "all");
+        KMeans mini = new KMeans().withK(4).withSeed(3L)
+                .withMethod(KMeans.Method.MINI_BATCH)
+                .withBatchSize(500)
+                .withMaxIterations(50);
+        mini.learn(df, "all");
+        assertEquals(full.getInertia(), mini.getInertia(), 0.02 * full.getInertia());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingValues() {
+        Frame df = blobs(100);
+        df.setMissing(3, 0);
+        new KMeans().withK(2).learn(df, "all");
+    }
+}
@@ -23,12 +23,16 @@ package rapaio.ml.classifier.bayes;
 import org.junit.Test;
 import rapaio.core.RandomSource;
 import rapaio.data.Frame;
+import rapaio.data.Nominal;
+import rapaio.data.Numeric;
+import rapaio.data.SolidFrame;
 import rapaio.datasets.Datasets;
 import rapaio.ml.classifier.CResult;
 import rapaio.ml.eval.ConfusionMatrix;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.stream.IntStream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -55,11 +59,11 @@ public class NaiveBayesTest {
 
         assertEquals(50, cm.matrix()[0][0], 10e-12);
         assertEquals(47, cm.matrix()[1][1], 10e-12);
-        assertEquals(46, cm.matrix()[2][2], 10e-12);
+        assertEquals(47, cm.matrix()[2][2], 10e-12);
 
-        assertEquals(1, cm.matrix()[1][0], 10e-12);
-        assertEquals(2, cm.matrix()[1][2], 10e-12);
-        assertEquals(4, cm.matrix()[2][1], 10e-12);
+        assertEquals(0, cm.matrix()[1][0], 10e-12);
+        assertEquals(3, cm.matrix()[1][2], 10e-12);
+        assertEquals(3, cm.matrix()[2][1], 10e-12);
 
     }
 
@@ -79,11 +83,11 @@ public class NaiveBayesTest {
 
         assertEquals(50, cm.matrix()[0][0], 10e-12);
         assertEquals(48, cm.matrix()[1][1], 10e-12);
-        assertEquals(46, cm.matrix()[2][2], 10e-12);
+        assertEquals(47, cm.matrix()[2][2], 10e-12);
 
         assertEquals(0, cm.matrix()[1][0], 10e-12);
         assertEquals(2, cm.matrix()[1][2], 10e-12);
-        assertEquals(4, cm.matrix()[2][1], 10e-12);
+        assertEquals(3, cm.matrix()[2][1], 10e-12);
     }
 
     @Test
@@ -99,11 +103,122 @@ public class NaiveBayesTest {
         ConfusionMatrix cm = new ConfusionMatrix(df.var("classes"), cp.firstClasses());
         cm.summary();
 
-        assertTrue(cm.accuracy() >= 0.89);
+        assertTrue(cm.accuracy() >= 0.95);
+
+        assertEquals(3584, cm.matrix()[0][0], 10e-12);
+        assertEquals(332, cm.matrix()[0][1], 10e-12);
+        assertEquals(20, cm.matrix()[1][0], 10e-12);
+        assertEquals(4188, cm.matrix()[1][1], 10e-12);
+    }
+
+    @Test
+    public void testGaussianPosterior() {
+
+        Frame df = SolidFrame.newWrapOf(
+                Numeric.newWrapOf(1, 2, 3, 5, 7, 8, 10).withName("v"),
+                Nominal.newCopyOf("a", "a", "a", "b", "b", "b", "b").withName("class"));
+
+        NaiveBayesClassifier nb = new NaiveBayesClassifier();
+        nb.learn(df, "class");
+
+        Frame test = SolidFrame.newWrapOf(Numeric.newWrapOf(3.5).withName("v"));
+        CResult pred = nb.predict(test);
+
+        // laplace smoothed priors, gaussian with sample mean and variance
+        double priorA = (3 + 1) / 9.0;
+        double priorB = (4 + 1) / 9.0;
+        double pdfA = Math.exp(-Math.pow(3.5 - 2, 2) / 2) / Math.sqrt(2 * Math.PI);
+        double pdfB = Math.exp(-Math.pow(3.5 - 7.5, 2) / (2 * 13 / 3.0)) / Math.sqrt(2 * Math.PI * 13 / 3.0);
+        double expectedA = priorA * pdfA / (priorA * pdfA + priorB * pdfB);
+
+        assertEquals(expectedA, pred.firstDensity().value(0, "a"), 1e-12);
+        assertEquals(1 - expectedA, pred.firstDensity().value(0, "b"), 1e-12);
+        assertEquals("a", pred.firstClasses().label(0));
+    }
+
+    @Test
+    public void testScoringBlocks() throws IOException, URISyntaxException {
+
+        RandomSource.setSeed(1L);
+        Frame df = Datasets.loadMushrooms();
+
+        NaiveBayesClassifier nb = new NaiveBayesClassifier();
+        nb.learn(df, "classes");
+        CResult full = nb.predict(df);
+
+        // rows which cross a block boundary, scored as a small frame
+        int[] rows = IntStream.range(1000, 1100).toArray();
+        CResult part = nb.predict(df.mapRows(rows));
+
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < full.firstDictionary().length; j++) {
+                assertEquals(full.firstDensity().value(rows[i], j), part.firstDensity().value(i, j), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testLearnFurther() throws IOException, URISyntaxException {
+
+        RandomSource.setSeed(1L);
+        Frame[] frames = new Frame[]{Datasets.loadIrisDataset(), Datasets.loadMushrooms()};
+        String[] targets = new String[]{"class", "classes"};
+        for (int k = 0; k < frames.length; k++) {
+            Frame df = frames[k];
+            String target = targets[k];
+            int half = df.rowCount() / 2;
+
+            NaiveBayesClassifier full = new NaiveBayesClassifier();
+            full.learn(df, target);
+
+            NaiveBayesClassifier incremental = new NaiveBayesClassifier();
+            incremental.learn(df.mapRows(IntStream.range(0, half).toArray()), target);
+            incremental.learnFurther(df.mapRows(IntStream.range(half, df.rowCount()).toArray()));
+
+            assertDensities(full.predict(df), incremental.predict(df), df.rowCount());
+        }
+    }
+
+    @Test
+    public void testMergeDifferentDictionaries() {
+
+        Frame a = SolidFrame.newWrapOf(
+                Nominal.newCopyOf("x", "x", "y", "x").withName("f"),
+                Numeric.newWrapOf(1, 2, 5, 1.5).withName("v"),
+                Nominal.newCopyOf("a", "a", "b", "b").withName("class"));
+        Frame b = SolidFrame.newWrapOf(
+                Nominal.newCopyOf("z", "y", "x", "z").withName("f"),
+                Numeric.newWrapOf(7, 4, 6, 8).withName("v"),
+                Nominal.newCopyOf("c", "b", "b", "c").withName("class"));
+        Frame all = SolidFrame.newWrapOf(
+                Nominal.newCopyOf("x", "x", "y", "x", "z", "y", "x", "z").withName("f"),
+                Numeric.newWrapOf(1, 2, 5, 1.5, 7, 4, 6, 8).withName("v"),
+                Nominal.newCopyOf("a", "a", "b", "b", "c", "b", "b", "c").withName("class"));
+
+        NaiveBayesClassifier full = new NaiveBayesClassifier();
+        full.learn(all, "class");
+
+        NaiveBayesClassifier merged = new NaiveBayesClassifier();
+        merged.learn(a, "class");
+        merged.learnFurther(NaiveBayesStats.newFrom(b, Numeric.newFill(b.rowCount(), 1), "class"));
+
+        assertEquals(4, merged.getStats().getClassLabels().length);
+        assertDensities(full.predict(all), merged.predict(all), all.rowCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLearnFurtherNotMergeable() throws IOException, URISyntaxException {
+        Frame df = Datasets.loadIrisDataset();
+        NaiveBayesClassifier nb = new NaiveBayesClassifier().withCvpEstimator(new NaiveBayesClassifier.CvpEstimatorKDE());
+        nb.learn(df, "class");
+        nb.learnFurther(df);
+    }
 
-        assertEquals(3100, cm.matrix()[0][0], 10e-12);
-        assertEquals(816, cm.matrix()[0][1], 10e-12);
-        assertEquals(71, cm.matrix()[1][0], 10e-12);
-        assertEquals(4137, cm.matrix()[1][1], 10e-12);
+    private void assertDensities(CResult expected, CResult actual, int rows) {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < expected.firstDictionary().length; j++) {
+                assertEquals(expected.firstDensity().value(i, j), actual.firstDensity().value(i, j), 1e-9);
+            }
+        }
     }
 }
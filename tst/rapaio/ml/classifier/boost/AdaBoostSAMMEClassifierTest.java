@@ -0,0 +1,99 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.classifier.boost;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.data.Mapping;
+import rapaio.datasets.Datasets;
+import rapaio.ml.classifier.CResult;
+import rapaio.ml.common.ValidationMonitor;
+import rapaio.ml.eval.ConfusionMatrix;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class AdaBoostSAMMEClassifierTest {
+
+    @Test
+    public void testEarlyStopping() throws IOException {
+        RandomSource.setSeed(1);
+        Frame df = Datasets.loadSpamBase();
+        Mapping train = Mapping.newEmpty();
+        Mapping test = Mapping.newEmpty();
+        for (int i = 0; i < df.rowCount(); i++) {
+            if (i % 4 == 0) {
+                test.add(i);
+            } else {
+                train.add(i);
+            }
+        }
+        Frame tr = df.mapRows(train);
+        Frame te = df.mapRows(test);
+
+        ValidationMonitor monitor = new ValidationMonitor(te).withPatience(5);
+        AdaBoostSAMMEClassifier ab = new AdaBoostSAMMEClassifier().withMonitor(monitor).withRuns(100);
+        ab.learn(tr, "spam");
+
+        assertEquals(monitor.getBestRound(), ab.getLearnedRuns());
+        assertTrue(ab.getLearnedRuns() < 100);
+
+        CResult cr = ab.predict(te);
+        double err = new ConfusionMatrix(te.var("spam"), cr.firstClasses()).error();
+        assertEquals(monitor.getBestScore(), err, 1e-12);
+
+        // further learning starts from the best round and keeps the best ensemble
+
+        ab.learnFurther(tr, "spam", 10);
+        assertEquals(monitor.getBestRound(), ab.getLearnedRuns());
+        cr = ab.predict(te);
+        assertEquals(monitor.getBestScore(), new ConfusionMatrix(te.var("spam"), cr.firstClasses()).error(), 1e-12);
+    }
+
+    @Test
+    public void testBlockedVotes() throws IOException {
+        RandomSource.setSeed(1);
+        Frame df = Datasets.loadSpamBase();
+
+        AdaBoostSAMMEClassifier ab = new AdaBoostSAMMEClassifier().withRuns(10);
+        ab.learn(df, "spam");
+        assertEquals(10, ab.getLearnedRuns());
+
+        // votes of rows do not depend on the block a row falls into
+
+        CResult all = ab.predict(df);
+        Frame shifted = df.mapRows(Mapping.newRangeOf(1_000, df.rowCount()));
+        CResult part = ab.predict(shifted);
+        for (int i = 0; i < shifted.rowCount(); i++) {
+            assertEquals(all.firstClasses().index(i + 1_000), part.firstClasses().index(i));
+            for (int j = 0; j < all.firstDensity().varCount(); j++) {
+                assertEquals(all.firstDensity().value(i + 1_000, j), part.firstDensity().value(i, j), 1e-12);
+            }
+        }
+        assertTrue(new ConfusionMatrix(df.var("spam"), all.firstClasses()).error() < 0.15);
+    }
+}
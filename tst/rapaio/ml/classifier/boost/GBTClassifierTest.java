@@ -0,0 +1,153 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.classifier.boost;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.data.Mapping;
+import rapaio.datasets.Datasets;
+import rapaio.ml.classifier.CResult;
+import rapaio.ml.common.ValidationMonitor;
+import rapaio.ml.eval.ConfusionMatrix;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created by <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>.
+ */
+public class GBTClassifierTest {
+
+    @Test
+    public void testIris() throws IOException, URISyntaxException {
+        RandomSource.setSeed(1);
+        Frame df = Datasets.loadIrisDataset();
+
+        GBTClassifier gbt = new GBTClassifier().withShrinkage(0.5).withRuns(5);
+        gbt.learn(df, "class");
+        gbt.learnFurther(df, "class", 10);
+
+        CResult cr = gbt.predict(df);
+        for (int i = 0; i < df.rowCount(); i++) {
+            for (int k = 0; k < gbt.K; k++) {
+                assertEquals(gbt.f[i * gbt.K + k], cr.firstDensity().value(i, k + 1), 1e-9);
+            }
+        }
+        assertTrue(new ConfusionMatrix(df.var("class"), cr.firstClasses()).error() < 0.05);
+    }
+
+    @Test
+    public void testEarlyStopping() throws IOException, URISyntaxException {
+        RandomSource.setSeed(1);
+        Frame df = Datasets.loadIrisDataset();
+        Mapping train = Mapping.newEmpty();
+        Mapping test = Mapping.newEmpty();
+        for (int i = 0; i < df.rowCount(); i++) {
+            if (i % 3 == 0) {
+                test.add(i);
+            } else {
+                train.add(i);
+            }
+        }
+        Frame tr = df.mapRows(train);
+        Frame te = df.mapRows(test);
+
+        ValidationMonitor monitor = new ValidationMonitor(te).withPatience(3).withTolerance(1e-3);
+        GBTClassifier gbt = new GBTClassifier().withShrinkage(1.0).withMonitor(monitor).withRuns(100);
+        gbt.learn(tr, "class");
+
+        assertTrue(gbt.getLearnedRuns() < 100);
+        assertEquals(monitor.getBestRound(), gbt.getLearnedRuns());
+
+        CResult cr = gbt.predict(te);
+        for (int i = 0; i < te.rowCount(); i++) {
+            for (int k = 0; k < gbt.K; k++) {
+                assertEquals(gbt.holdoutF[i * gbt.K + k], cr.firstDensity().value(i, k + 1), 1e-9);
+            }
+        }
+        cr = gbt.predict(tr);
+        for (int i = 0; i < tr.rowCount(); i++) {
+            for (int k = 0; k < gbt.K; k++) {
+                assertEquals(gbt.f[i * gbt.K + k], cr.firstDensity().value(i, k + 1), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testLearnFurtherAfterEarlyStop() throws IOException, URISyntaxException {
+        RandomSource.setSeed(1);
+        Frame df = Datasets.loadIrisDataset();
+        Mapping train = Mapping.newEmpty();
+        Mapping test = Mapping.newEmpty();
+        for (int i = 0; i < df.rowCount(); i++) {
+            if (i % 3 == 0) {
+                test.add(i);
+            } else {
+                train.add(i);
+            }
+        }
+        Frame tr = df.mapRows(train);
+        Frame te = df.mapRows(test);
+
+        ValidationMonitor monitor = new ValidationMonitor(te).withPatience(3).withTolerance(1e-3);
+        GBTClassifier gbt = new GBTClassifier().withShrinkage(1.0).withMonitor(monitor).withRuns(100);
+        gbt.learn(tr, "class");
+        int learned = gbt.getLearnedRuns();
+        assertTrue(learned < 50);
+
+        // continue with fewer runs than requested first, but more than learned
+
+        gbt.learnFurther(tr, "class", 50);
+        assertTrue(gbt.getLearnedRuns() >= learned);
+        assertEquals(monitor.getBestRound(), gbt.getLearnedRuns());
+        assertTrue(monitor.getScores().size() <= monitor.getBestRound() + 1 + monitor.getPatience());
+
+        CResult cr = gbt.predict(te);
+        for (int i = 0; i < te.rowCount(); i++) {
+            for (int k = 0; k < gbt.K; k++) {
+                assertEquals(gbt.holdoutF[i * gbt.K + k], cr.firstDensity().value(i, k + 1), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testDeterministicAcrossThreads() throws IOException, URISyntaxException, InterruptedException, ExecutionException {
+        Frame df = Datasets.loadIrisDataset();
+
+        RandomSource.setSeed(7);
+        GBTClassifier reference = new GBTClassifier().withBootstrap(true).withBootstrapSize(0.8).withShrinkage(0.5).withRuns(5);
+        new ForkJoinPool(1).submit(() -> reference.learn(df, "class")).get();
+
+        for (int threads : new int[]{2, 3, 7}) {
+            RandomSource.setSeed(7);
+            GBTClassifier gbt = new GBTClassifier().withBootstrap(true).withBootstrapSize(0.8).withShrinkage(0.5).withRuns(5);
+            new ForkJoinPool(threads).submit(() -> gbt.learn(df, "class")).get();
+            assertArrayEquals(reference.f, gbt.f, 0);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.classifier.svm;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.core.distributions.Normal;
+import rapaio.data.Frame;
+import rapaio.data.Nominal;
+import rapaio.data.Numeric;
+import rapaio.data.SolidFrame;
+import rapaio.datasets.Datasets;
+import rapaio.ml.classifier.CResult;
+import rapaio.ml.classifier.svm.kernel.FeatureVector;
+import rapaio.ml.classifier.svm.kernel.PolyKernel;
+import rapaio.ml.classifier.svm.kernel.RBFKernel;
+import rapaio.ml.eval.ConfusionMatrix;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class BinarySMOTest {
+
+    private Frame loadBinaryIris() throws IOException, URISyntaxException {
+        Frame df = Datasets.loadIrisDataset();
+        return df.stream().filter(s -> s.index("class") != 3).toMappedFrame();
+    }
+
+    @Test
+    public void testKernelCache() {
+        FeatureVector[] x = new FeatureVector[10];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = FeatureVector.newDense(new double[]{i, i * i, 1});
+        }
+        RBFKernel kernel = new RBFKernel(3);
+        kernel.buildKernel(new String[]{"a", "b", "c"});
+
+        // 10 rows of 8 bytes * 10 values fit only 3 rows
+        KernelCache cache = new KernelCache(kernel, x, 3 * 80.0 / 1024 / 1024);
+        assertEquals(3, cache.getCapacity());
+        for (int i = 0; i < x.length; i++) {
+            double[] row = cache.row(i);
+            for (int j = 0; j < x.length; j++) {
+                assertEquals(kernel.eval(x[i], x[j]), row[j], 1e-15);
+                assertEquals(kernel.eval(x[i], x[j]), cache.eval(i, j), 1e-15);
+            }
+        }
+        assertEquals(10, cache.getMisses());
+
+        // last 3 rows are kept, least recently used are evicted
+        assertTrue(cache.cachedRow(9) != null);
+        assertTrue(cache.cachedRow(7) != null);
+        assertTrue(cache.cachedRow(6) == null);
+        cache.row(0);
+        assertTrue(cache.cachedRow(8) == null);
+        assertTrue(cache.cachedRow(9) != null);
+    }
+
+    @Test
+    public void testCacheSizeDoesNotChangeModel() throws IOException, URISyntaxException {
+        Frame df = loadBinaryIris();
+
+        RandomSource.setSeed(1);
+        BinarySMO small = new BinarySMO().withKernel(new RBFKernel(1)).withCacheSize(0);
+        small.learn(df, "class");
+
+        RandomSource.setSeed(1);
+        BinarySMO large = new BinarySMO().withKernel(new RBFKernel(1)).withCacheSize(10);
+        large.learn(df, "class");
+
+        assertArrayEquals(small.alpha, large.alpha, 1e-12);
+        assertEquals(small.b, large.b, 1e-12);
+
+        CResult cr = large.predict(df);
+        assertTrue(new ConfusionMatrix(df.var("class"), cr.firstClasses()).error() < 0.1);
+    }
+
+    @Test
+    public void testSparseDoesNotChangeModel() throws IOException, URISyntaxException {
+        Frame df = loadBinaryIris();
+
+        RandomSource.setSeed(1);
+        BinarySMO dense = new BinarySMO().withKernel(new RBFKernel(1));
+        dense.learn(df, "class");
+
+        RandomSource.setSeed(1);
+        BinarySMO sparse = new BinarySMO().withKernel(new RBFKernel(1)).withSparse(true);
+        sparse.learn(df, "class");
+
+        assertArrayEquals(dense.alpha, sparse.alpha, 1e-12);
+        assertEquals(dense.b, sparse.b, 1e-12);
+    }
+
+    private Frame overlappingClasses(int n) {
+        RandomSource.setSeed(1);
+        Normal normal = new Normal(0, 1);
+        Numeric x1 = Numeric.newEmpty(n).withName("x1");
+        Numeric x2 = Numeric.newEmpty(n).withName("x2");
+        Nominal y = Nominal.newEmpty(n, "a", "b").withName("y");
+        for (int i = 0; i < n; i++) {
+            boolean first = i % 2 == 0;
+            x1.setValue(i, normal.sampleNext() + (first ? 0 : 0.5));
+            x2.setValue(i, normal.sampleNext() + (first ? 0 : 0.5));
+            y.setLabel(i, first ? "a" : "b");
+        }
+        return SolidFrame.newWrapOf(x1, x2, y);
+    }
+
+    @Test
+    public void testWorkingSetSelection() throws IOException, URISyntaxException {
+        Frame df = loadBinaryIris();
+
+        RandomSource.setSeed(1);
+        BinarySMO keerthi = new BinarySMO().withKernel(new RBFKernel(1)).withC(10);
+        keerthi.learn(df, "class");
+
+        BinarySMO wss3 = new BinarySMO().withKernel(new RBFKernel(1)).withC(10)
+                .withWorkingSet(BinarySMO.WorkingSet.WSS3);
+        wss3.learn(df, "class");
+
+        // same solution, up to the tolerance of accuracy
+        assertArrayEquals(keerthi.alpha, wss3.alpha, 1e-2);
+        assertEquals(keerthi.b, wss3.b, 1e-2);
+        for (int i = 0; i < df.rowCount(); i++) {
+            assertEquals(keerthi.predict(df, i), wss3.predict(df, i), 1e-2);
+        }
+    }
+
+    @Test
+    public void testShrinking() {
+        Frame df = overlappingClasses(300);
+
+        BinarySMO full = new BinarySMO().withKernel(new RBFKernel(0.3)).withC(1000)
+                .withWorkingSet(BinarySMO.WorkingSet.WSS3);
+        full.learn(df, "y");
+
+        BinarySMO shrinking = new BinarySMO().withKernel(new RBFKernel(0.3)).withC(1000)
+                .withWorkingSet(BinarySMO.WorkingSet.WSS3).withShrinking(true);
+        shrinking.learn(df, "y");
+
+        assertEquals(full.b, shrinking.b, 1e-2);
+        for (int i = 0; i < df.rowCount(); i++) {
+            assertEquals(full.predict(df, i), shrinking.predict(df, i), 1e-2);
+        }
+    }
+
+    @Test
+    public void testShrinkActiveSet() {
+        // instances with their label, multiplier and signed gradient y * G
+        double[] target = {1, -1, 1, -1, 1, -1, -1, -1};
+        double[] alpha = {0, 1, 1, 0, 0.5, 0.5, 1, 0};
+        double[] g = {1, 1, -1, -1, 0, 0, -0.6, 0.5};
+
+        BinarySMO smo = new BinarySMO();
+        int n = target.length;
+        smo.target = target;
+        smo.alpha = alpha;
+        smo.ci = new double[n];
+        smo.grad = new double[n];
+        smo.gradBar = new double[n];
+        smo.active = new int[n];
+        for (int t = 0; t < n; t++) {
+            smo.ci[t] = 1;
+            smo.grad[t] = g[t] * target[t];
+            smo.active[t] = t;
+        }
+        smo.activeSize = n;
+        smo.unshrink = true;
+
+        // gMax1 = 0.6 from 6, gMax2 = 0.5 from 7
+        // 0 (y=1, alpha=0) and 1 (y=-1, alpha=C) can only move up, g > gMax2
+        // 2 (y=1, alpha=C) and 3 (y=-1, alpha=0) can only move down, -g > gMax1
+        // 4, 5 are free, 6 and 7 are the maximal violators and stay active
+        smo.shrink();
+
+        assertEquals(4, smo.activeSize);
+        int[] kept = Arrays.copyOf(smo.active, smo.activeSize);
+        Arrays.sort(kept);
+        assertArrayEquals(new int[]{4, 5, 6, 7}, kept);
+    }
+
+    @Test
+    public void testLinear() throws IOException, URISyntaxException {
+        RandomSource.setSeed(1);
+        Frame df = loadBinaryIris();
+        BinarySMO smo = new BinarySMO().withKernel(new PolyKernel(1)).withC(10);
+        smo.learn(df, "class");
+        CResult cr = smo.predict(df);
+        assertTrue(new ConfusionMatrix(df.var("class"), cr.firstClasses()).error() < 0.1);
+    }
+}
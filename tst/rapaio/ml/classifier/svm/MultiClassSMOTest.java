@@ -0,0 +1,110 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.classifier.svm;
+
+import org.junit.Test;
+import rapaio.data.Frame;
+import rapaio.datasets.Datasets;
+import rapaio.ml.classifier.CResult;
+import rapaio.ml.classifier.svm.kernel.RBFKernel;
+import rapaio.ml.eval.ConfusionMatrix;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class MultiClassSMOTest {
+
+    @Test
+    public void testOneVsOne() throws IOException, URISyntaxException {
+        Frame df = Datasets.loadIrisDataset();
+        MultiClassSMO smo = new MultiClassSMO()
+                .withBinarySMO(new BinarySMO().withKernel(new RBFKernel(1)).withWorkingSet(BinarySMO.WorkingSet.WSS3))
+                .withStrategy(MultiClassSMO.Strategy.ONE_VS_ONE)
+                .withSeed(1L);
+        smo.learn(df, "class");
+        assertEquals(3, smo.getMachines().size());
+
+        CResult cr = smo.predict(df);
+        assertTrue(new ConfusionMatrix(df.var("class"), cr.firstClasses()).error() < 0.1);
+
+        for (BinarySMO machine : smo.getMachines()) {
+
+            // shared kernel cache does not change binary machines
+            BinarySMO alone = new BinarySMO().withKernel(new RBFKernel(1)).withWorkingSet(BinarySMO.WorkingSet.WSS3)
+                    .withClassIndexes(machine.getFirstClassIndex(), machine.getSecondClassIndex());
+            alone.learn(df, "class");
+            assertArrayEquals(alone.alpha, machine.alpha, 1e-12);
+            assertEquals(alone.b, machine.b, 1e-12);
+
+            // batched prediction gives the outputs of binary machines
+            for (int i = 0; i < df.rowCount(); i++) {
+                boolean negative = alone.predict(df, i) < 0;
+                int cl = negative ? machine.getFirstClassIndex() : machine.getSecondClassIndex();
+                assertTrue(cr.firstDensity().value(i, cl) > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testSmallCacheBudget() throws IOException, URISyntaxException {
+        Frame df = Datasets.loadIrisDataset();
+        BinarySMO binary = new BinarySMO().withKernel(new RBFKernel(1)).withWorkingSet(BinarySMO.WorkingSet.WSS3);
+        MultiClassSMO large = new MultiClassSMO().withBinarySMO(binary).withSeed(1L);
+        large.learn(df, "class");
+
+        // budget of a few rows, split between shared cache and machines
+        MultiClassSMO small = new MultiClassSMO().withBinarySMO(binary).withCacheSize(0.01).withSeed(1L);
+        small.learn(df, "class");
+
+        for (int m = 0; m < large.getMachines().size(); m++) {
+            assertArrayEquals(large.getMachines().get(m).alpha, small.getMachines().get(m).alpha, 1e-12);
+        }
+    }
+
+    @Test
+    public void testOneVsRest() throws IOException, URISyntaxException {
+        Frame df = Datasets.loadIrisDataset();
+        MultiClassSMO smo = new MultiClassSMO()
+                .withBinarySMO(new BinarySMO().withKernel(new RBFKernel(1)).withC(10))
+                .withStrategy(MultiClassSMO.Strategy.ONE_VS_REST)
+                .withSeed(1L);
+        smo.learn(df, "class");
+        assertEquals(3, smo.getMachines().size());
+
+        CResult cr = smo.predict(df);
+        assertTrue(new ConfusionMatrix(df.var("class"), cr.firstClasses()).error() < 0.1);
+
+        // same seed, same model
+        MultiClassSMO copy = smo.newInstance();
+        copy.learn(df, "class");
+        for (int m = 0; m < smo.getMachines().size(); m++) {
+            assertArrayEquals(smo.getMachines().get(m).alpha, copy.getMachines().get(m).alpha, 1e-12);
+        }
+        smo.summary();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.classifier.svm.kernel;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.data.Numeric;
+import rapaio.data.SolidFrame;
+import rapaio.data.Var;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class FeatureVectorTest {
+
+    private static final String[] NAMES = new String[]{"a", "b", "c", "d", "e", "f"};
+
+    private Frame sparseFrame(int rows) {
+        RandomSource.setSeed(1);
+        List<Var> vars = new ArrayList<>();
+        for (String name : NAMES) {
+            Numeric var = Numeric.newEmpty(rows).withName(name);
+            for (int i = 0; i < rows; i++) {
+                var.setValue(i, RandomSource.nextDouble() < 0.6 ? 0 : RandomSource.nextDouble());
+            }
+            vars.add(var);
+        }
+        return SolidFrame.newWrapOf(vars);
+    }
+
+    private int[] indexes(Frame df) {
+        int[] indexes = new int[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            indexes[i] = df.varIndex(NAMES[i]);
+        }
+        return indexes;
+    }
+
+    @Test
+    public void testProducts() {
+        Frame df = sparseFrame(50);
+        int[] indexes = indexes(df);
+        for (int i = 0; i < df.rowCount(); i++) {
+            FeatureVector d1 = FeatureVector.newFrom(df, i, indexes, false);
+            FeatureVector s1 = FeatureVector.newFrom(df, i, indexes, true);
+            assertEquals(d1.norm2(), s1.norm2(), 1e-15);
+            for (int j = 0; j < df.rowCount(); j++) {
+                FeatureVector d2 = FeatureVector.newFrom(df, j, indexes, false);
+                FeatureVector s2 = FeatureVector.newFrom(df, j, indexes, true);
+
+                double dot = 0;
+                double delta = 0;
+                for (int index : indexes) {
+                    dot += df.value(i, index) * df.value(j, index);
+                    delta += Math.pow(df.value(i, index) - df.value(j, index), 2);
+                }
+                for (FeatureVector x1 : new FeatureVector[]{d1, s1}) {
+                    for (FeatureVector x2 : new FeatureVector[]{d2, s2}) {
+                        assertEquals(dot, x1.dot(x2), 1e-12);
+                        assertEquals(delta, x1.deltaDot(x2), 1e-12);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testKernels() {
+        Kernel[] kernels = new Kernel[]{
+                new PolyKernel(1),
+                new PolyKernel(2),
+                new RBFKernel(1),
+                new SigmoidKernel(1, 1),
+                new CircularKernel(2),
+                new ExponentialKernel(2),
+                new InverseMultiQuadraticKernel(1),
+                new LogKernel(2),
+                new MultiQuadraticKernel(1),
+                new PowerKernel(2),
+                new RationalQuadraticKernel(1),
+                new SphericalKernel(2),
+                new WaveKernel(1)
+        };
+        Frame df = sparseFrame(30);
+        int[] indexes = indexes(df);
+        for (Kernel kernel : kernels) {
+            kernel.buildKernel(NAMES);
+            for (int i = 0; i < df.rowCount(); i++) {
+                FeatureVector d1 = FeatureVector.newFrom(df, i, indexes, false);
+                FeatureVector s1 = FeatureVector.newFrom(df, i, indexes, true);
+                for (int j = 0; j < df.rowCount(); j++) {
+                    FeatureVector d2 = FeatureVector.newFrom(df, j, indexes, false);
+                    FeatureVector s2 = FeatureVector.newFrom(df, j, indexes, true);
+                    double expected = kernel.eval(df, i, df, j);
+                    assertEquals(expected, kernel.eval(d1, d2), 1e-9);
+                    assertEquals(expected, kernel.eval(d1, s2), 1e-9);
+                    assertEquals(expected, kernel.eval(s1, s2), 1e-9);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.classifier.tools;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.ml.classifier.tree.ctree.CTreeTestFunction;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class RunningDensityTableTest {
+
+    private static final CTreeTestFunction[] FUNCTIONS = new CTreeTestFunction[]{
+            new CTreeTestFunction.Entropy(),
+            new CTreeTestFunction.InfoGain(),
+            new CTreeTestFunction.GainRatio(),
+            new CTreeTestFunction.GiniGain()
+    };
+
+    private void assertSame(DensityTable dt, RunningDensityTable rdt) {
+        assertEquals(dt.getTargetEntropy(), rdt.getTargetEntropy(), 1e-12);
+        assertEquals(dt.getSplitEntropy(), rdt.getSplitEntropy(), 1e-12);
+        assertEquals(dt.getInfoGain(), rdt.getInfoGain(), 1e-12);
+        assertEquals(dt.getSplitInfo(), rdt.getSplitInfo(), 1e-12);
+        if (dt.getSplitInfo() > 0)
+            assertEquals(dt.getGainRatio(), rdt.getGainRatio(), 1e-12);
+        assertEquals(dt.getGiniIndex(), rdt.getGiniIndex(), 1e-12);
+        for (CTreeTestFunction function : FUNCTIONS) {
+            assertEquals(function.compute(dt), function.compute(rdt), 1e-12);
+        }
+    }
+
+    private void testMoves(boolean integerWeights) {
+        String[] target = new String[]{"?", "a", "b", "c", "d"};
+        DensityTable dt = new DensityTable(DensityTable.NUMERIC_DEFAULT_LABELS, target);
+        RunningDensityTable rdt = new RunningDensityTable(target);
+
+        int len = 200;
+        int[] cols = new int[len];
+        double[] weights = new double[len];
+        for (int i = 0; i < len; i++) {
+            cols[i] = RandomSource.nextInt(target.length);
+            weights[i] = integerWeights ? 1 + RandomSource.nextInt(3) : RandomSource.nextDouble();
+            int row = (i % 10 == 0) ? 0 : 2;
+            dt.update(row, cols[i], weights[i]);
+            rdt.update(row, cols[i], weights[i]);
+        }
+        for (int i = 0; i < len; i++) {
+            if (i % 10 == 0) continue;
+            dt.move(2, 1, cols[i], weights[i]);
+            rdt.move(cols[i], weights[i]);
+            assertSame(dt, rdt);
+        }
+    }
+
+    @Test
+    public void testCounts() {
+        RandomSource.setSeed(1);
+        testMoves(true);
+    }
+
+    @Test
+    public void testWeights() {
+        RandomSource.setSeed(1);
+        testMoves(false);
+    }
+}
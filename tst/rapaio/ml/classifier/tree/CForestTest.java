@@ -23,13 +23,20 @@ package rapaio.ml.classifier.tree;
 import org.junit.Assert;
 import org.junit.Test;
 import rapaio.data.Frame;
+import rapaio.data.Numeric;
+import rapaio.data.Var;
+import rapaio.datasets.Datasets;
 import rapaio.io.ArffPersistence;
 import rapaio.io.Csv;
+import rapaio.ml.classifier.CResult;
 import rapaio.ml.classifier.ModelEvaluation;
+import rapaio.util.Pair;
 import rapaio.ws.Summary;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * User: <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
@@ -47,6 +54,68 @@ public class CForestTest {
         Assert.assertTrue(true);
     }
 
+    @Test
+    public void testReproducibleWithSeed() throws IOException, URISyntaxException, InterruptedException, ExecutionException {
+        Frame df = Datasets.loadIrisDataset();
+
+        CForest rf1 = CForest.buildRandomForest(20, 2, 1).withSeed(42L);
+        new ForkJoinPool(1).submit(() -> rf1.learn(df, "class")).get();
+        CForest rf2 = CForest.buildRandomForest(20, 2, 1).withSeed(42L);
+        new ForkJoinPool(4).submit(() -> rf2.learn(df, "class")).get();
+
+        CResult cr1 = rf1.predict(df);
+        CResult cr2 = rf2.predict(df);
+        for (int i = 0; i < df.rowCount(); i++) {
+            Assert.assertEquals(cr1.firstClasses().index(i), cr2.firstClasses().index(i));
+            for (int j = 0; j < cr1.firstDensity().varCount(); j++) {
+                Assert.assertEquals(cr1.firstDensity().value(i, j), cr2.firstDensity().value(i, j), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testOobPrediction() throws IOException, URISyntaxException {
+        Frame df = Datasets.loadIrisDataset();
+
+        CForest rf = CForest.buildRandomForest(50, 2, 1).withSeed(1L).withOobError(true);
+        rf.learn(df, "class");
+
+        CResult oob = rf.getOobPrediction();
+        Assert.assertEquals(df.rowCount(), oob.getRows());
+
+        int errors = 0;
+        int count = 0;
+        for (int i = 0; i < df.rowCount(); i++) {
+            if (oob.firstClasses().missing(i)) continue;
+            count++;
+            if (oob.firstClasses().index(i) != df.var("class").index(i)) errors++;
+        }
+        Assert.assertTrue(count > 0);
+        Assert.assertEquals(errors / (double) count, rf.getOobError(), 1e-12);
+        Assert.assertTrue(rf.getOobError() < 0.2);
+    }
+
+    @Test
+    public void testWeightedBootstrap() throws IOException, URISyntaxException {
+        Frame df = Datasets.loadIrisDataset();
+
+        CForest rf = CForest.buildRandomForest(10, 2, 1).withWeightedBootstrap(true);
+        int[] counts = rf.produceInBagCounts(df.rowCount(), new java.util.Random(1));
+        Pair<Frame, Var> sample = rf.produceSample(df, Numeric.newFill(df.rowCount(), 1), counts);
+
+        int unique = 0;
+        int total = 0;
+        for (int count : counts) {
+            if (count > 0) unique++;
+            total += count;
+        }
+        Assert.assertEquals(unique, sample.first.rowCount());
+        Assert.assertEquals(total, sample.second.stream().mapToDouble().sum(), 1e-12);
+
+        rf.withOobError(true).learn(df, "class");
+        Assert.assertTrue(rf.getOobError() < 0.2);
+    }
+
     public double test(String name) throws IOException {
         Frame df = loadFrame(name);
         String className = df.varNames()[df.varCount() - 1];
@@ -21,15 +21,21 @@
 package rapaio.ml.classifier.tree.ctree;
 
 import org.junit.Test;
+import rapaio.data.FactorBase;
 import rapaio.data.Frame;
+import rapaio.data.Nominal;
+import rapaio.data.SolidFrame;
 import rapaio.data.VarType;
 import rapaio.data.filter.frame.FFRetainTypes;
+import rapaio.data.stream.FSpot;
 import rapaio.datasets.Datasets;
 import rapaio.ml.classifier.CResult;
 import rapaio.ws.Summary;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.function.Predicate;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
@@ -90,6 +96,45 @@ public class CTreeTest {
         }
     }
 
+    @Test
+    public void testNominalLevelPredicate() {
+        Frame learn = SolidFrame.newWrapOf(Nominal.newCopyOf("a", "b", "?", "c").withName("x"));
+        String[] dict = learn.var("x").dictionary();
+        int b = Arrays.asList(dict).indexOf("b");
+
+        Predicate<FSpot> eq = CTreeNominalMethod.levelPredicate("x", dict, b, true);
+        Predicate<FSpot> neq = CTreeNominalMethod.levelPredicate("x", dict, b, false);
+
+        assertEquals(false, eq.test(new FSpot(learn, 0)));
+        assertEquals(true, eq.test(new FSpot(learn, 1)));
+        assertEquals(false, eq.test(new FSpot(learn, 2)));
+        assertEquals(true, neq.test(new FSpot(learn, 2)));
+
+        // other level order, labels must not be compared, only codes
+
+        FactorBase codes = new FactorBase() {
+            @Override
+            public VarType type() {
+                return VarType.NOMINAL;
+            }
+
+            @Override
+            public String label(int row) {
+                throw new IllegalStateException("labels must not be compared");
+            }
+        };
+        codes.withName("x");
+        codes.addLabel("c");
+        codes.addLabel("b");
+        codes.addLabel("a");
+        Frame other = SolidFrame.newWrapOf(codes);
+
+        assertEquals(false, eq.test(new FSpot(other, 0)));
+        assertEquals(true, eq.test(new FSpot(other, 1)));
+        assertEquals(true, neq.test(new FSpot(other, 2)));
+        assertEquals(true, eq.test(new FSpot(learn, 1)));
+    }
+
     @Test
     public void testPredictorStandard() throws IOException, URISyntaxException {
         Frame df = Datasets.loadIrisDataset();
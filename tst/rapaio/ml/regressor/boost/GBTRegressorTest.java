@@ -0,0 +1,163 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.regressor.boost;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.data.Mapping;
+import rapaio.data.Numeric;
+import rapaio.datasets.Datasets;
+import rapaio.ml.common.ValidationMonitor;
+import rapaio.ml.regressor.tree.rtree.RTreeEnsemble;
+import rapaio.ml.regressor.RResult;
+import rapaio.ml.regressor.boost.gbt.GBTLossFunction;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * User: Aurelian Tutuianu <padreati@yahoo.com>
+ */
+public class GBTRegressorTest {
+
+    private void testFitLearn(GBTRegressor gbt) throws IOException {
+        RandomSource.setSeed(1);
+        Frame df = Datasets.loadHousing();
+
+        gbt.learn(df, "MEDV");
+        gbt.learnFurther(df, null, 15, "MEDV");
+        assertEquals(15, gbt.trees.size());
+
+        RResult pred = gbt.predict(df, false);
+        for (int i = 0; i < df.rowCount(); i++) {
+            assertEquals(pred.firstFit().value(i), gbt.fitLearn.value(i), 1e-9);
+        }
+    }
+
+    @Test
+    public void testFitLearnFromLeaves() throws IOException {
+        testFitLearn(new GBTRegressor()
+                .withLossFunction(new GBTLossFunction.L2())
+                .withShrinkage(0.1)
+                .withRuns(10));
+    }
+
+    @Test
+    public void testFitLearnWithBootstrap() throws IOException {
+        testFitLearn(new GBTRegressor()
+                .withLossFunction(new GBTLossFunction.Huber())
+                .withBootstrap(true)
+                .withBootstrapSize(0.5)
+                .withShrinkage(0.1)
+                .withRuns(10));
+    }
+
+    @Test
+    public void testEarlyStopping() throws IOException {
+        RandomSource.setSeed(1);
+        Frame df = Datasets.loadHousing();
+        Mapping train = Mapping.newEmpty();
+        Mapping test = Mapping.newEmpty();
+        for (int i = 0; i < df.rowCount(); i++) {
+            if (i % 4 == 0) {
+                test.add(i);
+            } else {
+                train.add(i);
+            }
+        }
+        Frame tr = df.mapRows(train);
+        Frame te = df.mapRows(test);
+
+        ValidationMonitor monitor = new ValidationMonitor(te).withPatience(5);
+        GBTRegressor gbt = new GBTRegressor()
+                .withLossFunction(new GBTLossFunction.L2())
+                .withShrinkage(1.0)
+                .withMonitor(monitor)
+                .withRuns(200);
+        gbt.learn(tr, "MEDV");
+
+        assertTrue(gbt.trees.size() < 200);
+        assertEquals(monitor.getBestRound(), gbt.trees.size());
+        assertEquals(monitor.getBestRound() + 6, monitor.getScores().size());
+
+        // cached values are the values of the truncated ensemble
+
+        RResult pred = gbt.predict(te, false);
+        for (int i = 0; i < te.rowCount(); i++) {
+            assertEquals(pred.firstFit().value(i), gbt.holdoutFit[i], 1e-9);
+        }
+        pred = gbt.predict(tr, false);
+        for (int i = 0; i < tr.rowCount(); i++) {
+            assertEquals(pred.firstFit().value(i), gbt.fitLearn.value(i), 1e-9);
+        }
+        assertEquals(monitor.getBestScore(),
+                new GBTLossFunction.L2().error(te.var("MEDV"), gbt.predict(te, false).firstFit()), 1e-9);
+    }
+
+    @Test
+    public void testCompiledScore() throws IOException {
+        RandomSource.setSeed(1);
+        Frame df = Datasets.loadHousing();
+
+        GBTRegressor gbt = new GBTRegressor()
+                .withLossFunction(new GBTLossFunction.Huber())
+                .withShrinkage(0.1)
+                .withRuns(20);
+        gbt.learn(df, "MEDV");
+
+        RTreeEnsemble ensemble = gbt.compile();
+        assertEquals(20, ensemble.treeCount());
+        String[] names = ensemble.featureNames();
+        double[] row = new double[names.length];
+
+        RResult pred = gbt.predict(df, false);
+        for (int i = 0; i < df.rowCount(); i++) {
+            for (int j = 0; j < names.length; j++) {
+                row[j] = df.value(i, names[j]);
+            }
+            assertEquals(pred.firstFit().value(i), ensemble.score(row), 1e-9);
+        }
+    }
+
+    @Test
+    public void testErrorSkipsMissing() {
+        Numeric y = Numeric.newWrapOf(1, 2, 3, Double.NaN, 10);
+        Numeric fx = Numeric.newWrapOf(0, 0, 0, 0, 0);
+        Numeric yComplete = Numeric.newWrapOf(1, 2, 3, 10);
+        Numeric fxComplete = Numeric.newWrapOf(0, 0, 0, 0);
+
+        // mean squared error and mean absolute error over the non missing residuals
+        assertEquals((1 + 4 + 9 + 100) / 4.0, new GBTLossFunction.L2().error(y, fx), 1e-12);
+        assertEquals((1 + 2 + 3 + 10) / 4.0, new GBTLossFunction.L1().error(y, fx), 1e-12);
+
+        // rho is the median of {1, 2, 3, 10}, which is 2.5
+        double expected = (0.5 + 2 + 2.5 * (3 - 1.25) + 2.5 * (10 - 1.25)) / 4;
+        GBTLossFunction huber = new GBTLossFunction.Huber().withAlpha(0.5);
+        assertEquals(expected, huber.error(y, fx), 1e-12);
+
+        for (GBTLossFunction loss : new GBTLossFunction[]{new GBTLossFunction.L2(), new GBTLossFunction.L1(), huber}) {
+            assertEquals(loss.error(yComplete, fxComplete), loss.error(y, fx), 1e-12);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.regressor.linear;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.data.Mapping;
+import rapaio.data.MappedFrame;
+import rapaio.data.Numeric;
+import rapaio.data.SolidFrame;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class OLSRegressorTest {
+
+    private Frame buildFrame(int rows) {
+        RandomSource.setSeed(123);
+        Numeric intercept = Numeric.newFill(rows, 1).withName("intercept");
+        Numeric a = Numeric.newEmpty().withName("a");
+        Numeric b = Numeric.newEmpty().withName("b");
+        Numeric y = Numeric.newEmpty().withName("y");
+        for (int i = 0; i < rows; i++) {
+            double av = RandomSource.nextDouble() * 10;
+            double bv = RandomSource.nextDouble() * 100 - 50;
+            a.addValue(av);
+            b.addValue(bv);
+            y.addValue(1 + 2 * av - 3 * bv + RandomSource.nextDouble() - 0.5);
+        }
+        return SolidFrame.newWrapOf(rows, intercept, a, b, y);
+    }
+
+    @Test
+    public void testChunksMatchQR() {
+        Frame df = buildFrame(10_000);
+
+        OLSRegressor qr = new OLSRegressor();
+        qr.learn(df, "y");
+
+        OLSRegressor chunked = new OLSRegressor().withChunkSize(777);
+        chunked.learn(df, "y");
+
+        OLSRegressor streamed = new OLSRegressor();
+        streamed.learn(IntStream.range(0, 10).mapToObj(i ->
+                MappedFrame.newByRow(df, Mapping.newRangeOf(i * 1000, (i + 1) * 1000))), "y");
+
+        for (int i = 0; i < 3; i++) {
+            double expected = qr.getCoefficients().value(i, "Coefficient");
+            assertEquals(expected, chunked.getCoefficients().value(i, "Coefficient"), 1e-8);
+            assertEquals(expected, streamed.getCoefficients().value(i, "Coefficient"), 1e-8);
+            assertEquals(qr.getCoefficients().label(i, "Term"), streamed.getCoefficients().label(i, "Term"));
+        }
+        assertEquals(1, qr.getCoefficients().value(0, "Coefficient"), 0.1);
+        assertEquals(2, qr.getCoefficients().value(1, "Coefficient"), 0.1);
+        assertEquals(-3, qr.getCoefficients().value(2, "Coefficient"), 0.1);
+    }
+
+    @Test
+    public void testMerge() {
+        Frame df = buildFrame(1_000);
+        String[] predictors = new String[]{"intercept", "a", "b"};
+        String[] targets = new String[]{"y"};
+
+        NormalEquations full = new NormalEquations(predictors, targets).update(df);
+        NormalEquations merged = new NormalEquations(predictors, targets)
+                .update(MappedFrame.newByRow(df, Mapping.newRangeOf(0, 300)))
+                .merge(new NormalEquations(predictors, targets)
+                        .update(MappedFrame.newByRow(df, Mapping.newRangeOf(300, 1_000))));
+
+        assertEquals(1_000, merged.rowCount());
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                assertEquals(full.getXtX().get(i, j), merged.getXtX().get(i, j), 1e-6);
+            }
+            assertEquals(full.getXtY().get(i, 0), merged.getXtY().get(i, 0), 1e-6);
+        }
+
+        // missing values are skipped
+        df.setMissing(10, "a");
+        assertEquals(999, new NormalEquations(predictors, targets).update(df).rowCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentVariables() {
+        new NormalEquations(new String[]{"a"}, new String[]{"y"})
+                .merge(new NormalEquations(new String[]{"b"}, new String[]{"y"}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyStream() {
+        new OLSRegressor().learn(Stream.empty(), "y");
+    }
+}
@@ -22,6 +22,7 @@ package rapaio.ml.regressor.nnet;
 
 import junit.framework.Assert;
 import org.junit.Test;
+import rapaio.core.RandomSource;
 import rapaio.data.Frame;
 import rapaio.data.Numeric;
 import rapaio.data.SolidFrame;
@@ -185,4 +186,41 @@ public class NeuralNetTest {
         Summary.summary(stat);
 
     }
+
+    @Test
+    public void testMiniBatch() {
+        RandomSource.setSeed(42);
+        Var a = Numeric.newEmpty().withName("a");
+        Var b = Numeric.newEmpty().withName("b");
+        Var y = Numeric.newEmpty().withName("y");
+        for (int i = 0; i < 5_000; i++) {
+            double av = RandomSource.nextDouble() * 2 - 1;
+            double bv = RandomSource.nextDouble() * 2 - 1;
+            a.addValue(av);
+            b.addValue(bv);
+            y.addValue(1. / (1. + Math.exp(-2 * av + 3 * bv)));
+        }
+        Frame df = SolidFrame.newWrapOf(a, b, y);
+
+        double[] rmse = new double[2];
+        for (int k = 0; k < 2; k++) {
+            // batch larger than a parallel task, so gradients are computed in parts
+            RandomSource.setSeed(1);
+            Regressor nn = new MultiLayerPerceptronRegressor(2, 4, 1)
+                    .withBatchSize(600)
+                    .withLearningRate(2)
+                    .withRuns(2_000);
+            nn.learn(df, "y");
+            RResult rp = nn.predict(df);
+
+            double sum = 0;
+            for (int i = 0; i < df.rowCount(); i++) {
+                double err = rp.firstFit().value(i) - y.value(i);
+                sum += err * err;
+            }
+            rmse[k] = Math.sqrt(sum / df.rowCount());
+        }
+        Assert.assertTrue(rmse[0] < 0.05);
+        Assert.assertEquals(rmse[0], rmse[1], 0);
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.ml.regressor.tree.rtree;
+
+import org.junit.Test;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.datasets.Datasets;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+public class RTreeEnsembleTest {
+
+    private void testLikePredictor(Frame train, Frame test, String target, RTree... trees) {
+        for (RTree tree : trees) {
+            tree.learn(train, target);
+        }
+        // two outputs, first one with all trees except the last one
+        List<List<RTree>> lists = Arrays.asList(
+                Arrays.asList(trees).subList(0, trees.length - 1),
+                Collections.singletonList(trees[trees.length - 1]));
+        RTreeEnsemble ensemble = RTreeEnsemble.newCompiled(lists, 0.5, new double[]{1, 2});
+        assertEquals(2, ensemble.outputCount());
+        assertEquals(trees.length, ensemble.treeCount());
+
+        double[] expected = new double[test.rowCount() * 2];
+        for (int i = 0; i < test.rowCount(); i++) {
+            expected[i * 2] = 1;
+            expected[i * 2 + 1] = 2;
+        }
+        for (int t = 0; t < trees.length; t++) {
+            int out = (t == trees.length - 1) ? 1 : 0;
+            double[] fit = trees[t].predict(test, false).firstFit().stream().mapToDouble().toArray();
+            for (int i = 0; i < test.rowCount(); i++) {
+                expected[i * 2 + out] += 0.5 * fit[i];
+            }
+        }
+
+        double[] scores = ensemble.score(test);
+        String[] names = ensemble.featureNames();
+        double[] row = new double[names.length];
+        double[] out = new double[2];
+        for (int i = 0; i < test.rowCount(); i++) {
+            assertEquals(expected[i * 2], scores[i * 2], 1e-9);
+            assertEquals(expected[i * 2 + 1], scores[i * 2 + 1], 1e-9);
+
+            for (int j = 0; j < names.length; j++) {
+                if (test.var(names[j]).type().isNumeric()) {
+                    row[j] = test.missing(i, names[j]) ? Double.NaN : test.value(i, names[j]);
+                } else {
+                    row[j] = ensemble.levelCode(names[j], test.label(i, names[j]));
+                }
+            }
+            assertEquals(expected[i * 2], ensemble.score(row), 1e-9);
+            ensemble.score(row, out);
+            assertEquals(expected[i * 2 + 1], out[1], 1e-9);
+        }
+    }
+
+    @Test
+    public void testNumericWithMissing() throws IOException {
+        RandomSource.setSeed(1);
+        Frame df = Datasets.loadHousing();
+        Frame test = df.solidCopy();
+        for (int i = 0; i < test.rowCount(); i += 3) {
+            test.setMissing(i, i % 2 == 0 ? "LSTAT" : "RM");
+        }
+        testLikePredictor(df, test, "MEDV",
+                RTree.buildCART().withMaxDepth(4),
+                RTree.buildCART().withMaxDepth(6).withMinCount(5),
+                RTree.buildDecisionStump());
+    }
+
+    @Test
+    public void testNominal() throws IOException {
+        RandomSource.setSeed(1);
+        Frame df = Datasets.loadPlay();
+        testLikePredictor(df, df, "temp",
+                RTree.buildCART().withMaxDepth(3).withMinCount(2),
+                RTree.buildCART().withMaxDepth(3).withMinCount(2).withNominalMethod(RTreeNominalMethod.FULL),
+                RTree.buildDecisionStump());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.performance;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import rapaio.WS;
+import rapaio.core.RandomSource;
+import rapaio.core.correlation.PearsonRCorrelation;
+import rapaio.core.correlation.RhoCorr;
+import rapaio.core.stat.Mean;
+import rapaio.core.stat.Variance;
+import rapaio.data.Frame;
+import rapaio.data.Numeric;
+import rapaio.data.SolidFrame;
+import rapaio.data.Var;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the correlation matrix of a wide frame computed pair by pair
+ * with the computation as a single matrix product.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+@Ignore("timing benchmark, run manually")
+public class CorrelationPerformanceTest {
+
+    private static final int ROWS = 10_000;
+    private static final int COLS = 100;
+
+    @Test
+    public void testCorrelationMatrix() {
+        Random random = RandomSource.newRandom(1);
+        Var[] vars = new Var[COLS];
+        for (int j = 0; j < COLS; j++) {
+            vars[j] = Numeric.newEmpty(ROWS).withName("x" + j);
+            for (int i = 0; i < ROWS; i++) {
+                vars[j].setValue(i, random.nextGaussian() + (j > 0 ? vars[j - 1].value(i) : 0));
+            }
+        }
+        Frame df = SolidFrame.newWrapOf(vars);
+
+        long start = System.nanoTime();
+        double[][] pairs = new double[COLS][COLS];
+        for (int i = 0; i < COLS; i++) {
+            for (int j = i + 1; j < COLS; j++) {
+                pairs[i][j] = pair(vars[i], vars[j]);
+            }
+        }
+        double timePairs = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        double[][] pearson = new PearsonRCorrelation(df).values();
+        double timePearson = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        new RhoCorr(df).values();
+        double timeSpearman = (System.nanoTime() - start) / 1e6;
+
+        for (int i = 0; i < COLS; i++) {
+            for (int j = i + 1; j < COLS; j++) {
+                assertEquals(pairs[i][j], pearson[i][j], 1e-12);
+            }
+        }
+        WS.printfln("correlation %dx%d: pairs %.1f ms, pearson %.1f ms, spearman %.1f ms",
+                ROWS, COLS, timePairs, timePearson, timeSpearman);
+    }
+
+    private static double pair(Var x, Var y) {
+        double xMean = new Mean(x).value();
+        double yMean = new Mean(y).value();
+        double sdp = Math.sqrt(new Variance(x).value()) * Math.sqrt(new Variance(y).value());
+        double sum = 0;
+        for (int i = 0; i < x.rowCount(); i++) {
+            sum += (x.value(i) - xMean) * (y.value(i) - yMean);
+        }
+        return sum / (sdp * (x.rowCount() - 1));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.performance;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import rapaio.WS;
+import rapaio.core.RandomSource;
+import rapaio.ml.classifier.tools.DensityTable;
+import rapaio.ml.classifier.tools.RunningDensityTable;
+import rapaio.ml.classifier.tree.ctree.CTreeTestFunction;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the evaluation of split criteria over a scan of a numeric test
+ * using {@link DensityTable} and {@link RunningDensityTable}.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+@Ignore("timing benchmark, run manually")
+public class DensityTablePerformanceTest {
+
+    private static final int ROWS = 50_000;
+    private static final int CLASSES = 5;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void testSplitCriteria() {
+        RandomSource.setSeed(1);
+        String[] target = new String[CLASSES + 1];
+        target[0] = "?";
+        for (int i = 1; i < target.length; i++) {
+            target[i] = "c" + i;
+        }
+        int[] cols = new int[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            cols[i] = 1 + RandomSource.nextInt(CLASSES);
+        }
+
+        CTreeTestFunction[] functions = new CTreeTestFunction[]{
+                new CTreeTestFunction.Entropy(),
+                new CTreeTestFunction.InfoGain(),
+                new CTreeTestFunction.GainRatio(),
+                new CTreeTestFunction.GiniGain()
+        };
+        for (CTreeTestFunction function : functions) {
+            // sums of criteria keep the evaluations from being optimized away
+            double check1 = 0;
+            double check2 = 0;
+            long time1 = 0;
+            long time2 = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                DensityTable dt = new DensityTable(DensityTable.NUMERIC_DEFAULT_LABELS, target);
+                for (int i = 0; i < ROWS; i++) {
+                    dt.update(2, cols[i], 1);
+                }
+                for (int i = 0; i < ROWS - 1; i++) {
+                    dt.move(2, 1, cols[i], 1);
+                    check1 += function.compute(dt);
+                }
+                time1 += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                RunningDensityTable rdt = new RunningDensityTable(target);
+                for (int i = 0; i < ROWS; i++) {
+                    rdt.update(2, cols[i], 1);
+                }
+                for (int i = 0; i < ROWS - 1; i++) {
+                    rdt.move(cols[i], 1);
+                    check2 += function.compute(rdt);
+                }
+                time2 += System.nanoTime() - start;
+            }
+            assertEquals(check1, check2, 1e-6 * Math.abs(check1));
+            WS.printfln("%s: DensityTable %.3f ms, RunningDensityTable %.3f ms",
+                    function.name(), time1 / 1e6 / ROUNDS, time2 / 1e6 / ROUNDS);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.performance;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import rapaio.WS;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.datasets.Datasets;
+import rapaio.ml.regressor.RResult;
+import rapaio.ml.regressor.boost.GBTRegressor;
+import rapaio.ml.regressor.boost.gbt.GBTLossFunction;
+import rapaio.ml.regressor.tree.rtree.RTree;
+import rapaio.ml.regressor.tree.rtree.RTreeEnsemble;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares single row scoring of a gradient boosting tree model through
+ * prediction on a one row frame and through the compiled ensemble.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+@Ignore("timing benchmark, run manually")
+public class GBTScoringPerformanceTest {
+
+    private static final int RUNS = 200;
+    private static final int ROUNDS = 20;
+
+    @Test
+    public void testSingleRowScoring() throws IOException {
+        RandomSource.setSeed(1);
+        Frame df = Datasets.loadHousing();
+        GBTRegressor gbt = new GBTRegressor()
+                .withLossFunction(new GBTLossFunction.L2())
+                .withRegressor(RTree.buildCART().withMaxDepth(5).withMinCount(5))
+                .withShrinkage(0.1)
+                .withRuns(RUNS);
+        gbt.learn(df, "MEDV");
+
+        // prediction on one row frames
+
+        long time1 = 0;
+        double check1 = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < df.rowCount(); i++) {
+                RResult pred = gbt.predict(df.mapRows(i), false);
+                check1 += pred.firstFit().value(0);
+            }
+            time1 += System.nanoTime() - start;
+        }
+
+        // compiled ensemble
+
+        RTreeEnsemble ensemble = gbt.compile();
+        String[] names = ensemble.featureNames();
+        double[][] rows = new double[df.rowCount()][names.length];
+        for (int i = 0; i < df.rowCount(); i++) {
+            for (int j = 0; j < names.length; j++) {
+                rows[i][j] = df.value(i, names[j]);
+            }
+        }
+        long time2 = 0;
+        double check2 = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (double[] row : rows) {
+                check2 += ensemble.score(row);
+            }
+            time2 += System.nanoTime() - start;
+        }
+        assertEquals(check1, check2, 1e-6 * Math.abs(check1));
+        WS.printfln("GBT single row scoring: predict %.3f us/row, compiled %.3f us/row",
+                time1 / 1e3 / ROUNDS / df.rowCount(), time2 / 1e3 / ROUNDS / df.rowCount());
+    }
+}
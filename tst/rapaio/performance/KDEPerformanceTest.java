@@ -0,0 +1,82 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.performance;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import rapaio.WS;
+import rapaio.core.RandomSource;
+import rapaio.core.distributions.empirical.KDE;
+import rapaio.data.Numeric;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares density evaluation on a grid of points with one call for each point,
+ * with the exact sorted sweep and with the binned approximation.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+@Ignore("timing benchmark, run manually")
+public class KDEPerformanceTest {
+
+    private static final int POINTS = 512;
+
+    @Test
+    public void testGridEvaluation() {
+        Random random = RandomSource.newRandom(1);
+        for (int size : new int[]{10_000, 1_000_000}) {
+            Numeric x = Numeric.newEmpty(size);
+            for (int i = 0; i < size; i++) {
+                x.setValue(i, random.nextGaussian());
+            }
+            KDE kde = new KDE(x);
+            double[] grid = new double[POINTS];
+            for (int i = 0; i < POINTS; i++) {
+                grid[i] = -5 + 10.0 * i / (POINTS - 1);
+            }
+
+            long start = System.nanoTime();
+            double[] single = new double[POINTS];
+            for (int i = 0; i < POINTS; i++) {
+                single[i] = kde.pdf(grid[i]);
+            }
+            double timeSingle = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            double[] sweep = kde.pdf(grid);
+            double timeSweep = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            double[] binned = kde.pdfGrid(-5, 5, POINTS);
+            double timeBinned = (System.nanoTime() - start) / 1e6;
+
+            for (int i = 0; i < POINTS; i++) {
+                assertEquals(single[i], sweep[i], 1e-12);
+                assertEquals(sweep[i], binned[i], 1e-4);
+            }
+            WS.printfln("kde %d values, %d points: single %.1f ms, sweep %.1f ms, binned %.1f ms",
+                    size, POINTS, timeSingle, timeSweep, timeBinned);
+        }
+    }
+}
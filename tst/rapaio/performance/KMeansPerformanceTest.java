@@ -0,0 +1,80 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.performance;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import rapaio.WS;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.data.Numeric;
+import rapaio.data.SolidFrame;
+import rapaio.experiment.cluster.algorithm.KMeans;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Compares the running time of k-means methods on the same data and initialization.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+@Ignore("timing benchmark, run manually")
+public class KMeansPerformanceTest {
+
+    private static final int ROWS = 100_000;
+    private static final int COLS = 10;
+    private static final int K = 20;
+
+    @Test
+    public void testMethods() {
+        Random random = RandomSource.newRandom(1);
+        Numeric[] vars = new Numeric[COLS];
+        for (int j = 0; j < COLS; j++) {
+            vars[j] = Numeric.newEmpty(ROWS).withName("x" + j);
+        }
+        for (int i = 0; i < ROWS; i++) {
+            int blob = random.nextInt(2 * K);
+            for (int j = 0; j < COLS; j++) {
+                vars[j].setValue(i, blob * (j + 1) % 7 + random.nextGaussian());
+            }
+        }
+        Frame df = SolidFrame.newWrapOf(vars);
+
+        int[] reference = null;
+        for (KMeans.Method method : KMeans.Method.values()) {
+            KMeans km = new KMeans().withK(K).withSeed(1L).withMethod(method).withMaxIterations(100);
+            long start = System.nanoTime();
+            km.learn(df, "all");
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (reference == null) {
+                reference = km.getAssignment();
+            }
+            if (method != KMeans.Method.MINI_BATCH) {
+                // bound pruning gives the same assignment as Lloyd
+                assertArrayEquals(reference, km.getAssignment());
+            }
+            WS.printfln("kmeans %s: %.3f s, %d iterations, inertia %.1f",
+                    method.name(), seconds, km.getIterations(), km.getInertia());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.performance;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import rapaio.WS;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.data.Numeric;
+import rapaio.data.SolidFrame;
+import rapaio.data.Var;
+import rapaio.ml.classifier.svm.kernel.CircularKernel;
+import rapaio.ml.classifier.svm.kernel.ExponentialKernel;
+import rapaio.ml.classifier.svm.kernel.FeatureVector;
+import rapaio.ml.classifier.svm.kernel.InverseMultiQuadraticKernel;
+import rapaio.ml.classifier.svm.kernel.Kernel;
+import rapaio.ml.classifier.svm.kernel.LogKernel;
+import rapaio.ml.classifier.svm.kernel.MultiQuadraticKernel;
+import rapaio.ml.classifier.svm.kernel.PolyKernel;
+import rapaio.ml.classifier.svm.kernel.PowerKernel;
+import rapaio.ml.classifier.svm.kernel.RBFKernel;
+import rapaio.ml.classifier.svm.kernel.RationalQuadraticKernel;
+import rapaio.ml.classifier.svm.kernel.SigmoidKernel;
+import rapaio.ml.classifier.svm.kernel.SphericalKernel;
+import rapaio.ml.classifier.svm.kernel.WaveKernel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares kernel evaluation on frame rows, on dense feature vectors
+ * and on sparse feature vectors, on data with mostly zero values.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+@Ignore("timing benchmark, run manually")
+public class KernelPerformanceTest {
+
+    private static final int ROWS = 200;
+    private static final int FEATURES = 100;
+    private static final double DENSITY = 0.1;
+
+    @Test
+    public void testKernelEvaluation() {
+        RandomSource.setSeed(1);
+        List<Var> vars = new ArrayList<>();
+        String[] names = new String[FEATURES];
+        for (int j = 0; j < FEATURES; j++) {
+            names[j] = "x" + j;
+            Numeric var = Numeric.newEmpty(ROWS).withName(names[j]);
+            for (int i = 0; i < ROWS; i++) {
+                var.setValue(i, RandomSource.nextDouble() < DENSITY ? RandomSource.nextDouble() : 0);
+            }
+            vars.add(var);
+        }
+        Frame df = SolidFrame.newWrapOf(vars);
+        int[] indexes = new int[FEATURES];
+        for (int j = 0; j < FEATURES; j++) {
+            indexes[j] = df.varIndex(names[j]);
+        }
+        FeatureVector[] dense = new FeatureVector[ROWS];
+        FeatureVector[] sparse = new FeatureVector[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            dense[i] = FeatureVector.newFrom(df, i, indexes, false);
+            sparse[i] = FeatureVector.newFrom(df, i, indexes, true);
+        }
+
+        Kernel[] kernels = new Kernel[]{
+                new PolyKernel(1),
+                new PolyKernel(2),
+                new RBFKernel(1),
+                new SigmoidKernel(1, 1),
+                new CircularKernel(2),
+                new ExponentialKernel(2),
+                new InverseMultiQuadraticKernel(1),
+                new LogKernel(2),
+                new MultiQuadraticKernel(1),
+                new PowerKernel(2),
+                new RationalQuadraticKernel(1),
+                new SphericalKernel(2),
+                new WaveKernel(1)
+        };
+        for (Kernel kernel : kernels) {
+            kernel.buildKernel(names);
+
+            long start = System.nanoTime();
+            double check1 = 0;
+            for (int i = 0; i < ROWS; i++) {
+                for (int j = 0; j < ROWS; j++) {
+                    check1 += kernel.eval(df, i, df, j);
+                }
+            }
+            long time1 = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            double check2 = 0;
+            for (int i = 0; i < ROWS; i++) {
+                for (int j = 0; j < ROWS; j++) {
+                    check2 += kernel.eval(dense[i], dense[j]);
+                }
+            }
+            long time2 = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            double check3 = 0;
+            for (int i = 0; i < ROWS; i++) {
+                for (int j = 0; j < ROWS; j++) {
+                    check3 += kernel.eval(sparse[i], sparse[j]);
+                }
+            }
+            long time3 = System.nanoTime() - start;
+
+            double evals = 1.0 * ROWS * ROWS;
+            assertEquals(check1, check2, 1e-6 * Math.abs(check1));
+            assertEquals(check1, check3, 1e-6 * Math.abs(check1));
+            WS.printfln("%s: frame %.1f ns, dense %.1f ns, sparse %.1f ns per eval",
+                    kernel.getClass().getSimpleName(), time1 / evals, time2 / evals, time3 / evals);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.performance;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import rapaio.WS;
+import rapaio.core.RandomSource;
+import rapaio.data.matrix.CholeskyDecomposition;
+import rapaio.data.matrix.LUDecomposition;
+import rapaio.data.matrix.MathMatrix;
+import rapaio.data.matrix.Matrix;
+import rapaio.data.matrix.QRDecomposition;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the cache blocked parallel matrix multiplication with the
+ * previous implementation, a column copy triple loop on element accessors.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+@Ignore("timing benchmark, run manually")
+public class MatrixMultiplyPerformanceTest {
+
+    private static final int ROUNDS = 3;
+
+    @Test
+    public void testMultiply() {
+        RandomSource.setSeed(1);
+        for (int size : new int[]{100, 300, 600}) {
+            Matrix A = MathMatrix.random(size, size);
+            Matrix B = MathMatrix.random(size, size);
+
+            long time1 = Long.MAX_VALUE;
+            Matrix C1 = null;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                C1 = columnCopyTimes(A, B);
+                time1 = Math.min(time1, System.nanoTime() - start);
+            }
+
+            long time2 = Long.MAX_VALUE;
+            Matrix C2 = null;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                C2 = MathMatrix.times(A, B);
+                time2 = Math.min(time2, System.nanoTime() - start);
+            }
+
+            long time3 = Long.MAX_VALUE;
+            Matrix C3 = new Matrix(size, size);
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                MathMatrix.times(A, B, C3);
+                time3 = Math.min(time3, System.nanoTime() - start);
+            }
+
+            double gflop = 2.0 * size * size * size / 1e9;
+            assertTrue(MathMatrix.normF(MathMatrix.minus(C1, C2)) < 1e-9 * MathMatrix.normF(C1));
+            WS.printfln("multiply %dx%d: previous %.3f GFlop/s, blocked %.3f GFlop/s, blocked in place %.3f GFlop/s",
+                    size, size, gflop / (time1 / 1e9), gflop / (time2 / 1e9), gflop / (time3 / 1e9));
+        }
+    }
+
+    @Test
+    public void testDecompositions() {
+        RandomSource.setSeed(1);
+        for (int size : new int[]{100, 300, 600}) {
+            Matrix A = MathMatrix.random(size, size);
+            Matrix S = MathMatrix.times(MathMatrix.t(A), A);
+
+            long timeQR = Long.MAX_VALUE;
+            long timeLU = Long.MAX_VALUE;
+            long timeChol = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                new QRDecomposition(A);
+                timeQR = Math.min(timeQR, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                new LUDecomposition(A);
+                timeLU = Math.min(timeLU, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                new CholeskyDecomposition(S);
+                timeChol = Math.min(timeChol, System.nanoTime() - start);
+            }
+            double n3 = 1.0 * size * size * size / 1e9;
+            WS.printfln("decompositions %dx%d: QR %.3f GFlop/s, LU %.3f GFlop/s, Cholesky %.3f GFlop/s",
+                    size, size, 4.0 / 3 * n3 / (timeQR / 1e9), 2.0 / 3 * n3 / (timeLU / 1e9), 1.0 / 3 * n3 / (timeChol / 1e9));
+        }
+    }
+
+    private static Matrix columnCopyTimes(Matrix A, Matrix B) {
+        Matrix C = new Matrix(A.getRows(), B.getCols());
+        double[] BCol = new double[A.getCols()];
+        for (int j = 0; j < B.getCols(); j++) {
+            for (int k = 0; k < A.getCols(); k++) {
+                BCol[k] = B.get(k, j);
+            }
+            for (int i = 0; i < A.getRows(); i++) {
+                double s = 0;
+                for (int k = 0; k < A.getCols(); k++) {
+                    s += A.get(i, k) * BCol[k];
+                }
+                C.set(i, j, s);
+            }
+        }
+        return C;
+    }
+}
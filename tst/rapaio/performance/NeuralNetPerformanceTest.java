@@ -0,0 +1,75 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.performance;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import rapaio.WS;
+import rapaio.core.RandomSource;
+import rapaio.data.Frame;
+import rapaio.data.Numeric;
+import rapaio.data.SolidFrame;
+import rapaio.data.Var;
+import rapaio.ml.regressor.nnet.MultiLayerPerceptronRegressor;
+
+/**
+ * Measures the training throughput of the multi layer perceptron,
+ * in rows per second, for single row and mini batch learning.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+@Ignore("timing benchmark, run manually")
+public class NeuralNetPerformanceTest {
+
+    private static final int ROWS = 100_000;
+    private static final int INPUTS = 20;
+    private static final int SAMPLES = 500_000;
+
+    @Test
+    public void testTraining() {
+        RandomSource.setSeed(1);
+        Var[] vars = new Var[INPUTS + 1];
+        for (int i = 0; i < vars.length; i++) {
+            vars[i] = Numeric.newEmpty(ROWS).withName(i < INPUTS ? "x" + i : "y");
+        }
+        for (int r = 0; r < ROWS; r++) {
+            double sum = 0;
+            for (int i = 0; i < INPUTS; i++) {
+                double v = RandomSource.nextDouble();
+                vars[i].setValue(r, v);
+                sum += v;
+            }
+            vars[INPUTS].setValue(r, sum / INPUTS);
+        }
+        Frame df = SolidFrame.newWrapOf(vars);
+
+        for (int batchSize : new int[]{1, 64, 1024}) {
+            MultiLayerPerceptronRegressor nn = new MultiLayerPerceptronRegressor(INPUTS, 50, 50, 1)
+                    .withBatchSize(batchSize)
+                    .withLearningRate(0.1)
+                    .withRuns(SAMPLES / batchSize);
+            long start = System.nanoTime();
+            nn.learn(df, "y");
+            double seconds = (System.nanoTime() - start) / 1e9;
+            WS.printfln("mlp %d-50-50-1 batch %d: %.0f rows/s", INPUTS, batchSize, SAMPLES / seconds);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Apache License
+ * Version 2.0, January 2004
+ * http://www.apache.org/licenses/
+ *
+ *    Copyright 2013 Aurelian Tutuianu
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package rapaio.performance;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import rapaio.WS;
+import rapaio.core.RandomSource;
+import rapaio.core.stat.Maximum;
+import rapaio.core.stat.Mean;
+import rapaio.core.stat.Minimum;
+import rapaio.core.stat.Quantiles;
+import rapaio.core.stat.VarStat;
+import rapaio.core.stat.Variance;
+import rapaio.data.Numeric;
+import rapaio.data.Var;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares descriptive statistics of a wide frame computed with one class
+ * for each statistic with the single pass computation.
+ *
+ * @author <a href="mailto:padreati@yahoo.com">Aurelian Tutuianu</a>
+ */
+@Ignore("timing benchmark, run manually")
+public class SummaryPerformanceTest {
+
+    private static final int ROWS = 100_000;
+    private static final int COLS = 100;
+
+    @Test
+    public void testDescriptiveStats() {
+        Random random = RandomSource.newRandom(1);
+        Var[] vars = new Var[COLS];
+        for (int j = 0; j < COLS; j++) {
+            vars[j] = Numeric.newEmpty(ROWS).withName("x" + j);
+            for (int i = 0; i < ROWS; i++) {
+                vars[j].setValue(i, random.nextGaussian());
+            }
+        }
+        double[] p = new double[]{0.25, 0.5, 0.75};
+
+        long start = System.nanoTime();
+        double check = 0;
+        for (Var var : vars) {
+            check += new Mean(var).value() + new Variance(var).value()
+                    + new Minimum(var).value() + new Maximum(var).value()
+                    + new Quantiles(var, p).values()[1];
+        }
+        double timeSeparate = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        double fused = 0;
+        for (Var var : vars) {
+            VarStat stat = new VarStat(var, p);
+            fused += stat.mean() + stat.variance() + stat.min() + stat.max() + stat.quantiles()[1];
+        }
+        double timeFused = (System.nanoTime() - start) / 1e6;
+
+        assertEquals(check, fused, 1e-9 * Math.abs(check));
+        WS.printfln("stats %dx%d: separate %.1f ms, single pass %.1f ms",
+                ROWS, COLS, timeSeparate, timeFused);
+    }
+}